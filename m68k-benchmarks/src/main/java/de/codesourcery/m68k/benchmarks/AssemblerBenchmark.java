@@ -0,0 +1,48 @@
+package de.codesourcery.m68k.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full assembler runs (parsing, all compilation phases and code generation)
+ * on generated sources.
+ *
+ * @author tobias.gierke@code-sourcery.de
+ * @see Fixtures#generateSource(int, long)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AssemblerBenchmark
+{
+    @Param({"1000","10000"})
+    public int lines;
+
+    private String source;
+
+    @Setup
+    public void setup()
+    {
+        source = Fixtures.generateSource( lines, 0xdeadbeef );
+    }
+
+    @Benchmark
+    public byte[] assemble()
+    {
+        return Fixtures.assemble( source );
+    }
+}
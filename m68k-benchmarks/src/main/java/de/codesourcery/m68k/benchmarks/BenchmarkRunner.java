@@ -0,0 +1,52 @@
+package de.codesourcery.m68k.benchmarks;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+
+/**
+ * Entry point of <code>benchmarks.jar</code>.
+ *
+ * Accepts all regular JMH command-line options but writes results
+ * as JSON to {@link #DEFAULT_RESULT_FILE} unless told otherwise, so results can be
+ * archived and compared across commits.
+ *
+ * @author tobias.gierke@code-sourcery.de
+ */
+public class BenchmarkRunner
+{
+    public static final String DEFAULT_RESULT_FILE = "target/jmh-result.json";
+
+    public static void main(String[] args) throws RunnerException, IOException
+    {
+        final CommandLineOptions cmdLine;
+        try {
+            cmdLine = new CommandLineOptions( args );
+        }
+        catch(CommandLineOptionException e)
+        {
+            System.err.println( "Error parsing command line: "+e.getMessage() );
+            System.exit( 1 );
+            return;
+        }
+        if ( cmdLine.shouldHelp() || cmdLine.shouldList() || cmdLine.shouldListProfilers() || cmdLine.shouldListResultFormats() ) {
+            org.openjdk.jmh.Main.main( args );
+            return;
+        }
+
+        final ChainedOptionsBuilder options = new OptionsBuilder().parent( cmdLine );
+        if ( ! cmdLine.getResultFormat().hasValue() ) {
+            options.resultFormat( ResultFormatType.JSON );
+        }
+        if ( ! cmdLine.getResult().hasValue() ) {
+            options.result( DEFAULT_RESULT_FILE );
+        }
+        new Runner( options.build() ).run();
+    }
+}
@@ -0,0 +1,136 @@
+package de.codesourcery.m68k.benchmarks;
+
+import de.codesourcery.m68k.emulator.Emulator;
+import de.codesourcery.m68k.emulator.memory.Blitter;
+import de.codesourcery.m68k.emulator.memory.Memory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Blitter} area blits (no line mode), from start until the blitter becomes idle again.
+ *
+ * @author tobias.gierke@code-sourcery.de
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BlitterBenchmark
+{
+    private static final int SRC_A = 0x20000;
+    private static final int SRC_B = 0x30000;
+    private static final int SRC_C = 0x40000;
+    private static final int DST = 0x50000;
+
+    public enum Operation
+    {
+        // D = A
+        COPY(0x09f0),
+        // D = AB + !AC (cookie-cut with shift)
+        COOKIE_CUT(0x4fca),
+        // D = A xor C
+        XOR(0x0b5a);
+
+        public final int bltcon0;
+
+        Operation(int bltcon0) {
+            this.bltcon0 = bltcon0;
+        }
+    }
+
+    /**
+     * Blit size as <code>width x height</code>, width in pixels.
+     */
+    @Param({"16x16","320x256"})
+    public String size;
+
+    @Param
+    public Operation operation;
+
+    @Param({"true","false"})
+    public boolean fastMode;
+
+    private Emulator emulator;
+    private Memory memory;
+    private Blitter blitter;
+    private int bltsize;
+
+    @Setup
+    public void setup() throws IOException
+    {
+        emulator = Fixtures.createEmulator();
+        memory = emulator.memory;
+        blitter = emulator.blitter;
+
+        final String[] parts = size.split( "x" );
+        final int widthInWords = Integer.parseInt( parts[0] ) / 16;
+        final int height = Integer.parseInt( parts[1] );
+        bltsize = (height << 6) | widthInWords;
+
+        final Random rnd = new Random( 0x12345678 );
+        final byte[] data = new byte[ 3 * 0x10000 ];
+        rnd.nextBytes( data );
+        memory.bulkWrite( SRC_A, data, 0, data.length );
+
+        blitter.fastMode = fastMode;
+        writeRegister( 0x096, 0x8240 ); // DMACON: DMAEN | BLTEN
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        Fixtures.destroy( emulator );
+    }
+
+    @Benchmark
+    public int blit()
+    {
+        writeRegister( 0x040, operation.bltcon0 );
+        writeRegister( 0x042, 0 ); // BLTCON1
+        writeRegister( 0x044, 0xffff ); // BLTAFWM
+        writeRegister( 0x046, 0xffff ); // BLTALWM
+        writePointer( 0x050, SRC_A );
+        writePointer( 0x04c, SRC_B );
+        writePointer( 0x048, SRC_C );
+        writePointer( 0x054, DST );
+        writeRegister( 0x064, 0 ); // BLTAMOD
+        writeRegister( 0x062, 0 ); // BLTBMOD
+        writeRegister( 0x060, 0 ); // BLTCMOD
+        writeRegister( 0x066, 0 ); // BLTDMOD
+        writeRegister( 0x058, bltsize ); // BLTSIZE
+
+        int ticks = 0;
+        while ( blitter.blitterActive ) {
+            blitter.tick();
+            ticks++;
+        }
+        return ticks;
+    }
+
+    private void writePointer(int register,int address)
+    {
+        writeRegister( register, address >>> 16 );
+        writeRegister( register+2, address );
+    }
+
+    private void writeRegister(int register,int value)
+    {
+        memory.writeWord( 0xdff000 + register, value & 0xffff );
+    }
+}
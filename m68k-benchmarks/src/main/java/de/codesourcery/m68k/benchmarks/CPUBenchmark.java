@@ -0,0 +1,143 @@
+package de.codesourcery.m68k.benchmarks;
+
+import de.codesourcery.m68k.emulator.CPU;
+import de.codesourcery.m68k.emulator.Emulator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CPU instruction dispatch on synthetic instruction mixes.
+ *
+ * Scores are emulated CPU cycles per microsecond, i.e. the emulated clock rate in MHz
+ * (without any chipset emulation).
+ *
+ * @author tobias.gierke@code-sourcery.de
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CPUBenchmark
+{
+    private static final int CYCLES = 10_000;
+
+    private static final int STACK_PTR = 0x10000;
+    private static final int PROGRAM_START = 0x1000;
+    private static final int DATA_START = 0x20000;
+
+    public enum Mix
+    {
+        ALU(
+            "loop:",
+            "    add.l d0,d1",
+            "    sub.l d2,d3",
+            "    and.l d4,d5",
+            "    or.l d6,d7",
+            "    eor.l d1,d3",
+            "    lsl.l #2,d5",
+            "    move.l d1,d2",
+            "    addq.l #1,d0",
+            "    bra loop"),
+        MEMORY(
+            "outer:",
+            "    lea "+DATA_START+",a1",
+            "    moveq #63,d7",
+            "loop:",
+            "    move.l d0,(a1)+",
+            "    move.w 2(a1),d1",
+            "    move.b 1(a1),d2",
+            "    add.l d1,d0",
+            "    dbra d7,loop",
+            "    bra outer"),
+        BRANCH(
+            "loop:",
+            "    addq.l #1,d0",
+            "    btst #0,d0",
+            "    beq even",
+            "    bsr sub",
+            "    bra loop",
+            "even:",
+            "    cmp.l #1000,d0",
+            "    blt loop",
+            "    moveq #0,d0",
+            "    bra loop",
+            "sub:",
+            "    addq.l #1,d1",
+            "    rts"),
+        MIXED(
+            "outer:",
+            "    lea "+DATA_START+",a1",
+            "    moveq #31,d7",
+            "loop:",
+            "    move.l (a1),d1",
+            "    add.l d0,d1",
+            "    lsr.l #1,d1",
+            "    move.l d1,(a1)+",
+            "    cmp.l d1,d2",
+            "    bne skip",
+            "    bsr sub",
+            "skip:",
+            "    mulu d7,d3",
+            "    dbra d7,loop",
+            "    bra outer",
+            "sub:",
+            "    swap d2",
+            "    rts");
+
+        public final String source;
+
+        Mix(String... lines) {
+            this.source = String.join( "\n", lines );
+        }
+    }
+
+    @Param
+    public Mix mix;
+
+    private Emulator emulator;
+    private CPU cpu;
+
+    @Setup
+    public void setup() throws IOException
+    {
+        emulator = Fixtures.createEmulator();
+        final byte[] program = Fixtures.assemble( "ORG "+PROGRAM_START+"\n"+mix.source );
+        emulator.memory.writeLong( 0, STACK_PTR );
+        emulator.memory.writeLong( 4, PROGRAM_START );
+        emulator.memory.bulkWrite( PROGRAM_START, program, 0, program.length );
+        cpu = emulator.cpu;
+        cpu.externalReset();
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        Fixtures.destroy( emulator );
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CYCLES)
+    public int executeCycles()
+    {
+        for ( int i = CYCLES ; i > 0 ; i-- ) {
+            cpu.executeOneCycle();
+        }
+        return cpu.pc;
+    }
+}
@@ -0,0 +1,55 @@
+package de.codesourcery.m68k.benchmarks;
+
+import de.codesourcery.m68k.disassembler.Disassembler;
+import de.codesourcery.m68k.emulator.Emulator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Disassembly of a complete kickstart ROM image.
+ *
+ * @author tobias.gierke@code-sourcery.de
+ * @see Fixtures#ROM_PROPERTY
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DisassemblerBenchmark
+{
+    private Emulator emulator;
+    private Disassembler disassembler;
+
+    @Setup
+    public void setup() throws IOException
+    {
+        emulator = Fixtures.createEmulator();
+        disassembler = new Disassembler( emulator.memory );
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        Fixtures.destroy( emulator );
+    }
+
+    @Benchmark
+    public String disassembleRom()
+    {
+        return disassembler.disassemble( Fixtures.AMIGA.getKickRomStartAddress(), Fixtures.AMIGA.getKickRomSize() );
+    }
+}
@@ -0,0 +1,140 @@
+package de.codesourcery.m68k.benchmarks;
+
+import de.codesourcery.m68k.assembler.Assembler;
+import de.codesourcery.m68k.assembler.CompilationMessages;
+import de.codesourcery.m68k.assembler.CompilationUnit;
+import de.codesourcery.m68k.assembler.IResource;
+import de.codesourcery.m68k.emulator.Amiga;
+import de.codesourcery.m68k.emulator.Emulator;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+/**
+ * Set-up code shared by all benchmarks.
+ *
+ * @author tobias.gierke@code-sourcery.de
+ */
+final class Fixtures
+{
+    /**
+     * System property holding the path to a Kickstart ROM image, defaults to the image
+     * that comes with the sources. If no image is found, a synthetic one gets assembled instead.
+     */
+    public static final String ROM_PROPERTY = "m68k.rom";
+
+    public static final Amiga AMIGA = Amiga.AMIGA_500;
+
+    private Fixtures() {
+    }
+
+    /**
+     * Creates a fully wired emulator with the Kickstart ROM mapped but without
+     * starting the emulator thread, so its components may be driven directly by the benchmark thread.
+     *
+     * @return
+     * @throws IOException
+     * @see #destroy(Emulator)
+     */
+    public static Emulator createEmulator() throws IOException
+    {
+        final byte[] rom = loadRom();
+        final Emulator emulator = new Emulator( AMIGA, rom );
+        emulator.memory.bulkWrite( AMIGA.getKickRomStartAddress(), rom, 0, rom.length );
+        emulator.mmu.setWriteProtection( AMIGA.getKickRomStartAddress(), rom.length, true );
+        return emulator;
+    }
+
+    public static void destroy(Emulator emulator)
+    {
+        emulator.metrics.unregister();
+    }
+
+    public static byte[] loadRom() throws IOException
+    {
+        final File file = new File( System.getProperty( ROM_PROPERTY, "../stuff12.rom" ) );
+        if ( file.exists() ) {
+            return Files.readAllBytes( file.toPath() );
+        }
+        // repeat synthetic code until the ROM is full
+        final byte[] code = assemble( generateSource( 2000, 0xdeadbeef ) );
+        final byte[] rom = new byte[ AMIGA.getKickRomSize() ];
+        for ( int i = 0 ; i < rom.length ; i += code.length ) {
+            System.arraycopy( code, 0, rom, i, Math.min( code.length, rom.length - i ) );
+        }
+        return rom;
+    }
+
+    /**
+     * Assembles source code.
+     *
+     * @param source
+     * @return
+     * @throws IllegalArgumentException if compilation failed
+     */
+    public static byte[] assemble(String source)
+    {
+        final Assembler asm = new Assembler();
+        final CompilationMessages messages = asm.compile( new CompilationUnit( IResource.stringResource( source ) ) );
+        if ( messages.hasErrors() )
+        {
+            throw new IllegalArgumentException( "Failed to compile:\n" + messages.getMessages().stream()
+                .map( Object::toString ).collect( Collectors.joining( "\n" ) ) );
+        }
+        return asm.getBytes( false );
+    }
+
+    /**
+     * Generates assembly source with a mix of arithmetic, memory access and branch instructions.
+     *
+     * @param lines number of instructions
+     * @param seed
+     * @return
+     */
+    public static String generateSource(int lines,long seed)
+    {
+        final String[] templates = {
+            "add.l d%1$d,d%2$d",
+            "sub.w d%1$d,d%2$d",
+            "and.l #$%3$x,d%2$d",
+            "or.b d%1$d,d%2$d",
+            "eor.l d%1$d,d%2$d",
+            "lsl.l #%4$d,d%2$d",
+            "asr.w #%4$d,d%2$d",
+            "move.l d%1$d,d%2$d",
+            "moveq #%5$d,d%2$d",
+            "move.l d%1$d,(a%6$d)",
+            "move.w (a%6$d),d%2$d",
+            "move.l %7$d(a%6$d),d%2$d",
+            "lea %7$d(a%6$d),a%6$d",
+            "cmp.l d%1$d,d%2$d",
+            "tst.w d%2$d",
+            "swap d%2$d",
+            "ext.l d%2$d",
+            "mulu d%1$d,d%2$d",
+        };
+        final Random rnd = new Random( seed );
+        final StringBuilder result = new StringBuilder();
+        for ( int i = 0 ; i < lines ; i++ )
+        {
+            if ( ( i % 16 ) == 0 ) {
+                result.append( "label" ).append( i ).append( ":\n" );
+            }
+            if ( ( i % 16 ) == 15 )
+            {
+                // forward branch to the next label, keeps generated code free of endless loops
+                result.append( "    bne label" ).append( i + 1 ).append( "\n" );
+                continue;
+            }
+            final String template = templates[ rnd.nextInt( templates.length ) ];
+            result.append( "    " ).append( String.format( template,
+                rnd.nextInt( 8 ), rnd.nextInt( 8 ), rnd.nextInt( 0x10000 ), 1 + rnd.nextInt( 8 ),
+                rnd.nextInt( 128 ), rnd.nextInt( 7 ), 2 * rnd.nextInt( 64 ) ) ).append( "\n" );
+        }
+        result.append( "label" ).append( lines ).append( ":\n    nop\n" );
+        return result.toString();
+    }
+}
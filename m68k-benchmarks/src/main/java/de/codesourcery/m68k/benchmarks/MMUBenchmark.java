@@ -0,0 +1,93 @@
+package de.codesourcery.m68k.benchmarks;
+
+import de.codesourcery.m68k.emulator.Emulator;
+import de.codesourcery.m68k.emulator.memory.MMU;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link MMU#getPage(int)} lookups of already mapped pages (chip RAM, ROM, CIAs and custom chips).
+ *
+ * @author tobias.gierke@code-sourcery.de
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MMUBenchmark
+{
+    private static final int LOOKUPS = 1024;
+
+    @Param({"sequential","random"})
+    public String accessPattern;
+
+    private Emulator emulator;
+    private MMU mmu;
+    private final int[] pageNumbers = new int[LOOKUPS];
+
+    @Setup
+    public void setup() throws IOException
+    {
+        emulator = Fixtures.createEmulator();
+        mmu = emulator.mmu;
+
+        final int[] addresses = new int[LOOKUPS];
+        int count = 0;
+        for ( int adr = 0 ; adr < 0x80000 && count < LOOKUPS / 2 ; adr += mmu.getPageSize() ) {
+            addresses[count++] = adr;
+        }
+        for ( int adr = Fixtures.AMIGA.getKickRomStartAddress() ; adr < Fixtures.AMIGA.getKickRomEndAddress() && count < LOOKUPS - 2 ; adr += mmu.getPageSize() ) {
+            addresses[count++] = adr;
+        }
+        addresses[count++] = 0xbfe001;
+        addresses[count++] = 0xdff000;
+        for ( int i = 0 ; i < LOOKUPS ; i++ ) {
+            pageNumbers[i] = mmu.getPageNo( addresses[ i % count ] );
+            mmu.getPage( pageNumbers[i] ); // map page
+        }
+        if ( "random".equals( accessPattern ) )
+        {
+            final Random rnd = new Random( 0x1234 );
+            for ( int i = LOOKUPS - 1 ; i > 0 ; i-- )
+            {
+                final int j = rnd.nextInt( i + 1 );
+                final int tmp = pageNumbers[i];
+                pageNumbers[i] = pageNumbers[j];
+                pageNumbers[j] = tmp;
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        Fixtures.destroy( emulator );
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public void getPage(Blackhole blackhole)
+    {
+        for ( int pageNo : pageNumbers ) {
+            blackhole.consume( mmu.getPage( pageNo ) );
+        }
+    }
+}
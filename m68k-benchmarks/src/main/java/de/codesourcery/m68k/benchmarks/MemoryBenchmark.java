@@ -0,0 +1,174 @@
+package de.codesourcery.m68k.benchmarks;
+
+import de.codesourcery.m68k.emulator.Emulator;
+import de.codesourcery.m68k.emulator.memory.Memory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Memory} read/write paths across the different kinds of memory pages.
+ *
+ * Chip RAM, ROM and custom chip registers get accessed word-wise, the CIAs byte-wise.
+ *
+ * @author tobias.gierke@code-sourcery.de
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MemoryBenchmark
+{
+    private static final int ACCESSES = 256;
+
+    public enum PageType
+    {
+        CHIP_RAM(false, range( 0x10000, ACCESSES, 2 ), range( 0x10000, ACCESSES, 2 ) ),
+        ROM(false, range( Fixtures.AMIGA.getKickRomStartAddress(), ACCESSES, 2 ), null ),
+        // DMACONR, VPOSR, VHPOSR, INTENAR, INTREQR / COLOR00...COLOR31
+        CUSTOM_CHIPS(false, new int[] { 0xdff002, 0xdff004, 0xdff006, 0xdff01c, 0xdff01e }, range( 0xdff180, 32, 2 ) ),
+        // PRA, PRB, TALO, TAHI of both CIAs / CIAA PRB+DDRB, CIAB PRA+DDRA (no overlay bit)
+        CIA(true, new int[] { 0xbfe001, 0xbfe101, 0xbfe401, 0xbfe501, 0xbfd000, 0xbfd100, 0xbfd400, 0xbfd500 },
+            new int[] { 0xbfe101, 0xbfe301, 0xbfd000, 0xbfd200 } );
+
+        public final boolean byteAccess;
+        private final int[] readAddresses;
+        private final int[] writeAddresses;
+
+        PageType(boolean byteAccess,int[] readAddresses,int[] writeAddresses)
+        {
+            this.byteAccess = byteAccess;
+            this.readAddresses = readAddresses;
+            this.writeAddresses = writeAddresses;
+        }
+
+        private static int[] range(int start,int count,int stride)
+        {
+            final int[] result = new int[count];
+            for ( int i = 0 ; i < count ; i++ ) {
+                result[i] = start + i * stride;
+            }
+            return result;
+        }
+
+        /**
+         * Repeats addresses to fill an array of {@link #ACCESSES} elements.
+         */
+        private static int[] fill(int[] addresses)
+        {
+            final int[] result = new int[ACCESSES];
+            for ( int i = 0 ; i < ACCESSES ; i++ ) {
+                result[i] = addresses[ i % addresses.length ];
+            }
+            return result;
+        }
+    }
+
+    public static abstract class AbstractState
+    {
+        protected Emulator emulator;
+        protected Memory memory;
+        protected int[] addresses;
+        protected boolean byteAccess;
+
+        protected void setup(PageType pageType,int[] addresses) throws IOException
+        {
+            emulator = Fixtures.createEmulator();
+            memory = emulator.memory;
+            this.addresses = PageType.fill( addresses );
+            this.byteAccess = pageType.byteAccess;
+            // map all pages upfront
+            for ( int adr : this.addresses ) {
+                memory.readByteNoSideEffects( adr );
+            }
+        }
+
+        @TearDown
+        public void tearDown()
+        {
+            Fixtures.destroy( emulator );
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ReadState extends AbstractState
+    {
+        @Param({"CHIP_RAM","ROM","CUSTOM_CHIPS","CIA"})
+        public PageType pageType;
+
+        @Setup
+        public void setup() throws IOException
+        {
+            setup( pageType, pageType.readAddresses );
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class WriteState extends AbstractState
+    {
+        @Param({"CHIP_RAM","CUSTOM_CHIPS","CIA"})
+        public PageType pageType;
+
+        @Setup
+        public void setup() throws IOException
+        {
+            setup( pageType, pageType.writeAddresses );
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ACCESSES)
+    public int read(ReadState state)
+    {
+        final Memory memory = state.memory;
+        final int[] addresses = state.addresses;
+        int result = 0;
+        if ( state.byteAccess )
+        {
+            for ( int adr : addresses ) {
+                result += memory.readByte( adr );
+            }
+        }
+        else
+        {
+            for ( int adr : addresses ) {
+                result += memory.readWord( adr );
+            }
+        }
+        return result;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ACCESSES)
+    public void write(WriteState state)
+    {
+        final Memory memory = state.memory;
+        final int[] addresses = state.addresses;
+        if ( state.byteAccess )
+        {
+            for ( int i = 0 ; i < addresses.length ; i++ ) {
+                memory.writeByte( addresses[i], i );
+            }
+        }
+        else
+        {
+            for ( int i = 0 ; i < addresses.length ; i++ ) {
+                memory.writeWord( addresses[i], i );
+            }
+        }
+    }
+}
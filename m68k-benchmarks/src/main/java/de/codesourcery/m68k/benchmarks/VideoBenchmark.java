@@ -0,0 +1,105 @@
+package de.codesourcery.m68k.benchmarks;
+
+import de.codesourcery.m68k.emulator.Emulator;
+import de.codesourcery.m68k.emulator.memory.Memory;
+import de.codesourcery.m68k.emulator.memory.Video;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full-screen bitplane to pixel conversion ({@link Video#convertDisplayData(int[], boolean)})
+ * of random bitplane data in the various display modes.
+ *
+ * @author tobias.gierke@code-sourcery.de
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VideoBenchmark
+{
+    private static final int BITPLANES_START = 0x20000;
+    private static final int BITPLANE_SIZE = 0x6000;
+
+    private static final int BPLCON0_HIRES = 1<<15;
+    private static final int BPLCON0_HAM = 1<<11;
+    private static final int BPLCON0_DPF = 1<<10;
+    private static final int BPLCON0_COLOR = 1<<9;
+
+    public enum DisplayMode
+    {
+        LORES_5_PLANES(5 << 12 | BPLCON0_COLOR),
+        HIRES_4_PLANES(BPLCON0_HIRES | 4 << 12 | BPLCON0_COLOR),
+        DUAL_PLAYFIELD(6 << 12 | BPLCON0_DPF | BPLCON0_COLOR),
+        EHB(6 << 12 | BPLCON0_COLOR),
+        HAM(6 << 12 | BPLCON0_HAM | BPLCON0_COLOR);
+
+        public final int bplcon0;
+
+        DisplayMode(int bplcon0) {
+            this.bplcon0 = bplcon0;
+        }
+    }
+
+    @Param
+    public DisplayMode displayMode;
+
+    private Emulator emulator;
+    private Video video;
+    private int[] pixels;
+
+    @Setup
+    public void setup() throws IOException
+    {
+        emulator = Fixtures.createEmulator();
+        video = emulator.video;
+        final Memory memory = emulator.memory;
+
+        final Random rnd = new Random( 0xdeadbeef );
+        final byte[] data = new byte[ 6 * BITPLANE_SIZE ];
+        rnd.nextBytes( data );
+        memory.bulkWrite( BITPLANES_START, data, 0, data.length );
+
+        for ( int i = 0 ; i < 6 ; i++ )
+        {
+            final int ptr = BITPLANES_START + i * BITPLANE_SIZE;
+            memory.writeWord( 0xdff000 + Video.BPL1PTH + i * 4, ptr >>> 16 );
+            memory.writeWord( 0xdff000 + Video.BPL1PTL + i * 4, ptr & 0xffff );
+        }
+        for ( int i = 0 ; i < 32 ; i++ ) {
+            memory.writeWord( 0xdff180 + i * 2, rnd.nextInt( 0x1000 ) );
+        }
+        memory.writeWord( 0xdff000 + Video.BPLCON0, displayMode.bplcon0 );
+        memory.writeWord( 0xdff096, 0x8300 ); // DMACON: DMAEN | BPLEN
+        pixels = new int[ video.getDisplayWidth() * video.getDisplayHeight() ];
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        Fixtures.destroy( emulator );
+    }
+
+    @Benchmark
+    public int[] convertDisplayData()
+    {
+        video.convertDisplayData( pixels, true );
+        return pixels;
+    }
+}
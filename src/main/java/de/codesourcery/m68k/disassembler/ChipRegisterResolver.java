@@ -4,9 +4,6 @@ import de.codesourcery.m68k.emulator.Emulator;
 import de.codesourcery.m68k.utils.Misc;
 import org.apache.commons.lang3.Validate;
 
-import java.util.HashMap;
-import java.util.Map;
-
 public class ChipRegisterResolver implements Disassembler.IChipRegisterResolver
 {
     /*
@@ -26,8 +23,15 @@ The following codes and abbreviations are used in this appendix:
            therefore initiated by Agnus timing, rather than a read address
            on the destination address bus.
 */
-    // TODO: Performance penalty due to boxing/unboxing of map key ... maybe use Trove etc. instead ?
-    private static final Map<Integer, RegisterDescription> registerDescriptions = new HashMap<>();
+    private static final int CUSTOM_CHIP_START = 0xDFF000;
+    private static final int CIAA_START = 0xBFE001;
+    private static final int CIAB_START = 0xBFD000;
+
+    // indexed by (address - 0xDFF000)
+    private static final RegisterDescription[] customChipRegisters = new RegisterDescription[0x200];
+    // indexed by register number ( (address >>> 8) & 0x0f )
+    private static final RegisterDescription[] ciaaRegisters = new RegisterDescription[16];
+    private static final RegisterDescription[] ciabRegisters = new RegisterDescription[16];
 
     private final Emulator emulator;
 
@@ -39,7 +43,17 @@ The following codes and abbreviations are used in this appendix:
     private static void registerCIA(int address, String registerName, String description)
     {
         final RegisterDescription desc = new RegisterDescription(address, registerName, 0, description);
-        final RegisterDescription existing = registerDescriptions.put(address, desc);
+        final RegisterDescription[] table;
+        if ( (address & 0xfffff0ff) == CIAA_START ) {
+            table = ciaaRegisters;
+        } else if ( (address & 0xfffff0ff) == CIAB_START ) {
+            table = ciabRegisters;
+        } else {
+            throw new IllegalArgumentException("Not a CIA register address: " + Misc.hex(address));
+        }
+        final int regNum = (address >>> 8) & 0x0f;
+        final RegisterDescription existing = table[regNum];
+        table[regNum] = desc;
         if (existing != null)
         {
             throw new RuntimeException("Duplicate description for register " + Misc.hex(address) + ", new: " + desc + " <-> old: " + existing);
@@ -52,9 +66,10 @@ The following codes and abbreviations are used in this appendix:
         final int flagBits = parseFlagBits(allFlags);
 
         //
-        final int address = 0xDFF000 + offset;
+        final int address = CUSTOM_CHIP_START + offset;
         final RegisterDescription desc = new RegisterDescription(address, regName, flagBits, description);
-        final RegisterDescription existing = registerDescriptions.put(address, desc);
+        final RegisterDescription existing = customChipRegisters[offset];
+        customChipRegisters[offset] = desc;
         if (existing != null)
         {
             throw new RuntimeException("Duplicate description for register " + Misc.hex(address) + ", new: " + desc + " <-> old: " + existing);
@@ -365,7 +380,16 @@ The following codes and abbreviations are used in this appendix:
     @Override
     public RegisterDescription resolve(int address)
     {
-        return registerDescriptions.get(address);
+        if ( (address & ~0x1ff) == CUSTOM_CHIP_START ) {
+            return customChipRegisters[ address & 0x1ff ];
+        }
+        if ( (address & 0xfffff0ff) == CIAA_START ) {
+            return ciaaRegisters[ (address >>> 8) & 0x0f ];
+        }
+        if ( (address & 0xfffff0ff) == CIAB_START ) {
+            return ciabRegisters[ (address >>> 8) & 0x0f ];
+        }
+        return null;
     }
 
     @Override
@@ -85,6 +85,9 @@ public class Disassembler
     /**
      * Used to resolve absolute and address-register-indirect with displacement
      * operands.
+     *
+     * Implementations get invoked for every such operand and should therefore
+     * not allocate any objects per call (in particular, no boxing of addresses).
      */
     public interface IChipRegisterResolver
     {
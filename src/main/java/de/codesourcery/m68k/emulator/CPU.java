@@ -24,6 +24,7 @@ import java.lang.reflect.Modifier;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.IntConsumer;
 
 /**
  * M68000 cpu emulation.
@@ -289,6 +290,8 @@ public class CPU
     private final IRQ[] irqStack = new IRQ[10];
 
     private int pendingExternalInterrupts = 0;
+    // invoked with the interrupt level whenever processing of an external interrupt starts
+    private IntConsumer interruptAcknowledgeListener = level -> {};
     private int irqStackPtr;
     public IRQ activeIrq; // currently active IRQ (if any)
 
@@ -302,6 +305,9 @@ public class CPU
 
     public int cycles;
 
+    // number of instructions executed so far, not cleared on reset
+    public long instructionCount;
+
     private int ea; // populated from address calculations
     private int value; // value the current instruction operates on
 
@@ -805,6 +811,7 @@ TODO: Not all of them apply to m68k (for example FPU/MMU ones)
 
     private void internalExecutionOneCycle()
     {
+        instructionCount++;
         if ( DEBUG_RECORD_BACKTRACE )
         {
             backtrace[backtraceWritePtr] = pc;
@@ -828,7 +835,7 @@ TODO: Not all of them apply to m68k (for example FPU/MMU ones)
 
         pcAtStartOfLastInstruction = pc;
 
-        final int instruction= memory.readWordNoCheck(pc);
+        final int instruction= memory.fetchWordNoCheck(pc);
 
         if ( DEBUG )
         {
@@ -1678,6 +1685,7 @@ C — Set according to the last bit shifted out of the operand; cleared for a sh
                             LOG.info( "Now handling pending external interrupt " + irq );
                         }
                         pendingExternalInterrupts &= ~mask;
+                        interruptAcknowledgeListener.accept( i );
                         triggerIRQ(irq, 0);
                         return;
                     }
@@ -1733,6 +1741,29 @@ C — Set according to the last bit shifted out of the operand; cleared for a sh
         return false;
     }
 
+    /**
+     * Sets the listener that gets notified (with the interrupt level) whenever
+     * the CPU starts processing an external interrupt.
+     *
+     * @param listener
+     */
+    public void setInterruptAcknowledgeListener(IntConsumer listener)
+    {
+        Validate.notNull(listener, "listener must not be null");
+        this.interruptAcknowledgeListener = listener;
+    }
+
+    /**
+     * Discards external interrupts that have been signalled but
+     * not processed yet.
+     *
+     * @param levelMask bit mask of interrupt levels (1 << level)
+     */
+    public void clearPendingExternalInterrupts(int levelMask)
+    {
+        pendingExternalInterrupts &= ~levelMask;
+    }
+
     public void externalInterrupt(int priority)
     {
         // TODO: Implement support for emulating hardware interrupts, needs
@@ -1758,6 +1789,7 @@ C — Set according to the last bit shifted out of the operand; cleared for a sh
             {
                 LOG.info( "External interrupt: " + irq );
             }
+            interruptAcknowledgeListener.accept( priority );
             triggerIRQ(irq,0);
             return;
         }
@@ -3,12 +3,16 @@ package de.codesourcery.m68k.emulator;
 import de.codesourcery.m68k.disassembler.Disassembler;
 import de.codesourcery.m68k.emulator.chips.CIA8520;
 import de.codesourcery.m68k.emulator.chips.IRQController;
+import de.codesourcery.m68k.emulator.chips.Paula;
 import de.codesourcery.m68k.emulator.exceptions.CPUResetException;
+import de.codesourcery.m68k.emulator.floppy.DiskController;
 import de.codesourcery.m68k.emulator.memory.Blitter;
 import de.codesourcery.m68k.emulator.memory.DMAController;
 import de.codesourcery.m68k.emulator.memory.MMU;
 import de.codesourcery.m68k.emulator.memory.Memory;
 import de.codesourcery.m68k.emulator.memory.Video;
+import de.codesourcery.m68k.emulator.metrics.EmulatorMetrics;
+import de.codesourcery.m68k.emulator.metrics.HostTimeProfiler;
 import de.codesourcery.m68k.emulator.ui.ITickListener;
 import de.codesourcery.m68k.utils.Misc;
 import org.apache.commons.lang3.Validate;
@@ -21,6 +25,7 @@ import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
 import java.util.function.Consumer;
 
 public class Emulator
@@ -52,6 +57,21 @@ public class Emulator
         void enteredContinousMode(Emulator emulator);
     }
 
+    /**
+     * Why {@link #runUntil(BooleanSupplier)} returned.
+     */
+    public enum RunResult
+    {
+        /** the condition returned <code>true</code> */
+        CONDITION_MET,
+        /** a CPU or memory breakpoint got hit */
+        BREAKPOINT_HIT,
+        /** the CPU executed a RESET instruction, the emulator got reset */
+        CPU_RESET,
+        /** emulation crashed */
+        ERROR
+    }
+
     private enum CommandType
     {
         START, STOP, RESET, SINGLE_STEP, CALLBACK, DESTROY
@@ -97,6 +117,12 @@ public class Emulator
     public final CPU cpu;
     public final CIA8520 ciaa;
     public final CIA8520 ciab;
+    public final Paula paula;
+    public final DiskController diskController;
+    public final Keyboard keyboard;
+    public final SpeedGovernor speedGovernor;
+    public final EmulatorMetrics metrics;
+    public final HostTimeProfiler profiler = new HostTimeProfiler();
     public final IRQController irqController;
 
     private final Object EMULATOR_LOCK = new Object();
@@ -129,12 +155,28 @@ public class Emulator
         this.cpu = new CPU(amiga.getCPUType(), memory);
         this.irqController = new IRQController(this.cpu);
         faultHandler.setIRQController( irqController );
+        faultHandler.setHostTimeProfiler( profiler );
         this.blitter.setIRQController( irqController );
         this.video.setIRQController( irqController );
         this.ciaa = new CIA8520(CIA8520.Name.CIAA, amiga, irqController);
         this.ciab = new CIA8520(CIA8520.Name.CIAB, amiga, irqController);
         faultHandler.setCIAA(this.ciaa);
         faultHandler.setCIAB(this.ciab);
+        irqController.setCIAA(this.ciaa);
+        irqController.setCIAB(this.ciab);
+        this.paula = new Paula(amiga, dmaController, irqController);
+        this.paula.setMemory( this.memory );
+        faultHandler.setPaula(this.paula);
+        this.diskController = new DiskController(dmaController, irqController, paula, ciaa);
+        this.diskController.setMemory( this.memory );
+        this.ciab.setPortBListener( diskController::writePortB );
+        faultHandler.setDiskController(this.diskController);
+        this.keyboard = new Keyboard(amiga, ciaa);
+        this.ciaa.setSerialModeListener( keyboard::serialModeChanged );
+        faultHandler.setKeyboard(this.keyboard);
+        this.speedGovernor = new SpeedGovernor(amiga);
+        this.metrics = new EmulatorMetrics(amiga, cpu, mmu, video, blitter, ciaa, ciab);
+        this.metrics.register();
     }
 
     public void destroy()
@@ -142,6 +184,59 @@ public class Emulator
         sendCommand(new EmulatorCommand(CommandType.DESTROY), true);
     }
 
+    /**
+     * Enables/disables warp mode.
+     *
+     * In warp mode, the emulation runs as fast as possible instead of being paced
+     * to real-time and only every Nth frame gets rendered.
+     *
+     * @param enabled
+     * @param renderEveryNthFrame how often to render frames while in warp mode
+     * @see SpeedGovernor#getSpeedRatio()
+     */
+    public void setWarpMode(boolean enabled,int renderEveryNthFrame)
+    {
+        Validate.isTrue( renderEveryNthFrame >= 1, "renderEveryNthFrame must be >= 1" );
+        speedGovernor.setWarp( enabled );
+        runOnThread( () -> video.setRenderEveryNthFrame( enabled ? renderEveryNthFrame : 1 ), false );
+    }
+
+    /**
+     * Enables/disables host time accounting.
+     *
+     * @param enabled
+     * @param sampleInterval how often ticks get timed
+     * @see #profiler
+     */
+    public void setHostTimeProfiling(boolean enabled,int sampleInterval)
+    {
+        Validate.isTrue( sampleInterval >= 1, "sampleInterval must be >= 1" );
+        runOnThread( () ->
+        {
+            if ( profiler.getSampleInterval() != sampleInterval ) {
+                profiler.setSampleInterval( sampleInterval );
+            }
+            profiler.setEnabled( enabled );
+        }, false );
+    }
+
+    /**
+     * Runs the emulation until a condition is met, blocking the caller.
+     *
+     * The emulation must not be running in continous mode. Tick callbacks
+     * are not invoked.
+     *
+     * @param condition checked by the emulator thread after each tick, must return <code>true</code> to stop the emulation
+     * @return
+     */
+    public RunResult runUntil(BooleanSupplier condition)
+    {
+        Validate.notNull(condition, "condition must not be null");
+        final AtomicReference<RunResult> result = new AtomicReference<>();
+        internalSyncSendCommand( thread -> result.set( thread.runUntil( condition ) ) );
+        return result.get();
+    }
+
     public void runOnThread(Runnable r, boolean waitForCompletion)
     {
         sendCommand(new EmulatorCallback(t -> r.run()), waitForCompletion);
@@ -193,6 +288,8 @@ public class Emulator
             if (emulatorThread == null || !emulatorThread.isAlive())
             {
                 if ( cmd.type == CommandType.DESTROY ) {
+                    // never ran, no need to start a thread just for cleaning up
+                    metrics.unregister();
                     return;
                 }
                 emulatorThread = new EmulatorThread();
@@ -222,6 +319,8 @@ public class Emulator
     private class EmulatorThread extends Thread
     {
         private int callbackInvocationTicks = 1000;
+        // true if the current tick is being timed by the profiler
+        private boolean sampledTick;
         private ITickListener callback = e -> {};
         private IEmulatorStateCallback stateCallback = new IEmulatorStateCallback()
         {
@@ -376,6 +475,92 @@ public class Emulator
             }
         }
 
+        private void emulateTick()
+        {
+            sampledTick = profiler.startTick();
+            if ( sampledTick )
+            {
+                mmu.tick( true );
+                final long start = System.nanoTime();
+                cpu.executeOneCycle();
+                profiler.addSample( HostTimeProfiler.Subsystem.CPU, System.nanoTime() - start );
+            }
+            else
+            {
+                mmu.tick();
+                cpu.executeOneCycle();
+            }
+            speedGovernor.tick();
+            metrics.tick();
+        }
+
+        private boolean isCPUBreakpointHit()
+        {
+            if ( sampledTick )
+            {
+                final long start = System.nanoTime();
+                final boolean result = breakpoints.hasEnabledBreakpoints() &&
+                        cpu.cycles == 1 &&
+                        breakpoints.checkBreakpointHit(Emulator.this );
+                profiler.addSample( HostTimeProfiler.Subsystem.BREAKPOINTS, System.nanoTime() - start );
+                return result;
+            }
+            return breakpoints.hasEnabledBreakpoints() &&
+                    cpu.cycles == 1 &&
+                    breakpoints.checkBreakpointHit(Emulator.this );
+        }
+
+        private void invokeTickCallback()
+        {
+            if ( profiler.isEnabled() )
+            {
+                final long start = System.nanoTime();
+                callback.tick(Emulator.this);
+                profiler.add( HostTimeProfiler.Subsystem.UI_CALLBACKS, System.nanoTime() - start );
+            }
+            else
+            {
+                callback.tick(Emulator.this);
+            }
+        }
+
+        private RunResult runUntil(BooleanSupplier condition)
+        {
+            if ( mode == EmulatorMode.RUNNING ) {
+                throw new IllegalStateException( "Emulation is already running" );
+            }
+            speedGovernor.resync();
+            metrics.resync();
+            try
+            {
+                while ( true )
+                {
+                    emulateTick();
+                    if ( condition.getAsBoolean() ) {
+                        return RunResult.CONDITION_MET;
+                    }
+                    if ( isCPUBreakpointHit() || memory.breakpoints.lastHit != null )
+                    {
+                        memory.breakpoints.lastHit = null;
+                        return RunResult.BREAKPOINT_HIT;
+                    }
+                }
+            }
+            catch(CPUResetException ex)
+            {
+                LOG.warn("*** CPU executed RESET instruction at "+Misc.hex( cpu.pcAtStartOfLastInstruction) +" , resetting emulator");
+                doReset();
+                return RunResult.CPU_RESET;
+            }
+            catch (Exception e)
+            {
+                printBacktrace();
+                e.printStackTrace();
+                LOG.info( "*** emulation stopped because of error ***" );
+                return RunResult.ERROR;
+            }
+        }
+
         @SuppressWarnings( "deprecation" )
         public void internalRun()
         {
@@ -401,12 +586,22 @@ public class Emulator
                     {
 
                         case DESTROY:
+                            paula.setAudioSink( null );
+                            metrics.unregister();
+                            for ( int unit = 0 ; unit < diskController.drives.length ; unit++ )
+                            {
+                                if ( diskController.drives[unit] != null ) {
+                                    diskController.ejectDisk( unit );
+                                }
+                            }
                             cmd.ack.countDown();
                             return; /* terminate thread */
                         case START:
                             mode = EmulatorMode.RUNNING;
                             if (oldMode != mode)
                             {
+                                speedGovernor.resync();
+                                metrics.resync();
                                 stateCallback.enteredContinousMode(Emulator.this);
                             }
                             break;
@@ -467,11 +662,10 @@ public class Emulator
                     try
                     {
                         tickCount++;
-                        mmu.tick();
-                        cpu.executeOneCycle();
+                        emulateTick();
                         if ((tickCount % callbackInvocationTicks) == 0)
                         {
-                            callback.tick(Emulator.this);
+                            invokeTickCallback();
                         }
                     }
                     catch(CPUResetException ex)
@@ -495,9 +689,7 @@ public class Emulator
                         LOG.info( "*** emulation stopped because of error ***" );
                         stateCallback.stopped(Emulator.this);
                     }
-                    final boolean cpuBreakpointHit = breakpoints.hasEnabledBreakpoints() &&
-                            cpu.cycles == 1 &&
-                            breakpoints.checkBreakpointHit(Emulator.this );
+                    final boolean cpuBreakpointHit = isCPUBreakpointHit();
 
                     if ( cpuBreakpointHit || memory.breakpoints.lastHit != null )
                     {
@@ -1,13 +1,104 @@
 package de.codesourcery.m68k.emulator;
 
 import de.codesourcery.m68k.emulator.chips.CIA8520;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 /**
  * Keyboard emulation.
+ *
+ * Key events (from the host or scripted, see {@link #type(CharSequence)}) may be submitted
+ * by any thread and are handed to the emulator thread through a lock-free queue.
+ *
+ * The keyboard's 10 keycode type-ahead buffer gets filled from this queue. Instead of
+ * overflowing, events stay in the queue until there's room in the buffer again, so scripted
+ * input never gets lost.
+ *
+ * Keycodes are not clocked in bit by bit, instead each byte gets handed to CIAA's
+ * serial data register once the time needed to transmit it has passed. The next keycode
+ * is only sent after the CPU acknowledged the previous one with a handshake pulse of
+ * at least 85µs (serial port switched to output mode and back). If no handshake arrives within
+ * 143ms, the keyboard sends a "lost sync" code followed by the unacknowledged keycode.
+ *
  * @author tobias.gierke@code-sourcery.de
  */
 public class Keyboard
 {
+    private static final Logger LOG = LogManager.getLogger( Keyboard.class.getName() );
+
+    // raw keycodes (US layout)
+    public static final int KEY_SPACE = 0x40;
+    public static final int KEY_BACKSPACE = 0x41;
+    public static final int KEY_TAB = 0x42;
+    public static final int KEY_ENTER = 0x43; // numeric pad
+    public static final int KEY_RETURN = 0x44;
+    public static final int KEY_ESCAPE = 0x45;
+    public static final int KEY_DELETE = 0x46;
+    public static final int KEY_CURSOR_UP = 0x4c;
+    public static final int KEY_CURSOR_DOWN = 0x4d;
+    public static final int KEY_CURSOR_RIGHT = 0x4e;
+    public static final int KEY_CURSOR_LEFT = 0x4f;
+    public static final int KEY_F1 = 0x50; // F1...F10 are consecutive
+    public static final int KEY_HELP = 0x5f;
+    public static final int KEY_LEFT_SHIFT = 0x60;
+    public static final int KEY_RIGHT_SHIFT = 0x61;
+    public static final int KEY_CAPS_LOCK = 0x62;
+    public static final int KEY_CTRL = 0x63;
+    public static final int KEY_LEFT_ALT = 0x64;
+    public static final int KEY_RIGHT_ALT = 0x65;
+    public static final int KEY_LEFT_AMIGA = 0x66;
+    public static final int KEY_RIGHT_AMIGA = 0x67;
+
+    // set in a keycode when the key got released
+    public static final int KEY_UP = 0x80;
+
+    // special code, tells the CPU the next keycode is a retransmission
+    public static final int CODE_LOST_SYNC = 0xf9;
+
+    public static final int BUFFER_SIZE = 10;
+
+    // characters on the main keys, index is the raw keycode
+    private static final String UNSHIFTED =
+            "`1234567890-=\\\0\0" +
+            "qwertyuiop[]\0\0\0\0" +
+            "asdfghjkl;'\0\0\0\0\0" +
+            "\0zxcvbnm,./";
+    private static final String SHIFTED =
+            "~!@#$%^&*()_+|\0\0" +
+            "QWERTYUIOP{}\0\0\0\0" +
+            "ASDFGHJKL:\"\0\0\0\0\0" +
+            "\0ZXCVBNM<>?";
+
+    private static final int STATE_IDLE = 0;
+    private static final int STATE_SENDING = 1;
+    private static final int STATE_AWAIT_HANDSHAKE = 2;
+
+    // ticked at the E clock rate
+    private final int eClockKHz;
+    private final int transmitCycles;
+    private final int handshakeCycles;
+    private final int timeoutCycles;
+    private final int pollCycles;
+
+    // events submitted by other threads
+    private final Queue<Integer> events = new ConcurrentLinkedQueue<>();
+
+    // type-ahead buffer
+    private final int[] buffer = new int[ BUFFER_SIZE ];
+    private int bufferReadPtr;
+    private int bufferSize;
+
+    private int state = STATE_IDLE;
+    private int currentCode;
+    private boolean lostSync;
+
+    private long cycle;
+    private long nextEventCycle;
+    private long handshakeStartCycle = -1;
+
     /*
      * The keyboard data line (KDAT) is connected to the  SP pin ,
      * the keyboard clock (KCLK) is connected to the CNT pin .
@@ -73,11 +164,210 @@ public class Keyboard
      */
     private final CIA8520 cia;
 
-    public Keyboard(CIA8520 cia) {
+    public Keyboard(Amiga amiga,CIA8520 cia)
+    {
         this.cia = cia;
+        this.eClockKHz = Math.round( amiga.getCPUClock() * 1000 / 10 );
+        // 8 bits, 60µs each
+        this.transmitCycles = microsToCycles( 8 * 60 );
+        this.handshakeCycles = microsToCycles( 85 );
+        this.timeoutCycles = microsToCycles( 143_000 );
+        // key matrix gets scanned about once per millisecond
+        this.pollCycles = microsToCycles( 1000 );
+        reset();
+    }
+
+    private int microsToCycles(int micros) {
+        return Math.max( 1, micros * eClockKHz / 1000 );
+    }
+
+    public void reset()
+    {
+        events.clear();
+        bufferReadPtr = bufferSize = 0;
+        state = STATE_IDLE;
+        lostSync = false;
+        cycle = 0;
+        nextEventCycle = pollCycles;
+        handshakeStartCycle = -1;
+    }
+
+    /**
+     * Submits a key press.
+     *
+     * May be invoked by any thread.
+     *
+     * @param rawCode raw keycode (0...0x7f)
+     */
+    public void keyPressed(int rawCode)
+    {
+        events.add( rawCode & 0x7f );
+    }
+
+    /**
+     * Submits a key release.
+     *
+     * May be invoked by any thread.
+     *
+     * @param rawCode raw keycode (0...0x7f)
+     */
+    public void keyReleased(int rawCode)
+    {
+        events.add( (rawCode & 0x7f) | KEY_UP );
+    }
+
+    /**
+     * Submits key presses/releases typing some text (US layout).
+     *
+     * May be invoked by any thread.
+     *
+     * @param text
+     * @throws IllegalArgumentException if the text contains characters that can't be typed
+     */
+    public void type(CharSequence text)
+    {
+        for ( int i = 0 ; i < text.length() ; i++ )
+        {
+            final char c = text.charAt( i );
+            final int rawCode;
+            boolean shift = false;
+            switch( c )
+            {
+                case ' ':  rawCode = KEY_SPACE; break;
+                case '\n': rawCode = KEY_RETURN; break;
+                case '\t': rawCode = KEY_TAB; break;
+                case '\b': rawCode = KEY_BACKSPACE; break;
+                default:
+                    int code = toRawCode( c );
+                    if ( code == -1 )
+                    {
+                        code = c == 0 ? -1 : SHIFTED.indexOf( c );
+                        shift = true;
+                    }
+                    if ( code == -1 ) {
+                        throw new IllegalArgumentException( "Character '"+c+"' can't be typed" );
+                    }
+                    rawCode = code;
+            }
+            if ( shift ) {
+                keyPressed( KEY_LEFT_SHIFT );
+            }
+            keyPressed( rawCode );
+            keyReleased( rawCode );
+            if ( shift ) {
+                keyReleased( KEY_LEFT_SHIFT );
+            }
+        }
     }
 
-    public void tick() {
+    /**
+     * Returns the raw keycode of the main key producing a character without shift (US layout).
+     *
+     * @param c
+     * @return raw keycode or -1
+     */
+    public static int toRawCode(char c)
+    {
+        return c == 0 ? -1 : UNSHIFTED.indexOf( c );
+    }
+
+    /**
+     * Returns whether all submitted key events got acknowledged by the CPU.
+     *
+     * Must only be invoked by the emulator thread.
+     *
+     * @return
+     */
+    public boolean isIdle()
+    {
+        return events.isEmpty() && bufferSize == 0 && state == STATE_IDLE && ! lostSync;
+    }
+
+    /**
+     * Invoked when CIAA's serial port switched between input and output mode.
+     *
+     * @param output
+     */
+    public void serialModeChanged(boolean output)
+    {
+        if ( output ) {
+            handshakeStartCycle = cycle;
+            return;
+        }
+        if ( handshakeStartCycle == -1 ) {
+            return;
+        }
+        final long duration = cycle - handshakeStartCycle;
+        handshakeStartCycle = -1;
+        if ( state != STATE_AWAIT_HANDSHAKE ) {
+            return;
+        }
+        if ( duration < handshakeCycles )
+        {
+            LOG.debug( "Ignoring handshake pulse of "+duration+" cycles" );
+            return;
+        }
+        if ( currentCode == CODE_LOST_SYNC ) {
+            lostSync = false;
+        } else {
+            bufferReadPtr = (bufferReadPtr + 1) % BUFFER_SIZE;
+            bufferSize--;
+        }
+        state = STATE_IDLE;
+        nextEventCycle = cycle + 1;
+    }
+
+    // ticked at the E clock rate
+    public void tick()
+    {
+        if ( ++cycle < nextEventCycle ) {
+            return;
+        }
+        switch( state )
+        {
+            case STATE_IDLE:
+                fillBuffer();
+                if ( lostSync || bufferSize > 0 )
+                {
+                    currentCode = lostSync ? CODE_LOST_SYNC : buffer[ bufferReadPtr ];
+                    state = STATE_SENDING;
+                    nextEventCycle = cycle + transmitCycles;
+                } else {
+                    nextEventCycle = cycle + pollCycles;
+                }
+                break;
+            case STATE_SENDING:
+                // keycodes are sent rotated left by one bit and inverted
+                final int data = ~( currentCode << 1 | currentCode >>> 7 ) & 0xff;
+                if ( cia.receiveSerialByte( data ) )
+                {
+                    state = STATE_AWAIT_HANDSHAKE;
+                    nextEventCycle = cycle + timeoutCycles;
+                }
+                else
+                {
+                    // serial port is in output mode, retry later
+                    nextEventCycle = cycle + transmitCycles;
+                }
+                break;
+            case STATE_AWAIT_HANDSHAKE:
+                LOG.warn( "No handshake for keycode $"+Integer.toHexString( currentCode )+", re-sending" );
+                if ( currentCode != CODE_LOST_SYNC ) {
+                    lostSync = true;
+                }
+                state = STATE_IDLE;
+                nextEventCycle = cycle + 1;
+                break;
+        }
+    }
 
+    private void fillBuffer()
+    {
+        Integer event;
+        while ( bufferSize < BUFFER_SIZE && ( event = events.poll() ) != null )
+        {
+            buffer[ (bufferReadPtr + bufferSize) % BUFFER_SIZE ] = event;
+            bufferSize++;
+        }
     }
 }
@@ -0,0 +1,144 @@
+package de.codesourcery.m68k.emulator;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Keeps emulated time in sync with wall-clock time.
+ *
+ * Pacing is done once per emulated frame (1/50s PAL, 1/60s NTSC): If the emulation is ahead
+ * of the wall clock, the emulator thread gets parked until it's time for the next frame.
+ * If it falls behind by more than {@link #MAX_LAG_NANOS}, the time is not made up for but the
+ * reference point gets reset instead.
+ *
+ * In warp mode, no pacing happens at all.
+ *
+ * Apart from {@link #setWarp(boolean)}, {@link #isWarp()} and {@link #getSpeedRatio()},
+ * all methods must only be invoked by the emulator thread.
+ *
+ * @author tobias.gierke@code-sourcery.de
+ */
+public class SpeedGovernor
+{
+    private static final long MAX_LAG_NANOS = TimeUnit.MILLISECONDS.toNanos( 100 );
+    private static final long MEASUREMENT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos( 1 );
+
+    private final int ticksPerFrame;
+    private final double nanosPerTick;
+
+    private int ticksUntilFrame;
+
+    // reference point for pacing
+    private long startNanos;
+    private long ticksSinceStart;
+
+    // speed measurement
+    private long measurementStartNanos;
+    private long ticksSinceMeasurementStart;
+    private volatile double speedRatio;
+
+    private volatile boolean warp;
+
+    public SpeedGovernor(Amiga amiga)
+    {
+        final double ticksPerSecond = amiga.getCPUClock() * 1_000_000d;
+        this.nanosPerTick = 1_000_000_000d / ticksPerSecond;
+        this.ticksPerFrame = (int) Math.round( ticksPerSecond / ( amiga.isPAL() ? 50 : 60 ) );
+        resync();
+    }
+
+    /**
+     * Resets the reference point, needs to be invoked whenever
+     * the emulation (re-)starts running.
+     */
+    public void resync()
+    {
+        final long now = System.nanoTime();
+        ticksUntilFrame = ticksPerFrame;
+        startNanos = measurementStartNanos = now;
+        ticksSinceStart = ticksSinceMeasurementStart = 0;
+    }
+
+    public void tick()
+    {
+        if ( --ticksUntilFrame > 0 ) {
+            return;
+        }
+        ticksUntilFrame = ticksPerFrame;
+        endOfFrame();
+    }
+
+    private void endOfFrame()
+    {
+        final long now = System.nanoTime();
+
+        ticksSinceMeasurementStart += ticksPerFrame;
+        final long elapsed = now - measurementStartNanos;
+        if ( elapsed >= MEASUREMENT_INTERVAL_NANOS )
+        {
+            speedRatio = ticksSinceMeasurementStart * nanosPerTick / elapsed;
+            measurementStartNanos = now;
+            ticksSinceMeasurementStart = 0;
+        }
+
+        if ( warp )
+        {
+            startNanos = now;
+            ticksSinceStart = 0;
+            return;
+        }
+
+        ticksSinceStart += ticksPerFrame;
+        final long target = startNanos + (long) ( ticksSinceStart * nanosPerTick );
+        long ahead = target - now;
+        if ( ahead > 0 )
+        {
+            // parkNanos() may return early
+            do {
+                LockSupport.parkNanos( ahead );
+                ahead = target - System.nanoTime();
+            } while ( ahead > 0 );
+        }
+        else if ( ahead < -MAX_LAG_NANOS )
+        {
+            // too slow, don't try to catch up
+            startNanos = now;
+            ticksSinceStart = 0;
+        }
+    }
+
+    /**
+     * Returns the number of ticks per emulated frame.
+     *
+     * @return
+     */
+    public int getTicksPerFrame()
+    {
+        return ticksPerFrame;
+    }
+
+    /**
+     * Enables/disables pacing.
+     *
+     * @param warp <code>true</code> to run as fast as possible
+     */
+    public void setWarp(boolean warp)
+    {
+        this.warp = warp;
+    }
+
+    public boolean isWarp()
+    {
+        return warp;
+    }
+
+    /**
+     * Returns emulated time divided by wall-clock time, measured over the last second the emulation was running.
+     *
+     * @return speed ratio, 1.0 is real-time
+     */
+    public double getSpeedRatio()
+    {
+        return speedRatio;
+    }
+}
@@ -0,0 +1,94 @@
+package de.codesourcery.m68k.emulator.audio;
+
+/**
+ * Preallocated ring buffer holding mixed 16-bit stereo samples
+ * until an {@link IAudioSink} is ready to take them.
+ *
+ * When the sink does not keep up, the oldest samples get overwritten.
+ *
+ * Not thread-safe, only ever used by the emulator thread.
+ *
+ * @author tobias.gierke@code-sourcery.de
+ */
+public final class AudioRingBuffer
+{
+    private final byte[] data;
+    private final int mask;
+
+    private int readPtr;
+    private int writePtr;
+    private int size; // in bytes
+
+    // number of sample frames lost because the sink did not keep up
+    public long droppedFrames;
+
+    /**
+     * Create buffer.
+     *
+     * @param capacity capacity in bytes, needs to be a power of two and at least {@link IAudioSink#BYTES_PER_FRAME}
+     */
+    public AudioRingBuffer(int capacity)
+    {
+        if ( capacity < IAudioSink.BYTES_PER_FRAME || Integer.bitCount( capacity ) != 1 ) {
+            throw new IllegalArgumentException( "Capacity needs to be a power of two >= "+IAudioSink.BYTES_PER_FRAME+" but was "+capacity );
+        }
+        this.data = new byte[ capacity ];
+        this.mask = capacity - 1;
+    }
+
+    public void clear()
+    {
+        readPtr = writePtr = size = 0;
+    }
+
+    /**
+     * Returns the number of buffered bytes.
+     *
+     * @return
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Appends a stereo sample frame.
+     *
+     * @param left
+     * @param right
+     */
+    public void write(int left,int right)
+    {
+        if ( size == data.length )
+        {
+            // drop oldest frame
+            readPtr = (readPtr + IAudioSink.BYTES_PER_FRAME) & mask;
+            size -= IAudioSink.BYTES_PER_FRAME;
+            droppedFrames++;
+        }
+        data[ writePtr     ] = (byte) left;
+        data[ writePtr + 1 ] = (byte) (left >> 8);
+        data[ writePtr + 2 ] = (byte) right;
+        data[ writePtr + 3 ] = (byte) (right >> 8);
+        writePtr = (writePtr + IAudioSink.BYTES_PER_FRAME) & mask;
+        size += IAudioSink.BYTES_PER_FRAME;
+    }
+
+    /**
+     * Hands as much buffered data as possible to a sink.
+     *
+     * @param sink
+     */
+    public void drainTo(IAudioSink sink)
+    {
+        while ( size > 0 )
+        {
+            final int len = Math.min( size, data.length - readPtr );
+            final int written = sink.write( data, readPtr, len );
+            readPtr = (readPtr + written) & mask;
+            size -= written;
+            if ( written < len ) {
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package de.codesourcery.m68k.emulator.audio;
+
+/**
+ * Receives the audio output of the emulator.
+ *
+ * Audio data is always 16-bit signed little-endian stereo PCM
+ * (left channel first) at {@link de.codesourcery.m68k.emulator.chips.Paula#SAMPLE_RATE}.
+ *
+ * Sinks are only ever invoked by the emulator thread.
+ *
+ * @author tobias.gierke@code-sourcery.de
+ */
+public interface IAudioSink extends AutoCloseable
+{
+    /**
+     * Number of bytes per stereo sample frame.
+     */
+    int BYTES_PER_FRAME = 4;
+
+    /**
+     * Writes audio data.
+     *
+     * Implementations must not block the emulator thread, a sink that
+     * cannot take all data right now returns how much it actually consumed.
+     *
+     * @param data
+     * @param offset
+     * @param length number of bytes, always a multiple of {@link #BYTES_PER_FRAME}
+     * @return number of bytes consumed, always a multiple of {@link #BYTES_PER_FRAME}
+     */
+    int write(byte[] data, int offset, int length);
+
+    @Override
+    void close();
+}
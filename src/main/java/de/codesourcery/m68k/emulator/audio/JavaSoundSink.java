@@ -0,0 +1,59 @@
+package de.codesourcery.m68k.emulator.audio;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+
+/**
+ * Plays audio through <code>javax.sound.sampled</code>.
+ *
+ * Only writes as much data as the line can take without blocking, so
+ * the emulator never gets paced by the sound card.
+ *
+ * @author tobias.gierke@code-sourcery.de
+ */
+public class JavaSoundSink implements IAudioSink
+{
+    private static final Logger LOG = LogManager.getLogger( JavaSoundSink.class.getName() );
+
+    private final SourceDataLine line;
+
+    /**
+     * Opens the default audio output line.
+     *
+     * @param sampleRate
+     * @param bufferMillis size of the line's buffer in milliseconds
+     * @throws LineUnavailableException if no audio output is available
+     */
+    public JavaSoundSink(int sampleRate,int bufferMillis) throws LineUnavailableException
+    {
+        final AudioFormat format = new AudioFormat( sampleRate, 16, 2, true, false );
+        final int bufferSize = (sampleRate * bufferMillis / 1000) * BYTES_PER_FRAME;
+        line = AudioSystem.getSourceDataLine( format );
+        line.open( format, bufferSize );
+        line.start();
+        LOG.info( "Audio output: "+format+", buffer size "+line.getBufferSize()+" bytes" );
+    }
+
+    @Override
+    public int write(byte[] data, int offset, int length)
+    {
+        final int available = line.available() & ~(BYTES_PER_FRAME-1);
+        final int len = Math.min( available, length );
+        if ( len > 0 ) {
+            line.write( data, offset, len );
+        }
+        return len;
+    }
+
+    @Override
+    public void close()
+    {
+        line.stop();
+        line.close();
+    }
+}
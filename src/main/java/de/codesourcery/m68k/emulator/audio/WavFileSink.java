@@ -0,0 +1,112 @@
+package de.codesourcery.m68k.emulator.audio;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+
+/**
+ * Writes audio to a WAV file, intended for headless runs.
+ *
+ * Unlike {@link JavaSoundSink}, this sink always consumes all data.
+ *
+ * @author tobias.gierke@code-sourcery.de
+ */
+public class WavFileSink implements IAudioSink
+{
+    private static final int HEADER_SIZE = 44;
+
+    private final RandomAccessFile file;
+    private final int sampleRate;
+    private final byte[] buffer = new byte[ 64*1024 ];
+    private int bufferPtr;
+    private long dataSize;
+
+    public WavFileSink(File file,int sampleRate) throws IOException
+    {
+        this.sampleRate = sampleRate;
+        this.file = new RandomAccessFile( file, "rw" );
+        this.file.setLength( 0 );
+        writeHeader();
+    }
+
+    private void writeHeader() throws IOException
+    {
+        final int byteRate = sampleRate * BYTES_PER_FRAME;
+        file.seek( 0 );
+        file.writeBytes( "RIFF" );
+        writeInt( (int) (HEADER_SIZE - 8 + dataSize) );
+        file.writeBytes( "WAVE" );
+        file.writeBytes( "fmt " );
+        writeInt( 16 ); // chunk size
+        writeShort( 1 ); // PCM
+        writeShort( 2 ); // channels
+        writeInt( sampleRate );
+        writeInt( byteRate );
+        writeShort( BYTES_PER_FRAME ); // block align
+        writeShort( 16 ); // bits per sample
+        file.writeBytes( "data" );
+        writeInt( (int) dataSize );
+    }
+
+    private void writeInt(int value) throws IOException
+    {
+        writeShort( value );
+        writeShort( value >>> 16 );
+    }
+
+    private void writeShort(int value) throws IOException
+    {
+        file.write( value );
+        file.write( value >>> 8 );
+    }
+
+    @Override
+    public int write(byte[] data, int offset, int length)
+    {
+        int ptr = offset;
+        int remaining = length;
+        while ( remaining > 0 )
+        {
+            final int len = Math.min( remaining, buffer.length - bufferPtr );
+            System.arraycopy( data, ptr, buffer, bufferPtr, len );
+            bufferPtr += len;
+            ptr += len;
+            remaining -= len;
+            if ( bufferPtr == buffer.length ) {
+                flush();
+            }
+        }
+        return length;
+    }
+
+    private void flush()
+    {
+        try
+        {
+            file.write( buffer, 0, bufferPtr );
+            dataSize += bufferPtr;
+            bufferPtr = 0;
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException( e );
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        try
+        {
+            flush();
+            // update chunk sizes
+            writeHeader();
+            file.close();
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException( e );
+        }
+    }
+}
@@ -7,6 +7,9 @@ import de.codesourcery.m68k.utils.Misc;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
 /**
  * TODO: FLAG/PC handshake not implemented
  *
@@ -240,8 +243,18 @@ Register  Name          Function
 
     public final Name name;
 
+    // number of interrupts signalled to the CPU so far, not cleared on reset
+    public long irqCount;
+
+    // marks events that are not scheduled
+    private static final long NEVER = Long.MAX_VALUE;
+
     private int timerAUnderflowCount;
-    private int cyclesUntilTick;
+
+    // number of clock cycles since reset
+    private long cycle;
+    // cycle of the next scheduled event
+    private long nextEventCycle = NEVER;
 
     private int portADDR; // bit set to 0 => INPUT pin
 
@@ -252,15 +265,22 @@ Register  Name          Function
     private int portBLine;
     private int portB;
 
-    private int timerA;
+    private int timerA; // timer value at timerASyncCycle
+    private long timerASyncCycle;
+    private long timerAUnderflowCycle = NEVER;
     private int timerALatch;
     private int ctrlA;
 
-    private int timerB;
+    private int timerB; // timer value at timerBSyncCycle
+    private long timerBSyncCycle;
+    private long timerBUnderflowCycle = NEVER;
     private int timerBLatch;
     private int ctrlB;
 
-    private boolean previousCnt;
+    // cycles at which a PB6/PB7 pulse output ends
+    private long pb6PulseEndCycle = NEVER;
+    private long pb7PulseEndCycle = NEVER;
+
     private boolean cntOut; // I/O
     private boolean cntIn; // I/O
 
@@ -282,9 +302,15 @@ Register  Name          Function
     private final IRQController irqController;
     private final Amiga amiga;
 
-    private int elapsedTodCycles;
+    private long todEventCycle = NEVER;
     private final int cyclesPerTodTick;
 
+    // gets notified about the state of the port B pins whenever they may have changed
+    private IntConsumer portBListener = value -> {};
+
+    // gets notified whenever the serial port switches between input (false) and output (true) mode
+    private Consumer<Boolean> serialModeListener = output -> {};
+
     public CIA8520(CIA8520.Name name, Amiga amiga,IRQController irqController) {
         this.name = name;
         this.irqController = irqController;
@@ -316,6 +342,34 @@ Register  Name          Function
         portBLine |= value; // set output pins accordingly
     }
 
+    /**
+     * Sets the input pins of port A that are driven by external hardware.
+     *
+     * Pins configured as output are not affected.
+     *
+     * @param mask bit mask of pins to set
+     * @param value pin values
+     */
+    public void setPortAInputs(int mask,int value) {
+        portALine = (portALine & ~mask) | (value & mask);
+    }
+
+    /**
+     * Sets the listener to be notified about the state of the port B pins
+     * whenever port B or its data direction register got written.
+     *
+     * Pins configured as input are reported as 1 (pulled up).
+     *
+     * @param listener
+     */
+    public void setPortBListener(IntConsumer listener) {
+        this.portBListener = listener;
+    }
+
+    private void notifyPortBListener() {
+        portBListener.accept( ( (portBLine & portBDDR) | ~portBDDR ) & 0xff );
+    }
+
     private int readPortA() {
         // reading bits that are configured as output (=1)
         // in the DDR will return bits from portA
@@ -385,6 +439,13 @@ Register  Name          Function
     }
 
     public void writeRegister(int regNum,int value)
+    {
+        syncTimers();
+        internalWriteRegister( regNum, value );
+        scheduleEvents();
+    }
+
+    private void internalWriteRegister(int regNum,int value)
     {
     /*
 Register  Name          Function
@@ -418,6 +479,7 @@ Register  Name          Function
                     LOG.info(  "WRITE: "+this+" - PORT_B <== "+Integer.toHexString(value)+" (%"+Integer.toBinaryString(value)+")" );
                 }
                 writePortB(value);
+                notifyPortBListener();
                 break;
             case REG_DDRA:
                 // DDR = 0 => INPUT pin
@@ -438,6 +500,7 @@ Register  Name          Function
                 portBDDR = value;
                 v = portA & portBDDR;
                 portBLine = (portBLine & ~portBDDR) | v;
+                notifyPortBListener();
                 break;
             case REG_TIMERA_LO:
                 if ( DEBUG) {
@@ -560,6 +623,7 @@ Register  Name          Function
                     } else {
                         serialPin = true;
                     }
+                    serialModeListener.accept( isSerialOutput() );
                 }
                 if ( DEBUG )
                 {
@@ -602,13 +666,13 @@ Register  Name          Function
                 case REG_DDRB:
                     return portBDDR;
                 case REG_TIMERA_LO:
-                    return timerA & 0xff;
+                    return currentTimerA() & 0xff;
                 case REG_TIMERA_HI:
-                    return (timerA & 0xff00) >> 8;
+                    return (currentTimerA() & 0xff00) >> 8;
                 case REG_TIMERB_LO:
-                    return timerB & 0xff;
+                    return currentTimerB() & 0xff;
                 case REG_TIMERB_HI:
-                    return (timerA & 0xff00) >> 8;
+                    return (currentTimerB() & 0xff00) >> 8;
                 case REG_EVENT_LO:
                     return eventCounter & 0xff;
                 case REG_EVENT_MED:
@@ -654,13 +718,13 @@ Register  Name          Function
             case REG_DDRB:
                 return portBDDR;
             case REG_TIMERA_LO:
-                return timerA & 0xff;
+                return currentTimerA() & 0xff;
             case REG_TIMERA_HI:
-                return (timerA & 0xff00) >> 8;
+                return (currentTimerA() & 0xff00) >> 8;
             case REG_TIMERB_LO:
-                return timerB & 0xff;
+                return currentTimerB() & 0xff;
             case REG_TIMERB_HI:
-                return (timerB & 0xff00) >> 8;
+                return (currentTimerB() & 0xff00) >> 8;
             case REG_EVENT_LO:
                 if ( eventCounterLatched )
                 {
@@ -818,41 +882,123 @@ counting regardless of the start bit.
         return (portBLine & 1<<7)!=0;
     }
 
-    public void tick() {
-
-        /*
-         * All Amiga models have same CIA timer clock rates,
-         * ~709KHz if PAL model and ~715KHz if NTSC model.
-         */
-        if ( cyclesUntilTick-- > 0 )
-        {
+    /**
+     * Advances this CIA by one clock cycle (E clock, 1/10 of the CPU clock).
+     *
+     * Timers counting clock cycles are not decremented on every tick, their current value
+     * gets derived from the cycle they were last synchronized at instead. Underflows, TOD
+     * increments and the end of PB6/PB7 pulses are scheduled events, so this method does
+     * nothing but increment the cycle counter until the next event is due.
+     */
+    public void tick()
+    {
+        if ( ++cycle < nextEventCycle ) {
             return;
         }
-        cyclesUntilTick = 10;
+        handleEvents();
+    }
 
-        if ( eventCounterRunning )
+    private void handleEvents()
+    {
+        if ( cycle >= todEventCycle )
         {
-            if ( elapsedTodCycles-- == 0 )
+            if ( DEBUG) {
+                LOG.info(  this+" - TOD elapsed");
+            }
+            todEventCycle = cycle + cyclesPerTodTick;
+            eventCounter++;
+            if ( eventCounter == eventCounterAlarm )
             {
-                if ( DEBUG) {
-                    LOG.info(  this+" - TOD elapsed");
-                }
-                elapsedTodCycles = cyclesPerTodTick;
-                eventCounter++;
-                if ( eventCounter == eventCounterAlarm )
-                {
-                    triggerInterrupt(ICR_ALRM);
-                    eventCounter = 0;
-                }
+                triggerInterrupt(ICR_ALRM);
+                eventCounter = 0;
             }
         }
 
-        // check CNT
-        boolean cntPulse = ! previousCnt && cntIn;
-        previousCnt = cntIn;
+        if ( cycle >= pb6PulseEndCycle ) {
+            pb6PulseEndCycle = NEVER;
+            writePB6(false);
+        }
+        if ( cycle >= pb7PulseEndCycle ) {
+            pb7PulseEndCycle = NEVER;
+            writePB7(false);
+        }
+
+        if ( cycle >= timerAUnderflowCycle )
+        {
+            timerA = 0;
+            timerASyncCycle = cycle;
+            timerAUnderflow();
+        }
+        if ( cycle >= timerBUnderflowCycle )
+        {
+            timerB = 0;
+            timerBSyncCycle = cycle;
+            timerBUnderflow();
+        }
+        scheduleEvents();
+    }
+
+    /**
+     * Brings the timer values up-to-date with the current cycle,
+     * needs to be called before changing any timer state.
+     */
+    private void syncTimers()
+    {
+        timerA = currentTimerA();
+        timerASyncCycle = cycle;
+        timerB = currentTimerB();
+        timerBSyncCycle = cycle;
+    }
 
+    private int currentTimerA()
+    {
+        if ( isTimerACountingClock() ) {
+            return (timerA - (int) (cycle - timerASyncCycle)) & 0xffff;
+        }
+        return timerA;
+    }
+
+    private int currentTimerB()
+    {
+        if ( isTimerBCountingClock() ) {
+            return (timerB - (int) (cycle - timerBSyncCycle)) & 0xffff;
+        }
+        return timerB;
+    }
+
+    private boolean isTimerACountingClock() {
+        return isTimerARunning() && (ctrlA & CTRL_INMODE0) == 0;
+    }
+
+    private boolean isTimerBCountingClock() {
+        return isTimerBRunning() && (ctrlB & (CTRL_INMODE0|CTRL_INMODE1)) == INMODE_PHI2;
+    }
+
+    /**
+     * Re-calculates the cycles of all pending events,
+     * needs to be called after changing any timer or TOD state.
+     */
+    private void scheduleEvents()
+    {
+        // a timer value of zero wraps around to $ffff
+        timerAUnderflowCycle = isTimerACountingClock() ? timerASyncCycle + (timerA == 0 ? 0x10000 : timerA) : NEVER;
+        timerBUnderflowCycle = isTimerBCountingClock() ? timerBSyncCycle + (timerB == 0 ? 0x10000 : timerB) : NEVER;
+        if ( ! eventCounterRunning ) {
+            todEventCycle = NEVER;
+        } else if ( todEventCycle == NEVER ) {
+            todEventCycle = cycle + cyclesPerTodTick;
+        }
+        nextEventCycle = Math.min( Math.min( timerAUnderflowCycle, timerBUnderflowCycle ),
+                Math.min( todEventCycle, Math.min( pb6PulseEndCycle, pb7PulseEndCycle ) ) );
+    }
+
+    /**
+     * Handles a positive transition on the CNT line.
+     */
+    private void cntPulse()
+    {
         // serial input
-        if ( isSerialInput() && cntPulse )
+        if ( isSerialInput() )
         {
             // MSB is transmitted first
             serialShiftReg <<= 1;
@@ -867,141 +1013,114 @@ counting regardless of the start bit.
             }
         }
 
-        boolean timerATimeout=false;
-        if ( isTimerARunning() )
+        if ( isTimerARunning() && (ctrlA & CTRL_INMODE0) != 0 )
         {
-            if ( (ctrlA & CTRL_INMODE0 ) == 0) {
-                timerA--;
+            timerA = (timerA - 1) & 0xffff;
+            if ( timerA == 0 ) {
+                timerAUnderflow();
             }
-            else
-            {
-                if ( cntPulse )
-                {
-                    timerA--;
-                    cntPulse = false;
-                }
+        }
+        if ( isTimerBRunning() && (ctrlB & (CTRL_INMODE0|CTRL_INMODE1)) == INMODE_CNT )
+        {
+            timerB = (timerB - 1) & 0xffff;
+            if ( timerB == 0 ) {
+                timerBUnderflow();
             }
-            if ( timerA == 0 )
+        }
+    }
+
+    private void timerAUnderflow()
+    {
+        triggerInterrupt(ICR_TA);
+
+        // serial: shift-out bits at tickerA/2 rate
+        if ( isSerialOutput() && (++timerAUnderflowCount & 1) != 0 && isTimerAContinous() )
+        {
+            boolean hasData = shiftRegisterBits > 0;
+            if ( ! hasData && serialDataAvailable)
             {
-                triggerInterrupt(ICR_TA);
+                serialShiftReg = serialDataReg;
+                shiftRegisterBits = 8;
+                serialDataAvailable = false;
+                triggerInterrupt(ICR_SP);
+                hasData = true;
+            }
 
-                // serial: shift-out bits at tickerA/2 rate
-                if ( isSerialOutput() && (++timerAUnderflowCount & 1) != 0 && isTimerAContinous() )
+            if ( hasData )
+            {
+                cntOut = ! cntOut;
+                if ( cntOut )
                 {
-                    boolean hasData = shiftRegisterBits > 0;
-                    if ( ! hasData && serialDataAvailable)
+                    // data becomes available on the rising edge of CNT
+                    // and stays available until the next rising edge
+                    serialPin = (serialShiftReg & 0b1000_0000) != 0;
+                    serialShiftReg <<= 1;
+                    shiftRegisterBits--;
+                    if (shiftRegisterBits == 0)
                     {
-                        serialShiftReg = serialDataReg;
-                        shiftRegisterBits = 8;
-                        serialDataAvailable = false;
                         triggerInterrupt(ICR_SP);
-                        hasData = true;
-                    }
-
-                    if ( hasData )
-                    {
-                        cntOut = ! cntOut;
-                        LOG.info( "CNT: "+cntOut );
-                        if ( cntOut )
-                        {
-                            // data becomes available on the rising edge of CNT
-                            // and stays available until the next rising edge
-                            serialPin = (serialShiftReg & 0b1000_0000) != 0;
-                            LOG.info( "BIT OUT: "+serialPin );
-                            serialShiftReg <<= 1;
-                            shiftRegisterBits--;
-                            if (shiftRegisterBits == 0)
-                            {
-                                LOG.info( "Shift register empty." );
-                                triggerInterrupt(ICR_SP);
-                            }
-                        }
                     }
                 }
-
-                if ( ( ctrlA & CTRL_PBON ) != 0 )
-                {
-                    if ( (ctrlA & CTRL_OUTMODE) == 0 ) {
-                        // PULSE
-                        writePB6(true );
-                    } else {
-                        // toggle
-                        writePB6(! readPB6() );
-                    }
-                }
-                timerATimeout=true;
-                loadTimerA();
-                if ( isTimerAOneShot() ) {
-                    // stop timer
-                    ctrlA &= ~CTRL_START;
-                }
             }
-            else if ( ( ctrlA & CTRL_PBON ) != 0 ) {
-                // output to PB6
+        }
 
-                if ( (ctrlA & CTRL_OUTMODE) == 0 )
-                {
-                    // PULSE
-                    writePB6(false);
-                }
+        if ( ( ctrlA & CTRL_PBON ) != 0 )
+        {
+            if ( (ctrlA & CTRL_OUTMODE) == 0 ) {
+                // PULSE, lasts one cycle
+                writePB6(true );
+                pb6PulseEndCycle = cycle + 1;
+            } else {
+                // toggle
+                writePB6(! readPB6() );
             }
         }
+        loadTimerA();
+        if ( isTimerAOneShot() ) {
+            // stop timer
+            ctrlA &= ~CTRL_START;
+        }
 
-        if ( isTimerBRunning() )
+        // timer B counts timer A timeouts (INMODE_TA) or timer A timeouts while CNT is HI (INMODE_CNT_TA)
+        final int inMode = ctrlB & (CTRL_INMODE0|CTRL_INMODE1);
+        final boolean countTimeout = inMode == INMODE_TA || ( inMode == INMODE_CNT_TA && cntIn );
+        if ( countTimeout && isTimerBRunning() )
         {
-            switch( (ctrlB & (CTRL_INMODE0|CTRL_INMODE1)) >> 5 )
-            {
-                case 0b00:
-                    // clk cycles
-                    timerB--;
-                    break;
-                case 0b01:
-                    // cnt pulses
-                    if ( cntPulse ) {
-                        timerB--;
-                    }
-                    break;
-                case 0b10:
-                    // timer A timeouts
-                    if ( timerATimeout ) {
-                        timerB--;
-                    }
-                    break;
-                case 0b11:
-                    // timer A timeouts when CNT is HI
-                    if ( timerATimeout && cntIn) {
-                        timerB--;
-                    }
-                    break;
-                default:
-                    throw new RuntimeException("Unreachable code reached");
+            timerB = (timerB - 1) & 0xffff;
+            if ( timerB == 0 ) {
+                timerBUnderflow();
             }
+        }
+    }
 
-            if ( timerB == 0 )
-            {
-                triggerInterrupt(ICR_TB);
-                if ( ( ctrlB & CTRL_PBON ) != 0 ) {
-                    if ( (ctrlB & CTRL_OUTMODE) == 0 ) {
-                        // PULSE
-                        writePB7(true );
-                    } else {
-                        // toggle
-                        writePB7(! readPB7() );
-                    }
-                }
-                loadTimerB();
-                if ( isTimerBOneShot() ) {
-                    ctrlB &= ~CTRL_START; // stop timer
-                }
-            } else if ( ( ctrlB & CTRL_PBON ) != 0 ) {
-                // output to PB7
-                if ( (ctrlB & CTRL_OUTMODE) == 0 )
-                {
-                    // pulse
-                    writePB7(false);
-                }
+    private void timerBUnderflow()
+    {
+        triggerInterrupt(ICR_TB);
+        if ( ( ctrlB & CTRL_PBON ) != 0 ) {
+            if ( (ctrlB & CTRL_OUTMODE) == 0 ) {
+                // PULSE, lasts one cycle
+                writePB7(true );
+                pb7PulseEndCycle = cycle + 1;
+            } else {
+                // toggle
+                writePB7(! readPB7() );
             }
         }
+        loadTimerB();
+        if ( isTimerBOneShot() ) {
+            ctrlB &= ~CTRL_START; // stop timer
+        }
+    }
+
+    /**
+     * Returns whether this CIA currently asserts its interrupt line
+     * (IR bit set, cleared by reading ICR).
+     *
+     * @return
+     */
+    public boolean isIRQAsserted()
+    {
+        return (triggeredInterrupts & ICR_IR) != 0;
     }
 
     private void triggerInterrupt(int maskBit)
@@ -1018,6 +1137,7 @@ counting regardless of the start bit.
                 LOG.info( this + " - Triggered external IRQ" );
             }
             triggeredInterrupts |= (maskBit|ICR_SETCLR);
+            irqCount++;
             irqController.externalInterrupt(this);
         } else {
             triggeredInterrupts |= maskBit;
@@ -1031,7 +1151,6 @@ counting regardless of the start bit.
         portADDR = portBDDR = 0;
         timerA = timerALatch = 0;
         timerB = timerBLatch = 0;
-        previousCnt = false;
         cntIn = cntOut = false;
         serialPin = true;
         serialDataAvailable = false;
@@ -1040,10 +1159,14 @@ counting regardless of the start bit.
         serialDataReg = 0;
         triggeredInterrupts = 0;
         irqMaskRegister = 0;
-        elapsedTodCycles = cyclesPerTodTick;
         LOG.debug("reset(): "+this+" event counter increments every "+cyclesPerTodTick+" ticks");
         eventCounter = 0;
-        cyclesUntilTick = 10;
+        cycle = 0;
+        timerASyncCycle = timerBSyncCycle = 0;
+        timerAUnderflowCycle = timerBUnderflowCycle = NEVER;
+        pb6PulseEndCycle = pb7PulseEndCycle = NEVER;
+        todEventCycle = NEVER;
+        nextEventCycle = NEVER;
         eventCounterAlarmLatch = 0;
         eventCounterAlarm = 0;
         eventCounterRunning = false;
@@ -1098,6 +1221,36 @@ counting regardless of the start bit.
         serialPin = value;
     }
 
+    /**
+     * Sets the listener to be notified whenever the serial port switches
+     * between input and output mode.
+     *
+     * @param listener invoked with <code>true</code> when the serial port switched to output mode
+     */
+    public void setSerialModeListener(Consumer<Boolean> listener)
+    {
+        this.serialModeListener = listener;
+    }
+
+    /**
+     * Receives a whole byte through the serial port at once, without
+     * clocking in individual bits via {@link #setSerialPin(boolean)} and {@link #setCntIn(boolean)}.
+     *
+     * @param value
+     * @return <code>false</code> if the byte got ignored because the serial port is in output mode
+     */
+    public boolean receiveSerialByte(int value)
+    {
+        if ( ! isSerialInput() ) {
+            return false;
+        }
+        serialDataReg = value & 0xff;
+        serialShiftReg = 0;
+        shiftRegisterBits = 0;
+        triggerInterrupt(ICR_SP);
+        return true;
+    }
+
     public boolean readSerialPin()
     {
         return serialPin;
@@ -1107,8 +1260,16 @@ counting regardless of the start bit.
         return cntOut;
     }
 
-    public void setCntIn(boolean value) {
+    public void setCntIn(boolean value)
+    {
+        final boolean pulse = ! cntIn && value;
         this.cntIn = value;
+        if ( pulse )
+        {
+            syncTimers();
+            cntPulse();
+            scheduleEvents();
+        }
     }
 
     // 50 Hz = 0,02s
@@ -107,135 +107,144 @@ Priority     Priority     Description                  Name
 
     public enum IRQSource
     {
-        EXTERN( 1 << 13 ),
-        DISK_SYNC( 1 << 12 ),
-        SERIAL_RCV_BUFFER_FULL( 1 << 11 ),
-        AUDIO_CHANNEL3_FINISHED( 1 << 10 ),
-        AUDIO_CHANNEL2_FINISHED( 1 << 9 ),
-        AUDIO_CHANNEL1_FINISHED( 1 << 8 ),
-        AUDIO_CHANNEL0_FINISHED( 1 << 7 ),
-        BLITTER_FINISHED( 1 << 6 ),
-        VBLANK( 1 << 5 ),
-        COPPER( 1 << 4 ),
-        PORTS( 1 << 3 ),
-        SOFTWARE( 1 << 2 ),
-        DISK_BLOCK_FINISHED( 1 << 1 ),
-        SERIAL_TX_BUFFER_EMPTY( 1 << 0 );
+        EXTERN( 1 << 13 , 6 ),
+        DISK_SYNC( 1 << 12 , 5 ),
+        SERIAL_RCV_BUFFER_FULL( 1 << 11 , 5 ),
+        AUDIO_CHANNEL3_FINISHED( 1 << 10 , 4 ),
+        AUDIO_CHANNEL2_FINISHED( 1 << 9 , 4 ),
+        AUDIO_CHANNEL1_FINISHED( 1 << 8 , 4 ),
+        AUDIO_CHANNEL0_FINISHED( 1 << 7 , 4 ),
+        BLITTER_FINISHED( 1 << 6 , 3 ),
+        VBLANK( 1 << 5 , 3 ),
+        COPPER( 1 << 4 , 3 ),
+        PORTS( 1 << 3 , 2 ),
+        SOFTWARE( 1 << 2 , 1 ),
+        DISK_BLOCK_FINISHED( 1 << 1 , 1 ),
+        SERIAL_TX_BUFFER_EMPTY( 1 << 0 , 1 );
 
         public final int bitMask;
+        // bits that need to be set in INTENA for this IRQ to reach the CPU
+        public final int enabledMask;
+        public final int priority;
 
-        private IRQSource(int bitMask)
+        private IRQSource(int bitMask,int priority)
         {
             this.bitMask = bitMask;
+            this.enabledMask = INTEN | bitMask;
+            this.priority = priority;
+        }
+    }
+
+    // master interrupt enable
+    private static final int INTEN = 1 << 14;
+
+    private static final int SOURCE_BITS = 0x3fff;
+
+    /*
+     * Highest interrupt level for each combination of requested and enabled IRQ sources,
+     * indexed by INTREQ & INTENA & 0x3fff.
+     */
+    private static final byte[] LEVELS = new byte[ SOURCE_BITS + 1 ];
+
+    /*
+     * Bit mask of all interrupt levels (1 << level) that have at least one
+     * requested and enabled IRQ source, indexed by INTREQ & INTENA & 0x3fff.
+     */
+    private static final byte[] LEVEL_MASKS = new byte[ SOURCE_BITS + 1 ];
+
+    static
+    {
+        for ( int bits = 0 ; bits <= SOURCE_BITS ; bits++ )
+        {
+            int level = 0;
+            int mask = 0;
+            for ( IRQSource src : IRQSource.values() )
+            {
+                if ( (bits & src.bitMask) != 0 )
+                {
+                    mask |= 1 << src.priority;
+                    if ( src.priority > level ) {
+                        level = src.priority;
+                    }
+                }
+            }
+            LEVELS[ bits ] = (byte) level;
+            LEVEL_MASKS[ bits ] = (byte) mask;
         }
     }
 
     public int irqRequests;
     public int irqEnabled;
 
+    // highest interrupt level with a requested and enabled IRQ source (0 = none)
+    private int level;
+
+    /*
+     * Interrupt levels (1 << level) signalled to the CPU but not processed yet.
+     *
+     * The CPU latches interrupts, so a level stays in here until the CPU starts processing
+     * it or all of its IRQ sources got acknowledged (cleared in INTREQ) or disabled. Levels that
+     * still have pending IRQ sources after the CPU took them get signalled again on the next
+     * INTREQ/INTENA change, just like the (level-sensitive) IPL lines would keep
+     * the interrupt asserted.
+     */
+    private int signalledLevels;
+
+    // CIAs, their interrupt lines are level-sensitive
+    private CIA8520 ciaa;
+    private CIA8520 ciab;
+
     public IRQController(CPU cpu)
     {
         this.cpu = cpu;
+        cpu.setInterruptAcknowledgeListener( this::interruptAcknowledged );
+    }
+
+    /**
+     * Invoked when the CPU starts processing an interrupt.
+     *
+     * @param level
+     */
+    public void interruptAcknowledged(int level)
+    {
+        signalledLevels &= ~(1 << level);
+    }
+
+    public void setCIAA(CIA8520 ciaa)
+    {
+        this.ciaa = ciaa;
+    }
+
+    public void setCIAB(CIA8520 ciab)
+    {
+        this.ciab = ciab;
     }
 
     public void reset()
     {
         irqRequests = 0;
         irqEnabled = 0;
+        level = 0;
+        signalledLevels = 0;
     }
 
     public void triggerIRQ(IRQSource source)
     {
-        int enabledMask;
-        int priority;
-        switch ( source )
-        {
-            case EXTERN:
-                enabledMask = 0b0110000000000000;
-                priority = 6;
-                irqRequests |= 1 << 13;
-                break;
-            case DISK_SYNC:
-                enabledMask = 0b0101000000000000;
-                priority = 5;
-                irqRequests |= 1 << 12;
-                break;
-            case SERIAL_RCV_BUFFER_FULL:
-                enabledMask = 0b0100100000000000;
-                priority = 5;
-                irqRequests |= 1 << 11;
-                break;
-            case AUDIO_CHANNEL3_FINISHED:
-                enabledMask = 0b0100010000000000;
-                priority = 4;
-                irqRequests |= 1 << 10;
-                break;
-            case AUDIO_CHANNEL2_FINISHED:
-                enabledMask = 0b0100001000000000;
-                priority = 4;
-                irqRequests |= 1 << 9;
-                break;
-            case AUDIO_CHANNEL1_FINISHED:
-                enabledMask = 0b0100000100000000;
-                priority = 4;
-                irqRequests |= 1 << 8;
-                break;
-            case AUDIO_CHANNEL0_FINISHED:
-                enabledMask = 0b0100000010000000;
-                priority = 4;
-                irqRequests |= 1 << 7;
-                break;
-            case BLITTER_FINISHED:
-                enabledMask = 0b0100000001000000;
-                priority = 3;
-                irqRequests |= 1 << 6;
-                break;
-            case VBLANK:
-                enabledMask = 0b0100000000100000;
-                priority = 3;
-                irqRequests |= 1 << 5;
-                break;
-            case COPPER:
-                enabledMask = 0b0100000000010000;
-                priority = 3;
-                irqRequests |= 1 << 4;
-                break;
-            case PORTS:
-                enabledMask = 0b0100000000001000;
-                priority = 2;
-                irqRequests |= 1 << 3;
-                break;
-            case SOFTWARE:
-                enabledMask = 0b0100000000000100;
-                priority = 1;
-                irqRequests |= 1 << 2;
-                break;
-            case DISK_BLOCK_FINISHED:
-                enabledMask = 0b0100000000000010;
-                priority = 1;
-                irqRequests |= 1 << 1;
-                break;
-            case SERIAL_TX_BUFFER_EMPTY:
-                enabledMask = 0b0100000000000001;
-                priority = 1;
-                irqRequests |= 1 << 0;
-                break;
-            default:
-                throw new IllegalArgumentException( "Unhandled IRQ source " + source );
-        }
-        if ( (irqEnabled & enabledMask) == enabledMask )
+        if ( DEBUG )
         {
-            if ( DEBUG )
-            {
-                LOG.info( "IRQ controller: Triggering " + source );
-            }
-            cpu.externalInterrupt( priority );
-        } else {
-            if ( DEBUG )
-            {
-                LOG.info( "IRQ controller: Not enabled: " + source );
-            }
+            LOG.info( "IRQ controller: Request " + source );
         }
+        irqRequests |= source.bitMask;
+        updateLevel();
+    }
+
+    /**
+     * Returns the interrupt level currently signalled to the CPU.
+     *
+     * @return level (1...6) or 0 if no enabled IRQ is pending
+     */
+    public int getLevel() {
+        return level;
     }
 
     public void externalInterrupt(CIA8520 cia)
@@ -246,10 +255,10 @@ Priority     Priority     Description                  Name
         switch ( cia.name )
         {
             case CIAA:
-                cpu.externalInterrupt( 2 );
+                triggerIRQ( IRQSource.PORTS );
                 break;
             case CIAB:
-                cpu.externalInterrupt( 6 );
+                triggerIRQ( IRQSource.EXTERN );
                 break;
             default:
                 throw new RuntimeException( "Unreachable code reached" );
@@ -263,11 +272,23 @@ Priority     Priority     Description                  Name
         {
             // clear bits
             irqRequests &= ~(value & ~(1 << 15));
+            updateLevel();
+
+            // CIA interrupt lines are level-sensitive, a CIA that still asserts its
+            // line (because another CIA interrupt happened after the handler read ICR)
+            // immediately sets the request bit again
+            if ( (value & IRQSource.PORTS.bitMask) != 0 && ciaa != null && ciaa.isIRQAsserted() ) {
+                triggerIRQ( IRQSource.PORTS );
+            }
+            if ( (value & IRQSource.EXTERN.bitMask) != 0 && ciab != null && ciab.isIRQAsserted() ) {
+                triggerIRQ( IRQSource.EXTERN );
+            }
         }
         else
         {
             // set bits
             irqRequests |= (value & ~(1 << 15));
+            updateLevel();
         }
     }
 
@@ -288,6 +309,44 @@ Priority     Priority     Description                  Name
         {
             LOG.info( "IRQs: " + this );
         }
+        updateLevel();
+    }
+
+    /**
+     * Re-calculates the interrupt level and notifies the CPU
+     * if it is non-zero and has not been signalled yet.
+     */
+    private void updateLevel()
+    {
+        final int active = (irqEnabled & INTEN) == 0 ? 0 : irqRequests & irqEnabled & SOURCE_BITS;
+        // levels without any pending source have been acknowledged,
+        // the CPU must not process them any more
+        final int acknowledged = signalledLevels & ~LEVEL_MASKS[ active ];
+        if ( acknowledged != 0 )
+        {
+            signalledLevels &= ~acknowledged;
+            withdrawFromCPU( acknowledged );
+        }
+        level = LEVELS[ active ];
+        if ( level != 0 && (signalledLevels & 1 << level) == 0 )
+        {
+            if ( DEBUG )
+            {
+                LOG.info( "IRQ controller: Signalling level " + level );
+            }
+            signalledLevels |= 1 << level;
+            signalCPU( level );
+        }
+    }
+
+    protected void signalCPU(int level)
+    {
+        cpu.externalInterrupt( level );
+    }
+
+    protected void withdrawFromCPU(int levelMask)
+    {
+        cpu.clearPendingExternalInterrupts( levelMask );
     }
 
     public String toString()
@@ -0,0 +1,388 @@
+package de.codesourcery.m68k.emulator.chips;
+
+import de.codesourcery.m68k.emulator.Amiga;
+import de.codesourcery.m68k.emulator.audio.AudioRingBuffer;
+import de.codesourcery.m68k.emulator.audio.IAudioSink;
+import de.codesourcery.m68k.emulator.memory.DMAController;
+import de.codesourcery.m68k.emulator.memory.Memory;
+import de.codesourcery.m68k.utils.Misc;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Paula audio emulation.
+ *
+ * Four 8-bit channels that either play sample data fetched from chip RAM by DMA
+ * or data written directly to AUDxDAT by the CPU. Each channel outputs one sample byte
+ * every AUDxPER color clocks, scaled by AUDxVOL. Channels 0 and 3 go to the left, channels
+ * 1 and 2 to the right output.
+ *
+ * Channels are not stepped on every tick, instead all four channels get advanced and mixed
+ * in batches every 64µs (the length of a PAL scanline, but not aligned with the beam). Mixed samples are stored in a preallocated {@link AudioRingBuffer}
+ * that gets drained into the current {@link IAudioSink} (if any).
+ *
+ * Audio/disk control (ADKCON) is stored here as well, modulation is not supported.
+ *
+ * @author tobias.gierke@code-sourcery.de
+ */
+public class Paula
+{
+    private static final Logger LOG = LogManager.getLogger( Paula.class.getName() );
+
+    /*
+Register Address  Write   Paula         Function
+AUDxLCH   + 0A0   W   A( E )  Audio channel x location (high 3 bits, 5 if ECS)
+AUDxLCL   + 0A2   W   A       Audio channel x location (low 15 bits)
+AUDxLEN     0A4   W   P       Audio channel x length (in words)
+AUDxPER     0A6   W   P( E )  Audio channel x period (in color clocks)
+AUDxVOL     0A8   W   P       Audio channel x volume (0-64)
+AUDxDAT   & 0AA   W   P       Audio channel x data (two 8-bit samples, high byte first)
+
+Channel x registers start at $0A0 + x*$10.
+     */
+    public static final int AUDXLCH = 0x00;
+    public static final int AUDXLCL = 0x02;
+    public static final int AUDXLEN = 0x04;
+    public static final int AUDXPER = 0x06;
+    public static final int AUDXVOL = 0x08;
+    public static final int AUDXDAT = 0x0a;
+
+    /**
+     * Output sample rate in Hz.
+     */
+    public static final int SAMPLE_RATE = 44100;
+
+    // Paula can't fetch DMA data faster than this
+    private static final int MIN_PERIOD = 124;
+
+    // channels are advanced every 64µs (227 color clocks, one color clock is two CPU cycles)
+    private static final int COLOR_CLOCKS_PER_BATCH = 227;
+    private static final int TICKS_PER_BATCH = COLOR_CLOCKS_PER_BATCH*2;
+
+    // buffered audio data gets handed to the sink in chunks of this many bytes (~20ms)
+    private static final int FLUSH_THRESHOLD = (SAMPLE_RATE / 50) * IAudioSink.BYTES_PER_FRAME;
+
+    // fixed-point color clocks use 16 fractional bits
+    private static final int FRACTION_BITS = 16;
+
+    private static final IRQController.IRQSource[] IRQ_SOURCES = {
+            IRQController.IRQSource.AUDIO_CHANNEL0_FINISHED,
+            IRQController.IRQSource.AUDIO_CHANNEL1_FINISHED,
+            IRQController.IRQSource.AUDIO_CHANNEL2_FINISHED,
+            IRQController.IRQSource.AUDIO_CHANNEL3_FINISHED
+    };
+
+    /**
+     * An audio channel.
+     */
+    public final class AudioChannel
+    {
+        public static final int STATE_IDLE = 0;
+        public static final int STATE_DMA = 1;
+        public static final int STATE_MANUAL = 2;
+
+        public final int index;
+        private final IRQController.IRQSource irqSource;
+
+        // registers
+        public int location;
+        public int length;
+        public int period;
+        public int volume;
+        public int data; // AUDxDAT
+
+        public int state;
+
+        // DMA state
+        public int dmaPointer;
+        public int wordsRemaining;
+
+        // manual mode: AUDxDAT got written and not played yet
+        private boolean dataPending;
+
+        // word currently being played and how many of its bytes are still to be played
+        private int currentWord;
+        private int bytesRemaining;
+
+        // fixed-point color clocks until the next sample byte,
+        // long because periods >= 0x8000 overflow an int
+        private long countdown;
+
+        // current output value, sample * volume
+        public int output;
+
+        public AudioChannel(int index)
+        {
+            this.index = index;
+            this.irqSource = IRQ_SOURCES[ index ];
+        }
+
+        public void reset()
+        {
+            location = length = period = volume = data = 0;
+            state = STATE_IDLE;
+            dmaPointer = wordsRemaining = 0;
+            dataPending = false;
+            currentWord = bytesRemaining = 0;
+            countdown = 0;
+            output = 0;
+        }
+
+        private void writeRegister(int register,int value)
+        {
+            switch( register )
+            {
+                case AUDXLCH: location = ((value & 0x1f) << 16) | (location & 0xffff); break;
+                case AUDXLCL: location = (location & 0x1f0000) | (value & 0xfffe); break;
+                case AUDXLEN: length = value & 0xffff; break;
+                case AUDXPER: period = value & 0xffff; break;
+                case AUDXVOL: volume = Math.min( value & 0x7f, 64 ); break;
+                case AUDXDAT:
+                    data = value & 0xffff;
+                    if ( state != STATE_DMA )
+                    {
+                        dataPending = true;
+                        if ( state == STATE_IDLE )
+                        {
+                            state = STATE_MANUAL;
+                            bytesRemaining = 0;
+                            countdown = 0;
+                        }
+                    }
+                    break;
+                default:
+                    LOG.warn( "Unhandled write to audio register "+Misc.hex( register )+" of channel "+index );
+            }
+        }
+
+        private void startDMA()
+        {
+            state = STATE_DMA;
+            // forces a reload of the DMA pointer and length on the first fetch
+            wordsRemaining = 0;
+            bytesRemaining = 0;
+            countdown = 0;
+        }
+
+        private void stopDMA()
+        {
+            state = STATE_IDLE;
+            output = 0;
+        }
+
+        /**
+         * Advances this channel.
+         *
+         * @param clocks fixed-point number of color clocks
+         */
+        private void advance(int clocks)
+        {
+            if ( state == STATE_IDLE ) {
+                return;
+            }
+            countdown -= clocks;
+            while ( countdown <= 0 )
+            {
+                if ( bytesRemaining == 0 && ! fetchWord() ) {
+                    return;
+                }
+                final int sample = bytesRemaining == 2 ? (byte) (currentWord >> 8) : (byte) currentWord;
+                bytesRemaining--;
+                output = sample * volume;
+                countdown += (long) Math.max( period, MIN_PERIOD ) << FRACTION_BITS;
+            }
+        }
+
+        private boolean fetchWord()
+        {
+            if ( state == STATE_DMA )
+            {
+                if ( wordsRemaining == 0 )
+                {
+                    // start of block, location and length get copied
+                    // to the backup registers and the CPU may write new values
+                    dmaPointer = location;
+                    wordsRemaining = length == 0 ? 0x10000 : length;
+                    irqController.triggerIRQ( irqSource );
+                }
+                currentWord = memory.readWordNoCheckNoSideEffects( dmaPointer & CHIP_RAM_MASK ) & 0xffff;
+                dmaPointer += 2;
+                wordsRemaining--;
+            }
+            else
+            {
+                if ( ! dataPending )
+                {
+                    state = STATE_IDLE;
+                    output = 0;
+                    return false;
+                }
+                dataPending = false;
+                currentWord = data;
+                // CPU may write the next word now
+                irqController.triggerIRQ( irqSource );
+            }
+            bytesRemaining = 2;
+            return true;
+        }
+
+        @Override
+        public String toString()
+        {
+            final String[] states = {"idle","DMA","manual"};
+            return "AUD"+index+"[ "+states[state]+", location: "+Misc.hex( location )+", length: "+length+
+                    ", period: "+period+", volume: "+volume+" ]";
+        }
+    }
+
+    private static final int CHIP_RAM_MASK = 0x1ffffe;
+
+    private final DMAController dmaController;
+    private final IRQController irqController;
+    private Memory memory;
+
+    public final AudioChannel[] channels = new AudioChannel[4];
+
+    public int adkcon;
+
+    private final AudioRingBuffer buffer = new AudioRingBuffer( 128*1024 );
+    private IAudioSink sink;
+
+    private int ticksUntilBatch = TICKS_PER_BATCH;
+
+    // fixed-point color clocks per output sample
+    private final int clocksPerSample;
+    // fixed-point color clocks elapsed but not yet output
+    private int pendingClocks;
+
+    public Paula(Amiga amiga, DMAController dmaController, IRQController irqController)
+    {
+        this.dmaController = dmaController;
+        this.irqController = irqController;
+        // color clock runs at half the CPU clock
+        final double colorClockHz = amiga.getCPUClock() * 1000000.0 / 2;
+        this.clocksPerSample = (int) Math.round( colorClockHz * (1 << FRACTION_BITS) / SAMPLE_RATE );
+        for ( int i = 0 ; i < channels.length ; i++ ) {
+            channels[i] = new AudioChannel( i );
+        }
+        reset();
+    }
+
+    public void setMemory(Memory memory)
+    {
+        this.memory = memory;
+    }
+
+    /**
+     * Sets the sink to receive audio output, closing the previous one (if any).
+     *
+     * Must only be invoked by the emulator thread.
+     *
+     * @param sink sink or <code>null</code> to discard audio output
+     */
+    public void setAudioSink(IAudioSink sink)
+    {
+        if ( this.sink != null ) {
+            buffer.drainTo( this.sink );
+            this.sink.close();
+        }
+        buffer.clear();
+        this.sink = sink;
+    }
+
+    public void reset()
+    {
+        for ( AudioChannel channel : channels ) {
+            channel.reset();
+        }
+        adkcon = 0;
+        ticksUntilBatch = TICKS_PER_BATCH;
+        pendingClocks = 0;
+    }
+
+    /**
+     * Write a word to an audio register.
+     *
+     * @param offset register offset relative to $DFF000 ($0A0...$0DE)
+     * @param value
+     */
+    public void writeWord(int offset,int value)
+    {
+        final int channel = ((offset & 0x1ff) - 0x0a0) >>> 4;
+        if ( channel < 0 || channel > 3 ) {
+            throw new IllegalArgumentException( "Not an audio register: "+Misc.hex( offset ) );
+        }
+        channels[ channel ].writeRegister( offset & 0x0f, value );
+    }
+
+    public void writeADKCON(int value)
+    {
+        if ( (value & 1<<15) != 0 ) {
+            adkcon |= (value & 0x7fff);
+        } else {
+            adkcon &= ~value;
+        }
+    }
+
+    public int readADKCONR() {
+        return adkcon;
+    }
+
+    // ticked every 140ns
+    public void tick()
+    {
+        if ( --ticksUntilBatch > 0 ) {
+            return;
+        }
+        ticksUntilBatch = TICKS_PER_BATCH;
+        runBatch();
+    }
+
+    private void runBatch()
+    {
+        // pick up DMACON changes
+        final int dmaFlags = dmaController.isDMAEnabled() ? dmaController.flags : 0;
+        for ( int i = 0 ; i < 4 ; i++ )
+        {
+            final AudioChannel channel = channels[i];
+            final boolean enabled = (dmaFlags & 1<<i) != 0;
+            if ( enabled && channel.state != AudioChannel.STATE_DMA ) {
+                channel.startDMA();
+            } else if ( ! enabled && channel.state == AudioChannel.STATE_DMA ) {
+                channel.stopDMA();
+            }
+        }
+
+        pendingClocks += COLOR_CLOCKS_PER_BATCH << FRACTION_BITS;
+        final AudioChannel ch0 = channels[0];
+        final AudioChannel ch1 = channels[1];
+        final AudioChannel ch2 = channels[2];
+        final AudioChannel ch3 = channels[3];
+        final boolean mix = sink != null;
+        while ( pendingClocks >= clocksPerSample )
+        {
+            pendingClocks -= clocksPerSample;
+            ch0.advance( clocksPerSample );
+            ch1.advance( clocksPerSample );
+            ch2.advance( clocksPerSample );
+            ch3.advance( clocksPerSample );
+            if ( mix ) {
+                // each channel outputs -8192...8128, scale sum of two channels to 16 bits
+                buffer.write( (ch0.output + ch3.output) << 1, (ch1.output + ch2.output) << 1 );
+            }
+        }
+        if ( mix && buffer.size() >= FLUSH_THRESHOLD ) {
+            buffer.drainTo( sink );
+        }
+    }
+
+    /**
+     * Returns the number of sample frames that got lost because
+     * the audio sink did not keep up.
+     *
+     * @return
+     */
+    public long getDroppedFrames() {
+        return buffer.droppedFrames;
+    }
+}
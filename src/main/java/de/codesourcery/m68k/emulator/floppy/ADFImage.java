@@ -0,0 +1,100 @@
+package de.codesourcery.m68k.emulator.floppy;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A read-only double-density floppy disk image in ADF format (raw sector data, 80 cylinders with
+ * 2 tracks each, 11 sectors of 512 bytes per track).
+ *
+ * The image file gets memory-mapped so sector data is only read from disk when actually accessed.
+ *
+ * @author tobias.gierke@code-sourcery.de
+ */
+public class ADFImage implements AutoCloseable
+{
+    private static final Logger LOG = LogManager.getLogger( ADFImage.class.getName() );
+
+    public static final int CYLINDERS = 80;
+    public static final int HEADS = 2;
+    public static final int TRACKS = CYLINDERS * HEADS;
+    public static final int SECTORS_PER_TRACK = 11;
+    public static final int BYTES_PER_SECTOR = 512;
+    public static final int BYTES_PER_TRACK = SECTORS_PER_TRACK * BYTES_PER_SECTOR;
+    public static final int SIZE = TRACKS * BYTES_PER_TRACK; // 901120 bytes
+
+    public final File file;
+    private final FileChannel channel;
+    private final MappedByteBuffer data;
+
+    private ADFImage(File file,FileChannel channel,MappedByteBuffer data)
+    {
+        this.file = file;
+        this.channel = channel;
+        this.data = data;
+    }
+
+    /**
+     * Opens an ADF image.
+     *
+     * @param file
+     * @return
+     * @throws IOException if the file could not be opened or does not have the size of a DD disk
+     */
+    public static ADFImage open(File file) throws IOException
+    {
+        final FileChannel channel = FileChannel.open( file.toPath(), StandardOpenOption.READ );
+        try
+        {
+            if ( channel.size() != SIZE ) {
+                throw new IOException( "ADF image "+file.getAbsolutePath()+" needs to have "+SIZE+" bytes but had "+channel.size() );
+            }
+            final MappedByteBuffer data = channel.map( FileChannel.MapMode.READ_ONLY, 0, SIZE );
+            LOG.info( "Opened ADF image "+file.getAbsolutePath() );
+            return new ADFImage( file, channel, data );
+        }
+        catch(IOException | RuntimeException e)
+        {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads a big-endian 32-bit value.
+     *
+     * @param track track number (cylinder*2 + head)
+     * @param sector
+     * @param offset byte offset within the sector
+     * @return
+     */
+    public int readLong(int track,int sector,int offset)
+    {
+        return data.getInt( track * BYTES_PER_TRACK + sector * BYTES_PER_SECTOR + offset );
+    }
+
+    @Override
+    public void close()
+    {
+        try
+        {
+            channel.close();
+        }
+        catch (IOException e)
+        {
+            LOG.warn( "Failed to close ADF image "+file.getAbsolutePath()+": "+e.getMessage() );
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return file.getName();
+    }
+}
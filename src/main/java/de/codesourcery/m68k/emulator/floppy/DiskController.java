@@ -0,0 +1,316 @@
+package de.codesourcery.m68k.emulator.floppy;
+
+import de.codesourcery.m68k.emulator.chips.CIA8520;
+import de.codesourcery.m68k.emulator.chips.IRQController;
+import de.codesourcery.m68k.emulator.chips.Paula;
+import de.codesourcery.m68k.emulator.memory.DMAController;
+import de.codesourcery.m68k.emulator.memory.Memory;
+import de.codesourcery.m68k.utils.Misc;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Paula's disk controller and the floppy drives connected to it.
+ *
+ * Disk DMA is not done word-by-word, instead all words that passed the read head
+ * get transferred to chip RAM in batches every 64µs (the length of a PAL scanline,
+ * but not aligned with the beam).
+ *
+ * When running in turbo mode, a DMA transfer completes with the next batch after
+ * it got started, no matter how many words were requested.
+ *
+ * Only reading is supported, disk DMA writes are consumed but discarded.
+ *
+ * @author tobias.gierke@code-sourcery.de
+ */
+public class DiskController
+{
+    private static final Logger LOG = LogManager.getLogger( DiskController.class.getName() );
+
+    /*
+Register Address  Write   Paula         Function
+DSKBYTR     *01A  R   P       Disk data byte and status read
+DSKPTH    + *020  W   A( E )  Disk pointer (high 3 bits, 5 bits if ECS)
+DSKPTL    + *022  W   A       Disk pointer (low 15 bits)
+DSKLEN      *024  W   P       Disk length
+DSKSYNC     ~07E  W   P       Disk sync pattern register for disk read
+     */
+    public static final int DSKBYTR = 0x01a;
+    public static final int DSKPTH = 0x020;
+    public static final int DSKPTL = 0x022;
+    public static final int DSKLEN = 0x024;
+    public static final int DSKSYNC = 0x07e;
+
+    private static final int DSKLEN_DMAEN = 1<<15;
+    private static final int DSKLEN_WRITE = 1<<14;
+    private static final int DSKLEN_LENGTH = 0x3fff;
+
+    private static final int DSKBYTR_DMAON = 1<<14;
+    private static final int DSKBYTR_DISKWRITE = 1<<13;
+    static final int DSKBYTR_WORDEQUAL = 1<<12;
+
+    private static final int ADKCON_WORDSYNC = 1<<10;
+
+    private static final int CHIP_RAM_MASK = 0x1ffffe;
+
+    // one batch takes 64µs, one MFM word takes 32µs (2µs per bit)
+    private static final int TICKS_PER_BATCH = 454;
+    private static final int WORDS_PER_BATCH = 2;
+
+    private final DMAController dmaController;
+    private final IRQController irqController;
+    private final Paula paula;
+    private final CIA8520 ciaa;
+    private Memory memory;
+
+    /**
+     * Drives DF0: to DF3:, <code>null</code> entries are not connected.
+     */
+    public final FloppyDrive[] drives = new FloppyDrive[4];
+
+    public int dskpt;
+    public int dsklen;
+    public int dsksync;
+
+    private boolean dmaActive;
+    private int wordsRemaining;
+    private boolean waitingForSync;
+    private boolean wordEqual;
+    private int lastWord;
+
+    public boolean turbo;
+
+    private int ticksUntilBatch = TICKS_PER_BATCH;
+
+    public DiskController(DMAController dmaController, IRQController irqController, Paula paula, CIA8520 ciaa)
+    {
+        this.dmaController = dmaController;
+        this.irqController = irqController;
+        this.paula = paula;
+        this.ciaa = ciaa;
+        // only the internal drive is connected
+        drives[0] = new FloppyDrive( 0 );
+        reset();
+    }
+
+    public void setMemory(Memory memory)
+    {
+        this.memory = memory;
+    }
+
+    public void reset()
+    {
+        for ( FloppyDrive drive : drives )
+        {
+            if ( drive != null ) {
+                drive.reset();
+            }
+        }
+        dskpt = dsklen = 0;
+        dsksync = MFMEncoder.SYNC;
+        dmaActive = false;
+        wordsRemaining = 0;
+        waitingForSync = false;
+        wordEqual = false;
+        lastWord = 0;
+        ticksUntilBatch = TICKS_PER_BATCH;
+        updatePortA();
+    }
+
+    /**
+     * Inserts a disk, ejecting the current one (if any).
+     *
+     * Must only be invoked by the emulator thread.
+     *
+     * @param unit
+     * @param disk
+     */
+    public void insertDisk(int unit,ADFImage disk)
+    {
+        getDrive( unit ).insertDisk( disk );
+        LOG.info( "Inserted disk "+disk+" into DF"+unit+":" );
+        updatePortA();
+    }
+
+    /**
+     * Ejects a disk.
+     *
+     * Must only be invoked by the emulator thread.
+     *
+     * @param unit
+     */
+    public void ejectDisk(int unit)
+    {
+        getDrive( unit ).ejectDisk();
+        updatePortA();
+    }
+
+    private FloppyDrive getDrive(int unit)
+    {
+        if ( unit < 0 || unit >= drives.length || drives[unit] == null ) {
+            throw new IllegalArgumentException( "Drive DF"+unit+": is not connected" );
+        }
+        return drives[unit];
+    }
+
+    /**
+     * Invoked when CIAB port B (drive control lines) changed.
+     *
+     * @param value state of the port B pins
+     */
+    public void writePortB(int value)
+    {
+        for ( FloppyDrive drive : drives )
+        {
+            if ( drive != null ) {
+                drive.writeControl( value );
+            }
+        }
+        updatePortA();
+    }
+
+    private void updatePortA()
+    {
+        // lines are open-collector, any selected drive may pull them low
+        int lines = FloppyDrive.PORTA_MASK;
+        for ( FloppyDrive drive : drives )
+        {
+            if ( drive != null ) {
+                lines &= drive.getPortAInputs();
+            }
+        }
+        ciaa.setPortAInputs( FloppyDrive.PORTA_MASK, lines );
+    }
+
+    public void writeWord(int offset,int value)
+    {
+        switch( offset & 0x1fe )
+        {
+            case DSKPTH: dskpt = ((value & 0x1f) << 16) | (dskpt & 0xffff); break;
+            case DSKPTL: dskpt = (dskpt & 0x1f0000) | (value & 0xfffe); break;
+            case DSKLEN: writeDSKLEN( value & 0xffff ); break;
+            case DSKSYNC: dsksync = value & 0xffff; break;
+            default:
+                throw new IllegalArgumentException( "Not a disk register: "+Misc.hex( offset ) );
+        }
+    }
+
+    private void writeDSKLEN(int value)
+    {
+        if ( (value & DSKLEN_DMAEN) == 0 )
+        {
+            dmaActive = false;
+        }
+        else if ( (dsklen & DSKLEN_DMAEN) != 0 )
+        {
+            // DMA only starts when DSKLEN gets written twice with DMAEN set
+            wordsRemaining = value & DSKLEN_LENGTH;
+            dmaActive = wordsRemaining > 0;
+            waitingForSync = (value & DSKLEN_WRITE) == 0 && (paula.adkcon & ADKCON_WORDSYNC) != 0;
+            if ( dmaActive && (value & DSKLEN_WRITE) != 0 ) {
+                LOG.warn( "Disk writes are not supported, discarding "+wordsRemaining+" words" );
+            }
+        }
+        dsklen = value;
+    }
+
+    public int readDSKBYTR()
+    {
+        final int result = peekDSKBYTR();
+        wordEqual = false;
+        return result;
+    }
+
+    /**
+     * Returns the current DSKBYTR value without clearing WORDEQUAL.
+     *
+     * @return
+     */
+    public int peekDSKBYTR()
+    {
+        int result = lastWord & 0xff;
+        if ( dmaActive && dmaController.isDiskDMAEnabled() ) {
+            result |= DSKBYTR_DMAON;
+        }
+        if ( (dsklen & DSKLEN_WRITE) != 0 ) {
+            result |= DSKBYTR_DISKWRITE;
+        }
+        if ( wordEqual ) {
+            result |= DSKBYTR_WORDEQUAL;
+        }
+        return result;
+    }
+
+    // ticked every 140ns
+    public void tick()
+    {
+        if ( --ticksUntilBatch > 0 ) {
+            return;
+        }
+        ticksUntilBatch = TICKS_PER_BATCH;
+
+        FloppyDrive active = null;
+        for ( FloppyDrive drive : drives )
+        {
+            if ( drive != null && drive.isSpinning() )
+            {
+                if ( drive.selected && active == null ) {
+                    active = drive;
+                } else {
+                    drive.rotate( WORDS_PER_BATCH );
+                }
+            }
+        }
+        if ( active != null )
+        {
+            final boolean dma = dmaActive && dmaController.isDiskDMAEnabled();
+            // in turbo mode, allow for one full revolution while waiting for the sync word
+            final int words = dma && turbo ? wordsRemaining + MFMEncoder.TRACK_WORDS : WORDS_PER_BATCH;
+            transfer( active, words, dma );
+        }
+    }
+
+    private void transfer(FloppyDrive drive,int words,boolean dma)
+    {
+        final boolean write = (dsklen & DSKLEN_WRITE) != 0;
+        for ( int i = 0 ; i < words ; i++ )
+        {
+            final int word = drive.readWord();
+            lastWord = word;
+            if ( word == dsksync )
+            {
+                wordEqual = true;
+                irqController.triggerIRQ( IRQController.IRQSource.DISK_SYNC );
+                if ( waitingForSync )
+                {
+                    // transfer starts with the word following the sync word
+                    waitingForSync = false;
+                    continue;
+                }
+            }
+            if ( dma && ! waitingForSync )
+            {
+                if ( ! write ) {
+                    memory.writeWord( dskpt & CHIP_RAM_MASK, word );
+                }
+                dskpt += 2;
+                if ( --wordsRemaining == 0 )
+                {
+                    dmaActive = false;
+                    irqController.triggerIRQ( IRQController.IRQSource.DISK_BLOCK_FINISHED );
+                    if ( turbo ) {
+                        return;
+                    }
+                    dma = false;
+                }
+            }
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return "Disk DMA: "+(dmaActive ? "active" : "inactive")+", pointer: "+Misc.hex( dskpt )+", remaining: "+wordsRemaining+
+                ", sync: "+Misc.hex( dsksync )+(turbo ? ", turbo" : "");
+    }
+}
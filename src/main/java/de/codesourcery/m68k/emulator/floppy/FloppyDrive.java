@@ -0,0 +1,196 @@
+package de.codesourcery.m68k.emulator.floppy;
+
+import de.codesourcery.m68k.emulator.chips.CIA8520;
+
+import java.util.Arrays;
+
+/**
+ * A 3.5" double-density floppy drive.
+ *
+ * The drive is controlled through the (active-low) CIAB port B lines and reports its
+ * state through the (active-low) CIAA port A lines. Tracks of the inserted disk get MFM-encoded
+ * when they're first read and are cached until the disk gets ejected.
+ *
+ * Disks are always reported as write-protected, writing is not supported.
+ *
+ * @author tobias.gierke@code-sourcery.de
+ */
+public class FloppyDrive
+{
+    // CIAA port A lines this drive drives
+    public static final int PORTA_MASK = CIA8520.CIA_PORTA_DSKRDY | CIA8520.CIA_PORTA_DSKTRACK0 |
+            CIA8520.CIA_PORTA_DSKPROT | CIA8520.CIA_PORTA_DSKCHANGE;
+
+    public final int unit;
+
+    private ADFImage disk;
+    private final short[][] trackCache = new short[ ADFImage.TRACKS ][];
+
+    public int cylinder;
+    public int head;
+    public boolean motorOn;
+    public boolean selected;
+
+    // DSKCHANGE latch, set when the disk got removed and
+    // cleared by a step pulse while a disk is inserted
+    private boolean diskChanged = true;
+
+    // index of the MFM word currently under the read head
+    private int rotation;
+
+    private int prevControl = 0xff;
+
+    public FloppyDrive(int unit)
+    {
+        if ( unit < 0 || unit > 3 ) {
+            throw new IllegalArgumentException( "Drive unit needs to be 0...3 but was "+unit );
+        }
+        this.unit = unit;
+    }
+
+    public void reset()
+    {
+        cylinder = 0;
+        head = 0;
+        motorOn = false;
+        selected = false;
+        rotation = 0;
+        prevControl = 0xff;
+    }
+
+    public void insertDisk(ADFImage disk)
+    {
+        ejectDisk();
+        this.disk = disk;
+    }
+
+    public void ejectDisk()
+    {
+        if ( disk != null )
+        {
+            disk.close();
+            disk = null;
+        }
+        Arrays.fill( trackCache, null );
+        diskChanged = true;
+    }
+
+    public ADFImage getDisk() {
+        return disk;
+    }
+
+    public boolean hasDisk() {
+        return disk != null;
+    }
+
+    /**
+     * Returns whether this drive currently delivers data.
+     *
+     * @return
+     */
+    public boolean isSpinning() {
+        return motorOn && disk != null;
+    }
+
+    /**
+     * Handles a change of the CIAB port B lines.
+     *
+     * @param value state of the port B pins
+     */
+    public void writeControl(int value)
+    {
+        final boolean nowSelected = (value & CIA8520.CIAB_PORB_DSKSEL0 << unit) == 0;
+        if ( nowSelected && ! selected )
+        {
+            // motor state gets latched when the drive gets selected
+            motorOn = (value & CIA8520.CIAB_PORB_DSKMOTOR) == 0;
+        }
+        selected = nowSelected;
+        if ( selected )
+        {
+            head = (value & CIA8520.CIAB_PORB_DSKSIDE) == 0 ? 1 : 0;
+            final boolean stepPulse = (prevControl & CIA8520.CIAB_PORB_DSKSTEP) != 0 &&
+                    (value & CIA8520.CIAB_PORB_DSKSTEP) == 0;
+            if ( stepPulse ) {
+                step( (value & CIA8520.CIAB_PORB_DSKDIREC) == 0 ? 1 : -1 );
+            }
+        }
+        prevControl = value;
+    }
+
+    private void step(int direction)
+    {
+        cylinder = Math.max( 0, Math.min( ADFImage.CYLINDERS - 1, cylinder + direction ) );
+        if ( disk != null ) {
+            diskChanged = false;
+        }
+    }
+
+    /**
+     * Returns the state of the CIAA port A lines driven by this drive.
+     *
+     * @return
+     */
+    public int getPortAInputs()
+    {
+        if ( ! selected ) {
+            return PORTA_MASK;
+        }
+        int result = PORTA_MASK;
+        if ( isSpinning() ) {
+            result &= ~CIA8520.CIA_PORTA_DSKRDY;
+        }
+        if ( cylinder == 0 ) {
+            result &= ~CIA8520.CIA_PORTA_DSKTRACK0;
+        }
+        if ( disk != null ) {
+            result &= ~CIA8520.CIA_PORTA_DSKPROT;
+        }
+        if ( diskChanged ) {
+            result &= ~CIA8520.CIA_PORTA_DSKCHANGE;
+        }
+        return result;
+    }
+
+    private short[] currentTrack()
+    {
+        final int track = cylinder * 2 + head;
+        short[] data = trackCache[ track ];
+        if ( data == null ) {
+            data = MFMEncoder.encodeTrack( disk, track );
+            trackCache[ track ] = data;
+        }
+        return data;
+    }
+
+    /**
+     * Returns the MFM word under the read head and advances the disk by one word.
+     *
+     * Must only be called while the drive {@link #isSpinning() is spinning}.
+     *
+     * @return
+     */
+    public int readWord()
+    {
+        final int word = currentTrack()[ rotation ] & 0xffff;
+        rotate( 1 );
+        return word;
+    }
+
+    /**
+     * Advances the disk.
+     *
+     * @param words number of MFM words passing the read head
+     */
+    public void rotate(int words)
+    {
+        rotation = (rotation + words) % MFMEncoder.TRACK_WORDS;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "DF"+unit+": [ "+(disk == null ? "no disk" : disk.toString())+", cylinder: "+cylinder+", head: "+head+
+                ", motor: "+(motorOn ? "on" : "off")+(selected ? ", selected" : "")+" ]";
+    }
+}
@@ -0,0 +1,118 @@
+package de.codesourcery.m68k.emulator.floppy;
+
+/**
+ * Encodes tracks of an {@link ADFImage} into the raw MFM words
+ * an AmigaDOS-formatted disk holds.
+ *
+ * Each of the 11 sectors is laid out like this (in 32-bit longs):
+ *
+ * <pre>
+ * 1    $AAAAAAAA (two encoded zero bytes)
+ * 1    $44894489 (sync words)
+ * 2    info long (format $FF, track, sector, sectors until gap), odd and even bits
+ * 8    sector label (all zeros), odd and even bits
+ * 2    header checksum, odd and even bits
+ * 2    data checksum, odd and even bits
+ * 256  sector data, odd bits of all longs followed by even bits of all longs
+ * </pre>
+ *
+ * The sectors are preceded by a gap of encoded zeros so that one track
+ * has as many words as pass the read head during one revolution (200ms at 2µs per bit).
+ *
+ * @author tobias.gierke@code-sourcery.de
+ */
+public final class MFMEncoder
+{
+    public static final int SYNC = 0x4489;
+
+    public static final int WORDS_PER_SECTOR = 544;
+
+    /**
+     * Number of MFM words in a track.
+     */
+    public static final int TRACK_WORDS = 6250;
+
+    private static final int GAP_WORDS = TRACK_WORDS - ADFImage.SECTORS_PER_TRACK * WORDS_PER_SECTOR;
+
+    private static final int DATA_BITS = 0x55555555;
+
+    private final short[] words = new short[ TRACK_WORDS ];
+    private int ptr;
+
+    private MFMEncoder() {
+    }
+
+    /**
+     * MFM-encodes a track.
+     *
+     * @param image
+     * @param track track number (cylinder*2 + head)
+     * @return
+     */
+    public static short[] encodeTrack(ADFImage image,int track)
+    {
+        final MFMEncoder encoder = new MFMEncoder();
+        for ( int i = 0 ; i < GAP_WORDS ; i += 2 ) {
+            encoder.writeEncoded( 0 );
+        }
+        for ( int sector = 0 ; sector < ADFImage.SECTORS_PER_TRACK ; sector++ ) {
+            encoder.writeSector( image, track, sector );
+        }
+        return encoder.words;
+    }
+
+    private void writeSector(ADFImage image,int track,int sector)
+    {
+        writeEncoded( 0 );
+        writeRaw( SYNC );
+        writeRaw( SYNC );
+
+        final int info = 0xff000000 | track << 16 | sector << 8 | (ADFImage.SECTORS_PER_TRACK - sector);
+        writeOddEven( info );
+        for ( int i = 0 ; i < 8 ; i++ ) { // sector label
+            writeEncoded( 0 );
+        }
+        writeOddEven( (info >>> 1 ^ info) & DATA_BITS );
+
+        int checksum = 0;
+        for ( int offset = 0 ; offset < ADFImage.BYTES_PER_SECTOR ; offset += 4 )
+        {
+            final int value = image.readLong( track, sector, offset );
+            checksum ^= value >>> 1 ^ value;
+        }
+        writeOddEven( checksum & DATA_BITS );
+
+        for ( int offset = 0 ; offset < ADFImage.BYTES_PER_SECTOR ; offset += 4 ) {
+            writeEncoded( image.readLong( track, sector, offset ) >>> 1 );
+        }
+        for ( int offset = 0 ; offset < ADFImage.BYTES_PER_SECTOR ; offset += 4 ) {
+            writeEncoded( image.readLong( track, sector, offset ) );
+        }
+    }
+
+    private void writeOddEven(int value)
+    {
+        writeEncoded( value >>> 1 );
+        writeEncoded( value );
+    }
+
+    /*
+     * Encodes the data bits (%0101...) of a long. A clock bit gets
+     * inserted between two consecutive zero data bits.
+     */
+    private void writeEncoded(int value)
+    {
+        final int data = value & DATA_BITS;
+        int clock = ~( data << 1 | data >>> 1 ) & ~DATA_BITS;
+        if ( ptr > 0 && (words[ptr-1] & 1) != 0 ) {
+            clock &= 0x7fffffff;
+        }
+        final int encoded = data | clock;
+        writeRaw( encoded >>> 16 );
+        writeRaw( encoded );
+    }
+
+    private void writeRaw(int word) {
+        words[ptr++] = (short) word;
+    }
+}
@@ -0,0 +1,601 @@
+package de.codesourcery.m68k.emulator.headless;
+
+import de.codesourcery.m68k.emulator.Amiga;
+import de.codesourcery.m68k.emulator.CPU;
+import de.codesourcery.m68k.emulator.Emulator;
+import de.codesourcery.m68k.emulator.floppy.ADFImage;
+import de.codesourcery.m68k.emulator.metrics.HostTimeProfiler;
+import de.codesourcery.m68k.emulator.memory.Memory;
+import de.codesourcery.m68k.utils.Misc;
+import de.codesourcery.m68k.utils.PNGWriter;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+import java.util.function.ToIntFunction;
+
+/**
+ * Runs the emulator without any UI (no AWT classes get loaded), driven by command-line arguments and/or script files.
+ *
+ * Commands get executed in the order they're given. On the command line, each command
+ * is prefixed with <code>--</code>, script files contain one command per line (without <code>--</code>),
+ * arguments may be quoted and <code>#</code> starts a comment. Numbers are decimal unless
+ * prefixed with <code>$</code> or <code>0x</code>.
+ *
+ * <pre>
+ * rom &lt;file&gt;                      Kickstart ROM to use (required, must come first)
+ * load &lt;file&gt; &lt;address&gt;           copy a raw memory image into memory
+ * disk &lt;file&gt;                     insert ADF image into DF0:
+ * turbo                           enable turbo floppy
+ * render-every &lt;n&gt;                only render every n-th frame
+ * profile [sample interval]       report where host CPU time was spent when done
+ * timeout &lt;frames&gt;                max. frames to wait in until-xxx/type/key commands (default: 3000)
+ * frames &lt;n&gt;                      run for n frames (1/50s PAL)
+ * cycles &lt;n&gt;                      run for n CPU cycles
+ * until-pc &lt;address&gt;              run until the CPU is about to execute an instruction at this address
+ * until-mem &lt;address&gt; &lt;value&gt; [b|w|l]  run until memory holds a value (checked every 64µs)
+ * type &lt;text&gt;                     type text (US layout, \n is return) and run until the keyboard is idle
+ * key &lt;raw keycode&gt;               press and release a key and run until the keyboard is idle
+ * expect-pc &lt;address&gt;             fail unless PC has this value
+ * expect-mem &lt;address&gt; &lt;value&gt; [b|w|l]  fail unless memory holds this value
+ * expect-reg &lt;d0..d7|a0..a7|pc|sr|usp|ssp&gt; &lt;value&gt;  fail unless a register has this value
+ * dump-screen &lt;file&gt;              write last rendered frame as PNG
+ * dump-memory &lt;address&gt; &lt;length&gt; &lt;file&gt;  write memory contents to a file
+ * dump-regs [file]                print CPU registers (to stdout if no file is given)
+ * script &lt;file&gt;                   execute commands from a script file
+ * </pre>
+ *
+ * Save states are not supported (yet), raw memory images may be loaded instead.
+ *
+ * @author tobias.gierke@code-sourcery.de
+ */
+public class HeadlessRunner
+{
+    public static final int EXIT_PASS = 0;
+    public static final int EXIT_FAIL = 1;
+    public static final int EXIT_USAGE = 2;
+    public static final int EXIT_ERROR = 3;
+
+    // how often conditions that are expensive to evaluate get checked (every 64µs)
+    private static final int SLOW_CHECK_INTERVAL = 454;
+
+    private static final class CheckFailedException extends Exception
+    {
+        public CheckFailedException(String message) {
+            super( message );
+        }
+    }
+
+    private static final class EmulationException extends Exception
+    {
+        public EmulationException(String message) {
+            super( message );
+        }
+
+        public EmulationException(String message,Throwable cause) {
+            super( message, cause );
+        }
+    }
+
+    // invalid command or argument, thrown only for input validated by the runner itself
+    private static final class UsageException extends Exception
+    {
+        public UsageException(String message) {
+            super( message );
+        }
+    }
+
+    private final PrintStream out;
+
+    private File romFile;
+    private Emulator emulator;
+    private int ticksPerFrame;
+    private int timeoutFrames = 3000;
+    private long totalTicks;
+
+    public HeadlessRunner(PrintStream out)
+    {
+        this.out = out;
+    }
+
+    public static void main(String[] args)
+    {
+        System.exit( new HeadlessRunner( System.out ).run( args ) );
+    }
+
+    /**
+     * Executes commands given as command-line arguments.
+     *
+     * @param args
+     * @return exit code
+     */
+    public int run(String[] args)
+    {
+        final List<List<String>> commands = new ArrayList<>();
+        for ( String arg : args )
+        {
+            if ( arg.startsWith( "--" ) )
+            {
+                commands.add( new ArrayList<>() );
+                commands.get( commands.size() - 1 ).add( arg.substring( 2 ) );
+            }
+            else if ( commands.isEmpty() )
+            {
+                return usage( "Expected a command but got '"+arg+"'" );
+            }
+            else
+            {
+                commands.get( commands.size() - 1 ).add( arg );
+            }
+        }
+        if ( commands.isEmpty() ) {
+            return usage( null );
+        }
+
+        final long start = System.currentTimeMillis();
+        try
+        {
+            executeAll( commands );
+            final long millis = Math.max( 1, System.currentTimeMillis() - start );
+            out.println( "PASS ("+(totalTicks / Math.max( 1, ticksPerFrame ))+" frames emulated in "+millis+" ms)" );
+            return EXIT_PASS;
+        }
+        catch(CheckFailedException e)
+        {
+            out.println( "FAIL: "+e.getMessage() );
+            return EXIT_FAIL;
+        }
+        catch(UsageException e)
+        {
+            return usage( e.getMessage() );
+        }
+        catch(EmulationException | IOException e)
+        {
+            out.println( "ERROR: "+e.getMessage() );
+            return EXIT_ERROR;
+        }
+        catch(RuntimeException e)
+        {
+            out.println( "ERROR: "+e );
+            return EXIT_ERROR;
+        }
+        finally
+        {
+            if ( emulator != null )
+            {
+                printProfile();
+                emulator.destroy();
+            }
+        }
+    }
+
+    private void printProfile()
+    {
+        final AtomicReference<String> report = new AtomicReference<>();
+        emulator.runOnThread( () ->
+        {
+            if ( emulator.profiler.isEnabled() ) {
+                report.set( emulator.profiler.getReport() );
+            }
+        }, true );
+        if ( report.get() != null ) {
+            out.print( "Host time per subsystem:\n"+report.get() );
+        }
+    }
+
+    private int usage(String message)
+    {
+        if ( message != null ) {
+            out.println( "ERROR: "+message );
+        }
+        out.println( "Usage: --rom <kickstart ROM> [--<command> [arguments]]..., see "+HeadlessRunner.class.getName()+" for available commands" );
+        return EXIT_USAGE;
+    }
+
+    private void executeAll(List<List<String>> commands) throws IOException, CheckFailedException, EmulationException, UsageException
+    {
+        for ( List<String> command : commands ) {
+            execute( command );
+        }
+    }
+
+    private void execute(List<String> command) throws IOException, CheckFailedException, EmulationException, UsageException
+    {
+        final String name = command.get( 0 );
+        final List<String> args = command.subList( 1, command.size() );
+        switch( name )
+        {
+            case "rom":
+                checkArgs( name, args, 1, 1 );
+                if ( emulator != null ) {
+                    throw new UsageException( "ROM needs to be set before any other command" );
+                }
+                romFile = new File( args.get( 0 ) );
+                break;
+            case "load":
+                checkArgs( name, args, 2, 2 );
+                final byte[] data = Files.readAllBytes( new File( args.get( 0 ) ).toPath() );
+                final int loadAdr = parseNumber( args.get( 1 ) );
+                runOnEmulatorThread( e -> e.memory.bulkWrite( loadAdr, data, 0, data.length ) );
+                break;
+            case "disk":
+                checkArgs( name, args, 1, 1 );
+                final ADFImage disk = ADFImage.open( new File( args.get( 0 ) ) );
+                runOnEmulatorThread( e -> e.diskController.insertDisk( 0, disk ) );
+                break;
+            case "turbo":
+                checkArgs( name, args, 0, 0 );
+                runOnEmulatorThread( e -> e.diskController.turbo = true );
+                break;
+            case "render-every":
+                checkArgs( name, args, 1, 1 );
+                emulator().setWarpMode( true, parseNumber( args.get( 0 ) ) );
+                break;
+            case "profile":
+                checkArgs( name, args, 0, 1 );
+                emulator().setHostTimeProfiling( true, args.isEmpty() ? HostTimeProfiler.DEFAULT_SAMPLE_INTERVAL : parseNumber( args.get( 0 ) ) );
+                break;
+            case "timeout":
+                checkArgs( name, args, 1, 1 );
+                timeoutFrames = parseNumber( args.get( 0 ) );
+                break;
+            case "frames":
+                checkArgs( name, args, 1, 1 );
+                run( (long) parseNumber( args.get( 0 ) ) * ticksPerFrame(), 1, () -> false );
+                break;
+            case "cycles":
+                checkArgs( name, args, 1, 1 );
+                run( parseNumber( args.get( 0 ) ), 1, () -> false );
+                break;
+            case "until-pc":
+                checkArgs( name, args, 1, 1 );
+                final int pc = parseNumber( args.get( 0 ) );
+                final CPU cpu = emulator().cpu;
+                runWithTimeout( "PC == "+Misc.hex( pc ), 1, () -> cpu.cycles == 1 && cpu.pc == pc );
+                break;
+            case "until-mem":
+                checkArgs( name, args, 2, 3 );
+                final int adr = parseNumber( args.get( 0 ) );
+                final int value = parseNumber( args.get( 1 ) );
+                final int size = parseSize( args, 2 );
+                final Memory memory = emulator().memory;
+                runWithTimeout( "memory at "+Misc.hex( adr )+" == "+Misc.hex( value ), SLOW_CHECK_INTERVAL,
+                        () -> readMemory( memory, adr, size ) == value );
+                break;
+            case "type":
+                checkArgs( name, args, 1, Integer.MAX_VALUE );
+                final String text = String.join( " ", args ).replace( "\\n", "\n" );
+                emulator().keyboard.type( text );
+                runWithTimeout( "keyboard", SLOW_CHECK_INTERVAL, () -> emulator.keyboard.isIdle() );
+                break;
+            case "key":
+                checkArgs( name, args, 1, 1 );
+                final int rawCode = parseNumber( args.get( 0 ) );
+                emulator().keyboard.keyPressed( rawCode );
+                emulator().keyboard.keyReleased( rawCode );
+                runWithTimeout( "keyboard", SLOW_CHECK_INTERVAL, () -> emulator.keyboard.isIdle() );
+                break;
+            case "expect-pc":
+                checkArgs( name, args, 1, 1 );
+                expect( "PC", parseNumber( args.get( 0 ) ), onEmulatorThread( e -> e.cpu.pc ) );
+                break;
+            case "expect-mem":
+                checkArgs( name, args, 2, 3 );
+                final int expectAdr = parseNumber( args.get( 0 ) );
+                final int expectSize = parseSize( args, 2 );
+                expect( "memory at "+Misc.hex( expectAdr ), parseNumber( args.get( 1 ) ),
+                        onEmulatorThread( e -> readMemory( e.memory, expectAdr, expectSize ) ) );
+                break;
+            case "expect-reg":
+                checkArgs( name, args, 2, 2 );
+                final String register = args.get( 0 ).toLowerCase();
+                final ToIntFunction<CPU> registerValue = register( register );
+                expect( register, parseNumber( args.get( 1 ) ), onEmulatorThread( e -> registerValue.applyAsInt( e.cpu ) ) );
+                break;
+            case "dump-screen":
+                checkArgs( name, args, 1, 1 );
+                final File screenFile = new File( args.get( 0 ) );
+                final AtomicReference<IOException> error = new AtomicReference<>();
+                runOnEmulatorThread( e ->
+                {
+                    try ( OutputStream stream = new FileOutputStream( screenFile ) ) {
+                        PNGWriter.write( e.video.getFrameBuffer(), e.video.getFrameWidth(), e.video.getFrameHeight(), stream );
+                    } catch(IOException ex) {
+                        error.set( ex );
+                    }
+                });
+                if ( error.get() != null ) {
+                    throw error.get();
+                }
+                break;
+            case "dump-memory":
+                checkArgs( name, args, 3, 3 );
+                final int dumpAdr = parseNumber( args.get( 0 ) );
+                final byte[] dump = new byte[ parseNumber( args.get( 1 ) ) ];
+                runOnEmulatorThread( e ->
+                {
+                    for ( int i = 0 ; i < dump.length ; i++ ) {
+                        dump[i] = e.memory.readByteNoSideEffects( dumpAdr + i );
+                    }
+                });
+                Files.write( new File( args.get( 2 ) ).toPath(), dump );
+                break;
+            case "dump-regs":
+                checkArgs( name, args, 0, 1 );
+                final String registers = onEmulatorThread( e -> dumpRegisters( e.cpu ) );
+                if ( args.isEmpty() ) {
+                    out.print( registers );
+                } else {
+                    Files.writeString( new File( args.get( 0 ) ).toPath(), registers );
+                }
+                break;
+            case "script":
+                checkArgs( name, args, 1, 1 );
+                final List<List<String>> commands = new ArrayList<>();
+                for ( String line : Files.readAllLines( new File( args.get( 0 ) ).toPath() ) )
+                {
+                    final List<String> tokens = tokenize( line );
+                    if ( ! tokens.isEmpty() ) {
+                        commands.add( tokens );
+                    }
+                }
+                executeAll( commands );
+                break;
+            default:
+                throw new UsageException( "Unknown command '"+name+"'" );
+        }
+    }
+
+    private static void checkArgs(String command,List<String> args,int min,int max) throws UsageException
+    {
+        if ( args.size() < min || args.size() > max ) {
+            throw new UsageException( "Wrong number of arguments for '"+command+"': "+args );
+        }
+    }
+
+    private Emulator emulator() throws IOException, UsageException
+    {
+        if ( emulator == null )
+        {
+            if ( romFile == null ) {
+                throw new UsageException( "No Kickstart ROM given" );
+            }
+            emulator = new Emulator( Amiga.AMIGA_500, Files.readAllBytes( romFile.toPath() ) );
+            emulator.speedGovernor.setWarp( true );
+            ticksPerFrame = emulator.speedGovernor.getTicksPerFrame();
+        }
+        return emulator;
+    }
+
+    private long ticksPerFrame() throws IOException, UsageException
+    {
+        emulator();
+        return ticksPerFrame;
+    }
+
+    private interface EmulatorFunction<T>
+    {
+        T apply(Emulator emulator);
+    }
+
+    private interface EmulatorAction
+    {
+        void apply(Emulator emulator);
+    }
+
+    private <T> T onEmulatorThread(EmulatorFunction<T> function) throws IOException, EmulationException, UsageException
+    {
+        final Emulator e = emulator();
+        final AtomicReference<T> result = new AtomicReference<>();
+        // the emulator only logs exceptions thrown by callbacks, pass them on to the caller instead
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        e.runOnThread( () ->
+        {
+            try {
+                result.set( function.apply( e ) );
+            } catch(Throwable t) {
+                error.set( t );
+            }
+        }, true );
+        if ( error.get() != null ) {
+            throw new EmulationException( "Emulator thread failed: "+error.get(), error.get() );
+        }
+        return result.get();
+    }
+
+    private void runOnEmulatorThread(EmulatorAction action) throws IOException, EmulationException, UsageException
+    {
+        onEmulatorThread( e ->
+        {
+            action.apply( e );
+            return null;
+        });
+    }
+
+    private void runWithTimeout(String what,int checkInterval,BooleanSupplier condition) throws IOException, CheckFailedException, EmulationException, UsageException
+    {
+        if ( ! run( (long) timeoutFrames * ticksPerFrame(), checkInterval, condition ) ) {
+            throw new CheckFailedException( "Timeout after "+timeoutFrames+" frames while waiting for "+what );
+        }
+    }
+
+    /**
+     * Runs the emulation.
+     *
+     * @param maxTicks
+     * @param checkInterval check condition every n-th tick
+     * @param condition
+     * @return <code>true</code> if the condition was met, <code>false</code> if maxTicks elapsed
+     */
+    private boolean run(long maxTicks,int checkInterval,BooleanSupplier condition) throws IOException, EmulationException, UsageException
+    {
+        final long[] ticks = {0};
+        final boolean[] conditionMet = {false};
+        final Emulator.RunResult result = emulator().runUntil( () ->
+        {
+            final long tick = ++ticks[0];
+            if ( tick % checkInterval == 0 && condition.getAsBoolean() )
+            {
+                conditionMet[0] = true;
+                return true;
+            }
+            return tick >= maxTicks;
+        });
+        totalTicks += ticks[0];
+        if ( result != Emulator.RunResult.CONDITION_MET ) {
+            throw new EmulationException( "Emulation stopped ("+result+") at PC "+Misc.hex( emulator.cpu.pcAtStartOfLastInstruction ) );
+        }
+        return conditionMet[0];
+    }
+
+    private static void expect(String what,int expected,int actual) throws CheckFailedException
+    {
+        if ( expected != actual ) {
+            throw new CheckFailedException( "Expected "+what+" to be "+Misc.hex( expected )+" but was "+Misc.hex( actual ) );
+        }
+    }
+
+    private static int parseSize(List<String> args,int index) throws UsageException
+    {
+        if ( args.size() <= index ) {
+            return 4;
+        }
+        switch( args.get( index ).toLowerCase() )
+        {
+            case "b": return 1;
+            case "w": return 2;
+            case "l": return 4;
+            default:
+                throw new UsageException( "Invalid operand size '"+args.get( index )+"', expected b,w or l" );
+        }
+    }
+
+    private static int readMemory(Memory memory,int address,int size)
+    {
+        switch( size )
+        {
+            case 1:  return memory.readByteNoSideEffects( address ) & 0xff;
+            case 2:  return memory.readWordNoSideEffects( address ) & 0xffff;
+            default: return memory.readLongNoSideEffects( address );
+        }
+    }
+
+    private static ToIntFunction<CPU> register(String name) throws UsageException
+    {
+        switch( name )
+        {
+            case "pc":  return cpu -> cpu.pc;
+            case "sr":  return cpu -> cpu.statusRegister;
+            case "usp": return cpu -> cpu.userModeStackPtr;
+            case "ssp": return cpu -> cpu.supervisorModeStackPtr;
+        }
+        if ( name.length() == 2 && name.charAt( 1 ) >= '0' && name.charAt( 1 ) <= '7' )
+        {
+            final int regNum = name.charAt( 1 ) - '0';
+            if ( name.charAt( 0 ) == 'd' ) {
+                return cpu -> cpu.dataRegisters[ regNum ];
+            }
+            if ( name.charAt( 0 ) == 'a' ) {
+                return cpu -> cpu.addressRegisters[ regNum ];
+            }
+        }
+        throw new UsageException( "Unknown register '"+name+"'" );
+    }
+
+    private static String dumpRegisters(CPU cpu)
+    {
+        final StringBuilder result = new StringBuilder();
+        for ( int i = 0 ; i < 8 ; i++ ) {
+            result.append( String.format( "D%d=%08x%s", i, cpu.dataRegisters[i], i == 7 ? "\n" : " " ) );
+        }
+        for ( int i = 0 ; i < 8 ; i++ ) {
+            result.append( String.format( "A%d=%08x%s", i, cpu.addressRegisters[i], i == 7 ? "\n" : " " ) );
+        }
+        result.append( String.format( "PC=%08x SR=%04x USP=%08x SSP=%08x\n",
+                cpu.pc, cpu.statusRegister & 0xffff, cpu.userModeStackPtr, cpu.supervisorModeStackPtr ) );
+        return result.toString();
+    }
+
+    private static int parseNumber(String value) throws UsageException
+    {
+        final String s = value.trim().toLowerCase();
+        try
+        {
+            if ( s.startsWith( "$" ) ) {
+                return (int) Long.parseLong( s.substring( 1 ), 16 );
+            }
+            if ( s.startsWith( "0x" ) ) {
+                return (int) Long.parseLong( s.substring( 2 ), 16 );
+            }
+            return (int) Long.parseLong( s );
+        }
+        catch(NumberFormatException e)
+        {
+            throw new UsageException( "Not a valid number: '"+value+"'" );
+        }
+    }
+
+    /**
+     * Splits a script line into tokens.
+     *
+     * @param line
+     * @return tokens, empty list for blank/comment lines
+     */
+    static List<String> tokenize(String line) throws UsageException
+    {
+        final List<String> result = new ArrayList<>();
+        final StringBuilder current = new StringBuilder();
+        boolean inToken = false;
+        boolean quoted = false;
+        for ( int i = 0 ; i < line.length() ; i++ )
+        {
+            final char c = line.charAt( i );
+            if ( quoted )
+            {
+                if ( c == '"' ) {
+                    quoted = false;
+                } else if ( c == '\\' && i + 1 < line.length() ) {
+                    final char next = line.charAt( ++i );
+                    current.append( next == 'n' ? '\n' : next == 't' ? '\t' : next );
+                } else {
+                    current.append( c );
+                }
+            }
+            else if ( c == '"' )
+            {
+                quoted = inToken = true;
+            }
+            else if ( c == '#' )
+            {
+                break;
+            }
+            else if ( Character.isWhitespace( c ) )
+            {
+                if ( inToken ) {
+                    result.add( current.toString() );
+                    current.setLength( 0 );
+                    inToken = false;
+                }
+            }
+            else
+            {
+                current.append( c );
+                inToken = true;
+            }
+        }
+        if ( quoted ) {
+            throw new UsageException( "Unterminated string in line: "+line );
+        }
+        if ( inToken ) {
+            result.add( current.toString() );
+        }
+        return result;
+    }
+}
@@ -2,6 +2,7 @@ package de.codesourcery.m68k.emulator.memory;
 
 import de.codesourcery.m68k.emulator.chips.IRQController;
 import de.codesourcery.m68k.emulator.exceptions.MemoryAccessException;
+import de.codesourcery.m68k.emulator.metrics.BlitEvent;
 import de.codesourcery.m68k.utils.Misc;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -10,7 +11,7 @@ public class Blitter extends MemoryPage
 {
     private static final Logger LOG = LogManager.getLogger( Blitter.class.getName() );
 
-    public static final boolean DEBUG = true;
+    public static final boolean DEBUG = false;
 
     /*
 Register	Name	description
@@ -115,10 +116,223 @@ $dff09c	INTREQ	Interrupt request bits (clear or set bits)
     public boolean blitterActive;
     public boolean blitterDone;
 
+    // number of blits started so far, not cleared on reset
+    public long blitCount;
+
+    // JFR event for the current blit, null if JFR recording is disabled
+    private BlitEvent blitEvent;
+    // host time spent executing the current blit, only tracked while blitEvent != null
+    private long blitHostNanos;
+
+    /**
+     * When enabled, a blit gets executed as a whole as soon as the blitter starts running
+     * instead of processing one word every few ticks.
+     *
+     * The CPU-visible completion (BBUSY flag, {@link #blitterDone}, BLITTER_FINISHED interrupt)
+     * still happens after the number of ticks the blit would've taken on real hardware.
+     */
+    public boolean fastMode = true;
+
+    /*
+     * Number of ticks (140ns CPU clock cycles) per memory cycle (280ns).
+     */
+    private static final int TICKS_PER_MEMORY_CYCLE = 2;
+
+    /*
+     * Number of memory cycles the blitter needs per word,
+     * indexed by the ABCD channel enable bits (BLTCON0 bits 11-8).
+     *
+     * See "Blitter speed" in the Amiga Hardware Reference Manual.
+     */
+    private static final int[] CYCLES_PER_WORD = {
+        //         ABCD
+        2, // 0b0000
+        2, // 0b0001
+        2, // 0b0010
+        3, // 0b0011
+        2, // 0b0100
+        3, // 0b0101
+        3, // 0b0110
+        4, // 0b0111
+        2, // 0b1000
+        2, // 0b1001
+        2, // 0b1010
+        3, // 0b1011
+        3, // 0b1100
+        3, // 0b1101
+        4, // 0b1110
+        4, // 0b1111
+    };
+
+    /**
+     * A blitter logic function (minterm).
+     *
+     * @author tobias.gierke@code-sourcery.de
+     */
+    @FunctionalInterface
+    public interface MintermFunction
+    {
+        /**
+         * Combine source words.
+         *
+         * @param a (shifted and masked) A source word
+         * @param b (shifted) B source word
+         * @param c C source word
+         * @return result word, only the lower 16 bits are significant
+         */
+        int apply(int a,int b,int c);
+    }
+
+    /**
+     * Generic minterm implementation, evaluates the minterm's
+     * sum of products without any branches.
+     */
+    private static final class SumOfProducts implements MintermFunction
+    {
+        // masks are either 0 or -1, depending on the minterm bit
+        private final int m0,m1,m2,m3,m4,m5,m6,m7;
+
+        public SumOfProducts(int minterm)
+        {
+            m0 = -( minterm       & 1);
+            m1 = -((minterm >> 1) & 1);
+            m2 = -((minterm >> 2) & 1);
+            m3 = -((minterm >> 3) & 1);
+            m4 = -((minterm >> 4) & 1);
+            m5 = -((minterm >> 5) & 1);
+            m6 = -((minterm >> 6) & 1);
+            m7 = -((minterm >> 7) & 1);
+        }
+
+        @Override
+        public int apply(int a, int b, int c)
+        {
+            final int na = ~a;
+            final int nb = ~b;
+            final int nc = ~c;
+            return (na & nb & nc & m0) | (na & nb & c & m1) | (na & b & nc & m2) | (na & b & c & m3) |
+                   (a & nb & nc & m4)  | (a & nb & c & m5)  | (a & b & nc & m6)  | (a & b & c & m7);
+        }
+    }
+
+    /**
+     * Logic functions for all 256 minterms, indexed by BLTCON0 bits 7-0.
+     *
+     * Commonly used minterms have dedicated implementations.
+     */
+    public static final MintermFunction[] MINTERMS = new MintermFunction[256];
+
+    public static final int MINTERM_CLEAR = 0x00;
+    public static final int MINTERM_COPY_A = 0xf0;
+    public static final int MINTERM_COOKIE_CUT = 0xca;
+
+    static
+    {
+        for ( int i = 0 ; i < 256 ; i++ ) {
+            MINTERMS[i] = new SumOfProducts( i );
+        }
+        MINTERMS[ MINTERM_CLEAR ] = (a,b,c) -> 0;
+        MINTERMS[ 0xff ] = (a,b,c) -> 0xffff;
+        MINTERMS[ MINTERM_COPY_A ] = (a,b,c) -> a;
+        MINTERMS[ 0x0f ] = (a,b,c) -> ~a;
+        MINTERMS[ 0xcc ] = (a,b,c) -> b;
+        MINTERMS[ 0x33 ] = (a,b,c) -> ~b;
+        MINTERMS[ 0xaa ] = (a,b,c) -> c;
+        MINTERMS[ 0x55 ] = (a,b,c) -> ~c;
+        MINTERMS[ MINTERM_COOKIE_CUT ] = (a,b,c) -> (a & b) | (~a & c); // cookie-cut
+        MINTERMS[ 0xea ] = (a,b,c) -> (a & b) | c;
+        MINTERMS[ 0x4a ] = (a,b,c) -> (~a & c) | (a & b & ~c); // line drawing, XOR
+        MINTERMS[ 0x0a ] = (a,b,c) -> ~a & c;
+        MINTERMS[ 0xa0 ] = (a,b,c) -> a & c;
+        MINTERMS[ 0xc0 ] = (a,b,c) -> a & b;
+        MINTERMS[ 0x88 ] = (a,b,c) -> b & c;
+        MINTERMS[ 0xfa ] = (a,b,c) -> a | c;
+        MINTERMS[ 0xfc ] = (a,b,c) -> a | b;
+        MINTERMS[ 0xee ] = (a,b,c) -> b | c;
+        MINTERMS[ 0x5a ] = (a,b,c) -> a ^ c;
+        MINTERMS[ 0x3c ] = (a,b,c) -> a ^ b;
+        MINTERMS[ 0x66 ] = (a,b,c) -> b ^ c;
+    }
+
+    // logic function selected by BLTCON0
+    private MintermFunction minterm = MINTERMS[0];
+
+    /*
+     * Area fill lookup table, indexed by (fill mode * 2 + carry in) * 256 + data byte.
+     *
+     * Fill mode 0 is inclusive fill (IFE), fill mode 1 is exclusive fill (EFE).
+     * Bits 7-0 of each entry hold the filled byte, bit 8 holds the carry out.
+     *
+     * The blitter fills from right to left (bit 0 to bit 15), every set bit
+     * toggles the fill carry. Exclusive fill outputs the carry after the toggle,
+     * inclusive fill additionally keeps the bit that toggled the carry.
+     */
+    private static final int[] FILL_TABLE = new int[ 4 * 256 ];
+
+    static
+    {
+        for ( int mode = 0 ; mode < 2 ; mode++ )
+        {
+            for ( int carryIn = 0 ; carryIn < 2 ; carryIn++ )
+            {
+                for ( int data = 0 ; data < 256 ; data++ )
+                {
+                    int carry = carryIn;
+                    int result = 0;
+                    for ( int bit = 0 ; bit < 8 ; bit++ )
+                    {
+                        final int in = (data >>> bit) & 1;
+                        final int out = mode == 0 ? (carry | in) : (carry ^ in);
+                        carry ^= in;
+                        result |= out << bit;
+                    }
+                    FILL_TABLE[ (mode * 2 + carryIn) * 256 + data ] = (carry << 8) | result;
+                }
+            }
+        }
+    }
+
+    // area fill state
+    private boolean fillEnabled;
+    private int fillTableOffset; // FILL_TABLE offset for the selected fill mode
+    private int fillCarryIn; // FCI
+    private int fillCarry;
+
+    /*
+     * Number of memory cycles the blitter needs per pixel in line mode.
+     */
+    private static final int LINE_CYCLES_PER_PIXEL = 4;
+
+    // line mode state
+    private int linePtr; // address of the word holding the current pixel (C channel)
+    private int lineDPtr; // D channel address
+    private boolean lineFirstPixel;
+    private int lineError; // Bresenham decision variable, kept in BLTAPTL
+    private boolean lineSign;
+    private int lineShift; // bit position of the current pixel in its word (ASH)
+    private int lineTextureShift; // current texture bit (BSH)
+    private boolean lineDotDrawn; // SING mode: pixel already drawn on the current row
+
+    // blitter DMA may only access chip RAM
+    private static final int CHIP_RAM_MASK = 0x1ffffe;
+
     // fields populated when the blitter gets activated
-    private int wordsToProcess;
-    private int rowsToProcess;
-    private int wordsToProcessThisRow;
+    private int width; // in words
+    private int rowsRemaining;
+    private int wordInRow; // index of the next word to process in the current row
+
+    private boolean useA;
+    private boolean useB;
+    private boolean useC;
+    private boolean useD;
+
+    // blit still needs to be executed (fast mode only)
+    private boolean blitPending;
+    // ticks until the current blit completes
+    private int cyclesRemaining;
+    // ticks until the next word gets processed (cycle-exact mode only)
+    private int cyclesPerWord;
+    private int cyclesUntilNextWord;
 
     // memory access ptrs
     public int bltaptr;
@@ -134,11 +348,10 @@ $dff09c	INTREQ	Interrupt request bits (clear or set bits)
     - The B shift value is set with bits 15 through 12 of  BLTCON1
      */
     private int shiftA;
-    private int shiftAMask; // AND mask to get all bits shifted out
-    private int shiftAOut; // bits shifted out by the previous operation (ORed)
     private int shiftB;
-    private int shiftBMask; // AND mask to get all bits shifted out
-    private int shiftBOut; // bits shifted out by the previous operation (ORed)
+    // previous A/B words, needed to shift in bits from the previous word
+    private int prevA;
+    private int prevB;
 
     /*
     The Zero flag is only valid after the blitter has completed its operation
@@ -147,6 +360,12 @@ and can be read from bit (13) DMAF_BLTNZERO of the  DMACONR  register.
     public int totalResult; // TODO: Part of DMACONR register
     private boolean ascendingMode;
 
+    // chip RAM pages last accessed by the blitter
+    private int readPageNo = -1;
+    private RegularPage readPage;
+    private int writePageNo = -1;
+    private RegularPage writePage;
+
     public Blitter(DMAController ctrl) {
         this.dmaController = ctrl;
     }
@@ -155,7 +374,7 @@ and can be read from bit (13) DMAF_BLTNZERO of the  DMACONR  register.
     public void writeWord(int offset, int value) throws MemoryAccessException
     {
         super.writeWord( offset, value );
-        if ( offset == 0x18 ) {
+        if ( offset == BLTSIZE ) {
 
         /*
 All data copy blits are performed as rectangles of words, with a given
@@ -178,80 +397,113 @@ width 1008 pixels.
    zero representing 64 words.  Blit height is in lines with a zero
    representing 1024 lines.
          */
-            // BLTSIZE
-
-            // initialize width in words and height in lines
-            final int widthmask = 0b0000_0000_0000_0000_0000_0000_0011_1111;
-            wordsToProcess = (bltsize & widthmask)+1;
-            wordsToProcessThisRow = wordsToProcess;
-            int height = ( bltsize & ~widthmask) >>> 6;
-            if ( height == 0 ) {
-                height = 1024;
-            }
-            rowsToProcess  = height;
+            final int w = bltsize & 0b11_1111;
+            final int h = (bltsize >>> 6) & 0b11_1111_1111;
+            start( w == 0 ? 64 : w, h == 0 ? 1024 : h );
+        }
+        else if ( offset == BLTSIZH )
+        {
+            // ECS: BLTSIZV needs to be written first, writing BLTSIZH starts the blitter
+            final int w = bltsizh & 0x7ff;
+            final int h = bltsizv & 0x7fff;
+            start( w == 0 ? 2048 : w, h == 0 ? 32768 : h );
+        }
+    }
 
-            // initialize memory pointers
-            bltaptr = ((bltapth<<8) & 0xff) | (bltaptl & 0xff);
-            bltbptr = ((bltbpth<<8) & 0xff) | (bltbptl & 0xff);
-            bltcptr = ((bltcpth<<8) & 0xff) | (bltcptl & 0xff);
-            bltdptr = ((bltdpth<<8) & 0xff) | (bltdptl & 0xff);
+    private void start(int widthInWords,int height)
+    {
+        width = widthInWords;
+        rowsRemaining = height;
+        wordInRow = 0;
+
+        // initialize memory pointers
+        bltaptr = ((bltapth & 0x1f) << 16) | (bltaptl & 0xfffe);
+        bltbptr = ((bltbpth & 0x1f) << 16) | (bltbptl & 0xfffe);
+        bltcptr = ((bltcpth & 0x1f) << 16) | (bltcptl & 0xfffe);
+        bltdptr = ((bltdpth & 0x1f) << 16) | (bltdptl & 0xfffe);
+
+        final int channels = (bltcon0 >>> 8) & 0b1111;
+        useA = (channels & 0b1000) != 0;
+        useB = (channels & 0b0100) != 0;
+        useC = (channels & 0b0010) != 0;
+        useD = (channels & 0b0001) != 0;
+
+        ascendingMode = (bltcon1 & 1<<1) == 0;
+        shiftA = (bltcon0>> 12) & 0b1111;
+        shiftB = (bltcon1>> 12) & 0b1111;
+        prevA = 0;
+        prevB = 0;
 
-            ascendingMode = (bltcon1 & 1<<1) == 0;
-            shiftA = (bltcon0>> 12) & 0b1111;
-            shiftB = (bltcon1>> 12) & 0b1111;
-            shiftAOut = 0;
-            shiftBOut = 0;
+        totalResult = 0;
 
-            totalResult = 0;
+        if ( isLineMode() )
+        {
+            /*
+             * Line mode: BLTSIZE height holds the number of pixels,
+             * BLTAPTL the initial Bresenham error term (4Y-2X), BLTAMOD = 4(Y-X) and BLTBMOD = 4Y.
+             * C and D point to the word holding the first pixel, BLTCMOD/BLTDMOD hold the
+             * width of the bitplane in bytes.
+             */
+            linePtr = bltcptr;
+            lineDPtr = bltdptr;
+            lineError = (short) bltaptl;
+            lineSign = (bltcon1 & 1<<6) != 0;
+            lineShift = shiftA;
+            lineTextureShift = shiftB;
+            lineDotDrawn = false;
+            lineFirstPixel = true;
+            cyclesPerWord = LINE_CYCLES_PER_PIXEL * TICKS_PER_MEMORY_CYCLE;
+            cyclesRemaining = height * cyclesPerWord;
+        }
+        else
+        {
+            // BLTCON1 bit 4 = EFE, bit 3 = IFE, bit 2 = FCI
+            fillEnabled = (bltcon1 & 0b11000) != 0;
+            fillTableOffset = (bltcon1 & 1<<4) != 0 ? 2*256 : 0;
+            fillCarryIn = (bltcon1 >>> 2) & 1;
+            fillCarry = fillCarryIn;
+            cyclesPerWord = CYCLES_PER_WORD[ channels ] * TICKS_PER_MEMORY_CYCLE;
+            cyclesRemaining = width * height * cyclesPerWord;
+        }
+        cyclesUntilNextWord = cyclesPerWord;
+        blitPending = true;
 
-            if ( ascendingMode ) {
-                if ( shiftA == 0 ) {
-                    shiftAMask = 0;
-                } else {
-                    shiftAMask = (1<<shiftA)-1;
-                }
-                if ( shiftB == 0 ) {
-                    shiftBMask = 0;
-                } else {
-                    shiftBMask = (1<<shiftB)-1;
-                }
-            } else {
-                if ( shiftA == 0 ) {
-                    shiftAMask = 0;
-                } else {
-                    shiftAMask = ((1<<shiftA)-1) << (15-shiftA);
-                }
-                if ( shiftB == 0 ) {
-                    shiftBMask = 0;
-                } else {
-                    shiftBMask = ((1<<shiftB)-1) << (15-shiftB);
-                }
-            }
+        readPageNo = writePageNo = -1;
 
-            if ( DEBUG )
-            {
-                final int widthInPixels = wordsToProcess * 16 - zeroBitsInWord(bltafwm) - zeroBitsInWord(bltalwm);
-                System.out.println("Blitter is now active, " + wordsToProcess + " words (" + widthInPixels + ") x " + rowsToProcess);
-                System.out.println("Ascending: " + ascendingMode);
-                System.out.println("-------------------------");
-                System.out.println("Mask A first word: " + Misc.binary16Bit(bltafwm));
-                System.out.println("Mask A last  word: " + Misc.binary16Bit(bltalwm));
-                System.out.println("-------------------------");
-                System.out.println("bltaptr = " + Misc.hex(bltaptr));
-                System.out.println("bltbptr = " + Misc.hex(bltbptr));
-                System.out.println("bltcptr = " + Misc.hex(bltcptr));
-                System.out.println("bltdptr = " + Misc.hex(bltdptr));
-                System.out.println("-------------------------");
-                System.out.println("Shift A: " + shiftA);
-                System.out.println("Shift B: " + shiftB);
-                System.out.println("-------------------------");
-                System.out.println("Mask A first word: " + bltafwm);
-                System.out.println("Mask A last word: " + bltalwm);
-            }
+        if ( DEBUG )
+        {
+            final int widthInPixels = width * 16 - zeroBitsInWord(bltafwm) - zeroBitsInWord(bltalwm);
+            System.out.println("Blitter is now active, " + width + " words (" + widthInPixels + ") x " + height);
+            System.out.println("Ascending: " + ascendingMode);
+            System.out.println("-------------------------");
+            System.out.println("Mask A first word: " + Misc.binary16Bit(bltafwm));
+            System.out.println("Mask A last  word: " + Misc.binary16Bit(bltalwm));
+            System.out.println("-------------------------");
+            System.out.println("bltaptr = " + Misc.hex(bltaptr));
+            System.out.println("bltbptr = " + Misc.hex(bltbptr));
+            System.out.println("bltcptr = " + Misc.hex(bltcptr));
+            System.out.println("bltdptr = " + Misc.hex(bltdptr));
+            System.out.println("-------------------------");
+            System.out.println("Shift A: " + shiftA);
+            System.out.println("Shift B: " + shiftB);
+        }
 
-            blitterDone = false;
-            blitterActive = true;
+        blitCount++;
+        final BlitEvent event = new BlitEvent();
+        if ( event.isEnabled() )
+        {
+            event.lineMode = isLineMode();
+            event.width = event.lineMode ? 0 : width;
+            event.height = height;
+            event.ticks = cyclesRemaining;
+            blitEvent = event;
+            blitHostNanos = 0;
+        } else {
+            blitEvent = null;
         }
+
+        blitterDone = false;
+        blitterActive = true;
     }
 
     private static int zeroBitsInWord(int word)
@@ -327,7 +579,7 @@ width 1008 pixels.
         switch( offset )
         {
             case 0x00: bltcon0 =sethi(bltcon0, value); break;
-            case 0x01: bltcon0 =setlo(bltcon0, value); break;
+            case 0x01: bltcon0 =setlo(bltcon0, value); minterm = MINTERMS[ bltcon0 & 0xff ]; break;
             case 0x02: bltcon1 =sethi(bltcon1, value); break;
             case 0x03: bltcon1 =setlo(bltcon1, value); break;
             case 0x04: bltafwm =sethi(bltafwm, value); break;
@@ -353,7 +605,11 @@ width 1008 pixels.
             case 0x18: bltsize =sethi(bltsize, value); break;
             case 0x19: bltsize =setlo(bltsize, value); break;
             case 0x1a: bltcon0l=sethi(bltcon0l, value); break;
-            case 0x1b: bltcon0l=setlo(bltcon0l, value); break;
+            case 0x1b: // ECS: writes minterms in BLTCON0 bits 7-0
+                bltcon0l=setlo(bltcon0l, value);
+                bltcon0 =setlo(bltcon0, value);
+                minterm = MINTERMS[ bltcon0 & 0xff ];
+                break;
             case 0x1c: bltsizv =sethi(bltsizv, value); break;
             case 0x1d: bltsizv =setlo(bltsizv, value); break;
             case 0x1e: bltsizh =sethi(bltsizh, value); break;
@@ -372,8 +628,9 @@ width 1008 pixels.
             case 0x33: bltbdat =setlo(bltbdat, value); break;
             case 0x34: bltadat =sethi(bltadat, value); break;
             case 0x35: bltadat =setlo(bltadat, value); break;
+            default:
+                LOG.info(  "BLITTER: Unhandled write to offset: "+offset  );
         }
-        LOG.info(  "BLITTER: Unhandled write to offset: "+offset  );
     }
 
     private static int setlo(int register,int value) {
@@ -385,11 +642,11 @@ width 1008 pixels.
     }
 
     private static byte lo(int register) {
-        return (byte) ((register & 0xff00) >>> 8);
+        return (byte) register;
     }
 
     private static byte hi(int register) {
-        return (byte) register;
+        return (byte) ((register & 0xff00) >>> 8);
     }
 
     private boolean isLineMode() {
@@ -404,295 +661,575 @@ width 1008 pixels.
     {
         if ( isBlitterActive() )
         {
-            if ( isAreaMode() )
+            if ( fastMode )
             {
-                tickAreaMode();
+                if ( blitPending )
+                {
+                    blitPending = false;
+                    final long start = blitEvent != null ? System.nanoTime() : 0;
+                    if ( isAreaMode() ) {
+                        blitArea();
+                    }
+                    else {
+                        blitLine();
+                    }
+                    if ( blitEvent != null ) {
+                        blitHostNanos += System.nanoTime() - start;
+                    }
+                }
+                if ( --cyclesRemaining <= 0 ) {
+                    finishBlit();
+                }
+                return;
             }
-            else
-            {
-                tickLineMode();
+
+            if ( --cyclesUntilNextWord > 0 ) {
+                return;
+            }
+            cyclesUntilNextWord = cyclesPerWord;
+            final long start = blitEvent != null ? System.nanoTime() : 0;
+            if ( isAreaMode() ) {
+                processWord();
+            } else {
+                linePixel();
+            }
+            if ( blitEvent != null ) {
+                blitHostNanos += System.nanoTime() - start;
+            }
+            if ( rowsRemaining == 0 ) {
+                finishBlit();
             }
         }
     }
 
+    /**
+     * Returns whether the next {@link #tick()} is going to perform
+     * a whole blit at once (fast mode).
+     *
+     * @return
+     */
+    boolean isBlitPending() {
+        return fastMode && blitPending && isBlitterActive();
+    }
+
     public boolean isBlitterActive() {
         return blitterActive & dmaController.isBlitterDMAEnabled();
     }
 
-    private void tickAreaMode()
+    private void finishBlit()
     {
-        final int con = bltcon0;
-
-        int valueA;
-        int valueB;
-        int valueC;
-        final boolean outputEnabled;
+        blitterDone = true;
+        blitterActive = false;
 
-        final boolean endOfLine = --wordsToProcessThisRow == 0;
-        if ( endOfLine && --rowsToProcess == 0 )
+        if ( blitEvent != null )
         {
-            blitterDone = true;
-            blitterActive = false;
-            if ( DEBUG )
+            if ( blitHostNanos >= BlitEvent.THRESHOLD_NANOS && blitEvent.shouldCommit() )
             {
-                System.out.println("Blitter DONE.");
+                blitEvent.hostTime = blitHostNanos;
+                blitEvent.commit();
             }
-            irqController.triggerIRQ( IRQController.IRQSource.BLITTER_FINISHED );
+            blitEvent = null;
         }
 
-        final int factor = ascendingMode ? 1 : -1;
-        switch( (con>>8) & 0b1111 )
+        if ( isLineMode() )
         {
-            //     ABCD
-            case 0b0000:
-                valueA = bltadat;
-                valueB = bltbdat;
-                valueC = bltcdat;
-                outputEnabled = false;
-                break;
-            case 0b0010:
-                valueA = bltadat;
-                valueB = bltbdat;
-                valueC = memory.readWord(bltcptr); if ( ascendingMode ) { bltcptr+=2; } else { bltcptr-=2; }
-                if ( endOfLine )
-                {
-                    if ( ascendingMode )
-                    {
-                        bltcptr += factor*bltcmod;
-                    }
-                }
-                outputEnabled = false;
-                break;
-            case 0b0100:
-                valueA = bltadat;
-                valueB = memory.readWord(bltbptr); if ( ascendingMode ) { bltbptr+=2; } else { bltbptr-=2; }
-                valueC = bltcdat;
-                if ( endOfLine )
-                {
-                    bltbptr += factor*bltbmod;
-                }
-                outputEnabled = false;
-                break;
-            case 0b1000:
-                valueA = memory.readWord(bltaptr); if ( ascendingMode ) { bltaptr+=2; } else { bltaptr-=2; }
-                valueB = bltbdat;
-                valueC = bltcdat;
-                if ( endOfLine )
-                {
-                    bltaptr += factor*bltamod;
+            bltaptr = (bltaptr & 0xffff0000) | (lineError & 0xffff);
+            bltcptr = linePtr;
+            bltdptr = lineDPtr;
+            bltcon0 = (bltcon0 & 0x0fff) | (lineShift << 12);
+            bltcon1 = (bltcon1 & 0x0fbf) | (lineTextureShift << 12) | (lineSign ? 1<<6 : 0);
+        }
+
+        // pointer registers hold the addresses following the blit
+        bltapth = bltaptr >>> 16;
+        bltaptl = bltaptr & 0xffff;
+        bltbpth = bltbptr >>> 16;
+        bltbptl = bltbptr & 0xffff;
+        bltcpth = bltcptr >>> 16;
+        bltcptl = bltcptr & 0xffff;
+        bltdpth = bltdptr >>> 16;
+        bltdptl = bltdptr & 0xffff;
+
+        if ( DEBUG )
+        {
+            System.out.println("Blitter DONE.");
+        }
+        irqController.triggerIRQ( IRQController.IRQSource.BLITTER_FINISHED );
+    }
+
+    /**
+     * Executes a whole area mode blit in one go.
+     */
+    private void blitArea()
+    {
+        if ( fillEnabled )
+        {
+            while ( rowsRemaining > 0 ) {
+                processWord();
+            }
+            return;
+        }
+        switch( bltcon0 & 0xff )
+        {
+            case MINTERM_CLEAR:
+                blitClear();
+                return;
+            case MINTERM_COPY_A:
+                blitCopyA();
+                return;
+            case MINTERM_COOKIE_CUT:
+                blitCookieCut();
+                return;
+            default:
+                while ( rowsRemaining > 0 ) {
+                    processWord();
                 }
-                outputEnabled = false;
-                break;
-            case 0b1010:
-                valueA = memory.readWord(bltaptr); if ( ascendingMode ) { bltaptr+=2; } else { bltaptr-=2; }
-                valueB = bltbdat;
-                valueC = memory.readWord(bltcptr); if ( ascendingMode ) { bltcptr+=2; } else { bltcptr-=2; }
-                if ( endOfLine )
-                {
-                    bltaptr += factor*bltamod;
-                    bltcptr += factor*bltcmod;
+        }
+    }
+
+    /*
+     * Bulk loops for common minterms.
+     *
+     * These loops need to leave the blitter in exactly the same state as processWord() would,
+     * sources not needed to calculate the result only get their pointers and data
+     * registers updated.
+     */
+
+    // D = 0
+    private void blitClear()
+    {
+        final int step = ascendingMode ? 2 : -2;
+        final int rows = rowsRemaining;
+        if ( useD )
+        {
+            final int modD = ascendingMode ? modulo( bltdmod ) : -modulo( bltdmod );
+            int ptrD = bltdptr;
+            for ( int y = rows ; y > 0 ; y--, ptrD += modD ) {
+                for ( int x = width ; x > 0 ; x--, ptrD += step ) {
+                    writeChipWord( ptrD, 0 );
                 }
-                outputEnabled = false;
-                break;
-            case 0b1100:
-                valueA = memory.readWord(bltaptr); if ( ascendingMode ) { bltaptr+=2; } else { bltaptr-=2; }
-                valueB = memory.readWord(bltbptr); if ( ascendingMode ) { bltbptr+=2; } else { bltbptr-=2; }
-                valueC = bltcdat;
-                if ( endOfLine )
-                {
-                    bltaptr += factor*bltamod;
-                    bltbptr += factor*bltbmod;
+            }
+            bltdptr = ptrD;
+        }
+        skipA( rows );
+        skipB( rows );
+        skipC( rows );
+        rowsRemaining = 0;
+    }
+
+    // D = A
+    private void blitCopyA()
+    {
+        final int step = ascendingMode ? 2 : -2;
+        final int rows = rowsRemaining;
+        final int modA = ascendingMode ? modulo( bltamod ) : -modulo( bltamod );
+        final int modD = ascendingMode ? modulo( bltdmod ) : -modulo( bltdmod );
+        final int lastX = width-1;
+        final int shift = ascendingMode ? shiftA : 16 - shiftA;
+        final int firstWordMask = bltafwm;
+        final int lastWordMask = bltalwm;
+        final boolean readA = useA;
+        final boolean writeD = useD;
+
+        int ptrA = bltaptr;
+        int ptrD = bltdptr;
+        int valueA = bltadat;
+        int prev = prevA;
+        int result = 0;
+        for ( int y = rows ; y > 0 ; y-- )
+        {
+            for ( int x = 0 ; x <= lastX ; x++ )
+            {
+                if ( readA ) {
+                    valueA = readChipWord( ptrA );
+                    ptrA += step;
                 }
-                outputEnabled = false;
-                break;
-            case 0b0110:
-                valueA = bltadat;
-                valueB = memory.readWord(bltbptr); if ( ascendingMode ) { bltbptr+=2; } else { bltbptr-=2; }
-                valueC = memory.readWord(bltcptr); if ( ascendingMode ) { bltcptr+=2; } else { bltcptr-=2; }
-                if ( endOfLine )
-                {
-                    bltbptr += factor*bltbmod;
-                    bltcptr += factor*bltcmod;
+                int masked = valueA;
+                if ( x == 0 ) {
+                    masked &= firstWordMask;
                 }
-                outputEnabled = false;
-                break;
-            // D enabled
-            case 0b0001:
-                valueA = bltadat;
-                valueB = bltbdat;
-                valueC = bltcdat;
-                outputEnabled = false;
-                break;
-            case 0b0011:
-                valueA = bltadat;
-                valueB = bltbdat;
-                valueC = memory.readWord(bltcptr); if ( ascendingMode ) { bltcptr+=2; } else { bltcptr-=2; }
-                if ( endOfLine )
-                {
-                    bltcptr += factor*bltcmod;
+                if ( x == lastX ) {
+                    masked &= lastWordMask;
                 }
-                outputEnabled = false;
-                break;
-            case 0b0101:
-                valueA = bltadat;
-                valueB = memory.readWord(bltbptr); if ( ascendingMode ) { bltbptr+=2; } else { bltbptr-=2; }
-                valueC = bltcdat;
-                if ( endOfLine )
-                {
-                    bltbptr += factor*bltbmod;
+                final int valueD = ascendingMode ?
+                    (((prev << 16) | masked) >>> shift) & 0xffff :
+                    (((masked << 16) | prev) >>> shift) & 0xffff;
+                prev = masked;
+                result |= valueD;
+                if ( writeD ) {
+                    writeChipWord( ptrD, valueD );
+                    ptrD += step;
                 }
-                outputEnabled = false;
-                break;
-            case 0b1001:
-                valueA = memory.readWord(bltaptr); if ( ascendingMode ) { bltaptr+=2; } else { bltaptr-=2; }
-                valueB = bltbdat;
-                valueC = bltcdat;
-                if ( endOfLine )
-                {
-                    bltaptr += factor*bltamod;
+            }
+            if ( readA ) {
+                ptrA += modA;
+            }
+            if ( writeD ) {
+                ptrD += modD;
+            }
+        }
+        bltaptr = ptrA;
+        bltdptr = ptrD;
+        bltadat = valueA;
+        prevA = prev;
+        totalResult |= result;
+        skipB( rows );
+        skipC( rows );
+        rowsRemaining = 0;
+    }
+
+    // D = AB + (not A)C
+    private void blitCookieCut()
+    {
+        final int step = ascendingMode ? 2 : -2;
+        final int rows = rowsRemaining;
+        final int modA = ascendingMode ? modulo( bltamod ) : -modulo( bltamod );
+        final int modB = ascendingMode ? modulo( bltbmod ) : -modulo( bltbmod );
+        final int modC = ascendingMode ? modulo( bltcmod ) : -modulo( bltcmod );
+        final int modD = ascendingMode ? modulo( bltdmod ) : -modulo( bltdmod );
+        final int lastX = width-1;
+        final int shiftAmountA = ascendingMode ? shiftA : 16 - shiftA;
+        final int shiftAmountB = ascendingMode ? shiftB : 16 - shiftB;
+
+        int ptrA = bltaptr;
+        int ptrB = bltbptr;
+        int ptrC = bltcptr;
+        int ptrD = bltdptr;
+        int valueA = bltadat;
+        int valueB = bltbdat;
+        int valueC = bltcdat;
+        int oldA = prevA;
+        int oldB = prevB;
+        int result = 0;
+        for ( int y = rows ; y > 0 ; y-- )
+        {
+            for ( int x = 0 ; x <= lastX ; x++ )
+            {
+                if ( useA ) { valueA = readChipWord( ptrA ); ptrA += step; }
+                if ( useB ) { valueB = readChipWord( ptrB ); ptrB += step; }
+                if ( useC ) { valueC = readChipWord( ptrC ); ptrC += step; }
+
+                int masked = valueA;
+                if ( x == 0 ) {
+                    masked &= bltafwm;
                 }
-                outputEnabled = false;
-                break;
-            case 0b1011:
-                valueA = memory.readWord(bltaptr); if ( ascendingMode ) { bltaptr+=2; } else { bltaptr-=2; }
-                valueB = bltbdat;
-                valueC = memory.readWord(bltcptr); if ( ascendingMode ) { bltcptr+=2; } else { bltcptr-=2; }
-                if ( endOfLine )
-                {
-                    bltaptr += factor*bltamod;
-                    bltcptr += factor*bltcmod;
+                if ( x == lastX ) {
+                    masked &= bltalwm;
                 }
-                outputEnabled = false;
-                break;
-            case 0b1101:
-                valueA = memory.readWord(bltaptr); if ( ascendingMode ) { bltaptr+=2; } else { bltaptr-=2; }
-                valueB = memory.readWord(bltbptr); if ( ascendingMode ) { bltbptr+=2; } else { bltbptr-=2; }
-                valueC = bltcdat;
-                if ( endOfLine )
-                {
-                    bltaptr += factor*bltamod;
-                    bltbptr += factor*bltbmod;
+                final int a;
+                final int b;
+                if ( ascendingMode ) {
+                    a = (((oldA << 16) | masked) >>> shiftAmountA) & 0xffff;
+                    b = (((oldB << 16) | valueB) >>> shiftAmountB) & 0xffff;
+                } else {
+                    a = (((masked << 16) | oldA) >>> shiftAmountA) & 0xffff;
+                    b = (((valueB << 16) | oldB) >>> shiftAmountB) & 0xffff;
                 }
-                outputEnabled = false;
-                break;
-            case 0b0111:
-                valueA = bltadat;
-                valueB = memory.readWord(bltbptr); if ( ascendingMode ) { bltbptr+=2; } else { bltbptr-=2; }
-                valueC = memory.readWord(bltcptr); if ( ascendingMode ) { bltcptr+=2; } else { bltcptr-=2; }
-                if ( endOfLine )
-                {
-                    bltbptr += factor*bltbmod;
-                    bltcptr += factor*bltcmod;
+                oldA = masked;
+                oldB = valueB;
+
+                final int valueD = ((a & b) | (~a & valueC)) & 0xffff;
+                result |= valueD;
+                if ( useD ) {
+                    writeChipWord( ptrD, valueD );
+                    ptrD += step;
                 }
-                outputEnabled = false;
-                break;
-            default:
-                throw new RuntimeException("Unreachable code reached");
+            }
+            if ( useA ) { ptrA += modA; }
+            if ( useB ) { ptrB += modB; }
+            if ( useC ) { ptrC += modC; }
+            if ( useD ) { ptrD += modD; }
+        }
+        bltaptr = ptrA;
+        bltbptr = ptrB;
+        bltcptr = ptrC;
+        bltdptr = ptrD;
+        bltadat = valueA;
+        bltbdat = valueB;
+        bltcdat = valueC;
+        prevA = oldA;
+        prevB = oldB;
+        totalResult |= result;
+        rowsRemaining = 0;
+    }
+
+    private void skipA(int rows)
+    {
+        if ( useA ) {
+            bltaptr = skipRows( bltaptr, bltamod, rows );
+            bltadat = readChipWord( lastWordAddress( bltaptr, bltamod ) );
+        }
+    }
+
+    private void skipB(int rows)
+    {
+        if ( useB ) {
+            bltbptr = skipRows( bltbptr, bltbmod, rows );
+            bltbdat = readChipWord( lastWordAddress( bltbptr, bltbmod ) );
+        }
+    }
+
+    private void skipC(int rows)
+    {
+        if ( useC ) {
+            bltcptr = skipRows( bltcptr, bltcmod, rows );
+            bltcdat = readChipWord( lastWordAddress( bltcptr, bltcmod ) );
         }
+    }
+
+    /**
+     * Advances a channel pointer over a number of rows without reading any data.
+     */
+    private int skipRows(int ptr,int moduloRegister,int rows)
+    {
+        final int rowBytes = width*2 + modulo( moduloRegister );
+        return ascendingMode ? ptr + rows * rowBytes : ptr - rows * rowBytes;
+    }
+
+    /**
+     * Returns the address of the last word a channel read, given its pointer after the blit.
+     */
+    private int lastWordAddress(int ptr,int moduloRegister)
+    {
+        return ascendingMode ? ptr - modulo( moduloRegister ) - 2 : ptr + modulo( moduloRegister ) + 2;
+    }
+
+    /**
+     * Processes a single word of an area mode blit.
+     */
+    private void processWord()
+    {
+        final boolean lastWord = wordInRow == width-1;
+        final int step = ascendingMode ? 2 : -2;
+
+        // fetch
+        if ( useA ) { bltadat = readChipWord( bltaptr ); bltaptr += step; }
+        if ( useB ) { bltbdat = readChipWord( bltbptr ); bltbptr += step; }
+        if ( useC ) { bltcdat = readChipWord( bltcptr ); bltcptr += step; }
 
         // apply masks
+        int valueA = bltadat;
+        if ( wordInRow == 0 ) {
+            valueA &= bltafwm;
+        }
+        if ( lastWord ) {
+            valueA &= bltalwm;
+        }
+
+        // apply shifts, ascending => shift right, descending => shift left
+        final int valueB = bltbdat;
+        final int shiftedA;
+        final int shiftedB;
         if ( ascendingMode )
         {
-            if ( wordsToProcessThisRow == 0 ) {
-                // last word mask
-                valueA &= bltalwm;
-            }
-            if ( wordsToProcess == wordsToProcessThisRow )
-            {
-                // first word mask
-                valueA &= bltafwm;
-            }
+            shiftedA = (((prevA << 16) | valueA) >>> shiftA) & 0xffff;
+            shiftedB = (((prevB << 16) | valueB) >>> shiftB) & 0xffff;
         }
         else
         {
-            if ( wordsToProcessThisRow == 0 ) {
-                // first word mask
-                valueA &= bltalwm;
-            }
-            if ( wordsToProcess == wordsToProcessThisRow )
-            {
-                // last word mask
-                valueA &= bltafwm;
+            shiftedA = (((valueA << 16) | prevA) >>> (16-shiftA)) & 0xffff;
+            shiftedB = (((valueB << 16) | prevB) >>> (16-shiftB)) & 0xffff;
+        }
+        prevA = valueA;
+        prevB = valueB;
+
+        int valueD = minterm.apply( shiftedA, shiftedB, bltcdat ) & 0xffff;
+        if ( fillEnabled )
+        {
+            if ( wordInRow == 0 ) {
+                fillCarry = fillCarryIn;
             }
+            valueD = fill( valueD );
         }
+        totalResult |= valueD;
 
-        // apply shifts
-        if ( ascendingMode )
+        // Write result
+        if ( useD ) {
+            writeChipWord( bltdptr, valueD );
+            bltdptr += step;
+        }
+
+        if ( lastWord )
         {
-            // ascending => shift right
-            if ( shiftA != 0 ) {
-                int shiftedOut = (valueA & shiftAMask)<<(15-shiftA);
-                valueA >>>= shiftA;
-                valueA |= shiftAOut;
-                shiftAOut = shiftedOut;
+            wordInRow = 0;
+            rowsRemaining--;
+            // apply modulos
+            if ( ascendingMode )
+            {
+                if ( useA ) { bltaptr += modulo( bltamod ); }
+                if ( useB ) { bltbptr += modulo( bltbmod ); }
+                if ( useC ) { bltcptr += modulo( bltcmod ); }
+                if ( useD ) { bltdptr += modulo( bltdmod ); }
             }
-            if ( shiftB != 0 ) {
-                int shiftedOut = (valueB & shiftBMask)<<(15-shiftB);
-                valueB >>>= shiftB;
-                valueB |= shiftBOut;
-                shiftBOut = shiftedOut;
+            else
+            {
+                if ( useA ) { bltaptr -= modulo( bltamod ); }
+                if ( useB ) { bltbptr -= modulo( bltbmod ); }
+                if ( useC ) { bltcptr -= modulo( bltcmod ); }
+                if ( useD ) { bltdptr -= modulo( bltdmod ); }
             }
         } else {
-            // descending => shift left
-            if ( shiftA != 0 ) {
-                int shiftedOut = (valueA & shiftAMask)>>>(15-shiftA);
-                valueA <<= shiftA;
-                valueA |= shiftAOut;
-                shiftAOut = shiftedOut;
+            wordInRow++;
+        }
+    }
+
+    /**
+     * Applies area fill to a word, starting with the low byte.
+     */
+    private int fill(int value)
+    {
+        final int lo = FILL_TABLE[ fillTableOffset + fillCarry * 256 + (value & 0xff) ];
+        final int hi = FILL_TABLE[ fillTableOffset + (lo >>> 8) * 256 + (value >>> 8) ];
+        fillCarry = hi >>> 8;
+        return ((hi & 0xff) << 8) | (lo & 0xff);
+    }
+
+    // modulos are signed and always even
+    private static int modulo(int register)
+    {
+        return ((short) register) & ~1;
+    }
+
+    private int readChipWord(int address)
+    {
+        address &= CHIP_RAM_MASK;
+        final int pageNo = memory.mmu.getPageNo( address );
+        if ( pageNo != readPageNo )
+        {
+            final MemoryPage page = memory.mmu.getPage( pageNo );
+            if ( ! ( page instanceof RegularPage ) ) {
+                return memory.readWord( address ) & 0xffff;
             }
-            if ( shiftB != 0 ) {
-                int shiftedOut = (bltbdat & shiftBMask)>>>(15-shiftB);
-                valueB <<= shiftB;
-                valueB |= shiftBOut;
-                shiftBOut = shiftedOut;
+            readPageNo = pageNo;
+            readPage = (RegularPage) page;
+        }
+        final byte[] data = readPage.data;
+        final int offset = memory.mmu.getOffsetInPage( address );
+        return ((data[offset] << 8) & 0xff00) | (data[offset+1] & 0xff);
+    }
+
+    private void writeChipWord(int address,int value)
+    {
+        address &= CHIP_RAM_MASK;
+        final int pageNo = memory.mmu.getPageNo( address );
+        if ( pageNo != writePageNo )
+        {
+            final MemoryPage page = memory.mmu.getPage( pageNo );
+            if ( ! ( page instanceof RegularPage ) ) {
+                memory.writeWord( address, value );
+                return;
             }
+            writePageNo = pageNo;
+            writePage = (RegularPage) page;
         }
+        final byte[] data = writePage.data;
+        final int offset = memory.mmu.getOffsetInPage( address );
+        data[offset] = (byte) (value >>> 8);
+        data[offset+1] = (byte) value;
+        writePage.written( offset );
+    }
 
-        // Apply function
-        /*
-                                                        ___
-         0       0       0       ?         0            ABC
-                                                        __
-         0       0       1       ?         1            ABC
-                                                        _ _
-         0       1       0       ?         2            ABC
-                                                        _
-         0       1       1       ?         3            ABC
-                                                         __
-         1       0       0       ?         4            ABC
-                                                         _
-         1       0       1       ?         5            ABC
-                                                          _
-         1       1       0       ?         6            ABC
-
-         1       1       1       ?         7            ABC
-         */
-        int valueD = 0;
-        if ( (bltcon0 & 1<<0) != 0 ) { valueD |= ~valueA & ~valueB & ~valueC; }
-        if ( (bltcon0 & 1<<1) != 0 ) { valueD |= ~valueA & ~valueB &  valueC; }
-        if ( (bltcon0 & 1<<2) != 0 ) { valueD |= ~valueA &  valueB & ~valueC; }
-        if ( (bltcon0 & 1<<3) != 0 ) { valueD |= ~valueA &  valueB &  valueC; }
-        if ( (bltcon0 & 1<<4) != 0 ) { valueD |=  valueA & ~valueB & ~valueC; }
-        if ( (bltcon0 & 1<<5) != 0 ) { valueD |=  valueA & ~valueB &  valueC; }
-        if ( (bltcon0 & 1<<6) != 0 ) { valueD |=  valueA &  valueB & ~valueC; }
-        if ( (bltcon0 & 1<<7) != 0 ) { valueD |=  valueA &  valueB &  valueC; }
+    /**
+     * Draws a whole line in one go.
+     */
+    private void blitLine()
+    {
+        while ( rowsRemaining > 0 ) {
+            linePixel();
+        }
+    }
 
+    /**
+     * Draws a single pixel of a line and advances to the next one.
+     *
+     * The pixel is drawn by combining a single bit ( BLTADAT shifted right by the current
+     * pixel position), the current texture bit (bit BSH of BLTBDAT, replicated to all 16 bits)
+     * and the word at the current position (C channel) using the regular minterm.
+     *
+     * Octants are selected by BLTCON1 SUD/SUL/AUL:
+     * <pre>
+     * SUD = 1: ("sometimes up or down") the line is flatter than 45 degrees, always step in x (left if AUL),
+     *          step in y (up if SUL) when the error term is not negative
+     * SUD = 0: the line is steeper than 45 degrees, always step in y (up if AUL),
+     *          step in x (left if SUL) when the error term is not negative
+     * </pre>
+     */
+    private void linePixel()
+    {
+        // D channel writes the first pixel to BLTDPT, all following pixels go where C has been read from
+        if ( ! lineFirstPixel ) {
+            lineDPtr = linePtr;
+        }
+        lineFirstPixel = false;
+        if ( useC ) {
+            bltcdat = readChipWord( linePtr );
+        }
+        final int valueA = (bltadat & bltafwm) >>> lineShift;
+        final int valueB = ((bltbdat >>> lineTextureShift) & 1) != 0 ? 0xffff : 0;
+        final int valueD = minterm.apply( valueA, valueB, bltcdat ) & 0xffff;
         totalResult |= valueD;
 
-        // Write result
-        if ( outputEnabled )
+        // SING mode only draws the first pixel of each row
+        final boolean draw = ( bltcon1 & 1<<1 ) == 0 || ! lineDotDrawn;
+        lineDotDrawn = true;
+        if ( useD && draw ) {
+            writeChipWord( lineDPtr, valueD );
+        }
+        lineTextureShift = (lineTextureShift - 1) & 0b1111;
+
+        // update error term
+        if ( useA ) {
+            lineError = (short) ( lineError + ( lineSign ? (short) bltbmod : (short) bltamod ) );
+        }
+
+        final boolean sud = ( bltcon1 & 1<<4 ) != 0;
+        final boolean sul = ( bltcon1 & 1<<3 ) != 0;
+        final boolean aul = ( bltcon1 & 1<<2 ) != 0;
+        if ( ! lineSign )
         {
-            memory.writeWord(bltdptr,valueD);
-            bltdptr += 2;
-            if ( endOfLine )
-            {
-                bltdptr += factor*bltdmod;
+            // minor axis
+            if ( sud ) {
+                if ( sul ) { lineDecY(); } else { lineIncY(); }
+            } else {
+                if ( sul ) { lineDecX(); } else { lineIncX(); }
             }
         }
+        // major axis
+        if ( sud ) {
+            if ( aul ) { lineDecX(); } else { lineIncX(); }
+        } else {
+            if ( aul ) { lineDecY(); } else { lineIncY(); }
+        }
+        lineSign = lineError < 0;
+        rowsRemaining--;
     }
 
-    private void tickLineMode()
+    private void lineIncX()
     {
+        if ( ++lineShift == 16 ) {
+            lineShift = 0;
+            linePtr += 2;
+        }
+    }
+
+    private void lineDecX()
+    {
+        if ( lineShift-- == 0 ) {
+            lineShift = 15;
+            linePtr -= 2;
+        }
+    }
+
+    private void lineIncY()
+    {
+        linePtr += (short) bltcmod;
+        lineDotDrawn = false;
+    }
+
+    private void lineDecY()
+    {
+        linePtr -= (short) bltcmod;
+        lineDotDrawn = false;
     }
 
     /*
@@ -839,9 +1376,9 @@ width 1008 pixels.
 
     public void reset()
     {
-        wordsToProcess = 1;
-        wordsToProcessThisRow = 1;
-        rowsToProcess  = 1;
+        width = 1;
+        rowsRemaining = 0;
+        wordInRow = 0;
 
         bltaptr = 0;
         bltbptr = 0;
@@ -851,14 +1388,18 @@ width 1008 pixels.
         ascendingMode = true;
         shiftA = 0;
         shiftB = 0;
-        shiftAOut = 0;
-        shiftBOut = 0;
+        prevA = 0;
+        prevB = 0;
         totalResult = 0;
-        shiftAMask = 0;
-        shiftBMask = 0;
+
+        blitPending = false;
+        cyclesRemaining = 0;
+        readPageNo = writePageNo = -1;
 
         blitterNasty = false;
-        blitterDone = false;
+        // copper WAITs with the blitter-finished-disable bit cleared must not block before the first blit
+        blitterDone = true;
+        blitEvent = null;
         blitterActive = false;
     }
 
@@ -13,6 +13,7 @@ public class CIAPage extends MemoryPage
     private final CIA8520 ciaa;
     private final CIA8520 ciab;
     private final int startAddress;
+    private final MemoryAccessStatistics statistics;
 
             /*
 The system hardware selects the CIAs when the upper three address bits are
@@ -30,11 +31,12 @@ With future expansion in mind, we have decided on the following addresses:
 CIAA = BFEr01; CIAB = BFDr00.
              */
 
-    public CIAPage(int startAddress,CIA8520 ciaa,CIA8520 ciab)
+    public CIAPage(int startAddress,CIA8520 ciaa,CIA8520 ciab,MemoryAccessStatistics statistics)
     {
         this.startAddress = startAddress;
         this.ciaa = ciaa;
         this.ciab = ciab;
+        this.statistics = statistics;
     }
 
     @Override
@@ -42,10 +44,18 @@ CIAA = BFEr01; CIAB = BFDr00.
     {
         final int address = startAddress+offset;
         if ( isCIAA(address) ) {
-            return (byte) ciaa.readRegister(getRegisterNumber(address ) );
+            final int regNum = getRegisterNumber( address );
+            if ( statistics.enabled ) {
+                statistics.ciaaReads[regNum]++;
+            }
+            return (byte) ciaa.readRegister( regNum );
         }
         if ( isCIAB(address) ) {
-            return (byte) ciab.readRegister(getRegisterNumber(address ) );
+            final int regNum = getRegisterNumber( address );
+            if ( statistics.enabled ) {
+                statistics.ciabReads[regNum]++;
+            }
+            return (byte) ciab.readRegister( regNum );
         }
         return 0;
     }
@@ -68,11 +78,19 @@ CIAA = BFEr01; CIAB = BFDr00.
     {
         final int address = startAddress+offset;
         if ( isCIAA(address) ) {
-            ciaa.writeRegister(getRegisterNumber(address),value);
+            final int regNum = getRegisterNumber( address );
+            if ( statistics.enabled ) {
+                statistics.ciaaWrites[regNum]++;
+            }
+            ciaa.writeRegister(regNum,value);
         }
         else if ( isCIAB(address) )
         {
-            ciab.writeRegister(getRegisterNumber(address),value);
+            final int regNum = getRegisterNumber( address );
+            if ( statistics.enabled ) {
+                statistics.ciabWrites[regNum]++;
+            }
+            ciab.writeRegister(regNum,value);
         }
     }
 
@@ -0,0 +1,253 @@
+package de.codesourcery.m68k.emulator.memory;
+
+import de.codesourcery.m68k.utils.Misc;
+
+import java.util.function.IntConsumer;
+
+/**
+ * A copper list that has been decoded into pre-classified instructions.
+ *
+ * Most copper lists never change between frames, so instead of re-reading
+ * and re-classifying every instruction from chip RAM each frame, the
+ * copper decodes a list once and executes the compiled form until the
+ * memory holding the list gets written to.
+ *
+ * @author tobias.gierke@code-sourcery.de
+ * @see Video.Copper
+ */
+public final class CopperList
+{
+    /**
+     * Max. number of instructions to compile, the copper
+     * will compile the next chunk when running past the end of a list.
+     */
+    public static final int MAX_INSTRUCTIONS = 1024;
+
+    public static final int OP_MOVE = 0;
+    public static final int OP_WAIT = 1;
+    public static final int OP_SKIP = 2;
+
+    // custom chip register offsets
+    private static final int COPJMP1 = 0x88;
+    private static final int COPJMP2 = 0x8a;
+
+    public final int startAddress;
+    public final int length;
+
+    /*
+     * Two ints per instruction:
+     *
+     * code[i*2]   = (opcode << 16) | word1
+     * code[i*2+1] = word2
+     */
+    private final int[] code;
+
+    // register write handlers for MOVE instructions, null for WAIT/SKIP
+    private final IntConsumer[] handlers;
+
+    // memory pages spanned by this list along with their modification counts at compile time
+    // (only counting writes to the part of the page holding the list), null entries are pages that cannot be changed
+    private final int firstPageNo;
+    private final RegularPage[] pages;
+    private final int[] modificationCounts;
+
+    private CopperList(int startAddress,int length,int[] code,IntConsumer[] handlers,int firstPageNo,RegularPage[] pages,int[] modificationCounts)
+    {
+        this.startAddress = startAddress;
+        this.length = length;
+        this.code = code;
+        this.handlers = handlers;
+        this.firstPageNo = firstPageNo;
+        this.pages = pages;
+        this.modificationCounts = modificationCounts;
+    }
+
+    /**
+     * Compiles copper lists.
+     *
+     * Lists get recompiled whenever memory they occupy changes (including blitter writes
+     * to data sharing a page with the list), so instructions are decoded into scratch
+     * buffers that get re-used for every compilation and only the final, trimmed
+     * arrays are allocated.
+     *
+     * Instances are not thread-safe.
+     */
+    public static final class Compiler
+    {
+        private final int[] code = new int[ MAX_INSTRUCTIONS*2 ];
+        private final IntConsumer[] handlers = new IntConsumer[ MAX_INSTRUCTIONS ];
+
+        /**
+         * Compiles the copper list at a given address.
+         *
+         * Compilation stops after the end-of-list marker (<code>WAIT $FFFF,$FFFE</code>), after a
+         * write to COPJMP1/COPJMP2 or after {@link #MAX_INSTRUCTIONS} instructions.
+         *
+         * @param startAddress
+         * @param mmu
+         * @param registers custom chip register page used to resolve MOVE targets
+         * @return
+         */
+        public CopperList compile(int startAddress, MMU mmu, CustomChipPage registers)
+        {
+            startAddress &= ~1;
+
+            int length = 0;
+            for ( int pc = startAddress ; length < MAX_INSTRUCTIONS ; pc += 4 )
+            {
+                // lists only need to be word-aligned, so the two words of an instruction may live on different pages
+                final int word1 = readWord( mmu, pc );
+                final int word2 = readWord( mmu, pc+2 );
+
+                final int opcode;
+                if ( (word1 & 1) == 0 ) {
+                    opcode = OP_MOVE;
+                    handlers[ length ] = registers.getWordWriteHandler( word1 & 0b111111110 );
+                } else {
+                    opcode = (word2 & 1) == 0 ? OP_WAIT : OP_SKIP;
+                    handlers[ length ] = null;
+                }
+                code[ length*2 ] = (opcode << 16) | word1;
+                code[ length*2+1 ] = word2;
+                length++;
+
+                if ( opcode == OP_WAIT && word1 == 0xffff && word2 == 0xfffe ) {
+                    break; // end of copper list
+                }
+                if ( opcode == OP_MOVE && ( (word1 & 0b111111110) == COPJMP1 || (word1 & 0b111111110) == COPJMP2 ) ) {
+                    break; // copper continues somewhere else
+                }
+            }
+
+            // only watch for writes to the memory actually holding the list
+            final int endAddress = startAddress + length*4; // exclusive
+            final int firstPageNo = mmu.getPageNo( startAddress );
+            final int lastPageNo = mmu.getPageNo( endAddress - 1 );
+            final RegularPage[] pages = new RegularPage[ lastPageNo - firstPageNo + 1 ];
+            final int[] modificationCounts = new int[ pages.length ];
+            for ( int i = 0 ; i < pages.length ; i++ )
+            {
+                final MemoryPage page = mmu.getPage( firstPageNo + i );
+                if ( page instanceof RegularPage )
+                {
+                    final int pageStart = (firstPageNo + i) * MMU.PAGE_SIZE;
+                    final RegularPage regularPage = (RegularPage) page;
+                    regularPage.watch( Math.max( startAddress, pageStart ) - pageStart, Math.min( endAddress, pageStart + MMU.PAGE_SIZE ) - pageStart );
+                    pages[ i ] = regularPage;
+                    modificationCounts[ i ] = regularPage.modificationCount;
+                }
+            }
+
+            final int[] trimmedCode = new int[ length*2 ];
+            System.arraycopy( code, 0, trimmedCode, 0, length*2 );
+            final IntConsumer[] trimmedHandlers = new IntConsumer[ length ];
+            System.arraycopy( handlers, 0, trimmedHandlers, 0, length );
+            return new CopperList( startAddress, length, trimmedCode, trimmedHandlers, firstPageNo, pages, modificationCounts );
+        }
+    }
+
+    private static int readWord(MMU mmu,int address)
+    {
+        final MemoryPage page = mmu.getPage( mmu.getPageNo( address ) );
+        final int offset = mmu.getOffsetInPage( address );
+        final int hi = page.readByteNoSideEffects( offset );
+        final int lo = page.readByteNoSideEffects( offset+1 );
+        return ((hi << 8) & 0xff00) | (lo & 0xff);
+    }
+
+    /**
+     * Returns the index of the instruction at a given address.
+     *
+     * @param address
+     * @return instruction index or -1 if the address is not part of this list
+     */
+    public int indexOf(int address)
+    {
+        final int delta = (address & ~1) - startAddress;
+        if ( delta < 0 || delta >= length*4 || (delta & 3) != 0 ) {
+            return -1;
+        }
+        return delta >>> 2;
+    }
+
+    /**
+     * Returns whether the memory holding a given instruction
+     * did not change since this list got compiled.
+     *
+     * @param index instruction index
+     * @return
+     */
+    public boolean isValid(int index)
+    {
+        final int address = startAddress + index*4;
+        return isValidPage( ( address / MMU.PAGE_SIZE ) - firstPageNo ) &&
+               isValidPage( ( (address+2) / MMU.PAGE_SIZE ) - firstPageNo );
+    }
+
+    private boolean isValidPage(int pageIdx)
+    {
+        final RegularPage page = pages[ pageIdx ];
+        return page == null || page.modificationCount == modificationCounts[ pageIdx ];
+    }
+
+    /**
+     * Returns whether none of the memory pages spanned by this list changed
+     * since this list got compiled.
+     *
+     * @return
+     */
+    public boolean isValid()
+    {
+        for ( int i = 0 ; i < pages.length ; i++ )
+        {
+            final RegularPage page = pages[i];
+            if ( page != null && page.modificationCount != modificationCounts[i] ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stops watching the memory pages spanned by this list for writes.
+     *
+     * This invalidates all lists compiled from these pages.
+     */
+    public void unwatch()
+    {
+        for ( RegularPage page : pages )
+        {
+            if ( page != null ) {
+                page.unwatch();
+            }
+        }
+    }
+
+    public int getOpcode(int index) {
+        return code[ index*2 ] >>> 16;
+    }
+
+    public int getWord1(int index) {
+        return code[ index*2 ] & 0xffff;
+    }
+
+    public int getWord2(int index) {
+        return code[ index*2+1 ];
+    }
+
+    /**
+     * Returns the pre-resolved register write handler of a MOVE instruction.
+     *
+     * @param index
+     * @return handler or <code>null</code> if the instruction is no MOVE
+     */
+    public IntConsumer getHandler(int index) {
+        return handlers[ index ];
+    }
+
+    @Override
+    public String toString()
+    {
+        return "CopperList[ "+Misc.hex( startAddress )+", "+length+" instructions ]";
+    }
+}
@@ -3,11 +3,16 @@ package de.codesourcery.m68k.emulator.memory;
 import de.codesourcery.m68k.disassembler.ChipRegisterResolver;
 import de.codesourcery.m68k.disassembler.RegisterDescription;
 import de.codesourcery.m68k.emulator.chips.IRQController;
+import de.codesourcery.m68k.emulator.chips.Paula;
 import de.codesourcery.m68k.emulator.exceptions.MemoryAccessException;
+import de.codesourcery.m68k.emulator.floppy.DiskController;
 import de.codesourcery.m68k.utils.Misc;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.util.function.IntConsumer;
+import java.util.function.IntSupplier;
+
 /**
  * Address range containing all custom-chip registers.
  *
@@ -60,17 +65,17 @@ NAME        ADD  R/W  CHIP    FUNCTION
 [ ] JOY0DAT     *00A  R   D       Joystick-mouse 0 data (vert,horiz)
 [ ] JOY1DAT     *00C  R   D       Joystick-mouse 1 data (vert,horiz)
 [ ] CLXDAT      *00E  R   D       Collision data register (read and clear)
-[ ] ADKCONR     *010  R   P       Audio, disk control register read
+[X] ADKCONR     *010  R   P       Audio, disk control register read
 [ ] POT0DAT     *012  R   P( E )  Pot counter pair 0 data (vert,horiz)
 [ ] POT1DAT     *014  R   P( E )  Pot counter pair 1 data (vert,horiz)
 [ ] POTGOR      *016  R   P       Pot port data read (formerly POTINP)
 [ ] SERDATR     *018  R   P       Serial port data and status read
-[ ] DSKBYTR     *01A  R   P       Disk data byte and status read
+[X] DSKBYTR     *01A  R   P       Disk data byte and status read
 [ ] INTENAR     *01C  R   P       Interrupt enable bits read
 [ ] INTREQR     *01E  R   P       Interrupt request bits read
-[ ] DSKPTH    + *020  W   A( E )  Disk pointer (high 3 bits, 5 bits if ECS)
-[ ] DSKPTL    + *022  W   A       Disk pointer (low 15 bits)
-[ ] DSKLEN      *024  W   P       Disk length
+[X] DSKPTH    + *020  W   A( E )  Disk pointer (high 3 bits, 5 bits if ECS)
+[X] DSKPTL    + *022  W   A       Disk pointer (low 15 bits)
+[X] DSKLEN      *024  W   P       Disk length
 [ ] DSKDAT    & *026  W   P       Disk DMA data write
 [ ] REFPTR    & *028  W   A       Refresh pointer
 [ ] VPOSW       *02A  W   A       Write vert most signif. bit (and frame flop)
@@ -117,7 +122,7 @@ NAME        ADD  R/W  CHIP    FUNCTION
 [ ] SPRHDAT     ~078  W   A( E )  Ext. logic UHRES sprite pointer and data id
                 ~07A
 [ ] DENISEID    ~07C  R   D( E )  Chip revision level for Denise (video out chip)
-[ ] DSKSYNC     ~07E  W   P       Disk sync pattern register for disk read
+[X] DSKSYNC     ~07E  W   P       Disk sync pattern register for disk read
 [ ] COP1LCH   +  080  W   A( E )  Coprocessor first location register (high 3 bits, high 5 bits if ECS)
 [ ] COP1LCL   +  082  W   A       Coprocessor first location register (low 15 bits)
 [ ] COP2LCH   +  084  W   A( E )  Coprocessor second location register (high 3 bits, high 5 bits if ECS)
@@ -137,38 +142,38 @@ NAME        ADD  R/W  CHIP    FUNCTION
 [ ]                                  set bits)
 [ ] INTREQ       09C  W   P       Interrupt request bits (clear or
 [ ]                                  set bits)
-[ ] ADKCON       09E  W   P       Audio, disk, UART control
-[ ] AUD0LCH   +  0A0  W   A( E )  Audio channel 0 location (high 3 bits,
+[X] ADKCON       09E  W   P       Audio, disk, UART control
+[X] AUD0LCH   +  0A0  W   A( E )  Audio channel 0 location (high 3 bits,
 [ ]                                   5 if ECS)
-[ ] AUD0LCL   +  0A2  W   A       Audio channel 0 location (low 15 bits)
-[ ] AUD0LEN      0A4  W   P       Audio channel 0 length
-[ ] AUD0PER      0A6  W   P( E )  Audio channel 0 period
-[ ] AUD0VOL      0A8  W   P       Audio channel 0 volume
-[ ] AUD0DAT   &  0AA  W   P       Audio channel 0 data
+[X] AUD0LCL   +  0A2  W   A       Audio channel 0 location (low 15 bits)
+[X] AUD0LEN      0A4  W   P       Audio channel 0 length
+[X] AUD0PER      0A6  W   P( E )  Audio channel 0 period
+[X] AUD0VOL      0A8  W   P       Audio channel 0 volume
+[X] AUD0DAT   &  0AA  W   P       Audio channel 0 data
 [ ]              0AC
 [ ]              0AE
-[ ] AUD1LCH   +  0B0  W   A       Audio channel 1 location (high 3 bits)
-[ ] AUD1LCL   +  0B2  W   A       Audio channel 1 location (low 15 bits)
-[ ] AUD1LEN      0B4  W   P       Audio channel 1 length
-[ ] AUD1PER      0B6  W   P       Audio channel 1 period
-[ ] AUD1VOL      0B8  W   P       Audio channel 1 volume
-[ ] AUD1DAT   &  0BA  W   P       Audio channel 1 data
+[X] AUD1LCH   +  0B0  W   A       Audio channel 1 location (high 3 bits)
+[X] AUD1LCL   +  0B2  W   A       Audio channel 1 location (low 15 bits)
+[X] AUD1LEN      0B4  W   P       Audio channel 1 length
+[X] AUD1PER      0B6  W   P       Audio channel 1 period
+[X] AUD1VOL      0B8  W   P       Audio channel 1 volume
+[X] AUD1DAT   &  0BA  W   P       Audio channel 1 data
 [ ]              0BC
 [ ]              0BE
-[ ] AUD2LCH   +  0C0  W   A       Audio channel 2 location (high 3 bits)
-[ ] AUD2LCL   +  0C2  W   A       Audio channel 2 location (low 15 bits)
-[ ] AUD2LEN      0C4  W   P       Audio channel 2 length
-[ ] AUD2PER      0C6  W   P       Audio channel 2 period
-[ ] AUD2VOL      0C8  W   P       Audio channel 2 volume
-[ ] AUD2DAT   &  0CA  W   P       Audio channel 2 data
+[X] AUD2LCH   +  0C0  W   A       Audio channel 2 location (high 3 bits)
+[X] AUD2LCL   +  0C2  W   A       Audio channel 2 location (low 15 bits)
+[X] AUD2LEN      0C4  W   P       Audio channel 2 length
+[X] AUD2PER      0C6  W   P       Audio channel 2 period
+[X] AUD2VOL      0C8  W   P       Audio channel 2 volume
+[X] AUD2DAT   &  0CA  W   P       Audio channel 2 data
 [ ]              0CC
 [ ]              0CE
-[ ] AUD3LCH   +  0D0  W   A       Audio channel 3 location (high 3 bits)
-[ ] AUD3LCL   +  0D2  W   A       Audio channel 3 location (low 15 bits)
-[ ] AUD3LEN      0D4  W   P       Audio channel 3 length
-[ ] AUD3PER      0D6  W   P       Audio channel 3 period
-[ ] AUD3VOL      0D8  W   P       Audio channel 3 volume
-[ ] AUD3DAT   &  0DA  W   P       Audio channel 3 data
+[X] AUD3LCH   +  0D0  W   A       Audio channel 3 location (high 3 bits)
+[X] AUD3LCL   +  0D2  W   A       Audio channel 3 location (low 15 bits)
+[X] AUD3LEN      0D4  W   P       Audio channel 3 length
+[X] AUD3PER      0D6  W   P       Audio channel 3 period
+[X] AUD3VOL      0D8  W   P       Audio channel 3 volume
+[X] AUD3DAT   &  0DA  W   P       Audio channel 3 data
 [ ]              0DC
 [ ]              0DE
 [ ] BPL1PTH   +  0E0  W   A       Bitplane 1 pointer (high 3 bits)
@@ -328,23 +333,122 @@ NAME        ADD  R/W  CHIP    FUNCTION
 [ ] DIWHIGH      1E4  W   AD( E ) Display window -  upper bits for start, stop
      */
     public final Video video;
+    private final Paula paula;
+    private final DiskController diskController;
     private IRQController irqController;
+    private final MemoryAccessStatistics statistics;
+
+    // register handlers, indexed by (address & 0x1ff) >>> 1
+    private final IntConsumer[] wordWriteHandlers = new IntConsumer[ Video.REGISTER_COUNT ];
+    private final IntSupplier[] wordReadHandlers = new IntSupplier[ Video.REGISTER_COUNT ]; // null entries are unhandled
+    // same as wordReadHandlers but without side-effects (like clearing CLXDAT or DSKBYTR WORDEQUAL)
+    private final IntSupplier[] wordPeekHandlers = new IntSupplier[ Video.REGISTER_COUNT ];
+
+    // number of accesses to unhandled registers, indexed by (address & 0x1ff) >>> 1
+    public final long[] unhandledReads = new long[ Video.REGISTER_COUNT ];
+    public final long[] unhandledWrites = new long[ Video.REGISTER_COUNT ];
 
     public CustomChipPage(int startAddress,
                           Blitter blitter,
                           Video video,
-                          IRQController irqController)
+                          Paula paula,
+                          DiskController diskController,
+                          IRQController irqController,
+                          MemoryAccessStatistics statistics)
     {
         this.startAddress = startAddress;
         this.blitter = blitter;
         this.video = video;
+        this.paula = paula;
+        this.diskController = diskController;
         this.irqController = irqController;
+        this.statistics = statistics;
+        initRegisterHandlers();
+    }
+
+    private void initRegisterHandlers()
+    {
+        for ( int i = 0 ; i < Video.REGISTER_COUNT ; i++ )
+        {
+            final int adr = i << 1;
+            if ( adr >= 0x40 && adr <= 0x74 )
+            {
+                final int regOffset = adr - 0x040;
+                wordWriteHandlers[i] = value -> blitter.writeWord( regOffset, value );
+                wordReadHandlers[i] = () -> ( (blitter.readByte( regOffset ) << 8) & 0xff00 ) | ( blitter.readByte( regOffset+1 ) & 0xff );
+                continue;
+            }
+            if ( adr >= 0x0a0 && adr <= 0x0de )
+            {
+                wordWriteHandlers[i] = value -> paula.writeWord( adr, value );
+                continue;
+            }
+            wordWriteHandlers[i] = video.getWordWriteHandler( adr );
+            wordReadHandlers[i] = video.getWordReadHandler( adr );
+            wordPeekHandlers[i] = video.getWordPeekHandler( adr );
+        }
+
+        wordReadHandlers[ 0x02 >>> 1 ] = this::readDMACONR;
+        wordReadHandlers[ 0x04 >>> 1 ] = video::readVPOSR;
+        wordReadHandlers[ 0x06 >>> 1 ] = video::readVHPOSR;
+        wordReadHandlers[ 0x10 >>> 1 ] = () -> paula.readADKCONR(); // ADKCONR
+        wordReadHandlers[ DiskController.DSKBYTR >>> 1 ] = () -> diskController.readDSKBYTR();
+        wordPeekHandlers[ DiskController.DSKBYTR >>> 1 ] = () -> diskController.peekDSKBYTR();
+        wordReadHandlers[ 0x1c >>> 1 ] = () -> irqController.irqEnabled; // INTENAR
+        wordReadHandlers[ 0x1e >>> 1 ] = () -> irqController.irqRequests; // INTREQR
+
+        wordWriteHandlers[ DiskController.DSKPTH >>> 1 ] = value -> diskController.writeWord( DiskController.DSKPTH, value );
+        wordWriteHandlers[ DiskController.DSKPTL >>> 1 ] = value -> diskController.writeWord( DiskController.DSKPTL, value );
+        wordWriteHandlers[ DiskController.DSKLEN >>> 1 ] = value -> diskController.writeWord( DiskController.DSKLEN, value );
+        wordWriteHandlers[ DiskController.DSKSYNC >>> 1 ] = value -> diskController.writeWord( DiskController.DSKSYNC, value );
+        wordWriteHandlers[ 0x34 >>> 1 ] = value -> {}; // TODO: POTGO, currently silently dropped
+        wordWriteHandlers[ 0x96 >>> 1 ] = this::writeDMACON;
+        wordWriteHandlers[ 0x9a >>> 1 ] = value -> irqController.writeIRQEnable( value ); // INTENA
+        wordWriteHandlers[ 0x9c >>> 1 ] = value -> irqController.writeIRQReq( value ); // INTREQ
+        wordWriteHandlers[ 0x9e >>> 1 ] = value -> paula.writeADKCON( value ); // ADKCON
+
+        // unhandled writes only get counted
+        for ( int i = 0 ; i < Video.REGISTER_COUNT ; i++ )
+        {
+            if ( wordPeekHandlers[i] == null ) {
+                wordPeekHandlers[i] = wordReadHandlers[i];
+            }
+            if ( wordWriteHandlers[i] == null ) {
+                final int adr = i << 1;
+                wordWriteHandlers[i] = value -> unhandledWrite( adr, value );
+            }
+        }
     }
 
     @Override
     public byte readByte(int offset)
     {
-        return readByteNoSideEffects( offset );
+        final int adr = (startAddress+offset) & 0x1ff;
+        if ( statistics.enabled ) {
+            statistics.customChipRead( adr );
+        }
+        final IntSupplier handler = wordReadHandlers[ adr >>> 1 ];
+        if ( handler == null ) {
+            unhandledRead( adr );
+            return 0;
+        }
+        final int value = handler.getAsInt();
+        return (byte) ( (adr & 1) == 0 ? value >>> 8 : value );
+    }
+
+    @Override
+    public short readWord(int offset)
+    {
+        final int adr = (startAddress+offset) & 0x1ff;
+        if ( statistics.enabled ) {
+            statistics.customChipRead( adr );
+        }
+        final IntSupplier handler = wordReadHandlers[ adr >>> 1 ];
+        if ( handler == null ) {
+            unhandledRead( adr );
+            return 0;
+        }
+        return (short) handler.getAsInt();
     }
 
     /*
@@ -357,59 +461,21 @@ NAME        ADD  R/W  CHIP    FUNCTION
     public byte readByteNoSideEffects(int offset)
     {
         final int adr = (startAddress+offset) & 0x1ff;
-        if ( adr >= 0x40 && adr <= 0x74 )
-        {
-            final int regOffset = adr - 0x040;
-            return blitter.readByte( regOffset );
+        final IntSupplier handler = wordPeekHandlers[ adr >>> 1 ];
+        if ( handler == null ) {
+            return 0;
         }
-        if ( adr == 0x02 ) {
-            return (byte) (readDMACONR() >> 8);
-        }
-        if ( adr == 0x03 ) {
-            return (byte) readDMACONR();
-        }
-
-        if ( adr == 0x04 ) {
-            // VPOSR hi-byte
-            return (byte) (video.readVPOSR() >>> 8);
-        }
-        if ( adr == 0x05 ) {
-            // VPOSR lo-byte
-            return (byte) video.readVPOSR();
-        }
-        if ( adr == 0x06 ) {
-            // VHPOSR hi-byte
-            return (byte) (video.readVHPOSR() >>> 8);
-        }
-        if ( adr == 0x07 ) {
-            // VHPOSR lo-byte
-            return (byte) (video.readVHPOSR() >>> 8);
-        }
-
-        // 0x0E0...0x1e4 => video
-        if ( adr >= 0x0e0 && adr <= 0x1E5) {
-            return video.readByte( adr );
-        }
-        if ( adr == 0x01c) { // INTENAR
-            return (byte) (irqController.irqEnabled >>> 8);
-        }
-        if ( adr == 0x01d) { // INTENAR
-            return (byte) irqController.irqEnabled;
-        }
-        if ( adr == 0x01e) { // INTREQR
-            return (byte) (irqController.irqRequests >>> 8);
-        }
-        if ( adr == 0x01f) { // INTREQR
-            return (byte) irqController.irqRequests;
-        }
-        LOG.info( "CUSTOM CHIP AREA: Unhandled read at offset "+Misc.hex(offset) );
-        return 0;
+        final int value = handler.getAsInt();
+        return (byte) ( (adr & 1) == 0 ? value >>> 8 : value );
     }
 
     @Override
     public void writeByte(int offset, int value) throws MemoryAccessException
     {
         final int adr = (startAddress+offset) & 0x1ff;
+        if ( statistics.enabled ) {
+            statistics.customChipWrite( adr );
+        }
         if ( adr >= 0x40 && adr <= 0x74 )
         {
             final int regOffset = adr - 0x040;
@@ -421,40 +487,50 @@ NAME        ADD  R/W  CHIP    FUNCTION
             video.writeByte( adr, value );
             return;
         }
-        LOG.info( "CUSTOM CHIP: Unhandled byte write @ "+ Misc.hex(offset) );
+        unhandledWrite( adr, value );
     }
 
     @Override
     public void writeWord(int offset, int value) throws MemoryAccessException
     {
         final int adr = (startAddress+offset) & 0x1ff;
-        switch( adr ) {
-            case 0x34: // TODO: POTGO, currently silently dropped
-                return;
+        if ( statistics.enabled ) {
+            statistics.customChipWrite( adr );
         }
-        if ( adr >= 0x40 && adr <= 0x74 )
-        {
-            final int regOffset = adr - 0x040;
-            blitter.writeWord( regOffset, value );
-        } else if ( adr == 0x2e || adr >= 0x80 && adr <= 0x8c ) { // COPCON
-            video.writeWord( adr, value );
-        } else if ( adr == 0x96 ) {
-            writeDMACON( value );
-        } else if ( adr >= 0x0e0 && adr <= 0x1E5) {
-            // 0x0E0...0x1e4 => video
-            video.writeWord( adr, value );
-        } else if ( adr == 0x09a) { // INTENA
-            irqController.writeIRQEnable( value );
-        } else if ( adr == 0x09c) { // INTREQR
-            irqController.writeIRQReq( value );
-        } else {
-            LOG.info( "CHIPSET: Unhandled word write "+Misc.hex(value)+" ("+Misc.binary16Bit( value )+" @ "+registerName(startAddress+offset) );
+        wordWriteHandlers[ adr >>> 1 ].accept( value );
+    }
+
+    /**
+     * Returns the handler that processes word-sized writes to a given register.
+     *
+     * @param offset register offset relative to 0xDFF000
+     * @return
+     */
+    public IntConsumer getWordWriteHandler(int offset)
+    {
+        return wordWriteHandlers[ (offset & 0x1ff) >>> 1 ];
+    }
+
+    private void unhandledRead(int adr)
+    {
+        if ( unhandledReads[ adr >>> 1 ]++ == 0 ) {
+            LOG.info( "CHIPSET: Unhandled read from "+registerName( 0xdff000 + (adr & ~1) )+" (further reads are only counted)" );
+        }
+    }
+
+    private void unhandledWrite(int adr,int value)
+    {
+        if ( unhandledWrites[ adr >>> 1 ]++ == 0 && LOG.isInfoEnabled() ) {
+            LOG.info( "CHIPSET: Unhandled write "+Misc.hex(value)+" ("+Misc.binary16Bit( value )+") @ "+
+                    registerName( 0xdff000 + (adr & ~1) )+" (further writes are only counted)" );
         }
     }
 
     private void writeDMACON(int value)
     {
-        int current = readDMACONR();
+        int current = blitter.dmaController.flags;
+        // status bits (BBUSY,BZERO) are read-only
+        value &= ~(1<<14|1<<13);
         if ( ( value & 1<<15) != 0 )
         {
             // set bits
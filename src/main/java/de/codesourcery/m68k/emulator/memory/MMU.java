@@ -1,10 +1,14 @@
 package de.codesourcery.m68k.emulator.memory;
 
 import de.codesourcery.m68k.emulator.Amiga;
+import de.codesourcery.m68k.emulator.Keyboard;
 import de.codesourcery.m68k.emulator.chips.CIA8520;
 import de.codesourcery.m68k.emulator.chips.IRQController;
+import de.codesourcery.m68k.emulator.chips.Paula;
+import de.codesourcery.m68k.emulator.floppy.DiskController;
 import de.codesourcery.m68k.emulator.exceptions.MemoryAccessException;
 import de.codesourcery.m68k.emulator.exceptions.PageNotMappedException;
+import de.codesourcery.m68k.emulator.metrics.HostTimeProfiler;
 import de.codesourcery.m68k.utils.Misc;
 import gnu.trove.map.hash.TIntObjectHashMap;
 import org.apache.logging.log4j.LogManager;
@@ -56,16 +60,27 @@ C0 0000 - DF EFFF       Reserved.  Do not use.
         private static final int FIRST_CUSTOM_CHIP_PAGENO = (0xDF0000 >>> PAGE_SIZE_RIGHT_SHIFT);
         private static final int LAST_CUSTOM_CHIP_PAGENO = (0xDFFFFF >>> PAGE_SIZE_RIGHT_SHIFT);
 
+        // the CIAs are clocked by the E clock, running at 1/10 of the CPU clock
+        private static final int CIA_CLOCK_DIVIDER = 10;
+
         private final int firstRomPageNo;
         private final int lastRomPageNo;
 
+        private int cyclesUntilCIATick = CIA_CLOCK_DIVIDER;
+
         private final Amiga amiga;
 
+        private final MemoryAccessStatistics statistics = new MemoryAccessStatistics();
+
         private final Blitter blitter;
         private final Video video;
         private CIA8520 ciaa;
         private CIA8520 ciab;
+        private Paula paula;
+        private DiskController diskController;
+        private Keyboard keyboard;
         private IRQController irqController;
+        private HostTimeProfiler profiler;
 
         // First ChipRAM page, used as wrap-around page
         // when code tries to access non-existant chip RAM
@@ -87,8 +102,12 @@ C0 0000 - DF EFFF       Reserved.  Do not use.
 
         public void reset()
         {
+            cyclesUntilCIATick = CIA_CLOCK_DIVIDER;
             ciaa.reset();
             ciab.reset();
+            keyboard.reset();
+            paula.reset();
+            diskController.reset();
             blitter.reset();
             video.reset();
             irqController.reset();
@@ -97,10 +116,76 @@ C0 0000 - DF EFFF       Reserved.  Do not use.
         // ticked every 140ns
         public void tick()
         {
-            ciaa.tick();
-            ciab.tick();
-            blitter.tick();
-            video.tick();
+            tick( false );
+        }
+
+        /**
+         * Ticks all chips.
+         *
+         * Sampled ticks attribute the host time spent to the individual chips. In fast mode, the
+         * blitter performs a whole blit within a single tick. Sampling would either miss these ticks
+         * or scale them up by the sample interval, so they get timed on every occurrence
+         * while profiling is enabled (like UI callbacks).
+         *
+         * @param sampled whether to time this tick, see {@link HostTimeProfiler#startTick()}
+         */
+        public void tick(boolean sampled)
+        {
+            long start = sampled ? System.nanoTime() : 0;
+            /*
+             * All Amiga models have same CIA timer clock rates,
+             * ~709KHz if PAL model and ~715KHz if NTSC model.
+             */
+            if ( --cyclesUntilCIATick == 0 )
+            {
+                cyclesUntilCIATick = CIA_CLOCK_DIVIDER;
+                ciaa.tick();
+                if ( sampled ) {
+                    start = addSample( HostTimeProfiler.Subsystem.CIAA, start );
+                }
+                ciab.tick();
+                if ( sampled ) {
+                    start = addSample( HostTimeProfiler.Subsystem.CIAB, start );
+                }
+                keyboard.tick();
+            }
+            paula.tick();
+            diskController.tick();
+            if ( sampled ) {
+                start = addSample( HostTimeProfiler.Subsystem.OTHER_CHIPS, start );
+            }
+            if ( profiler != null && profiler.isEnabled() && blitter.isBlitPending() )
+            {
+                final long blitStart = System.nanoTime();
+                blitter.tick();
+                start = System.nanoTime();
+                profiler.add( HostTimeProfiler.Subsystem.BLITTER, start - blitStart );
+            }
+            else
+            {
+                blitter.tick();
+                if ( sampled ) {
+                    start = addSample( HostTimeProfiler.Subsystem.BLITTER, start );
+                }
+            }
+            if ( sampled )
+            {
+                video.tick( profiler );
+                profiler.addSample( HostTimeProfiler.Subsystem.VIDEO, System.nanoTime() - start );
+            } else {
+                video.tick();
+            }
+        }
+
+        private long addSample(HostTimeProfiler.Subsystem subsystem,long start)
+        {
+            final long now = System.nanoTime();
+            profiler.addSample( subsystem, now - start );
+            return now;
+        }
+
+        public void setHostTimeProfiler(HostTimeProfiler profiler) {
+            this.profiler = profiler;
         }
 
         public void setCIAA(CIA8520 cia) {
@@ -111,6 +196,23 @@ C0 0000 - DF EFFF       Reserved.  Do not use.
             this.ciab = cia;
         }
 
+        public void setPaula(Paula paula) {
+            this.paula = paula;
+        }
+
+        public void setDiskController(DiskController diskController) {
+            this.diskController = diskController;
+        }
+
+        public void setKeyboard(Keyboard keyboard) {
+            this.keyboard = keyboard;
+        }
+
+        public MemoryAccessStatistics getStatistics()
+        {
+            return statistics;
+        }
+
         public MemoryPage getPage(int pageNo) throws MemoryAccessException
         {
             /*
@@ -173,7 +275,7 @@ FC0000-FFFFFF 256 KB -- Kickstart ROM
 
             // CIA address range
             if ( pageNo >= FIRST_CIA_PAGENO && pageNo <= LAST_CIA_PAGENO ) {
-                return new CIAPage(pageNo*PAGE_SIZE,ciaa,ciab);
+                return new CIAPage(pageNo*PAGE_SIZE,ciaa,ciab,statistics);
             }
             // ROM
             if ( pageNo >= firstRomPageNo && pageNo <= lastRomPageNo) {
@@ -181,7 +283,7 @@ FC0000-FFFFFF 256 KB -- Kickstart ROM
             }
             // custom chips
             if ( pageNo >= FIRST_CUSTOM_CHIP_PAGENO && pageNo <= LAST_CUSTOM_CHIP_PAGENO) {
-                return new CustomChipPage(pageNo*PAGE_SIZE, blitter, video, irqController);
+                return new CustomChipPage(pageNo*PAGE_SIZE, blitter, video, paula, diskController, irqController, statistics);
             }
             return AbsentPage.SINGLETON;
         }
@@ -272,10 +374,31 @@ FC0000-FFFFFF 256 KB -- Kickstart ROM
         }
     }
 
+    /**
+     * Returns the number of page faults since the last reset.
+     *
+     * @return
+     */
+    public int getFaultCount() {
+        return faultCount;
+    }
+
     public int getPageSize() {
         return PAGE_SIZE;
     }
 
+    /**
+     * Returns the memory access statistics.
+     *
+     * Statistics are only collected while {@link MemoryAccessStatistics#enabled} is set.
+     *
+     * @return
+     */
+    public MemoryAccessStatistics getStatistics()
+    {
+        return faultHandler.getStatistics();
+    }
+
     public void reset()
     {
         LOG.info( "MMU reset()." );
@@ -288,4 +411,15 @@ FC0000-FFFFFF 256 KB -- Kickstart ROM
     {
         faultHandler.tick();
     }
+
+    /**
+     * Ticks all chips.
+     *
+     * @param sampled whether to attribute the host time spent to the individual chips
+     * @see PageFaultHandler#tick(boolean)
+     */
+    public void tick(boolean sampled)
+    {
+        faultHandler.tick( sampled );
+    }
 }
\ No newline at end of file
@@ -64,9 +64,11 @@ public class Memory
 
     public final MMU mmu;
     public final MemoryBreakpoints breakpoints = new MemoryBreakpoints();
+    public final MemoryAccessStatistics statistics;
 
     public Memory(MMU mmu) {
         this.mmu = mmu;
+        this.statistics = mmu.getStatistics();
     }
 
     public void bulkWrite(int startAddress,byte[] data,int offset,int count)
@@ -106,6 +108,9 @@ public class Memory
         final int p0 = mmu.getPageNo( address );
         final MemoryPage page = mmu.getPage( p0 );
         final int offset = mmu.getOffsetInPage( address );
+        if ( statistics.enabled ) {
+            statistics.pageRead( p0 );
+        }
 
         // since MMU.PAGE_SIZE always needs to be a multiple of 2
         // and 68000 does not allow word/long accesses on odd
@@ -115,6 +120,27 @@ public class Memory
         return page.readWord(offset);
     }
 
+    /**
+     * Fetch an instruction word.
+     *
+     * Behaves exactly like {@link #readWordNoCheck(int)} but gets
+     * accounted as an instruction fetch in the {@link MemoryAccessStatistics}.
+     *
+     * @param address
+     * @return
+     */
+    public short fetchWordNoCheck(int address) // return type NEEDS to be short, used for implicit sign extension 16 bits -> 32 bits when assigned to int later on
+    {
+        final int p0 = mmu.getPageNo( address );
+        final MemoryPage page = mmu.getPage( p0 );
+        final int offset = mmu.getOffsetInPage( address );
+        if ( statistics.enabled ) {
+            statistics.pageFetch( p0 );
+        }
+        breakpoints.checkRead( address,address+2 );
+        return page.readWord(offset);
+    }
+
     public short readWordNoCheckNoSideEffects(int address) // return type NEEDS to be short, used for implicit sign extension 16 bits -> 32 bits when assigned to int later on
     {
         final int p0 = mmu.getPageNo( address );
@@ -137,6 +163,9 @@ public class Memory
         final MemoryPage page = mmu.getPage( p0 );
         checkPageWriteable(page,p0);
         final int offset = mmu.getOffsetInPage( address );
+        if ( statistics.enabled ) {
+            statistics.pageWrite( p0 );
+        }
         // since MMU.PAGE_SIZE always needs to be a multiple of 2
         // and 68000 does not allow word/long accesses on odd
         // addresses we know that we can never cross
@@ -157,6 +186,9 @@ public class Memory
     {
         final int pageNo = mmu.getPageNo( address );
         final int offset = mmu.getOffsetInPage( address );
+        if ( statistics.enabled ) {
+            statistics.pageRead( pageNo );
+        }
         breakpoints.checkRead( address,address+1 );
         return mmu.getPage( pageNo ).readByte( offset );
     }
@@ -174,6 +206,9 @@ public class Memory
         final int pageNo = mmu.getPageNo( address );
         final MemoryPage page = mmu.getPage( pageNo );
         checkPageWriteable( page, pageNo );
+        if ( statistics.enabled ) {
+            statistics.pageWrite( pageNo );
+        }
         page.writeByte( offset, value);
     }
 
@@ -0,0 +1,121 @@
+package de.codesourcery.m68k.emulator.memory;
+
+import java.util.Arrays;
+
+/**
+ * Optional access counters for the memory subsystem.
+ *
+ * Counts reads, writes and instruction fetches per {@link MMU} page
+ * as well as reads/writes per custom chip and CIA register.
+ *
+ * All counters are plain <code>long</code> arrays that are only
+ * incremented when {@link #enabled} is set, so the only cost while
+ * disabled is a single field check per memory access.
+ *
+ * Counters are updated by the emulator thread without any synchronization,
+ * use {@link #copyTo(MemoryAccessStatistics)} from inside the emulator
+ * thread to get a consistent snapshot.
+ *
+ * @author tobias.gierke@code-sourcery.de
+ */
+public final class MemoryAccessStatistics
+{
+    /**
+     * Number of pages tracked (the 68000 only has a 24-bit address bus).
+     */
+    public static final int PAGE_COUNT = 0x1000000 / MMU.PAGE_SIZE;
+
+    private static final int PAGE_MASK = PAGE_COUNT-1;
+
+    /**
+     * Number of (word-sized) custom chip registers tracked ($DFF000 - $DFF1FE).
+     */
+    public static final int CUSTOM_CHIP_REGISTER_COUNT = 256;
+
+    /**
+     * Number of registers per CIA.
+     */
+    public static final int CIA_REGISTER_COUNT = 16;
+
+    public boolean enabled;
+
+    public final long[] pageReads = new long[PAGE_COUNT];
+    public final long[] pageWrites = new long[PAGE_COUNT];
+    public final long[] pageFetches = new long[PAGE_COUNT];
+
+    // indexed by (offset & 0x1ff) >>> 1
+    public final long[] customChipReads = new long[CUSTOM_CHIP_REGISTER_COUNT];
+    public final long[] customChipWrites = new long[CUSTOM_CHIP_REGISTER_COUNT];
+
+    public final long[] ciaaReads = new long[CIA_REGISTER_COUNT];
+    public final long[] ciaaWrites = new long[CIA_REGISTER_COUNT];
+    public final long[] ciabReads = new long[CIA_REGISTER_COUNT];
+    public final long[] ciabWrites = new long[CIA_REGISTER_COUNT];
+
+    public void pageRead(int pageNo) {
+        pageReads[pageNo & PAGE_MASK]++;
+    }
+
+    public void pageWrite(int pageNo) {
+        pageWrites[pageNo & PAGE_MASK]++;
+    }
+
+    public void pageFetch(int pageNo) {
+        pageFetches[pageNo & PAGE_MASK]++;
+    }
+
+    public void customChipRead(int offset) {
+        customChipReads[(offset & 0x1ff) >>> 1]++;
+    }
+
+    public void customChipWrite(int offset) {
+        customChipWrites[(offset & 0x1ff) >>> 1]++;
+    }
+
+    /**
+     * Returns the total number of accesses (reads+writes+fetches) for a given page.
+     *
+     * @param pageNo
+     * @return
+     */
+    public long getTotalAccesses(int pageNo)
+    {
+        final int idx = pageNo & PAGE_MASK;
+        return pageReads[idx] + pageWrites[idx] + pageFetches[idx];
+    }
+
+    /**
+     * Resets all counters to zero.
+     */
+    public void reset()
+    {
+        Arrays.fill(pageReads,0);
+        Arrays.fill(pageWrites,0);
+        Arrays.fill(pageFetches,0);
+        Arrays.fill(customChipReads,0);
+        Arrays.fill(customChipWrites,0);
+        Arrays.fill(ciaaReads,0);
+        Arrays.fill(ciaaWrites,0);
+        Arrays.fill(ciabReads,0);
+        Arrays.fill(ciabWrites,0);
+    }
+
+    /**
+     * Copies all counters (and the enabled flag) into another instance.
+     *
+     * @param other
+     */
+    public void copyTo(MemoryAccessStatistics other)
+    {
+        other.enabled = this.enabled;
+        System.arraycopy(pageReads,0,other.pageReads,0,PAGE_COUNT);
+        System.arraycopy(pageWrites,0,other.pageWrites,0,PAGE_COUNT);
+        System.arraycopy(pageFetches,0,other.pageFetches,0,PAGE_COUNT);
+        System.arraycopy(customChipReads,0,other.customChipReads,0,CUSTOM_CHIP_REGISTER_COUNT);
+        System.arraycopy(customChipWrites,0,other.customChipWrites,0,CUSTOM_CHIP_REGISTER_COUNT);
+        System.arraycopy(ciaaReads,0,other.ciaaReads,0,CIA_REGISTER_COUNT);
+        System.arraycopy(ciaaWrites,0,other.ciaaWrites,0,CIA_REGISTER_COUNT);
+        System.arraycopy(ciabReads,0,other.ciabReads,0,CIA_REGISTER_COUNT);
+        System.arraycopy(ciabWrites,0,other.ciabWrites,0,CIA_REGISTER_COUNT);
+    }
+}
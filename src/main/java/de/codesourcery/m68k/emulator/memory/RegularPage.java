@@ -9,7 +9,17 @@ import de.codesourcery.m68k.emulator.exceptions.MemoryAccessException;
  */
 public class RegularPage extends MemoryPage
 {
-    private final byte[] data;
+    final byte[] data; // package-private so DMA can access it directly
+
+    /*
+     * Range of offsets [watchStart,watchEnd) holding compiled copper lists,
+     * only writes to this range increment modificationCount.
+     */
+    private int watchStart;
+    private int watchEnd;
+
+    // used to detect changes to compiled copper lists
+    int modificationCount;
 
     public RegularPage(int sizeInBytes)
     {
@@ -32,5 +42,45 @@ public class RegularPage extends MemoryPage
     public void writeByte(int offset, int value) throws MemoryAccessException
     {
         data[offset] = (byte) value;
+        written( offset );
+    }
+
+    /**
+     * Invoked after the byte at a given offset has been written.
+     *
+     * @param offset
+     */
+    void written(int offset)
+    {
+        if ( offset >= watchStart && offset < watchEnd ) {
+            modificationCount++;
+        }
+    }
+
+    /**
+     * Adds a range of offsets to watch for writes.
+     *
+     * @param start first offset (inclusive)
+     * @param end last offset (exclusive)
+     */
+    void watch(int start,int end)
+    {
+        if ( watchStart == watchEnd ) {
+            watchStart = start;
+            watchEnd = end;
+        } else {
+            watchStart = Math.min( watchStart, start );
+            watchEnd = Math.max( watchEnd, end );
+        }
+    }
+
+    /**
+     * Stops watching for writes, invalidating everything that
+     * has been watching this page so far.
+     */
+    void unwatch()
+    {
+        watchStart = watchEnd = 0;
+        modificationCount++;
     }
 }
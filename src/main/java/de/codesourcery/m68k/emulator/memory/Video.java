@@ -5,12 +5,17 @@ import de.codesourcery.m68k.disassembler.RegisterDescription;
 import de.codesourcery.m68k.emulator.Amiga;
 import de.codesourcery.m68k.emulator.chips.IRQController;
 import de.codesourcery.m68k.emulator.exceptions.MemoryAccessException;
+import de.codesourcery.m68k.emulator.metrics.FrameEvent;
+import de.codesourcery.m68k.emulator.metrics.HostTimeProfiler;
 import de.codesourcery.m68k.utils.DeduplicatingLogger;
 import de.codesourcery.m68k.utils.Misc;
+import gnu.trove.map.hash.TIntObjectHashMap;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.util.Arrays;
+import java.util.function.IntConsumer;
+import java.util.function.IntSupplier;
 
 public class Video extends MemoryPage
 {
@@ -21,6 +26,11 @@ public class Video extends MemoryPage
 
     public static final DeduplicatingLogger LOG2 = new DeduplicatingLogger(LOG);
 
+    /**
+     * Number of (word-sized) custom chip registers ($DFF000 - $DFF1FE).
+     */
+    public static final int REGISTER_COUNT = 256;
+
     /* Agnus's timings are measured in "color clocks" of 280 ns.
      * This is equivalent to two low resolution (140 ns) pixels or
      * four high resolution (70 ns) pixels.
@@ -232,10 +242,185 @@ See http://amigadev.elowar.com/read/ADCD.../node004C.html
      */
     private int longLine; // LOL = Long line bit. When low, it indicates short raster line.
 
+    // register handlers, indexed by (offset & 0x1ff) >>> 1 ; null entries are not handled by this chip
+    private final IntConsumer[] wordWriteHandlers = new IntConsumer[ REGISTER_COUNT ];
+    private final IntSupplier[] wordReadHandlers = new IntSupplier[ REGISTER_COUNT ];
+    // same as wordReadHandlers but without side-effects (for debuggers, memory views etc.)
+    private final IntSupplier[] wordPeekHandlers = new IntSupplier[ REGISTER_COUNT ];
+
+    /*
+     * Planar-to-chunky conversion table.
+     *
+     * Maps a byte of bitplane data to 8 pixels, one byte per pixel with the
+     * left-most pixel in the most significant byte. Each pixel byte is either 0 or 1,
+     * so expansions of up to 8 bitplanes can be ORed together after shifting
+     * by the bitplane number.
+     */
+    private static final long[] PLANAR_TO_CHUNKY = new long[256];
+
+    static
+    {
+        for ( int i = 0 ; i < 256 ; i++ )
+        {
+            long value = 0;
+            for ( int bit = 7 ; bit >= 0 ; bit-- )
+            {
+                value <<= 8;
+                if ( (i & (1<<bit)) != 0 ) {
+                    value |= 1;
+                }
+            }
+            PLANAR_TO_CHUNKY[i] = value;
+        }
+    }
+
+    // maps 12-bit Amiga colors to 24-bit RGB
+    private static final int[] RGB12_TO_RGB24 = new int[4096];
+
+    static
+    {
+        for ( int color = 0 ; color < 4096 ; color++ )
+        {
+            final int r = ((color >> 8) & 0b1111); // 0..15
+            final int g = ((color >> 4) & 0b1111);
+            final int b = ((color     ) & 0b1111);
+            RGB12_TO_RGB24[color] = (r << 4) << 16 | (g << 4) << 8 | (b << 4);
+        }
+    }
+
+    /*
+     * Dual playfield lookup table, maps
+     *
+     * (PF2PRI ? 64 : 0) + (6-bit bitplane color index)
+     *
+     * to the color register that ends up being displayed.
+     */
+    private static final byte[] DUAL_PLAYFIELD_COLORS = new byte[128];
+
+    static
+    {
+        for ( int idx = 0 ; idx < 64 ; idx++ )
+        {
+            // playfield 1 = bitplanes 1,3,5 , playfield 2 = bitplanes 2,4,6
+            final int pf1 = (idx & 1) | ((idx >>> 1) & 2) | ((idx >>> 2) & 4);
+            final int pf2 = ((idx >>> 1) & 1) | ((idx >>> 2) & 2) | ((idx >>> 3) & 4);
+            final int pf1Color = pf1; // COLOR00-07
+            final int pf2Color = pf2 == 0 ? 0 : 8 + pf2; // COLOR08-15
+
+            // PF1 in front of PF2
+            DUAL_PLAYFIELD_COLORS[idx] = (byte) (pf1 != 0 ? pf1Color : pf2Color);
+            // PF2 in front of PF1
+            DUAL_PLAYFIELD_COLORS[64 + idx] = (byte) (pf2 != 0 ? pf2Color : pf1Color);
+        }
+    }
+
+    /*
+     * Playfield opacity lookup tables, map a 6-bit bitplane color index to
+     *
+     * bit 0 - playfield 1 is not transparent
+     * bit 1 - playfield 2 is not transparent
+     *
+     * In single playfield mode the whole playfield is treated as playfield 2 when
+     * it comes to sprite priorities (BPLCON2 PF2P bits).
+     */
+    private static final byte[] SINGLE_PLAYFIELD_OPACITY = new byte[64];
+    private static final byte[] DUAL_PLAYFIELD_OPACITY = new byte[64];
+
+    /*
+     * Sprite/sprite collision bits in CLXDAT, indexed by
+     * bit mask of the sprite groups (0/1, 2/3, 4/5, 6/7) present at a pixel.
+     */
+    private static final int[] SPRITE_COLLISIONS = new int[16];
+
+    static
+    {
+        for ( int idx = 0 ; idx < 64 ; idx++ )
+        {
+            SINGLE_PLAYFIELD_OPACITY[idx] = (byte) (idx != 0 ? 0b10 : 0);
+            DUAL_PLAYFIELD_OPACITY[idx] = (byte) ( ((idx & 0b010101) != 0 ? 0b01 : 0) | ((idx & 0b101010) != 0 ? 0b10 : 0) );
+        }
+        // CLXDAT bits 9-14
+        final int[][] groupPairs = { {0,1},{0,2},{0,3},{1,2},{1,3},{2,3} };
+        for ( int groups = 0 ; groups < 16 ; groups++ )
+        {
+            int bits = 0;
+            for ( int i = 0 ; i < groupPairs.length ; i++ )
+            {
+                final int mask = 1 << groupPairs[i][0] | 1 << groupPairs[i][1];
+                if ( (groups & mask) == mask ) {
+                    bits |= 1 << (9+i);
+                }
+            }
+            SPRITE_COLLISIONS[groups] = bits;
+        }
+    }
+
+    /**
+     * Horizontal sprite position that corresponds to the left-most display pixel
+     * (default DIWSTRT, display window is not emulated yet).
+     */
+    private static final int SPRITE_X_OFFSET = 0x81;
+
+    public final Sprite[] sprites = new Sprite[8];
+
+    public int clxcon;
+    public int clxdat;
+
+    // sprite collision groups present per pixel of the line being rendered
+    private final byte[] spriteGroups = new byte[ 640 ];
+    // whether a sprite pair is in front of a playfield, indexed by (pair*4) + playfield opacity bits
+    private final boolean[] spriteVisible = new boolean[ 16 ];
+
+    // per-bitplane bits fetched so far in the current line, used for horizontal scrolling
+    private final long[] scrollWindows = new long[6];
+
+    // color indices of the line currently being converted, one byte per pixel
+    private final byte[] lineIndices = new byte[ 640 ];
+
+    // RGB palette derived from the color registers, 32 regular + 32 half-bright (EHB) colors
+    private final int[] rgbColors = new int[64];
+    // set whenever a color register gets written
+    private boolean paletteDirty = true;
+
+    // scratch bitplane pointers used during conversion
+    private final int[] displayPtrs = new int[6];
+
+    // beam-synchronous rendering
+    private int[] renderBuffer = new int[0]; // frame currently being rendered
+    private int renderWidth;
+    private int renderHeight;
+    private int[] frameBuffer = new int[0]; // last completed frame
+    private int frameWidth;
+    private int frameHeight;
+    private int frameCounter;
+    private int renderEveryNthFrame = 1;
+    private int framesUntilRender;
+    private boolean skipFrame; // true if the current frame is not rendered
+    private FrameEvent frameEvent; // JFR event for the current frame, null if JFR recording is disabled
+    private HostTimeProfiler profiler; // only set while a tick is being timed
+
+    // number of frames emulated so far (including skipped ones), not cleared on reset
+    public long totalFrameCount;
+    private final int[] linePtrs = new int[6]; // bitplane pointers for the next line to be rendered
+    private int bplPointersChanged; // bit mask of bitplane pointers written since the last line got rendered
+
+    // last chip RAM page accessed by readChipWord()
+    private int chipPageNo = -1;
+    private MemoryPage chipPage;
+    private byte[] chipPageData;
+
+    // number of accesses to registers not handled by this chip, indexed by (offset & 0x1ff) >>> 1
+    public final long[] unhandledReads = new long[ REGISTER_COUNT ];
+    public final long[] unhandledWrites = new long[ REGISTER_COUNT ];
+
     public Video(Amiga amiga,Blitter blitter,DMAController dmaController) {
         this.amiga = amiga;
         this.blitter = blitter;
         this.dmaController = dmaController;
+        for ( int i = 0 ; i < sprites.length ; i++ ) {
+            sprites[i] = new Sprite( i );
+        }
+        initRegisterHandlers();
         reset();
     }
 
@@ -253,122 +438,149 @@ See http://amigadev.elowar.com/read/ADCD.../node004C.html
         bplcon3=0;
         Arrays.fill(bplPointers,0);
         Arrays.fill(colors,0);
+        paletteDirty = true;
         Arrays.fill(bpldat,0);
         bpl1mod = 0;
         bpl2mod = 0;
         vpos = 0;
+        hpos = 0;
         longFrame = 0;
         longLine = amiga.isPAL() ? 0b1000_0000 : 0; // LOL = Long line bit. When low, it indicates short raster line.
 
         copper.reset();
+
+        for ( Sprite sprite : sprites ) {
+            sprite.reset();
+        }
+        clxcon = 0;
+        clxdat = 0;
+
+        frameCounter = 0;
+        framesUntilRender = 0;
+        startFrame();
+        if ( frameBuffer.length != renderBuffer.length ) {
+            frameBuffer = new int[ renderBuffer.length ];
+        } else {
+            Arrays.fill( frameBuffer, 0 );
+        }
+        frameWidth = renderWidth;
+        frameHeight = renderHeight;
     }
 
     @Override
     public byte readByte(int offset)
     {
-        return readByteNoSideEffects(offset);
+        final IntSupplier handler = wordReadHandlers[ (offset & 0x1ff) >>> 1 ];
+        if ( handler == null ) {
+            unhandledRead( offset );
+            return 0;
+        }
+        final int value = handler.getAsInt();
+        return (offset & 1) == 0 ? hi(value) : lo(value);
     }
 
     @Override
     public byte readByteNoSideEffects(int offset)
     {
-        switch( offset ) {
-            case 0x100: return hi(bplcon0);
-            case 0x101: return lo(bplcon0);
-            case 0x102: return hi(bplcon1);
-            case 0x103: return lo(bplcon1);
-            case 0x104: return hi(bplcon2);
-            case 0x105: return lo(bplcon2);
-            case 0x106: return hi(bplcon3);
-            case 0x107: return lo(bplcon3);
-            case 0x108: return hi(bpl1mod); // Bitplane modulo (odd planes)
-            case 0x109: return lo(bpl1mod);
-            case 0x10a: return hi(bpl2mod); // Bitplane modulo (even planes)
-            case 0x10b: return lo(bpl2mod);
-        }
-        // color registers
-        if ( offset >= 0x180 && offset <= 0x1bf) {
-            final int idx = (offset-0x180)>>>1;
-            final int color = colors[idx];
-            return (offset&1)== 0 ? hi(color) : lo(color);
+        final IntSupplier handler = wordPeekHandlers[ (offset & 0x1ff) >>> 1 ];
+        if ( handler == null ) {
+            return 0;
         }
-        // bitplane pointers
-        if ( offset >= 0x0e2 && offset <= 0x0f7) {
-            final int idx = (offset-0x0e2)>>>2;
-            final int ptr = bplPointers[idx];
-            switch((offset-0x0e2) & 0b11) {
-                case 0b00: return hi(ptr>>16);
-                case 0b01: return lo(ptr>>16);
-                case 0b10: return hi(ptr);
-                case 0b11: return lo(ptr);
-                default:
-                    throw new RuntimeException("Unreachable code reached");
-            }
-        }
-        // bit plane data registers
-        if ( offset >= 0x110 && offset <= 0x11b ) {
-            final int idx = (offset-0x110)>>>1;
-            int value = bpldat[idx];
-            if ( (offset & 1 ) == 0 ) {
-                return hi(value);
-            }
-            return lo(value);
+        final int value = handler.getAsInt();
+        return (offset & 1) == 0 ? hi(value) : lo(value);
+    }
+
+    @Override
+    public short readWord(int offset)
+    {
+        final IntSupplier handler = wordReadHandlers[ (offset & 0x1ff) >>> 1 ];
+        if ( handler == null ) {
+            unhandledRead( offset );
+            return 0;
         }
-        LOG.info( "VIDEO: Unhandled read from offset "+offset );
-        return 0;
+        return (short) handler.getAsInt();
     }
 
     @Override
     public void writeByte(int offset, int value) throws MemoryAccessException
     {
-        switch( offset ) {
-            case 0x100: bplcon0 = chghi(bplcon0,value); return;
-            case 0x101: bplcon0 = chglo(bplcon0,value); return;
-            case 0x102: bplcon1 = chghi(bplcon1,value); return;
-            case 0x103: bplcon1 = chglo(bplcon1,value); return;
-            case 0x104: bplcon2 = chghi(bplcon2,value); return;
-            case 0x105: bplcon2 = chglo(bplcon2,value); return;
-            case 0x106: bplcon3 = chghi(bplcon3,value); return;
-            case 0x107: bplcon3 = chglo(bplcon3,value); return;
-            case 0x108: bpl1mod = chglo(bpl1mod,value); return;
-            case 0x109: bpl1mod = chglo(bpl1mod,value); return;
-            case 0x10a: bpl2mod = chglo(bpl2mod,value); return;
-            case 0x10b: bpl2mod = chglo(bpl2mod,value); return;
-        }
-        // color registers
-        if ( offset >= 0x180 && offset <= 0x1bf) {
-            final int idx = (offset-0x180)>>>1;
-            colors[idx] = (offset&1) == 0 ? chghi( colors[idx],value) : chglo( colors[idx],value);
+        final int regNum = (offset & 0x1ff) >>> 1;
+        final IntConsumer handler = wordWriteHandlers[ regNum ];
+        if ( handler == null ) {
+            unhandledWrite( offset, value );
             return;
         }
-        // bitplane pointers**
-        if ( offset >= 0x0e2 && offset <= 0x0f7) {
-            final int idx = (offset-0x0e2)>>>2;
-            switch((offset-0x0e2) & 0b11) {
-                case 0b00: bplPointers[idx] = (bplPointers[idx] & 0x00ffffff) | ((value<<24) & 0xff000000); break;
-                case 0b01: bplPointers[idx] = (bplPointers[idx] & 0xff00ffff) | ((value<<16) & 0x00ff0000); break;
-                case 0b10: bplPointers[idx] = (bplPointers[idx] & 0xffff00ff) | ((value<< 8) & 0x0000ff00); break;
-                case 0b11: bplPointers[idx] = (bplPointers[idx] & 0xffffff00) | ((value    ) & 0x000000ff); break;
-                default:
-                    throw new RuntimeException("Unreachable code reached");
-            }
+        // merge with current register value (write-only registers read as zero)
+        final IntSupplier reader = wordPeekHandlers[ regNum ];
+        final int current = reader == null ? 0 : reader.getAsInt();
+        handler.accept( (offset & 1) == 0 ? chghi( current, value ) : chglo( current, value ) );
+    }
+
+    @Override
+    public void writeWord(int offset, int value) throws MemoryAccessException
+    {
+        final IntConsumer handler = wordWriteHandlers[ (offset & 0x1ff) >>> 1 ];
+        if ( handler == null ) {
+            unhandledWrite( offset, value );
             return;
         }
-        // bit plane data registers
-        if ( offset >= 0x110 && offset <= 0x11b ) {
-            final int idx = (offset-0x110)>>>1;
-            if ( (offset &1) == 0 ) {
-                bpldat[idx] = chghi(bpldat[idx],value);
-            } else {
-                bpldat[idx] = chglo(bpldat[idx],value);
-            }
-            return;
+        handler.accept( value );
+    }
+
+    /**
+     * Returns the handler for word-sized writes to a given register.
+     *
+     * @param offset register offset relative to $DFF000
+     * @return handler or <code>null</code> if this register is not handled by the video chip
+     */
+    public IntConsumer getWordWriteHandler(int offset) {
+        return wordWriteHandlers[ (offset & 0x1ff) >>> 1 ];
+    }
+
+    /**
+     * Returns the handler for word-sized reads from a given register.
+     *
+     * @param offset register offset relative to $DFF000
+     * @return handler or <code>null</code> if this register is not handled by the video chip
+     */
+    public IntSupplier getWordReadHandler(int offset) {
+        return wordReadHandlers[ (offset & 0x1ff) >>> 1 ];
+    }
+
+    /**
+     * Returns the handler for word-sized reads from a given register that does not
+     * have any side-effects (like clearing CLXDAT).
+     *
+     * @param offset register offset relative to $DFF000
+     * @return handler or <code>null</code> if this register is not handled by the video chip
+     */
+    public IntSupplier getWordPeekHandler(int offset) {
+        return wordPeekHandlers[ (offset & 0x1ff) >>> 1 ];
+    }
+
+    private void unhandledRead(int offset)
+    {
+        if ( unhandledReads[ (offset & 0x1ff) >>> 1 ]++ == 0 ) {
+            LOG.info( "VIDEO: Unhandled read from "+registerName( offset )+" (further reads are only counted)" );
         }
-        LOG.info( "VIDEO: Unhandled write " + Misc.hex( value ) + " (" + Misc.binary16Bit( value ) + ") to offset " + offset );
     }
 
-    @Override
-    public void writeWord(int offset, int value) throws MemoryAccessException
+    private void unhandledWrite(int offset,int value)
+    {
+        if ( unhandledWrites[ (offset & 0x1ff) >>> 1 ]++ == 0 && LOG.isInfoEnabled() ) {
+            LOG.info( "VIDEO: Unhandled write " + Misc.hex( value ) + " (" + Misc.binary16Bit( value ) + ") to "+
+                    registerName( offset )+" (further writes are only counted)" );
+        }
+    }
+
+    private static String registerName(int offset)
+    {
+        final int address = 0xdff000 + (offset & 0x1fe);
+        final RegisterDescription desc = REGISTER_RESOLVER.resolve( address );
+        return (desc == null ? "" : desc.name) + " ("+Misc.hex( address )+")";
+    }
+
+    private void initRegisterHandlers()
     {
         /*
          * COPPER:
@@ -382,70 +594,112 @@ See http://amigadev.elowar.com/read/ADCD.../node004C.html
          * COPJMP2      08A  S   A       Coprocessor restart at second location
          * COPINS       08C  W   A       Coprocessor instruction fetch identify
          */
-        switch( offset )
+        onWrite( 0x2e, value -> copper.copperDanger = (value & 0b10) != 0 ); // COPCON, bit 1 = Copper Danger bit
+        onWrite( 0x80, value -> copper.list1Addr = (copper.list1Addr & 0x0000ffff) | ((value & 0xffff) << 16) ); // COP1LCH
+        onWrite( 0x82, value -> copper.list1Addr = (copper.list1Addr & 0xffff0000) | (value & 0xffff) ); // COP1LCL
+        onWrite( 0x84, value -> copper.list2Addr = (copper.list2Addr & 0x0000ffff) | ((value & 0xffff) << 16) ); // COP2LCH
+        onWrite( 0x86, value -> copper.list2Addr = (copper.list2Addr & 0xffff0000) | (value & 0xffff) ); // COP2LCL
+        onWrite( 0x88, value -> copper.jump( copper.list1Addr ) ); // COPJMP1
+        onWrite( 0x8a, value -> copper.jump( copper.list2Addr ) ); // COPJMP2
+        onWrite( 0x8c, value -> {} ); // COPINS, TODO: Does writing here have any effect ?
+
+        // bitplane pointers
+        for ( int i = 0 ; i < 6 ; i++ )
         {
-            case 0x2e: // COPCON
-                copper.copperDanger = (value & 0b10) != 0; // bit 1 = Copper Danger bit
-                return;
-            case 0x80: // COP1LCH
-                copper.list1Addr = (copper.list1Addr & 0x0000ffff) | ((value & 0xffff) << 16);
-                return;
-            case 0x82: // COP1LCL
-                copper.list1Addr = (copper.list1Addr & 0xffff0000) | (value & 0xffff);
-                return;
-            case 0x84: // COP2LCH
-                copper.list2Addr = (copper.list2Addr & 0x0000ffff) | ((value & 0xffff) << 16);
-                return;
-            case 0x86: // COP2LCL
-                copper.list2Addr = (copper.list2Addr & 0xffff0000) | (value & 0xffff);
-                return;
-            case 0x88: // COPJMP1
-                copper.pc = copper.list1Addr;
-                return;
-            case 0x8a: // COPJMP2
-                copper.pc = copper.list2Addr;
-                return;
-            case 0x8c: // COPINS
-                // TODO: Does writing here have any effect ?
-                return;
-            case 0x100: bplcon0 = value; return;
-            case 0x102: bplcon1 = value; return;
-            case 0x104: bplcon2 = value; return;
-            case 0x106: bplcon3 = value; return;
-            case 0x108: bpl1mod = value & 0xffff; return;
-            case 0x10a: bpl2mod = value & 0xffff; return;
-        }
-        // color registers
-        if ( offset >= 0x180 && offset <= 0x1bf) {
-            final int idx = (offset-0x180)>>>1;
-            colors[idx] = value;
-            return;
-        }
-        // bitplane pointers**
-        if ( offset >= 0x0e2 && offset <= 0x0f7) {
-            final int idx = (offset-0x0e2)>>>2;
-            switch((offset-0x0e2) & 0b10) {
-                case 0b00: bplPointers[idx] = (bplPointers[idx] & 0x0000ffff) | ((value<<16) & 0xffff0000); break;
-                case 0b10: bplPointers[idx] = (bplPointers[idx] & 0xffff0000) | ((value    ) & 0x0000ffff); break;
-                default:
-                    throw new RuntimeException("Unreachable code reached");
-            }
-            return;
+            final int idx = i;
+            onWrite( BPL1PTH + i*4, value ->
+            {
+                bplPointers[idx] = (bplPointers[idx] & 0x0000ffff) | ((value<<16) & 0xffff0000);
+                bplPointersChanged |= 1<<idx;
+            });
+            onRead(  BPL1PTH + i*4, () -> bplPointers[idx] >>> 16 );
+            onWrite( BPL1PTL + i*4, value ->
+            {
+                bplPointers[idx] = (bplPointers[idx] & 0xffff0000) | (value & 0x0000ffff);
+                bplPointersChanged |= 1<<idx;
+            });
+            onRead(  BPL1PTL + i*4, () -> bplPointers[idx] & 0xffff );
         }
+
+        onWrite( BPLCON0, value -> bplcon0 = value );
+        onRead(  BPLCON0, () -> bplcon0 );
+        onWrite( BPLCON1, value -> bplcon1 = value );
+        onRead(  BPLCON1, () -> bplcon1 );
+        onWrite( BPLCON2, value -> bplcon2 = value );
+        onRead(  BPLCON2, () -> bplcon2 );
+        onWrite( BPLCON3, value -> bplcon3 = value );
+        onRead(  BPLCON3, () -> bplcon3 );
+        onWrite( BPL1MOD, value -> bpl1mod = value & 0xffff );
+        onRead(  BPL1MOD, () -> bpl1mod );
+        onWrite( BPL2MOD, value -> bpl2mod = value & 0xffff );
+        onRead(  BPL2MOD, () -> bpl2mod );
+
         // bit plane data registers
-        if ( offset >= 0x110 && offset <= 0x11b ) {
-            final int idx = (offset-0x110)>>>1;
-            bpldat[idx] = value;
-            return;
+        for ( int i = 0 ; i < 6 ; i++ )
+        {
+            final int idx = i;
+            onWrite( BPL1DAT + i*2, value -> bpldat[idx] = value );
+            onRead(  BPL1DAT + i*2, () -> bpldat[idx] );
+        }
+
+        // sprites
+        for ( int i = 0 ; i < 8 ; i++ )
+        {
+            final Sprite sprite = sprites[i];
+            onWrite( SPR0PTH + i*4, value ->
+            {
+                sprite.pointer = (sprite.pointer & 0x0000ffff) | ((value<<16) & 0xffff0000);
+                sprite.restartDMA();
+            });
+            onRead( SPR0PTH + i*4, () -> sprite.pointer >>> 16 );
+            onWrite( SPR0PTL + i*4, value ->
+            {
+                sprite.pointer = (sprite.pointer & 0xffff0000) | (value & 0x0000ffff);
+                sprite.restartDMA();
+            });
+            onRead( SPR0PTL + i*4, () -> sprite.pointer & 0xffff );
+            onWrite( SPR0POS  + i*8, sprite::writePOS );
+            onWrite( SPR0CTL  + i*8, sprite::writeCTL );
+            onWrite( SPR0DATA + i*8, sprite::writeDATA );
+            onWrite( SPR0DATB + i*8, sprite::writeDATB );
         }
-        if ( LOG.isInfoEnabled() )
+
+        // collision detection
+        onWrite( 0x098, value -> clxcon = value & 0xffff ); // CLXCON
+        final IntSupplier peekCLXDAT = () -> clxdat | 0x8000; // bit 15 is unused and always reads as 1
+        onRead( 0x00e, () -> // CLXDAT, cleared on read
+        {
+            final int result = peekCLXDAT.getAsInt();
+            clxdat = 0;
+            return result;
+        }, peekCLXDAT );
+
+        // color registers
+        for ( int i = 0 ; i < 32 ; i++ )
         {
-            final RegisterDescription desc = REGISTER_RESOLVER.resolve( 0xdff000 + offset );
-            final String regName = (desc == null ? "" : desc.name) + " ("+Misc.hex( 0xdff000 + offset )+")";
-            LOG.info( "VIDEO: Unhandled word write " + Misc.hex( value ) + " (" + Misc.binary16Bit( value ) + ") to "+regName );
+            final int idx = i;
+            onWrite( COLOR00 + i*2, value ->
+            {
+                colors[idx] = value;
+                paletteDirty = true;
+            });
+            onRead(  COLOR00 + i*2, () -> colors[idx] );
         }
     }
 
+    private void onWrite(int offset,IntConsumer handler) {
+        wordWriteHandlers[ offset >>> 1 ] = handler;
+    }
+
+    private void onRead(int offset,IntSupplier handler) {
+        onRead( offset, handler, handler );
+    }
+
+    private void onRead(int offset,IntSupplier handler,IntSupplier peekHandler) {
+        wordReadHandlers[ offset >>> 1 ] = handler;
+        wordPeekHandlers[ offset >>> 1 ] = peekHandler;
+    }
+
     private static byte hi(int value) {
         return (byte)(value>>>8);
     }
@@ -485,6 +739,10 @@ See http://amigadev.elowar.com/read/ADCD.../node004C.html
      * Writes the current screen content as ARGB into
      * an int array.
      *
+     * Renders all lines from the current register state, mid-frame register
+     * changes are not taken into account. The beam-synchronous output
+     * is available through {@link #getFrameBuffer()}.
+     *
      * The array size needs to match the current display resolution,otherwise
      * AIOOBE will come and get you.
      *
@@ -492,12 +750,43 @@ See http://amigadev.elowar.com/read/ADCD.../node004C.html
      */
     public void convertDisplayData(int[] destination,boolean dmaEnabled)
     {
-        // TODO: Add HAM support
-        // TODO: Add support for horizontal scrolling
-        // TODO: Add support for dual playfields / playfield priorities / transparency
+        final int[] ptrs = displayPtrs;
+        System.arraycopy( bplPointers, 0, ptrs, 0, 6 );
+
+        chipPageNo = -1; // pages may have changed since the last call
+
+        final int width = getDisplayWidth();
+        for ( int y = 0, maxY = getDisplayHeight() ; y < maxY ; y++)
+        {
+            convertLine( destination, y*width, width, ptrs, dmaEnabled );
+        }
+    }
+
+    /**
+     * Converts one line of bitplane data.
+     *
+     * @param destination
+     * @param dstPtr offset of the first pixel in the destination array
+     * @param width line width in pixels
+     * @param ptrs bitplane pointers, advanced to the start of the next line (including modulo)
+     * @param dmaEnabled
+     */
+    private void convertLine(int[] destination,int dstPtr,int width,int[] ptrs,boolean dmaEnabled)
+    {
+        fetchLine( width, ptrs, dmaEnabled );
+        convertIndices( destination, dstPtr, width );
+    }
 
-        final int[] ptrs = Arrays.copyOf(bplPointers,6);
-        final int[] colorIndex = new int[16];
+    /**
+     * Fetches one line of bitplane data into {@link #lineIndices}, without
+     * producing any pixels.
+     *
+     * @param width line width in pixels
+     * @param ptrs bitplane pointers, advanced to the start of the next line (including modulo)
+     * @param dmaEnabled
+     */
+    private void fetchLine(int width,int[] ptrs,boolean dmaEnabled)
+    {
         int bitplaneCount = (bplcon0 & 0b0111_0000_0000_0000) >>> 12;
         if ( ! dmaEnabled )
         {
@@ -506,149 +795,676 @@ See http://amigadev.elowar.com/read/ADCD.../node004C.html
             bitplaneCount = 6;
         }
 
-        // convert 4-bit RGB into 8-bit
-        final boolean isEHB = isEHB();
-        final int[] rgbColors = new int[isEHB ? 64: 32];
-        for ( int i = 0 ; i < 32 ; i++)
+        fetchBitplanes( width, ptrs, bitplaneCount, dmaEnabled );
+
+        // add modulo to bitplane pointers
+        // to advance to the next line
+        final int oddMod = (short) bpl1mod;
+        final int evenMod = (short) bpl2mod;
+        if ( evenMod != 0 || oddMod != 0 )
         {
-            final int color = colors[i];
-            final int r = ((color >> 8) & 0b1111); // 0..15
-            final int g = ((color >> 4) & 0b1111);
-            final int b = ((color     ) & 0b1111);
-            rgbColors[i]    = (r << 4) << 16 | (g << 4) << 8 | (b << 4);
-            if ( isEHB ) {
-                rgbColors[16+i] = (r << 2) << 16 | (g << 2) << 8 | (b << 2);
+            ptrs[0] += oddMod;  // bitplane 1 (odd)
+            ptrs[1] += evenMod; // bitplane 2 (even)
+            ptrs[2] += oddMod;  // bitplane 3 (odd)
+            ptrs[3] += evenMod; // bitplane 4 (even)
+            ptrs[4] += oddMod;  // bitplane 5 (odd)
+            ptrs[5] += evenMod; // bitplane 6 (even)
+        }
+    }
+
+    /**
+     * Converts the color indices of the last fetched line into pixels.
+     *
+     * @param destination
+     * @param dstPtr offset of the first pixel in the destination array
+     * @param width line width in pixels
+     */
+    private void convertIndices(int[] destination,int dstPtr,int width)
+    {
+        // display mode is picked once per line
+        if ( isHAM() ) {
+            convertLineHAM( destination, dstPtr, width );
+        }
+        else
+        {
+            if ( paletteDirty ) {
+                updatePalette();
+            }
+            if ( isDualPlayfield() ) {
+                convertLineDualPlayfield( destination, dstPtr, width );
+            } else if ( isEHB() ) {
+                convertLineEHB( destination, dstPtr, width );
+            } else {
+                convertLinePalette( destination, dstPtr, width );
             }
         }
+    }
 
-        // now convert the image data
+    /**
+     * Fetches one line of bitplane data and converts it into
+     * one color index per pixel, stored in {@link #lineIndices}.
+     *
+     * @param width line width in pixels
+     * @param ptrs bitplane pointers, advanced by the number of bytes fetched
+     * @param bitplaneCount
+     * @param dmaEnabled
+     */
+    private void fetchBitplanes(int width,int[] ptrs,int bitplaneCount,boolean dmaEnabled)
+    {
+        /*
+         * Horizontal scrolling: BPLCON1 delays the odd (PF1H) and even (PF2H) bitplanes
+         * by 0-15 lo-res pixels. Words fetched for each plane get shifted in from
+         * the left, so keep the last three words per plane around.
+         */
+        final int pixelShift = isHiRes() ? 1 : 0; // delay is always specified in lo-res pixels
+        final int oddDelay = (bplcon1 & 0x0f) << pixelShift;
+        final int evenDelay = ((bplcon1 >>> 4) & 0x0f) << pixelShift;
+        final long[] windows = scrollWindows;
+        windows[0] = windows[1] = windows[2] = windows[3] = windows[4] = windows[5] = 0;
+
+        final byte[] indices = lineIndices;
         int dstPtr = 0;
-        for ( int y = 0, maxY = getDisplayHeight() ; y < maxY ; y++)
+        for (int x = 0; x < width; x+=16) // operate on words
         {
-            for (int x = 0, maxX = getDisplayWidth(); x < maxX; x+=16) // operate on words
+            // each byte of these longs holds the color index of one pixel,
+            // left-most pixel in the most significant byte
+            long pixelsHi = 0;
+            long pixelsLo = 0;
+            for ( int i = 0 ; i < bitplaneCount ; i++ )
             {
-                // reset colors as we're only going to OR '1'
-                // bits (assume that all bits are 0 at the beginning)
-                Arrays.fill(colorIndex,0);
-                for ( int i = 0 ; i < bitplaneCount ; i++ )
-                {
-                    // read 16 bits (=pixels) from the current bit plane
-                    final int data = dmaEnabled ? memory.readWord(ptrs[i]) : bpldat[i];
-
-                    // advance to next word
-                    ptrs[i] += 2;
-                    // now shift-in color idx bits starting with the MSB (left-most) one
-                    int mask = 1<<15;
-                    for ( int col = 0 ; col < 16 ; col++, mask >>>=1 ) {
-                        colorIndex[col] <<= 1;
-                        if ( (data & mask) != 0 ) {
-                            colorIndex[col] |= 1;
-                        }
-                    }
-                }
-                // now set 16 pixels in destination
-                for ( int idx = 0 ; idx < 16 ; idx++ )
+                // read 16 bits (=pixels) from the current bit plane
+                int data = dmaEnabled ? readChipWord(ptrs[i]) : bpldat[i];
+
+                // advance to next word
+                ptrs[i] += 2;
+
+                final int delay = (i & 1) == 0 ? oddDelay : evenDelay;
+                if ( delay != 0 )
                 {
-                    destination[dstPtr++] = rgbColors[colorIndex[idx]];
+                    final long window = (windows[i] << 16) | (data & 0xffff);
+                    windows[i] = window;
+                    data = (int) (window >>> delay);
                 }
+
+                // bitplane #i contributes bit #i of the color index
+                pixelsHi |= PLANAR_TO_CHUNKY[ (data >>> 8) & 0xff ] << i;
+                pixelsLo |= PLANAR_TO_CHUNKY[ data & 0xff ] << i;
             }
-            // add modulo to bitplane pointers
-            // to advance to the next line
-            final int evenMod = bpl2mod;
-            final int oddMod = bpl1mod;
-            if ( evenMod != 0 || oddMod != 0 )
-            {
-                ptrs[0] += evenMod; // even bitplane
-                ptrs[1] += oddMod;  // odd bitplane
-                ptrs[2] += evenMod; // even bitplane
-                ptrs[3] += oddMod;  // odd bitplane
-                ptrs[4] += evenMod; // even bitplane
-                ptrs[5] += oddMod;  // odd bitplane
+            for ( int shift = 56 ; shift >= 0 ; shift -= 8 ) {
+                indices[dstPtr++] = (byte) (pixelsHi >>> shift);
+            }
+            for ( int shift = 56 ; shift >= 0 ; shift -= 8 ) {
+                indices[dstPtr++] = (byte) (pixelsLo >>> shift);
             }
         }
     }
 
     /**
-     * Returns the configured display height in pixels.
-     * @return
+     * Regular (up to 32 colors) palette lookup.
      */
-    public int getDisplayHeight()
+    private void convertLinePalette(int[] destination,int dstPtr,int width)
     {
-        if ( amiga.isPAL() ) {
-            return isInterlaced() ? 512 : 256;
+        final byte[] indices = lineIndices;
+        final int[] palette = rgbColors;
+        for ( int x = 0 ; x < width ; x++ ) {
+            destination[dstPtr++] = palette[ indices[x] & 0x1f ];
         }
-        return isInterlaced() ? 400 : 200;
     }
 
     /**
-     * Ticked every 140ns (=2 hi-res pixel,1 lo-res pixel)
+     * Dual playfield, odd bitplanes form playfield 1 (COLOR00-07) and even
+     * bitplanes form playfield 2 (COLOR08-15). Priority and transparency are
+     * resolved with a single table lookup.
      */
-    public void tick()
+    private void convertLineDualPlayfield(int[] destination,int dstPtr,int width)
     {
-        if ( --ticksUntilVSync == 0 )
-        {
-            ticksUntilVSync = ticksUntilVSyncLatch;
-            copper.restart();
-            irqController.triggerIRQ( IRQController.IRQSource.VBLANK );
-        }
-        if ( dmaController.isCopperDMAEnabled() )
-        {
-            copper.tick();
+        final byte[] indices = lineIndices;
+        final int[] palette = rgbColors;
+        final int tableOffset = isPlayfield2Priority() ? 64 : 0;
+        for ( int x = 0 ; x < width ; x++ ) {
+            destination[dstPtr++] = palette[ DUAL_PLAYFIELD_COLORS[ tableOffset + (indices[x] & 0x3f) ] ];
         }
+    }
 
-        hpos++;
-        if ( hpos == 0xd8 ) { // $d8 = 216 = 8 pixel hblank + 200 pixel + 8 pixel hblank
-            hpos = 0;
+    /**
+     * Extra-Half-Brite, bitplane 6 selects the half-bright version (entries 32-63) of a color.
+     */
+    private void convertLineEHB(int[] destination,int dstPtr,int width)
+    {
+        final byte[] indices = lineIndices;
+        final int[] palette = rgbColors;
+        for ( int x = 0 ; x < width ; x++ ) {
+            destination[dstPtr++] = palette[ indices[x] & 0x3f ];
+        }
+    }
 
-            if ( amiga.isNTSC() )
+    /*
+     * Hold-And-Modify (HAM6).
+     *
+     * Bitplanes 5 and 6 select how the lower four bits are used:
+     *
+     * 00 - use lower four bits as color register index
+     * 01 - hold red+green, modify blue
+     * 10 - hold green+blue, modify red
+     * 11 - hold red+blue, modify green
+     *
+     * Each line starts with the background color (COLOR00).
+     */
+    private void convertLineHAM(int[] destination,int dstPtr,int width)
+    {
+        final byte[] indices = lineIndices;
+        final int[] colorRegs = colors;
+        int color = colorRegs[0] & 0xfff; // current color, 12-bit RGB
+        for ( int x = 0 ; x < width ; x++ )
+        {
+            final int idx = indices[x];
+            final int value = idx & 0x0f;
+            switch( (idx >>> 4) & 0b11 )
             {
-                // toggle long/short line flag, only applicable for NTSC amigas
-                longLine ^= 0b1000_0000;
+                case 0b00: color = colorRegs[ value ] & 0xfff; break;
+                case 0b01: color = (color & 0xff0) | value; break;
+                case 0b10: color = (color & 0x0ff) | (value << 8); break;
+                default:   color = (color & 0xf0f) | (value << 4);
             }
+            destination[dstPtr++] = RGB12_TO_RGB24[ color ];
+        }
+    }
 
-            vpos++;
-                /*
-    | Normal  | Interlaced
-PAL |  283    |     567
-NTSC|  241    |     483
-                 */
+    /**
+     * Returns the first raster line that is part of the display area.
+     *
+     * @return
+     */
+    private int getFirstDisplayLine() {
+        return amiga.isPAL() ? 29 : 21;
+    }
 
-            if ( isInterlaced() )
+    /**
+     * Starts rendering a new frame, picking up the current resolution
+     * and bitplane pointers.
+     */
+    private void startFrame()
+    {
+        if ( --framesUntilRender <= 0 ) {
+            framesUntilRender = renderEveryNthFrame;
+            skipFrame = false;
+        } else {
+            skipFrame = true;
+        }
+        renderWidth = getDisplayWidth();
+        renderHeight = getDisplayHeight();
+        if ( renderBuffer.length != renderWidth * renderHeight ) {
+            renderBuffer = new int[ renderWidth * renderHeight ];
+        }
+        System.arraycopy( bplPointers, 0, linePtrs, 0, 6 );
+        bplPointersChanged = 0;
+        for ( Sprite sprite : sprites ) {
+            sprite.restartDMA();
+        }
+
+        final FrameEvent event = new FrameEvent();
+        if ( event.isEnabled() )
+        {
+            event.frame = totalFrameCount;
+            event.begin();
+            frameEvent = event;
+        } else {
+            frameEvent = null;
+        }
+    }
+
+    /**
+     * Renders the raster line the beam just finished, using the register values
+     * that are current right now.
+     */
+    private void renderLine()
+    {
+        final int y = vpos - getFirstDisplayLine();
+        if ( y < 0 || y >= renderHeight ) {
+            return;
+        }
+        if ( bplPointersChanged != 0 )
+        {
+            // bitplane pointers got written (most likely by the copper), pick up the new values
+            for ( int i = 0 ; i < 6 ; i++ ) {
+                if ( (bplPointersChanged & 1<<i) != 0 ) {
+                    linePtrs[i] = bplPointers[i];
+                }
+            }
+            bplPointersChanged = 0;
+        }
+        /*
+         * Skipped frames still fetch bitplanes and process sprites,
+         * only pixel output is omitted. Collision detection (CLXDAT)
+         * must not depend on whether a frame gets displayed.
+         */
+        chipPageNo = -1;
+        final int dstPtr = y*renderWidth;
+        fetchLine( renderWidth, linePtrs, dmaController.isBitplaneDMAEnabled() );
+        if ( ! skipFrame ) {
+            convertIndices( renderBuffer, dstPtr, renderWidth );
+        }
+
+        // per-line sprite list
+        int spriteMask = 0;
+        for ( int i = 0 ; i < 8 ; i++ )
+        {
+            final Sprite sprite = sprites[i];
+            if ( sprite.armed && (sprite.dataA | sprite.dataB) != 0 ) {
+                spriteMask |= 1<<i;
+            }
+        }
+        if ( spriteMask != 0 ) {
+            drawSprites( renderBuffer, dstPtr, renderWidth, spriteMask, ! skipFrame );
+        }
+        if ( (clxdat & 1) == 0 ) {
+            detectPlayfieldCollision( renderWidth );
+        }
+    }
+
+    /**
+     * Performs sprite DMA for the current raster line.
+     */
+    private void spriteDMA()
+    {
+        chipPageNo = -1;
+        final int firstLine = getFirstDisplayLine();
+        for ( Sprite sprite : sprites ) {
+            sprite.dma( vpos, firstLine );
+        }
+    }
+
+    /**
+     * Draws all sprites of the current line on top of the already converted playfield(s).
+     *
+     * @param destination
+     * @param dstPtr offset of the first pixel of the line
+     * @param width line width in pixels
+     * @param spriteMask bit mask of sprites visible on this line
+     * @param draw whether to output pixels, <code>false</code> only updates collision state
+     */
+    private void drawSprites(int[] destination,int dstPtr,int width,int spriteMask,boolean draw)
+    {
+        if ( draw && paletteDirty ) {
+            updatePalette();
+        }
+        final int[] palette = rgbColors;
+        final byte[] indices = lineIndices;
+        final byte[] groups = spriteGroups;
+        final byte[] opacity = isDualPlayfield() ? DUAL_PLAYFIELD_OPACITY : SINGLE_PLAYFIELD_OPACITY;
+
+        // precompute sprite pair vs. playfield priorities for this line
+        final int pf1Priority = bplcon2 & 0b111;
+        final int pf2Priority = (bplcon2 >>> 3) & 0b111;
+        for ( int pair = 0 ; pair < 4 ; pair++ )
+        {
+            for ( int opaque = 0 ; opaque < 4 ; opaque++ )
             {
-                final int maxY = amiga.isPAL() ? 283 : 241;
-                if ( vpos >= maxY )
+                spriteVisible[ pair*4 + opaque ] =
+                    ( (opaque & 0b01) == 0 || pair < pf1Priority ) &&
+                    ( (opaque & 0b10) == 0 || pair < pf2Priority );
+            }
+        }
+
+        final int pixelShift = isHiRes() ? 1 : 0; // sprites are always lo-res
+        final int pixelWidth = 1 << pixelShift;
+        int minX = width;
+        int maxX = -1;
+
+        // draw lowest priority first so that sprite #0 ends up in front
+        for ( int i = 7 ; i >= 0 ; i-- )
+        {
+            if ( (spriteMask & 1<<i) == 0 ) {
+                continue;
+            }
+            final Sprite sprite = sprites[i];
+            final boolean isAttachedPair = (i & 1) == 0 && sprites[i+1].attached && (spriteMask & 1<<(i+1)) != 0;
+            if ( (i & 1) != 0 && sprite.attached && (spriteMask & 1<<(i-1)) != 0 ) {
+                continue; // drawn together with its even partner
+            }
+            final Sprite odd = isAttachedPair ? sprites[i+1] : null;
+            final int pair = i >>> 1;
+            final int colorBase = 16 + pair*4;
+            final int group = 1 << pair;
+            final boolean collides = (i & 1) == 0 || (clxcon & 1<<(12+pair)) != 0 || isAttachedPair;
+
+            final int x0 = (sprite.hstart - SPRITE_X_OFFSET) << pixelShift;
+            for ( int bit = 15 ; bit >= 0 ; bit-- )
+            {
+                int value = ((sprite.dataA >>> bit) & 1) | (((sprite.dataB >>> bit) & 1) << 1);
+                final int color;
+                if ( odd != null )
                 {
-                    longFrame = 0x8000;
+                    value |= (((odd.dataA >>> bit) & 1) << 2) | (((odd.dataB >>> bit) & 1) << 3);
+                    color = 16 + value;
+                } else {
+                    color = colorBase + value;
+                }
+                if ( value == 0 ) {
+                    continue; // transparent
+                }
+                final int xStart = x0 + ((15-bit) << pixelShift);
+                for ( int x = xStart, xEnd = xStart + pixelWidth ; x < xEnd ; x++ )
+                {
+                    if ( x < 0 || x >= width ) {
+                        continue;
+                    }
+                    if ( draw && spriteVisible[ pair*4 + opacity[ indices[x] & 0x3f ] ] ) {
+                        destination[ dstPtr + x ] = palette[ color ];
+                    }
+                    if ( collides )
+                    {
+                        groups[x] |= group;
+                        minX = Math.min( minX, x );
+                        maxX = Math.max( maxX, x );
+                    }
+                }
+            }
+        }
+
+        // collision detection
+        final int enabled = (clxcon >>> 6) & 0b111111;
+        final int match = clxcon & 0b111111;
+        int collisions = 0;
+        for ( int x = minX ; x <= maxX ; x++ )
+        {
+            final int g = groups[x];
+            if ( g != 0 )
+            {
+                groups[x] = 0;
+                collisions |= SPRITE_COLLISIONS[g];
+                final int mismatch = ((indices[x] ^ match) & enabled);
+                if ( (mismatch & 0b010101) == 0 ) {
+                    collisions |= g << 1; // odd bitplanes
+                }
+                if ( (mismatch & 0b101010) == 0 ) {
+                    collisions |= g << 5; // even bitplanes
                 }
             }
+        }
+        clxdat |= collisions;
+    }
+
+    /**
+     * Detects collisions between odd and even bitplanes in the current line.
+     *
+     * @param width
+     */
+    private void detectPlayfieldCollision(int width)
+    {
+        final int enabled = (clxcon >>> 6) & 0b111111;
+        final int match = clxcon & 0b111111;
+        if ( enabled == 0 ) {
+            // disabled bitplanes always match
+            clxdat |= 1;
+            return;
+        }
+        final byte[] indices = lineIndices;
+        for ( int x = 0 ; x < width ; x++ )
+        {
+            if ( ((indices[x] ^ match) & enabled) == 0 ) {
+                clxdat |= 1;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Publishes the frame that just got rendered and starts a new one.
+     */
+    private void endFrame()
+    {
+        totalFrameCount++;
+        if ( frameEvent != null )
+        {
+            frameEvent.rendered = ! skipFrame;
+            frameEvent.commit();
+        }
+        if ( skipFrame ) {
+            startFrame();
+            return;
+        }
+        final int[] tmp = frameBuffer;
+        frameBuffer = renderBuffer;
+        frameWidth = renderWidth;
+        frameHeight = renderHeight;
+        renderBuffer = tmp;
+        frameCounter++;
+        startFrame();
+    }
+
+    /**
+     * Sets how often frames get rendered.
+     *
+     * Raster lines of skipped frames are not converted to pixels (bitplane fetches and collision
+     * detection still happen), the last rendered frame stays available through {@link #getFrameBuffer()}.
+     *
+     * @param n 1 to render every frame, 2 to render every other frame etc.
+     */
+    public void setRenderEveryNthFrame(int n)
+    {
+        if ( n < 1 ) {
+            throw new IllegalArgumentException( "n must be >= 1 but was "+n );
+        }
+        this.renderEveryNthFrame = n;
+        this.framesUntilRender = Math.min( framesUntilRender, n );
+    }
+
+    /**
+     * Returns the last completed frame as ARGB pixels.
+     *
+     * The returned array is owned by this class and will be
+     * re-used for rendering once the next frame has been completed, so this method
+     * must only be called from the emulator thread.
+     *
+     * @return
+     * @see #getFrameWidth()
+     * @see #getFrameHeight()
+     * @see #getFrameCounter()
+     */
+    public int[] getFrameBuffer() {
+        return frameBuffer;
+    }
+
+    /**
+     * Returns the width of the last completed frame in pixels.
+     * @return
+     */
+    public int getFrameWidth() {
+        return frameWidth;
+    }
+
+    /**
+     * Returns the height of the last completed frame in pixels.
+     * @return
+     */
+    public int getFrameHeight() {
+        return frameHeight;
+    }
+
+    /**
+     * Returns the number of frames completed since the last reset.
+     *
+     * Frames skipped because of {@link #setRenderEveryNthFrame(int)} are not counted.
+     * @return
+     */
+    public int getFrameCounter() {
+        return frameCounter;
+    }
+
+    /**
+     * Reads a word straight from a chip RAM page, bypassing
+     * the {@link Memory} facade (no breakpoint checks, no alignment checks).
+     *
+     * @param address
+     * @return
+     */
+    private int readChipWord(int address)
+    {
+        address &= 0xfffffe;
+        final int pageNo = memory.mmu.getPageNo( address );
+        if ( pageNo != chipPageNo )
+        {
+            chipPage = memory.mmu.getPage( pageNo );
+            chipPageData = chipPage instanceof RegularPage ? ((RegularPage) chipPage).data : null;
+            chipPageNo = pageNo;
+        }
+        final int offset = memory.mmu.getOffsetInPage( address );
+        final byte[] data = chipPageData;
+        if ( data != null ) {
+            return ( (data[offset] & 0xff) << 8 ) | (data[offset+1] & 0xff);
+        }
+        return chipPage.readWord( offset ) & 0xffff;
+    }
+
+    /**
+     * Converts the 12-bit color registers into 24-bit RGB values,
+     * including the half-bright (EHB) colors 32-63.
+     */
+    private void updatePalette()
+    {
+        for ( int i = 0 ; i < 32 ; i++)
+        {
+            final int color = colors[i] & 0xfff;
+            rgbColors[i]    = RGB12_TO_RGB24[ color ];
+            rgbColors[32+i] = RGB12_TO_RGB24[ (color >>> 1) & 0x777 ]; // halve each component
+        }
+        paletteDirty = false;
+    }
+
+    /**
+     * Returns the configured display height in pixels.
+     * @return
+     */
+    public int getDisplayHeight()
+    {
+        if ( amiga.isPAL() ) {
+            return isInterlaced() ? 512 : 256;
+        }
+        return isInterlaced() ? 400 : 200;
+    }
+
+    /**
+     * Same as {@link #tick()} but attributes the host time spent
+     * executing copper instructions and converting bitplane data to pixels.
+     *
+     * @param profiler
+     */
+    public void tick(HostTimeProfiler profiler)
+    {
+        this.profiler = profiler;
+        try {
+            tick();
+        } finally {
+            this.profiler = null;
+        }
+    }
+
+    /**
+     * Ticked every 140ns (=2 hi-res pixel,1 lo-res pixel)
+     */
+    public void tick()
+    {
+        if ( --ticksUntilVSync == 0 )
+        {
+            ticksUntilVSync = ticksUntilVSyncLatch;
+            copper.restart();
+            irqController.triggerIRQ( IRQController.IRQSource.VBLANK );
+        }
+        if ( dmaController.isCopperDMAEnabled() && ((vpos << 8) | hpos) >= copper.wakeUpPosition )
+        {
+            if ( profiler == null ) {
+                copper.tick();
+            } else {
+                final long start = System.nanoTime();
+                copper.tick();
+                profiler.addNestedSample( HostTimeProfiler.Subsystem.COPPER, System.nanoTime() - start );
+            }
+        }
 
-            int maxY;
-            if ( amiga.isPAL() )
+        hpos++;
+        if ( hpos == 0xd8 ) { // $d8 = 216 = 8 pixel hblank + 200 pixel + 8 pixel hblank
+            hpos = 0;
+
+            if ( dmaController.isSpriteDMAEnabled() ) {
+                spriteDMA();
+            }
+            if ( profiler == null ) {
+                renderLine();
+            } else {
+                final long start = System.nanoTime();
+                renderLine();
+                profiler.addNestedSample( HostTimeProfiler.Subsystem.VIDEO_CONVERSION, System.nanoTime() - start );
+            }
+
+            if ( amiga.isNTSC() )
             {
-                maxY = 29 + (isInterlaced() ? 567 : 283);
+                // toggle long/short line flag, only applicable for NTSC amigas
+                longLine ^= 0b1000_0000;
             }
-            else
+
+            vpos++;
+                /*
+    | Normal  | Interlaced
+PAL |  283    |     567
+NTSC|  241    |     483
+                 */
+
+            if ( isInterlaced() )
             {
-                maxY = 21 + (isInterlaced() ? 483 : 241);
+                final int maxY = amiga.isPAL() ? 283 : 241;
+                if ( vpos >= maxY )
+                {
+                    longFrame = 0x8000;
+                }
             }
-            if ( vpos == maxY ) {
+
+            if ( vpos == getLinesPerFrame() ) {
                 vpos = 0;
                 longFrame = 0;
+                endFrame();
                 copper.restart();
             }
         }
     }
 
+    /**
+     * Returns the total number of raster lines per frame, including vertical blank.
+     *
+     * @return
+     */
+    private int getLinesPerFrame()
+    {
+        if ( amiga.isPAL() ) {
+            return 29 + (isInterlaced() ? 567 : 283);
+        }
+        return 21 + (isInterlaced() ? 483 : 241);
+    }
+
     public boolean isHiRes() {
         return (bplcon0 & 1<<15) != 0;
     }
 
+    public boolean isDualPlayfield() {
+        return (bplcon0 & 1<<10) != 0;
+    }
+
+    /**
+     * Returns whether playfield 2 appears in front of playfield 1 (dual playfield mode only).
+     *
+     * @return
+     */
+    public boolean isPlayfield2Priority() {
+        return (bplcon2 & 1<<6) != 0;
+    }
+
     public boolean isHAM() {
         return (bplcon0 & 1<<11) != 0;
     }
 
     public boolean isEHB() {
-        return (bplcon0 & 0b0111_1100_0000_0000) == 0b0111_0000_0000_0000;
+        // 6 bitplanes, HAM=0 , DBLPF=0
+        return (bplcon0 & 0b0111_1100_0000_0000) == 0b0110_0000_0000_0000;
     }
 
     public boolean isInterlaced() {
@@ -749,6 +1565,141 @@ vertical blanking offset (42 interlaced lines for NTSC, 52 for PAL), and
 considering a left offset of (768-752)/2=8 Hires (16 Superhires) "unused" pixels.
      */
 
+    /**
+     * A hardware sprite.
+     *
+     * Sprite DMA fetches two control words (SPRxPOS,SPRxCTL) followed by
+     * two data words (SPRxDATA,SPRxDATB) for each line from VSTART up to (excluding) VSTOP. After
+     * the last line the next two control words get fetched, a pair of zero words ends
+     * the DMA for this frame.
+     */
+    public final class Sprite
+    {
+        public static final int STATE_IDLE = 0;
+        public static final int STATE_FETCH_CONTROL = 1;
+        public static final int STATE_WAIT_START = 2;
+        public static final int STATE_ACTIVE = 3;
+
+        public final int index;
+
+        public int pointer;
+        public int dmaPointer;
+        public int state;
+
+        public int vstart;
+        public int vstop;
+        public int hstart;
+        public boolean attached;
+
+        public int dataA;
+        public int dataB;
+        public boolean armed;
+
+        public Sprite(int index)
+        {
+            this.index = index;
+        }
+
+        public void reset()
+        {
+            pointer = dmaPointer = 0;
+            state = STATE_IDLE;
+            vstart = vstop = hstart = 0;
+            attached = false;
+            dataA = dataB = 0;
+            armed = false;
+        }
+
+        public void restartDMA()
+        {
+            dmaPointer = pointer;
+            state = STATE_FETCH_CONTROL;
+        }
+
+        public void writePOS(int value)
+        {
+            vstart = (vstart & 0x100) | ((value >>> 8) & 0xff);
+            hstart = (hstart & 1) | ((value & 0xff) << 1);
+        }
+
+        public void writeCTL(int value)
+        {
+            vstop = ((value >>> 8) & 0xff) | ((value & 0b10) << 7);
+            vstart = (vstart & 0xff) | ((value & 0b100) << 6);
+            hstart = (hstart & ~1) | (value & 1);
+            attached = (value & 1<<7) != 0;
+            armed = false;
+        }
+
+        public void writeDATA(int value)
+        {
+            dataA = value & 0xffff;
+            armed = true;
+        }
+
+        public void writeDATB(int value)
+        {
+            dataB = value & 0xffff;
+        }
+
+        private void fetchControlWords()
+        {
+            final int pos = readChipWord( dmaPointer );
+            final int ctl = readChipWord( dmaPointer+2 );
+            dmaPointer += 4;
+            writePOS( pos );
+            writeCTL( ctl );
+            state = (pos | ctl) == 0 ? STATE_IDLE : STATE_WAIT_START;
+        }
+
+        /**
+         * Sprite DMA for a given raster line.
+         *
+         * @param line
+         * @param firstLine first line sprite DMA may happen on
+         */
+        public void dma(int line,int firstLine)
+        {
+            switch( state )
+            {
+                case STATE_IDLE:
+                    return;
+                case STATE_FETCH_CONTROL:
+                    if ( line < firstLine ) {
+                        return;
+                    }
+                    fetchControlWords();
+                    return;
+                case STATE_WAIT_START:
+                    if ( line != vstart ) {
+                        return;
+                    }
+                    state = STATE_ACTIVE;
+                    // $$FALL-THROUGH$$
+                case STATE_ACTIVE:
+                    if ( line == vstop ) {
+                        // sprite done, fetch control words of next sprite
+                        fetchControlWords();
+                        return;
+                    }
+                    dataA = readChipWord( dmaPointer );
+                    dataB = readChipWord( dmaPointer+2 );
+                    dmaPointer += 4;
+                    armed = true;
+                    return;
+                default:
+                    throw new RuntimeException("Unreachable code reached");
+            }
+        }
+
+        @Override
+        public String toString()
+        {
+            return "Sprite #"+index+" [ ptr: "+Misc.hex( pointer )+", x: "+hstart+", y: "+vstart+" - "+vstop+
+                    ( attached ? ", attached" : "" ) + ( armed ? ", armed" : "" ) + " ]";
+        }
+    }
+
     public final Copper copper = new Copper();
 
     public enum CopperInstruction
@@ -783,7 +1734,14 @@ considering a left offset of (768-752)/2=8 Hires (16 Superhires) "unused" pixels
                         final int adr = 0xDFF000 + offset;
                         if ( offset > 0x3e && (offset >= 0x80 || video.copper.copperDanger) )
                         {
-                            video.memory.writeWord( adr, video.copper.word2 );
+                            // register write handler has already been resolved when compiling the copper list
+                            final Memory memory = video.memory;
+                            if ( memory.statistics.enabled ) {
+                                memory.statistics.pageWrite( memory.mmu.getPageNo( adr ) );
+                                memory.statistics.customChipWrite( offset );
+                            }
+                            video.copper.moveHandler.accept( video.copper.word2 );
+                            memory.breakpoints.checkWrite( adr, adr+2 );
                         } else {
                             // LOG2.warn("Invalid copper write to register "+Misc.hex(adr));
                         }
@@ -810,16 +1768,27 @@ considering a left offset of (768-752)/2=8 Hires (16 Superhires) "unused" pixels
                  * Bits 14 - 8     Vertical position compare enable bits (called VE).
                  * Bits 7 - 1      Horizontal position compare enable bits (called HE).
                  */
-                int expectedHpos = (video.copper.word1 & 0b11111110)>>>1;
-                int expectedVpos = (video.copper.word1 & 0b11111111_00000000)>>>8;
-                expectedVpos &= ( (video.copper.word2 & 0b1111111_00000000) >>>8);
-                expectedHpos &= ( (video.copper.word2 & 0b1111110) >>>1);
-                if ( ( video.copper.word2 & 1<<15) == 0 && ! video.blitter.blitterDone )
+                final Copper copper = video.copper;
+                if ( ( copper.word2 & 1<<15) == 0 && ! video.blitter.blitterDone )
                 {
-                    // wait for blitter done
+                    // sleep until blitter is done
+                    copper.waitForBlitter = true;
                     return false;
                 }
-                return video.vpos >= expectedVpos && video.hpos >= expectedHpos;
+                final int current = (video.vpos << 8) | video.hpos;
+                if ( copper.waitPosition != Copper.NO_WAIT_POSITION )
+                {
+                    // already calculated, just check whether the beam got there
+                    return current >= copper.waitPosition;
+                }
+                final int position = video.getCopperWakeUpPosition( copper.word1, copper.word2 );
+                if ( position == current ) {
+                    return true;
+                }
+                // sleep until beam reaches the expected position
+                copper.waitPosition = position;
+                copper.sleepUntil( position );
+                return false;
             }
         },
         SKIP {
@@ -847,20 +1816,18 @@ considering a left offset of (768-752)/2=8 Hires (16 Superhires) "unused" pixels
                  * Bits 14 - 8     Vertical position compare enable bits (called VE).
                  * Bits 7 - 1      Horizontal position compare enable bits (called HE).
                  */
-                int expectedHpos = (video.copper.word1 & 0b11111110)>>>1;
-                int expectedVpos = (video.copper.word1 & 0b11111111_00000000)>>>8;
-                expectedVpos &= ( (video.copper.word2 & 0b1111111_00000000) >>>8);
-                expectedHpos &= ( (video.copper.word2 & 0b1111110) >>>1);
-                if ( ( video.copper.word2 & 1<<15) == 0 && ! video.blitter.blitterDone)
+                final Copper copper = video.copper;
+                if ( ( copper.word2 & 1<<15) == 0 && ! video.blitter.blitterDone)
                 {
-                    // wait for blitter done
+                    // sleep until blitter is done
+                    copper.waitForBlitter = true;
                     return false;
                 }
-                if ( video.vpos >= expectedVpos && video.hpos >= expectedHpos ) {
-                    video.copper.pc += 4;
-                    return true;
+                // SKIP never waits for the beam, it just compares once
+                if ( video.isCopperBeamPositionReached( copper.word1, copper.word2 ) ) {
+                    copper.pc += 4;
                 }
-                return false;
+                return true;
             }
         };
 
@@ -873,12 +1840,42 @@ considering a left offset of (768-752)/2=8 Hires (16 Superhires) "unused" pixels
         public abstract boolean perform(Video video);
     }
 
+    /**
+     * Max. number of compiled copper lists to cache.
+     */
+    private static final int MAX_COMPILED_LISTS = 64;
+
+    // copper instructions indexed by CopperList opcode
+    private static final CopperInstruction[] INSTRUCTIONS = new CopperInstruction[3];
+
+    static
+    {
+        INSTRUCTIONS[ CopperList.OP_MOVE ] = CopperInstruction.MOVE;
+        INSTRUCTIONS[ CopperList.OP_WAIT ] = CopperInstruction.WAIT;
+        INSTRUCTIONS[ CopperList.OP_SKIP ] = CopperInstruction.SKIP;
+    }
+
     public final class Copper
     {
+        /**
+         * Value of {@link #wakeUpPosition} when the copper
+         * waits for a beam position that will not be reached in the current frame.
+         */
+        public static final int WAKE_UP_NEXT_FRAME = Integer.MAX_VALUE;
+
+        /**
+         * Value of {@link #waitPosition} when no beam position has been calculated
+         * for the current instruction yet.
+         */
+        static final int NO_WAIT_POSITION = -1;
+
         public int pc;
         public int cycles;
         public boolean list1Active;
 
+        // number of instructions fetched so far, not cleared on reset
+        public long instructionCount;
+
         public int list1Addr;
         public int list2Addr;
 
@@ -887,8 +1884,29 @@ considering a left offset of (768-752)/2=8 Hires (16 Superhires) "unused" pixels
 
         public boolean copperDanger;
 
+        /*
+         * Beam position ( (vpos << 8) | hpos ) the copper is sleeping until,
+         * the copper does not get ticked before the beam reaches this position.
+         */
+        public int wakeUpPosition;
+
+        // beam position the current WAIT instruction is waiting for, calculated once per instruction
+        int waitPosition = NO_WAIT_POSITION;
+
+        // copper is blocked until the blitter has finished
+        public boolean waitForBlitter;
+
         public CopperInstruction currentInstruction;
 
+        // register write handler of the current MOVE instruction
+        IntConsumer moveHandler;
+
+        // compiled copper lists by start address
+        private final TIntObjectHashMap<CopperList> compiledLists = new TIntObjectHashMap<>();
+        // compiled list the copper is currently executing
+        private CopperList currentList;
+        private final CopperList.Compiler compiler = new CopperList.Compiler();
+
         public void reset()
         {
             pc = 0;
@@ -897,61 +1915,199 @@ considering a left offset of (768-752)/2=8 Hires (16 Superhires) "unused" pixels
             list1Addr = list2Addr;
             word1 = word2 = 0;
             copperDanger = false;
+            currentInstruction = null;
+            wakeUpPosition = 0;
+            waitPosition = NO_WAIT_POSITION;
+            waitForBlitter = false;
+            clearCompiledLists();
+            currentList = null;
         }
 
         public void restart()
         {
-            pc = list1Active ? list1Addr : list2Addr;
+            jump( list1Active ? list1Addr : list2Addr );
+        }
+
+        /**
+         * Continue execution at a given address, aborting any pending WAIT.
+         *
+         * @param address
+         */
+        public void jump(int address)
+        {
+            pc = address;
+            currentInstruction = null;
+            cycles = 1;
+            wakeUpPosition = 0;
+            waitPosition = NO_WAIT_POSITION;
+            waitForBlitter = false;
+        }
+
+        /**
+         * Puts the copper to sleep until the beam reaches a given position.
+         *
+         * @param position beam position ( (vpos << 8) | hpos ) or {@link #WAKE_UP_NEXT_FRAME}
+         */
+        void sleepUntil(int position)
+        {
+            wakeUpPosition = position;
+            // re-evaluate instruction right when waking up
+            cycles = 1;
+        }
+
+        /**
+         * Returns whether the copper is currently sleeping in a WAIT instruction.
+         *
+         * @return
+         */
+        public boolean isSleeping()
+        {
+            return waitForBlitter || wakeUpPosition > ((vpos << 8) | hpos);
+        }
+
+        /**
+         * Returns the compiled copper list the copper is currently executing.
+         *
+         * @return list or <code>null</code>
+         */
+        public CopperList getCurrentList()
+        {
+            return currentList;
+        }
+
+        /**
+         * Returns the compiled copper list starting at a given address,
+         * (re-)compiling it if necessary.
+         *
+         * @param address
+         * @return
+         */
+        private CopperList getCompiledList(int address)
+        {
+            CopperList list = compiledLists.get( address );
+            if ( list == null || ! list.isValid() )
+            {
+                if ( compiledLists.size() >= MAX_COMPILED_LISTS ) {
+                    clearCompiledLists();
+                }
+                final CustomChipPage registers = (CustomChipPage) memory.mmu.getPage( memory.mmu.getPageNo( 0xDFF000 ) );
+                list = compiler.compile( address, memory.mmu, registers );
+                compiledLists.put( address, list );
+            }
+            return list;
+        }
+
+        private void clearCompiledLists()
+        {
+            // pages stop watching for writes, lists still in use get recompiled
+            compiledLists.forEachValue( list ->
+            {
+                list.unwatch();
+                return true;
+            });
+            compiledLists.clear();
         }
 
         public void tick()
         {
+            if ( waitForBlitter )
+            {
+                if ( ! blitter.blitterDone ) {
+                    return;
+                }
+                waitForBlitter = false;
+                cycles = 1;
+            }
             if ( --cycles <= 0 )
             {
                 if ( currentInstruction != null )
                 {
-                    if ( ! currentInstruction.perform(Video.this) ) {
-                        // copper only gets every 2nd cycle
-                        cycles = 2;
+                    if ( ! currentInstruction.perform(Video.this) )
+                    {
+                        if ( ! isSleeping() ) {
+                            // copper only gets every 2nd cycle
+                            cycles = 2;
+                        }
                         return;
                     }
                 }
                 // fetch next instruction
-                final int words = memory.readLong( pc & ~1 );
-                pc += 4;
-                word1 = words >>> 16;
-                word2 = words & 0xffff;
-
-                if ( (word1 & 1 ) == 0 )
-                {
-                    // MOVE instruction.
-                    // Bit 0 in IR1 => Always set to 0.
-                    currentInstruction = CopperInstruction.MOVE;
-                    cycles = 6;
-                    return;
-                }
-                // bit 0 of IR1 is 1, test bit 0 of IR2
-                if ( (word2 & 1) == 0 )
+                CopperList list = currentList;
+                int index = list == null ? -1 : list.indexOf( pc );
+                if ( index < 0 || ! list.isValid( index ) )
                 {
-                    /*
-                     * WAIT instruction.
-                     * Bit 0 in IR1 => Always set to 1.
-                     * Bit 0 in IR2 => Always set to 0.
-                     */
-                    currentInstruction = CopperInstruction.WAIT;
-                    cycles = 6;
+                    list = currentList = getCompiledList( pc & ~1 );
+                    index = 0;
                 }
-                else
+                pc += 4;
+                instructionCount++;
+                word1 = list.getWord1( index );
+                word2 = list.getWord2( index );
+                moveHandler = list.getHandler( index );
+                waitPosition = NO_WAIT_POSITION;
+                currentInstruction = INSTRUCTIONS[ list.getOpcode( index ) ];
+                cycles = 6;
+            }
+        }
+    }
+
+    /**
+     * Calculates the earliest beam position, starting at the current one, where
+     * a copper WAIT/SKIP beam comparison succeeds.
+     *
+     * Just like the real hardware, only the enabled (VE/HE) bits of the
+     * beam counter take part in the comparison and the most significant
+     * vertical position bit (V8) is not compared at all. Bit 7 of the vertical
+     * position can not be masked.
+     *
+     * @param word1 first instruction word (VP/HP)
+     * @param word2 second instruction word (VE/HE)
+     * @return beam position ( (vpos << 8) | hpos ) or {@link Copper#WAKE_UP_NEXT_FRAME}
+     * if the comparison will not succeed in the current frame
+     */
+    int getCopperWakeUpPosition(int word1,int word2)
+    {
+        if ( isCopperBeamPositionReached( word1, word2 ) ) {
+            return (vpos << 8) | hpos;
+        }
+        final int vmask = 0x80 | ((word2 >>> 8) & 0x7f);
+        final int hmask = word2 & 0xfe;
+        final int expectedVpos = (word1 >>> 8) & vmask;
+        final int expectedHpos = word1 & hmask;
+
+        for ( int v = vpos, h = hpos, lastLine = getLinesPerFrame() ; v < lastLine ; v++, h = 0 )
+        {
+            final int maskedVpos = v & vmask;
+            if ( maskedVpos > expectedVpos ) {
+                return (v << 8) | h;
+            }
+            if ( maskedVpos == expectedVpos )
+            {
+                for ( ; h < 0xd8 ; h++ )
                 {
-                    /*
-                     * SKIP instruction.
-                     * Bit 0           Always set to 1.
-                     * Bit 0           Always set to 1.
-                     */
-                    currentInstruction = CopperInstruction.SKIP;
-                    cycles = 6;
+                    if ( (h & hmask) >= expectedHpos ) {
+                        return (v << 8) | h;
+                    }
                 }
             }
         }
+        return Copper.WAKE_UP_NEXT_FRAME;
+    }
+
+    /**
+     * Returns whether a copper WAIT/SKIP beam comparison succeeds at the current beam position.
+     *
+     * @param word1 first instruction word (VP/HP)
+     * @param word2 second instruction word (VE/HE)
+     * @return
+     * @see #getCopperWakeUpPosition(int, int)
+     */
+    boolean isCopperBeamPositionReached(int word1,int word2)
+    {
+        final int vmask = 0x80 | ((word2 >>> 8) & 0x7f);
+        final int hmask = word2 & 0xfe;
+        final int maskedVpos = vpos & vmask;
+        final int expectedVpos = (word1 >>> 8) & vmask;
+        return maskedVpos > expectedVpos || ( maskedVpos == expectedVpos && (hpos & hmask) >= (word1 & hmask) );
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,53 @@
+package de.codesourcery.m68k.emulator.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JFR event for a blit that took a long time to execute on the host.
+ *
+ * Only the time spent actually executing the blit counts ({@link #hostTime}), not
+ * the wall-clock time between writing BLTSIZE and the blitter becoming idle (which
+ * includes everything else the emulator does in the meantime and, with real-time pacing,
+ * just reflects the emulated blit duration). As JFR thresholds only apply
+ * to the event duration, blits are filtered against {@link #THRESHOLD_NANOS} instead and the
+ * event gets committed without a duration when the blit finishes.
+ *
+ * @author tobias.gierke@code-sourcery.de
+ */
+@Name("de.codesourcery.m68k.Blit")
+@Label("Long Blit")
+@Description("Blit that took a long time (host time) to complete")
+@Category("M68K Emulator")
+@StackTrace(false)
+public class BlitEvent extends Event
+{
+    public static final long THRESHOLD_NANOS = TimeUnit.MILLISECONDS.toNanos( 1 );
+
+    @Label("Host Time")
+    @Description("Host time spent executing the blit")
+    @Timespan(Timespan.NANOSECONDS)
+    public long hostTime;
+
+    @Label("Width")
+    @Description("Width in words (area mode) or 0 (line mode)")
+    public int width;
+
+    @Label("Height")
+    @Description("Height in rows (area mode) or number of pixels (line mode)")
+    public int height;
+
+    @Label("Line Mode")
+    public boolean lineMode;
+
+    @Label("Emulated Ticks")
+    @Description("Number of ticks (140ns CPU clock cycles) the blit takes on real hardware")
+    public int ticks;
+}
@@ -0,0 +1,277 @@
+package de.codesourcery.m68k.emulator.metrics;
+
+import de.codesourcery.m68k.emulator.Amiga;
+import de.codesourcery.m68k.emulator.CPU;
+import de.codesourcery.m68k.emulator.chips.CIA8520;
+import de.codesourcery.m68k.emulator.memory.Blitter;
+import de.codesourcery.m68k.emulator.memory.MMU;
+import de.codesourcery.m68k.emulator.memory.Video;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Emulation throughput metrics, exposed as a JMX MBean.
+ *
+ * The emulated chips only increment plain (non-volatile) counter fields, this class samples
+ * them from the emulator thread every {@link #SAMPLE_INTERVAL_TICKS} ticks and publishes
+ * totals and rates once per {@link #PUBLISH_INTERVAL_NANOS}. The MBean getters
+ * only ever see the last published values and may be invoked by any thread.
+ *
+ * Apart from {@link #register()}, {@link #unregister()} and the MBean getters,
+ * all methods must only be invoked by the emulator thread.
+ *
+ * @author tobias.gierke@code-sourcery.de
+ */
+public class EmulatorMetrics implements EmulatorMetricsMBean
+{
+    private static final Logger LOG = LogManager.getLogger( EmulatorMetrics.class.getName() );
+
+    private static final int SAMPLE_INTERVAL_TICKS = 100_000;
+    private static final long PUBLISH_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos( 1 );
+
+    private static final AtomicInteger INSTANCE_COUNT = new AtomicInteger();
+
+    private final double targetMHz;
+    private final CPU cpu;
+    private final MMU mmu;
+    private final Video video;
+    private final Blitter blitter;
+    private final CIA8520 ciaa;
+    private final CIA8520 ciab;
+
+    private long ticks;
+    private int ticksUntilSample = SAMPLE_INTERVAL_TICKS;
+
+    // values rates get calculated against
+    private Snapshot baseline;
+
+    private volatile Snapshot published;
+
+    private ObjectName objectName;
+
+    private static final class Snapshot
+    {
+        public final long nanos;
+        public final long cycles;
+        public final long instructions;
+        public final long frames;
+        public final long blits;
+        public final long copperInstructions;
+        public final long ciaInterrupts;
+        public final int memoryFaults;
+
+        public final double cyclesPerSecond;
+        public final double instructionsPerSecond;
+        public final double framesPerSecond;
+        public final double blitsPerSecond;
+        public final double copperInstructionsPerSecond;
+        public final double ciaInterruptsPerSecond;
+
+        public Snapshot(long nanos, long cycles, long instructions, long frames, long blits,
+                        long copperInstructions, long ciaInterrupts, int memoryFaults,Snapshot baseline)
+        {
+            this.nanos = nanos;
+            this.cycles = cycles;
+            this.instructions = instructions;
+            this.frames = frames;
+            this.blits = blits;
+            this.copperInstructions = copperInstructions;
+            this.ciaInterrupts = ciaInterrupts;
+            this.memoryFaults = memoryFaults;
+
+            final Snapshot base = baseline == null ? this : baseline;
+            final double seconds = (nanos - base.nanos) / 1_000_000_000d;
+            this.cyclesPerSecond = rate( cycles, base.cycles, seconds );
+            this.instructionsPerSecond = rate( instructions, base.instructions, seconds );
+            this.framesPerSecond = rate( frames, base.frames, seconds );
+            this.blitsPerSecond = rate( blits, base.blits, seconds );
+            this.copperInstructionsPerSecond = rate( copperInstructions, base.copperInstructions, seconds );
+            this.ciaInterruptsPerSecond = rate( ciaInterrupts, base.ciaInterrupts, seconds );
+        }
+
+        private static double rate(long value,long previousValue,double seconds)
+        {
+            return seconds > 0 ? (value - previousValue) / seconds : 0;
+        }
+    }
+
+    public EmulatorMetrics(Amiga amiga, CPU cpu, MMU mmu, Video video, Blitter blitter, CIA8520 ciaa, CIA8520 ciab)
+    {
+        this.targetMHz = amiga.getCPUClock();
+        this.cpu = cpu;
+        this.mmu = mmu;
+        this.video = video;
+        this.blitter = blitter;
+        this.ciaa = ciaa;
+        this.ciab = ciab;
+        this.published = this.baseline = snapshot( System.nanoTime(), null );
+    }
+
+    /**
+     * Registers this instance with the platform MBean server.
+     */
+    public synchronized void register()
+    {
+        if ( objectName != null ) {
+            return;
+        }
+        try
+        {
+            final ObjectName name = new ObjectName( "de.codesourcery.m68k:type=EmulatorMetrics,name=emulator"+INSTANCE_COUNT.incrementAndGet() );
+            ManagementFactory.getPlatformMBeanServer().registerMBean( this, name );
+            objectName = name;
+            LOG.info( "Registered MBean "+name );
+        }
+        catch(JMException e)
+        {
+            LOG.warn( "Failed to register metrics MBean", e );
+        }
+    }
+
+    public synchronized void unregister()
+    {
+        if ( objectName == null ) {
+            return;
+        }
+        try
+        {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean( objectName );
+        }
+        catch(JMException e)
+        {
+            LOG.warn( "Failed to unregister MBean "+objectName, e );
+        }
+        objectName = null;
+    }
+
+    /**
+     * Resets the reference point for rate calculations, needs to be invoked whenever
+     * the emulation (re-)starts running.
+     */
+    public void resync()
+    {
+        baseline = snapshot( System.nanoTime(), null );
+        ticksUntilSample = SAMPLE_INTERVAL_TICKS;
+    }
+
+    public void tick()
+    {
+        ticks++;
+        if ( --ticksUntilSample > 0 ) {
+            return;
+        }
+        ticksUntilSample = SAMPLE_INTERVAL_TICKS;
+        final long now = System.nanoTime();
+        if ( now - baseline.nanos >= PUBLISH_INTERVAL_NANOS ) {
+            published = baseline = snapshot( now, baseline );
+        }
+    }
+
+    private Snapshot snapshot(long now,Snapshot baseline)
+    {
+        return new Snapshot( now, ticks, cpu.instructionCount, video.totalFrameCount, blitter.blitCount,
+                video.copper.instructionCount, ciaa.irqCount + ciab.irqCount, mmu.getFaultCount(), baseline );
+    }
+
+    @Override
+    public double getInstructionsPerSecond()
+    {
+        return published.instructionsPerSecond;
+    }
+
+    @Override
+    public double getCyclesPerSecond()
+    {
+        return published.cyclesPerSecond;
+    }
+
+    @Override
+    public double getEffectiveMHz()
+    {
+        return published.cyclesPerSecond / 1_000_000d;
+    }
+
+    @Override
+    public double getTargetMHz()
+    {
+        return targetMHz;
+    }
+
+    @Override
+    public double getSpeedRatio()
+    {
+        return getEffectiveMHz() / targetMHz;
+    }
+
+    @Override
+    public double getFramesPerSecond()
+    {
+        return published.framesPerSecond;
+    }
+
+    @Override
+    public double getBlitsPerSecond()
+    {
+        return published.blitsPerSecond;
+    }
+
+    @Override
+    public double getCopperInstructionsPerSecond()
+    {
+        return published.copperInstructionsPerSecond;
+    }
+
+    @Override
+    public double getCIAInterruptsPerSecond()
+    {
+        return published.ciaInterruptsPerSecond;
+    }
+
+    @Override
+    public long getTotalInstructions()
+    {
+        return published.instructions;
+    }
+
+    @Override
+    public long getTotalCycles()
+    {
+        return published.cycles;
+    }
+
+    @Override
+    public long getTotalFrames()
+    {
+        return published.frames;
+    }
+
+    @Override
+    public long getTotalBlits()
+    {
+        return published.blits;
+    }
+
+    @Override
+    public long getTotalCopperInstructions()
+    {
+        return published.copperInstructions;
+    }
+
+    @Override
+    public long getTotalCIAInterrupts()
+    {
+        return published.ciaInterrupts;
+    }
+
+    @Override
+    public int getMemoryFaults()
+    {
+        return published.memoryFaults;
+    }
+}
@@ -0,0 +1,60 @@
+package de.codesourcery.m68k.emulator.metrics;
+
+/**
+ * JMX view of {@link EmulatorMetrics}.
+ *
+ * Rates are averaged over the last publishing interval the emulation was running,
+ * totals are as of the end of that interval.
+ *
+ * @author tobias.gierke@code-sourcery.de
+ */
+public interface EmulatorMetricsMBean
+{
+    double getInstructionsPerSecond();
+
+    double getCyclesPerSecond();
+
+    /**
+     * Returns the emulated CPU clock the emulation actually achieved.
+     * @return
+     */
+    double getEffectiveMHz();
+
+    /**
+     * Returns the CPU clock of the emulated machine.
+     * @return
+     */
+    double getTargetMHz();
+
+    /**
+     * Returns {@link #getEffectiveMHz()} divided by {@link #getTargetMHz()}.
+     * @return
+     */
+    double getSpeedRatio();
+
+    double getFramesPerSecond();
+
+    double getBlitsPerSecond();
+
+    double getCopperInstructionsPerSecond();
+
+    double getCIAInterruptsPerSecond();
+
+    long getTotalInstructions();
+
+    long getTotalCycles();
+
+    long getTotalFrames();
+
+    long getTotalBlits();
+
+    long getTotalCopperInstructions();
+
+    long getTotalCIAInterrupts();
+
+    /**
+     * Returns the number of MMU page faults since the last reset.
+     * @return
+     */
+    int getMemoryFaults();
+}
@@ -0,0 +1,29 @@
+package de.codesourcery.m68k.emulator.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event spanning the host time it took to emulate one video frame.
+ *
+ * @author tobias.gierke@code-sourcery.de
+ */
+@Name("de.codesourcery.m68k.Frame")
+@Label("Emulated Frame")
+@Description("Host time spent emulating one video frame")
+@Category("M68K Emulator")
+@StackTrace(false)
+public class FrameEvent extends Event
+{
+    @Label("Frame Number")
+    @Description("Number of frames emulated before this one, including skipped frames")
+    public long frame;
+
+    @Label("Rendered")
+    @Description("Whether the frame got converted to pixels or was skipped")
+    public boolean rendered;
+}
@@ -0,0 +1,210 @@
+package de.codesourcery.m68k.emulator.metrics;
+
+import java.util.Arrays;
+
+/**
+ * Opt-in accounting of host CPU time spent in the various parts of the emulation.
+ *
+ * To keep the overhead low, only every {@link #getSampleInterval() n-th} tick gets timed (with
+ * each subsystem's time scaled up by n), while UI callbacks and fast-mode blits are rare and expensive enough
+ * to be timed on every invocation. The default interval is a prime number so that sampled ticks don't lock onto the phase
+ * of the CIA clock divider or the raster line. The (calibrated) cost of reading the clock gets
+ * subtracted from each sample.
+ *
+ * Time spent pacing the emulation ({@link de.codesourcery.m68k.emulator.SpeedGovernor}) is not accounted for.
+ *
+ * This class is not thread-safe and must only be used by the emulator thread.
+ *
+ * @author tobias.gierke@code-sourcery.de
+ */
+public class HostTimeProfiler
+{
+    public static final int DEFAULT_SAMPLE_INTERVAL = 127;
+
+    public enum Subsystem
+    {
+        CPU("CPU"),
+        VIDEO("Video"),
+        VIDEO_CONVERSION("Video conversion"),
+        COPPER("Copper"),
+        BLITTER("Blitter"),
+        CIAA("CIA A"),
+        CIAB("CIA B"),
+        OTHER_CHIPS("Paula/floppy/keyboard"),
+        BREAKPOINTS("Breakpoint checks"),
+        UI_CALLBACKS("UI callbacks");
+
+        public final String label;
+
+        Subsystem(String label) {
+            this.label = label;
+        }
+    }
+
+    private static final Subsystem[] SUBSYSTEMS = Subsystem.values();
+
+    // average time System.nanoTime() takes
+    private static final long TIMER_OVERHEAD_NANOS = calibrate();
+
+    private final long[] nanos = new long[ SUBSYSTEMS.length ];
+
+    private boolean enabled;
+    private int sampleInterval = DEFAULT_SAMPLE_INTERVAL;
+    private int ticksUntilSample = DEFAULT_SAMPLE_INTERVAL;
+
+    // time of nested samples not yet subtracted from the enclosing sample
+    private long nestedNanos;
+
+    /**
+     * Enables/disables profiling, enabling also discards all previously collected data.
+     *
+     * @param enabled
+     */
+    public void setEnabled(boolean enabled)
+    {
+        if ( enabled && ! this.enabled ) {
+            reset();
+        }
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    /**
+     * Sets how often ticks get timed.
+     *
+     * @param sampleInterval 1 to time every tick, 2 for every other tick etc.
+     */
+    public void setSampleInterval(int sampleInterval)
+    {
+        if ( sampleInterval < 1 ) {
+            throw new IllegalArgumentException( "Sample interval must be >= 1 but was "+sampleInterval );
+        }
+        this.sampleInterval = sampleInterval;
+        reset();
+    }
+
+    public int getSampleInterval()
+    {
+        return sampleInterval;
+    }
+
+    /**
+     * Discards all collected data.
+     */
+    public void reset()
+    {
+        Arrays.fill( nanos, 0 );
+        nestedNanos = 0;
+        ticksUntilSample = sampleInterval;
+    }
+
+    /**
+     * Invoked at the start of each tick.
+     *
+     * @return <code>true</code> if profiling is enabled and the current tick should be timed
+     */
+    public boolean startTick()
+    {
+        if ( ! enabled || --ticksUntilSample > 0 ) {
+            return false;
+        }
+        ticksUntilSample = sampleInterval;
+        return true;
+    }
+
+    /**
+     * Adds the time a subsystem took during a sampled tick.
+     *
+     * The time of any nested samples recorded since the last invocation
+     * of this method gets subtracted.
+     *
+     * @param subsystem
+     * @param elapsedNanos
+     * @see #addNestedSample(Subsystem, long)
+     */
+    public void addSample(Subsystem subsystem,long elapsedNanos)
+    {
+        nanos[ subsystem.ordinal() ] += Math.max( 0, elapsedNanos - nestedNanos - TIMER_OVERHEAD_NANOS ) * sampleInterval;
+        nestedNanos = 0;
+    }
+
+    /**
+     * Adds the time a subsystem took during a sampled tick while
+     * its caller is being timed as well.
+     *
+     * @param subsystem
+     * @param elapsedNanos
+     * @see #addSample(Subsystem, long)
+     */
+    public void addNestedSample(Subsystem subsystem,long elapsedNanos)
+    {
+        nanos[ subsystem.ordinal() ] += Math.max( 0, elapsedNanos - TIMER_OVERHEAD_NANOS ) * sampleInterval;
+        nestedNanos += elapsedNanos;
+    }
+
+    /**
+     * Adds time that was measured outside of sampled ticks and thus must not be scaled.
+     *
+     * @param subsystem
+     * @param elapsedNanos
+     */
+    public void add(Subsystem subsystem,long elapsedNanos)
+    {
+        nanos[ subsystem.ordinal() ] += elapsedNanos;
+    }
+
+    /**
+     * Returns the (estimated) total host time accounted for.
+     *
+     * @return
+     */
+    public long getTotalNanos()
+    {
+        long result = 0;
+        for ( long value : nanos ) {
+            result += value;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the share of a subsystem in the total host time.
+     *
+     * @param subsystem
+     * @return percentage (0...100)
+     */
+    public double getPercentage(Subsystem subsystem)
+    {
+        final long total = getTotalNanos();
+        return total == 0 ? 0 : 100d * nanos[ subsystem.ordinal() ] / total;
+    }
+
+    /**
+     * Returns a human-readable report, one line per subsystem.
+     *
+     * @return
+     */
+    public String getReport()
+    {
+        final StringBuilder result = new StringBuilder();
+        for ( Subsystem subsystem : SUBSYSTEMS ) {
+            result.append( String.format( "%-22s %5.1f %%\n", subsystem.label, getPercentage( subsystem ) ) );
+        }
+        return result.toString();
+    }
+
+    private static long calibrate()
+    {
+        final int iterations = 100_000;
+        final long start = System.nanoTime();
+        long last = start;
+        for ( int i = 0 ; i < iterations ; i++ ) {
+            last = System.nanoTime();
+        }
+        return (last - start) / iterations;
+    }
+}
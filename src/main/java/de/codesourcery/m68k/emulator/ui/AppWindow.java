@@ -78,6 +78,7 @@ public abstract class AppWindow extends JInternalFrame
         MAIN_WINDOW("mainWindow", "Main Window", null),
         MEMORY_VIEW( "memoryview" , "Memory", MemoryViewWindow.class ),
         MEMORY_BREAKPOINTS( "membreakpoints" , "Memory Breakpoints", MemoryBreakpointsWindow.class ),
+        MEMORY_HEATMAP( "memoryheatmap" , "Memory Heatmap", MemoryHeatmapWindow.class ),
         ROM_LISTING("romlisting", "ROM Listing", ROMListingViewer.class ),
         STRUCT_EXPLORER( "struct-explorer" , "Struct Explorer", StructExplorer.class ),
         SCREEN( "screen" , "Screen", ScreenWindow.class ),
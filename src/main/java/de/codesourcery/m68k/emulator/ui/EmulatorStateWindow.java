@@ -3,6 +3,7 @@ package de.codesourcery.m68k.emulator.ui;
 import de.codesourcery.m68k.emulator.Breakpoint;
 import de.codesourcery.m68k.emulator.Emulator;
 import de.codesourcery.m68k.emulator.IBreakpointCondition;
+import de.codesourcery.m68k.emulator.metrics.HostTimeProfiler;
 import de.codesourcery.m68k.utils.Misc;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -12,15 +13,22 @@ import java.awt.*;
 import java.awt.event.KeyEvent;
 import java.util.function.Consumer;
 
-public class EmulatorStateWindow extends AppWindow implements Emulator.IEmulatorStateCallback
+public class EmulatorStateWindow extends AppWindow implements Emulator.IEmulatorStateCallback, ITickListener
 {
     private static final Logger LOG = LogManager.getLogger( EmulatorStateWindow.class.getName() );
 
+    // frames rendered while in warp mode
+    private static final int WARP_RENDER_EVERY_NTH_FRAME = 10;
+
     private final JButton runButton;
     private final JButton stopButton;
     private final JButton stepButton;
     private final JButton resetButton;
     private final JButton stepOverButton;
+    private final JCheckBox warpCheckbox = new JCheckBox( "Warp" );
+    private final JLabel speedLabel = new JLabel( "Speed: -" );
+    private final JCheckBox profileCheckbox = new JCheckBox( "Profile" );
+    private final JLabel profileLabel = new JLabel();
 
     private final Consumer<KeyEvent> keyAdapter = event ->
     {
@@ -65,6 +73,30 @@ public class EmulatorStateWindow extends AppWindow implements Emulator.IEmulator
             ui.doWithEmulator( emu -> emu.reset() );
         });
         stopButton.setEnabled(false);
+
+        warpCheckbox.addActionListener( ev ->
+        {
+            final boolean warp = warpCheckbox.isSelected();
+            final Emulator emulator = ui.getEmulator();
+            if ( emulator != null ) {
+                emulator.setWarpMode( warp, WARP_RENDER_EVERY_NTH_FRAME );
+            }
+        });
+        profileCheckbox.addActionListener( ev ->
+        {
+            final boolean profile = profileCheckbox.isSelected();
+            final Emulator emulator = ui.getEmulator();
+            if ( emulator != null ) {
+                emulator.setHostTimeProfiling( profile, HostTimeProfiler.DEFAULT_SAMPLE_INTERVAL );
+            }
+            if ( ! profile ) {
+                profileLabel.setText( "" );
+            }
+        });
+        getContentPane().add( warpCheckbox );
+        getContentPane().add( speedLabel );
+        getContentPane().add( profileCheckbox );
+        getContentPane().add( profileLabel );
         registerKeyReleasedListener(keyAdapter);
     }
 
@@ -87,6 +119,31 @@ public class EmulatorStateWindow extends AppWindow implements Emulator.IEmulator
         return button;
     }
 
+    @Override
+    public void tick(Emulator emulator)
+    {
+        final double ratio = emulator.speedGovernor.getSpeedRatio();
+        final boolean warp = emulator.speedGovernor.isWarp();
+        final String profile = emulator.profiler.isEnabled() ? getProfile( emulator.profiler ) : null;
+        runOnEDT( () ->
+        {
+            speedLabel.setText( String.format( "Speed: %d%%", Math.round( ratio * 100 ) ) );
+            warpCheckbox.setSelected( warp );
+            if ( profile != null ) {
+                profileLabel.setText( profile );
+            }
+        });
+    }
+
+    private static String getProfile(HostTimeProfiler profiler)
+    {
+        final StringBuilder result = new StringBuilder( "<html>" );
+        for ( HostTimeProfiler.Subsystem subsystem : HostTimeProfiler.Subsystem.values() ) {
+            result.append( String.format( "%s: %.1f%%<br>", subsystem.label, profiler.getPercentage( subsystem ) ) );
+        }
+        return result.append( "</html>" ).toString();
+    }
+
     @Override
     public void stopped(Emulator emulator)
     {
@@ -0,0 +1,278 @@
+package de.codesourcery.m68k.emulator.ui;
+
+import de.codesourcery.m68k.disassembler.ChipRegisterResolver;
+import de.codesourcery.m68k.disassembler.RegisterDescription;
+import de.codesourcery.m68k.emulator.Emulator;
+import de.codesourcery.m68k.emulator.memory.MMU;
+import de.codesourcery.m68k.emulator.memory.MemoryAccessStatistics;
+import de.codesourcery.m68k.utils.Misc;
+
+import javax.swing.JButton;
+import javax.swing.JCheckBox;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTextArea;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics;
+import java.awt.GridBagConstraints;
+import java.awt.GridBagLayout;
+import java.awt.event.MouseEvent;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Displays a heatmap of memory accesses per {@link MMU} page along with
+ * the most frequently accessed custom chip and CIA registers.
+ *
+ * @author tobias.gierke@code-sourcery.de
+ * @see MemoryAccessStatistics
+ */
+public class MemoryHeatmapWindow extends AppWindow implements ITickListener, Emulator.IEmulatorStateCallback
+{
+    private static final int PAGES_PER_ROW = 64;
+    private static final int ROWS = MemoryAccessStatistics.PAGE_COUNT / PAGES_PER_ROW;
+
+    private static final int TOP_REGISTER_COUNT = 20;
+
+    private static final ChipRegisterResolver REGISTER_RESOLVER = new ChipRegisterResolver( null );
+
+    private final Object LOCK = new Object();
+
+    // @GuardedBy( LOCK )
+    private final MemoryAccessStatistics current = new MemoryAccessStatistics();
+    // @GuardedBy( LOCK )
+    private final MemoryAccessStatistics previous = new MemoryAccessStatistics();
+    // @GuardedBy( LOCK )
+    private final long[] deltas = new long[ MemoryAccessStatistics.PAGE_COUNT ];
+
+    // whether statistics were enabled during the last update, only accessed by the emulator thread
+    private boolean wasEnabled;
+
+    private final JCheckBox enabled = new JCheckBox( "Collect statistics" );
+    private final JTextArea registers = new JTextArea();
+
+    private final JPanel heatmap = new JPanel()
+    {
+        {
+            setToolTipText( "" );
+        }
+
+        @Override
+        public String getToolTipText(MouseEvent event)
+        {
+            final int pageNo = getPageNo( event.getX(), event.getY() );
+            if ( pageNo < 0 ) {
+                return null;
+            }
+            synchronized( LOCK )
+            {
+                return Misc.hex( pageNo * MMU.PAGE_SIZE ) + ": reads=" + current.pageReads[pageNo] +
+                        ", writes=" + current.pageWrites[pageNo] +
+                        ", fetches=" + current.pageFetches[pageNo];
+            }
+        }
+
+        private int getPageNo(int x, int y)
+        {
+            final float cellWidth = getWidth() / (float) PAGES_PER_ROW;
+            final float cellHeight = getHeight() / (float) ROWS;
+            final int col = (int) (x / cellWidth);
+            final int row = (int) (y / cellHeight);
+            if ( col < 0 || col >= PAGES_PER_ROW || row < 0 || row >= ROWS ) {
+                return -1;
+            }
+            return row * PAGES_PER_ROW + col;
+        }
+
+        @Override
+        protected void paintComponent(Graphics g)
+        {
+            super.paintComponent( g );
+            final float cellWidth = getWidth() / (float) PAGES_PER_ROW;
+            final float cellHeight = getHeight() / (float) ROWS;
+            synchronized( LOCK )
+            {
+                long max = 0;
+                for (long delta : deltas)
+                {
+                    max = Math.max( max, delta );
+                }
+                final double logMax = Math.log1p( max );
+                for ( int pageNo = 0 ; pageNo < MemoryAccessStatistics.PAGE_COUNT ; pageNo++ )
+                {
+                    final long delta = deltas[pageNo];
+                    if ( delta == 0 && current.getTotalAccesses( pageNo ) == 0 ) {
+                        g.setColor( Color.BLACK );
+                    } else {
+                        final float heat = logMax == 0 ? 0 : (float) (Math.log1p( delta ) / logMax);
+                        g.setColor( heatColor( heat ) );
+                    }
+                    final int x0 = (int) ( (pageNo % PAGES_PER_ROW) * cellWidth );
+                    final int y0 = (int) ( (pageNo / PAGES_PER_ROW) * cellHeight );
+                    final int x1 = (int) ( ((pageNo % PAGES_PER_ROW)+1) * cellWidth );
+                    final int y1 = (int) ( ((pageNo / PAGES_PER_ROW)+1) * cellHeight );
+                    g.fillRect( x0, y0, Math.max(1,x1-x0), Math.max(1,y1-y0) );
+                }
+            }
+        }
+    };
+
+    public MemoryHeatmapWindow(UI ui)
+    {
+        super( "Memory Heatmap", ui );
+
+        enabled.addActionListener( ev ->
+        {
+            final boolean onOff = enabled.isSelected();
+            runOnEmulator( emu -> emu.mmu.getStatistics().enabled = onOff );
+        });
+        final JButton reset = new JButton( "Reset" );
+        reset.addActionListener( ev -> runOnEmulator( emu ->
+        {
+            emu.mmu.getStatistics().reset();
+            update( emu );
+        }));
+
+        registers.setFont( new Font( Font.MONOSPACED, Font.PLAIN, 12 ) );
+        registers.setEditable( false );
+        registers.setRows( 10 );
+
+        getContentPane().setLayout( new GridBagLayout() );
+
+        GridBagConstraints cnstrs = cnstrsNoResize( 0, 0 );
+        getContentPane().add( enabled, cnstrs );
+        cnstrs = cnstrsNoResize( 1, 0 );
+        getContentPane().add( reset, cnstrs );
+
+        cnstrs = cnstrs( 0, 1 );
+        cnstrs.gridwidth = 2;
+        cnstrs.weighty = 0.7;
+        getContentPane().add( heatmap, cnstrs );
+
+        cnstrs = cnstrs( 0, 2 );
+        cnstrs.gridwidth = 2;
+        cnstrs.weighty = 0.3;
+        getContentPane().add( new JScrollPane( registers ), cnstrs );
+    }
+
+    private static Color heatColor(float heat)
+    {
+        // dark blue -> red -> yellow
+        heat = Math.max( 0f, Math.min( 1f, heat ) );
+        if ( heat < 0.5f ) {
+            final float f = heat * 2;
+            return new Color( f, 0f, 0.3f * (1-f) + 0.05f );
+        }
+        final float f = (heat - 0.5f) * 2;
+        return new Color( 1f, f, 0f );
+    }
+
+    @Override
+    public WindowKey getWindowKey()
+    {
+        return WindowKey.MEMORY_HEATMAP;
+    }
+
+    @Override
+    public void stopped(Emulator emulator)
+    {
+        tick(emulator);
+    }
+
+    @Override
+    public void singleStepFinished(Emulator emulator)
+    {
+        tick(emulator);
+    }
+
+    @Override
+    public void enteredContinousMode(Emulator emulator)
+    {
+    }
+
+    @Override
+    public void tick(Emulator emulator)
+    {
+        // counters don't change while disabled, skip copying them around
+        // (the first tick after disabling still picks up the final values)
+        final boolean isEnabled = emulator.mmu.getStatistics().enabled;
+        if ( isEnabled || wasEnabled ) {
+            update( emulator );
+        }
+        wasEnabled = isEnabled;
+    }
+
+    private void update(Emulator emulator)
+    {
+        final String text;
+        final boolean isEnabled;
+        synchronized( LOCK )
+        {
+            current.copyTo( previous );
+            emulator.mmu.getStatistics().copyTo( current );
+            for ( int i = 0 ; i < MemoryAccessStatistics.PAGE_COUNT ; i++ ) {
+                deltas[i] = current.getTotalAccesses( i ) - previous.getTotalAccesses( i );
+            }
+            isEnabled = current.enabled;
+            text = describeRegisters( current );
+        }
+        runOnEDT( () ->
+        {
+            enabled.setSelected( isEnabled );
+            registers.setText( text );
+            registers.setCaretPosition( 0 );
+            heatmap.repaint();
+        });
+    }
+
+    private static final class RegisterCount
+    {
+        public final String name;
+        public final long reads;
+        public final long writes;
+
+        public RegisterCount(String name, long reads, long writes)
+        {
+            this.name = name;
+            this.reads = reads;
+            this.writes = writes;
+        }
+    }
+
+    private static String describeRegisters(MemoryAccessStatistics stats)
+    {
+        final List<RegisterCount> counts = new ArrayList<>();
+        for ( int i = 0 ; i < MemoryAccessStatistics.CUSTOM_CHIP_REGISTER_COUNT ; i++ )
+        {
+            if ( stats.customChipReads[i] != 0 || stats.customChipWrites[i] != 0 ) {
+                counts.add( new RegisterCount( registerName( 0xdff000 + i*2 ), stats.customChipReads[i], stats.customChipWrites[i] ) );
+            }
+        }
+        for ( int i = 0 ; i < MemoryAccessStatistics.CIA_REGISTER_COUNT ; i++ )
+        {
+            if ( stats.ciaaReads[i] != 0 || stats.ciaaWrites[i] != 0 ) {
+                counts.add( new RegisterCount( registerName( 0xbfe001 + (i << 8) ), stats.ciaaReads[i], stats.ciaaWrites[i] ) );
+            }
+            if ( stats.ciabReads[i] != 0 || stats.ciabWrites[i] != 0 ) {
+                counts.add( new RegisterCount( registerName( 0xbfd000 + (i << 8) ), stats.ciabReads[i], stats.ciabWrites[i] ) );
+            }
+        }
+        counts.sort( (a,b) -> Long.compare( b.reads+b.writes, a.reads+a.writes ) );
+
+        final StringBuilder buffer = new StringBuilder();
+        buffer.append( String.format( "%-24s %12s %12s\n", "Register", "Reads", "Writes" ) );
+        for ( int i = 0, len = Math.min( TOP_REGISTER_COUNT, counts.size() ) ; i < len ; i++ )
+        {
+            final RegisterCount c = counts.get( i );
+            buffer.append( String.format( "%-24s %12d %12d\n", c.name, c.reads, c.writes ) );
+        }
+        return buffer.toString();
+    }
+
+    private static String registerName(int address)
+    {
+        final RegisterDescription desc = REGISTER_RESOLVER.resolve( address );
+        return desc == null ? Misc.hex( address ) : desc.name + " (" + Misc.hex( address ) + ")";
+    }
+}
@@ -1,65 +1,81 @@
 package de.codesourcery.m68k.emulator.ui;
 
 import de.codesourcery.m68k.emulator.Emulator;
+import de.codesourcery.m68k.emulator.Keyboard;
+import de.codesourcery.m68k.emulator.memory.Video;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import javax.swing.JPanel;
+import java.awt.Color;
 import java.awt.Graphics;
 import java.awt.GridBagConstraints;
 import java.awt.GridBagLayout;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
 import java.awt.image.BufferedImage;
 import java.awt.image.DataBufferInt;
-import java.awt.image.WritableRaster;
-
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Displays the frames rendered by {@link Video}.
+ *
+ * Frames are handed from the emulator thread to the EDT without any locking:
+ * The emulator copies a finished frame into a private {@link BufferedImage} and
+ * publishes it through an {@link AtomicReference}. If the EDT did not pick up the
+ * previously published frame yet, that frame is simply dropped and its image
+ * gets re-used, so emulation never waits for painting.
+ *
+ * While the screen has the focus, key presses get forwarded to the emulated keyboard.
+ *
+ * @author tobias.gierke@code-sourcery.de
+ */
 public class ScreenWindow extends AppWindow implements ITickListener,
         Emulator.IEmulatorStateCallback
 {
     private static final Logger LOG = LogManager.getLogger( ScreenWindow.class.getName() );
 
-    private final Object LOCK = new Object();
+    // frame published by the emulator thread but not yet picked up by the EDT
+    private final AtomicReference<BufferedImage> pending = new AtomicReference<>();
+    // image no longer displayed by the EDT, ready to be re-used by the emulator thread
+    private final AtomicReference<BufferedImage> released = new AtomicReference<>();
 
-    // @GuaredBy(LOCK)
-    private int amigaWidth=1;
-    // @GuaredBy(LOCK)
-    private int amigaHeight=1;
-    // @GuaredBy(LOCK)
-    private int[] screenData = new int[0];
+    // only accessed by the emulator thread
+    private BufferedImage backBuffer;
+    private int lastFrameCounter = -1;
 
     private final class MyPanel extends JPanel
     {
-        private int previousWidth;
-        private int previousHeight;
-        private BufferedImage image;
-
-        private BufferedImage getImage()
-        {
-            if ( image == null || previousHeight != amigaHeight || previousWidth != amigaWidth)
-            {
-                image = new BufferedImage( amigaWidth,amigaHeight,BufferedImage.TYPE_INT_RGB );
-                previousWidth = amigaHeight;
-                previousHeight = amigaWidth;
-            }
-            return image;
-        }
+        // only accessed by the EDT
+        private BufferedImage displayed;
 
         @Override
         protected void paintComponent(Graphics g)
         {
-            final BufferedImage image;
-            synchronized(LOCK)
+            final BufferedImage newFrame = pending.getAndSet( null );
+            if ( newFrame != null )
             {
-                image = getImage();
-                final WritableRaster raster = image.getRaster();
-                final int[] dst = ( (DataBufferInt) raster.getDataBuffer() ).getData();
-                System.arraycopy(screenData, 0, dst, 0, screenData.length);
+                if ( displayed != null ) {
+                    released.set( displayed );
+                }
+                displayed = newFrame;
+            }
+            if ( displayed != null ) {
+                g.drawImage( displayed,0,0,getWidth(),getHeight(),null );
+            } else {
+                g.setColor( Color.BLACK );
+                g.fillRect( 0, 0, getWidth(), getHeight() );
             }
-            g.drawImage( image,0,0,getWidth(),getHeight(),null );
         }
     };
 
     private final MyPanel panel = new MyPanel();
 
+    // keys currently held down, used to filter out auto-repeat events. Only accessed by the EDT
+    private final boolean[] keysDown = new boolean[128];
+
     public ScreenWindow(UI ui)
     {
         super( "Screen" , ui );
@@ -70,6 +86,78 @@ public class ScreenWindow extends AppWindow implements ITickListener,
         cnstrs.fill = GridBagConstraints.BOTH;
         getContentPane().setLayout( new GridBagLayout() );
         getContentPane().add( panel, cnstrs );
+
+        panel.setFocusable( true );
+        panel.addMouseListener( new MouseAdapter()
+        {
+            @Override
+            public void mouseClicked(MouseEvent e)
+            {
+                panel.requestFocusInWindow();
+            }
+        });
+        panel.addKeyListener( new KeyAdapter()
+        {
+            @Override
+            public void keyPressed(KeyEvent e)
+            {
+                final int rawCode = toRawCode( e );
+                final Emulator emulator = ui.getEmulator();
+                if ( rawCode != -1 && ! keysDown[rawCode] && emulator != null )
+                {
+                    keysDown[rawCode] = true;
+                    emulator.keyboard.keyPressed( rawCode );
+                }
+            }
+
+            @Override
+            public void keyReleased(KeyEvent e)
+            {
+                final int rawCode = toRawCode( e );
+                final Emulator emulator = ui.getEmulator();
+                if ( rawCode != -1 && keysDown[rawCode] && emulator != null )
+                {
+                    keysDown[rawCode] = false;
+                    emulator.keyboard.keyReleased( rawCode );
+                }
+            }
+        });
+    }
+
+    private static int toRawCode(KeyEvent e)
+    {
+        final boolean right = e.getKeyLocation() == KeyEvent.KEY_LOCATION_RIGHT;
+        final int keyCode = e.getKeyCode();
+        switch( keyCode )
+        {
+            case KeyEvent.VK_SPACE:         return Keyboard.KEY_SPACE;
+            case KeyEvent.VK_BACK_SPACE:    return Keyboard.KEY_BACKSPACE;
+            case KeyEvent.VK_TAB:           return Keyboard.KEY_TAB;
+            case KeyEvent.VK_ENTER:
+                return e.getKeyLocation() == KeyEvent.KEY_LOCATION_NUMPAD ? Keyboard.KEY_ENTER : Keyboard.KEY_RETURN;
+            case KeyEvent.VK_ESCAPE:        return Keyboard.KEY_ESCAPE;
+            case KeyEvent.VK_DELETE:        return Keyboard.KEY_DELETE;
+            case KeyEvent.VK_UP:            return Keyboard.KEY_CURSOR_UP;
+            case KeyEvent.VK_DOWN:          return Keyboard.KEY_CURSOR_DOWN;
+            case KeyEvent.VK_RIGHT:         return Keyboard.KEY_CURSOR_RIGHT;
+            case KeyEvent.VK_LEFT:          return Keyboard.KEY_CURSOR_LEFT;
+            case KeyEvent.VK_HELP:          return Keyboard.KEY_HELP;
+            case KeyEvent.VK_SHIFT:         return right ? Keyboard.KEY_RIGHT_SHIFT : Keyboard.KEY_LEFT_SHIFT;
+            case KeyEvent.VK_CAPS_LOCK:     return Keyboard.KEY_CAPS_LOCK;
+            case KeyEvent.VK_CONTROL:       return Keyboard.KEY_CTRL;
+            case KeyEvent.VK_ALT:           return right ? Keyboard.KEY_RIGHT_ALT : Keyboard.KEY_LEFT_ALT;
+            case KeyEvent.VK_ALT_GRAPH:     return Keyboard.KEY_RIGHT_ALT;
+            case KeyEvent.VK_WINDOWS:       return right ? Keyboard.KEY_RIGHT_AMIGA : Keyboard.KEY_LEFT_AMIGA;
+            case KeyEvent.VK_CONTEXT_MENU:  return Keyboard.KEY_RIGHT_AMIGA;
+            case KeyEvent.VK_QUOTE:         return Keyboard.toRawCode( '\'' );
+            case KeyEvent.VK_BACK_QUOTE:    return Keyboard.toRawCode( '`' );
+            default:
+                if ( keyCode >= KeyEvent.VK_F1 && keyCode <= KeyEvent.VK_F10 ) {
+                    return Keyboard.KEY_F1 + keyCode - KeyEvent.VK_F1;
+                }
+                // letters, digits and most punctuation have their ASCII value as key code
+                return keyCode < 128 ? Keyboard.toRawCode( Character.toLowerCase( (char) keyCode ) ) : -1;
+        }
     }
 
     @Override
@@ -98,19 +186,32 @@ public class ScreenWindow extends AppWindow implements ITickListener,
     @Override
     public void tick(Emulator emulator)
     {
-        synchronized (LOCK)
+        final Video video = emulator.video;
+        final int frameCounter = video.getFrameCounter();
+        if ( frameCounter == lastFrameCounter ) {
+            return;
+        }
+        lastFrameCounter = frameCounter;
+
+        final int width = video.getFrameWidth();
+        final int height = video.getFrameHeight();
+
+        BufferedImage image = backBuffer;
+        if ( image == null ) {
+            image = released.getAndSet( null );
+        }
+        if ( image == null || image.getWidth() != width || image.getHeight() != height )
         {
-            final int height = emulator.video.getDisplayHeight();
-            final int width = emulator.video.getDisplayWidth();
-            amigaHeight = height;
-            amigaWidth = width;
-            if ( screenData.length != height*width )
-            {
+            if ( image != null && ( image.getWidth() != width || image.getHeight() != height ) ) {
                 LOG.info( "Screen resolution: "+width+"x"+height );
-                screenData = new int[height * width];
             }
-            emulator.video.convertDisplayData( screenData, emulator.dmaController.isBitplaneDMAEnabled() );
+            image = new BufferedImage( width, height, BufferedImage.TYPE_INT_RGB );
         }
-        repaint();
+        final int[] dst = ( (DataBufferInt) image.getRaster().getDataBuffer() ).getData();
+        System.arraycopy( video.getFrameBuffer(), 0, dst, 0, width*height );
+
+        // publish frame, re-use the previous one if the EDT did not get around to display it
+        backBuffer = pending.getAndSet( image );
+        panel.repaint();
     }
-}
\ No newline at end of file
+}
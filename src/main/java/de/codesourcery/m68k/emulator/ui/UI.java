@@ -5,6 +5,10 @@ import de.codesourcery.m68k.disassembler.LibraryCallResolver;
 import de.codesourcery.m68k.emulator.Amiga;
 import de.codesourcery.m68k.emulator.Breakpoints;
 import de.codesourcery.m68k.emulator.Emulator;
+import de.codesourcery.m68k.emulator.audio.IAudioSink;
+import de.codesourcery.m68k.emulator.audio.JavaSoundSink;
+import de.codesourcery.m68k.emulator.chips.Paula;
+import de.codesourcery.m68k.emulator.floppy.ADFImage;
 import de.codesourcery.m68k.emulator.memory.MemoryBreakpoints;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -98,6 +102,7 @@ public class UI extends JFrame
         emulator.getBreakpoints().populateFrom( loadConfig().getBreakpoints() );
         emulator.memory.breakpoints.populateFrom( loadConfig().getMemoryBreakpoints() );
         emulator.setCallbackInvocationTicks(1000000);
+        setupAudio(emulator);
 
         setupLibraryCallResolver(emulator);
 
@@ -134,6 +139,21 @@ public class UI extends JFrame
         refresh();
     }
 
+    private void setupAudio(Emulator emulator)
+    {
+        final IAudioSink sink;
+        try
+        {
+            sink = new JavaSoundSink( Paula.SAMPLE_RATE, 200 );
+        }
+        catch (Exception e)
+        {
+            LOG.warn( "Audio output not available: "+e.getMessage() );
+            return;
+        }
+        emulator.runOnThread( () -> emulator.paula.setAudioSink( sink ), false );
+    }
+
     private void setupLibraryCallResolver(Emulator emulator) throws IOException
     {
         registerResolver = new ChipRegisterResolver(emulator );
@@ -381,6 +401,41 @@ public class UI extends JFrame
             }
         }));
 
+        menu1.add( menuItem("Insert disk into DF0:", () ->
+        {
+            final FileFilter filter = new FileFilter()
+            {
+                @Override
+                public boolean accept(File f)
+                {
+                    return f.isDirectory() || f.getName().toLowerCase().endsWith(".adf");
+                }
+
+                @Override
+                public String getDescription()
+                {
+                    return "ADF disk images";
+                }
+            };
+
+            final Optional<File> selection = selectFile(null,filter);
+            if ( selection.isPresent() )
+            {
+                final ADFImage disk = ADFImage.open( selection.get() );
+                emulator.runOnThread( () -> emulator.diskController.insertDisk( 0, disk ), false );
+            }
+        }));
+
+        menu1.add( menuItem("Eject disk from DF0:", () -> emulator.runOnThread( () -> emulator.diskController.ejectDisk( 0 ), false ) ) );
+
+        final JCheckBoxMenuItem turboItem = new JCheckBoxMenuItem( "Turbo floppy", false );
+        turboItem.addActionListener( ev ->
+        {
+            final boolean turbo = turboItem.isSelected();
+            emulator.runOnThread( () -> emulator.diskController.turbo = turbo, false );
+        });
+        menu1.add( turboItem );
+
         menu1.add( menuItem("Library function resolution...", () -> new LibraryFunctionResolutionDialog().showDialog( loadConfig() ) ));
 
         menu1.add( menuItem("Load kickstart ROM disassembly", () ->
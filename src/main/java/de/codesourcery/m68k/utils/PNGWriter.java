@@ -0,0 +1,85 @@
+package de.codesourcery.m68k.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes RGB pixels as a PNG image without depending on <code>java.awt</code> / <code>javax.imageio</code>,
+ * so it may be used on headless machines without loading any AWT classes.
+ *
+ * @author tobias.gierke@code-sourcery.de
+ */
+public final class PNGWriter
+{
+    private static final byte[] SIGNATURE = { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n' };
+
+    private PNGWriter() {
+    }
+
+    /**
+     * Writes an image.
+     *
+     * @param pixels pixels in (A)RGB format, alpha gets ignored
+     * @param width
+     * @param height
+     * @param out stream to write to, not closed by this method
+     * @throws IOException
+     */
+    public static void write(int[] pixels,int width,int height,OutputStream out) throws IOException
+    {
+        if ( pixels.length < width*height ) {
+            throw new IllegalArgumentException( "Expected "+(width*height)+" pixels but got only "+pixels.length );
+        }
+        out.write( SIGNATURE );
+
+        final ByteArrayOutputStream header = new ByteArrayOutputStream();
+        final DataOutputStream headerOut = new DataOutputStream( header );
+        headerOut.writeInt( width );
+        headerOut.writeInt( height );
+        headerOut.writeByte( 8 ); // bit depth
+        headerOut.writeByte( 2 ); // color type: RGB
+        headerOut.writeByte( 0 ); // compression
+        headerOut.writeByte( 0 ); // filter
+        headerOut.writeByte( 0 ); // no interlace
+        writeChunk( "IHDR", header.toByteArray(), out );
+
+        final ByteArrayOutputStream data = new ByteArrayOutputStream();
+        try ( DeflaterOutputStream deflater = new DeflaterOutputStream( data ) )
+        {
+            final byte[] line = new byte[ 1 + width * 3 ]; // filter type 0 + RGB triplets
+            for ( int y = 0, ptr = 0 ; y < height ; y++ )
+            {
+                for ( int x = 0, dst = 1 ; x < width ; x++ )
+                {
+                    final int color = pixels[ptr++];
+                    line[dst++] = (byte) (color >> 16);
+                    line[dst++] = (byte) (color >> 8);
+                    line[dst++] = (byte) color;
+                }
+                deflater.write( line );
+            }
+        }
+        writeChunk( "IDAT", data.toByteArray(), out );
+        writeChunk( "IEND", new byte[0], out );
+    }
+
+    private static void writeChunk(String type,byte[] data,OutputStream out) throws IOException
+    {
+        final byte[] typeBytes = type.getBytes( StandardCharsets.US_ASCII );
+        final CRC32 crc = new CRC32();
+        crc.update( typeBytes );
+        crc.update( data );
+
+        final DataOutputStream dataOut = new DataOutputStream( out );
+        dataOut.writeInt( data.length );
+        dataOut.write( typeBytes );
+        dataOut.write( data );
+        dataOut.writeInt( (int) crc.getValue() );
+        dataOut.flush();
+    }
+}
@@ -0,0 +1,63 @@
+package de.codesourcery.m68k.disassembler;
+
+import junit.framework.TestCase;
+
+public class ChipRegisterResolverTest extends TestCase
+{
+    private final ChipRegisterResolver resolver = new ChipRegisterResolver( null );
+
+    public void testCustomChipRegisters()
+    {
+        assertName( "BLTDDAT", 0xDFF000 );
+        assertName( "DMACON", 0xDFF096 );
+        assertName( "COLOR00", 0xDFF180 );
+        assertName( "DIWHIGH", 0xDFF1E4 );
+
+        assertNull( resolver.resolve( 0xDFF097 ) ); // odd address
+        assertNull( resolver.resolve( 0xDFF1FE ) ); // unused slot
+        assertNull( resolver.resolve( 0xDFF200 ) );
+        assertNull( resolver.resolve( 0xDFEFFE ) );
+        assertNull( resolver.resolve( 0xFFDFF096 ) );
+    }
+
+    public void testCIARegisters()
+    {
+        assertName( "CIAA_PRA", 0xBFE001 );
+        assertName( "CIAA_ICR", 0xBFED01 );
+        assertName( "CIAA_CRB", 0xBFEF01 );
+        assertName( "CIAB_PRA", 0xBFD000 );
+        assertName( "CIAB_PRB", 0xBFD100 );
+        assertName( "CIAB_CRB", 0xBFDF00 );
+
+        assertNull( resolver.resolve( 0xBFEB01 ) ); // unused register
+        assertNull( resolver.resolve( 0xBFE000 ) ); // CIAA is on odd addresses
+        assertNull( resolver.resolve( 0xBFD001 ) ); // CIAB is on even addresses
+        assertNull( resolver.resolve( 0xBFE011 ) );
+        assertNull( resolver.resolve( 0xBFC001 ) );
+        assertNull( resolver.resolve( 0xFFBFE001 ) );
+    }
+
+    public void testOnlyExactAddressesResolve()
+    {
+        int count = 0;
+        for ( int address = 0 ; address <= 0xffffff ; address++ )
+        {
+            final RegisterDescription desc = resolver.resolve( address );
+            if ( desc != null )
+            {
+                assertEquals( address, desc.address );
+                count++;
+            }
+        }
+        // 15 registers per CIA
+        assertEquals( 215 + 2*15, count );
+    }
+
+    private void assertName(String expected,int address)
+    {
+        final RegisterDescription desc = resolver.resolve( address );
+        assertNotNull( desc );
+        assertEquals( expected, desc.name );
+        assertEquals( address, desc.address );
+    }
+}
@@ -0,0 +1,89 @@
+package de.codesourcery.m68k.emulator;
+
+import de.codesourcery.m68k.assembler.arch.CPUType;
+import de.codesourcery.m68k.emulator.chips.CIA8520;
+import de.codesourcery.m68k.emulator.chips.IRQController;
+import de.codesourcery.m68k.emulator.memory.Blitter;
+import de.codesourcery.m68k.emulator.memory.DMAController;
+import de.codesourcery.m68k.emulator.memory.MMU;
+import de.codesourcery.m68k.emulator.memory.Memory;
+import de.codesourcery.m68k.emulator.memory.Video;
+import junit.framework.TestCase;
+
+public class KeyboardTest extends TestCase
+{
+    private CIA8520 cia;
+    private Keyboard keyboard;
+
+    @Override
+    protected void setUp()
+    {
+        final DMAController dmaCtrl = new DMAController();
+        final Blitter blitter = new Blitter( dmaCtrl );
+        final Amiga amiga = Amiga.AMIGA_500;
+        final Video video = new Video(amiga,blitter,dmaCtrl);
+        final Memory memory = new Memory( new MMU( new MMU.PageFaultHandler( amiga, blitter, video ) ) );
+        final IRQController irqController = new IRQController( new CPU(CPUType.M68000, memory) );
+        cia = new CIA8520( CIA8520.Name.CIAA, amiga, irqController );
+        keyboard = new Keyboard( amiga, cia );
+        cia.setSerialModeListener( keyboard::serialModeChanged );
+    }
+
+    public void testTypeWithHandshake()
+    {
+        keyboard.type( "A" );
+        assertEquals( Keyboard.KEY_LEFT_SHIFT, receive() );
+        handshake( 100 );
+        assertEquals( 0x20, receive() );
+        handshake( 100 );
+        assertEquals( 0x20 | Keyboard.KEY_UP, receive() );
+        handshake( 100 );
+        assertEquals( Keyboard.KEY_LEFT_SHIFT | Keyboard.KEY_UP, receive() );
+        assertFalse( keyboard.isIdle() );
+        handshake( 100 );
+        assertTrue( keyboard.isIdle() );
+    }
+
+    public void testLostSync()
+    {
+        keyboard.keyPressed( Keyboard.KEY_RETURN );
+        assertEquals( Keyboard.KEY_RETURN, receive() );
+        // too short
+        handshake( 10 );
+        tick( 110_000 );
+        assertEquals( Keyboard.CODE_LOST_SYNC, receive() );
+        handshake( 100 );
+        assertEquals( Keyboard.KEY_RETURN, receive() );
+        handshake( 100 );
+        assertTrue( keyboard.isIdle() );
+    }
+
+    private int receive()
+    {
+        for ( int i = 0 ; i < 2000 ; i++ )
+        {
+            keyboard.tick();
+            if ( ( cia.readRegister( CIA8520.REG_IRQ_CTRL ) & CIA8520.ICR_SP ) != 0 )
+            {
+                final int data = ~cia.readRegister( CIA8520.REG_SERIAL_DATA ) & 0xff;
+                return data >>> 1 | (data & 1) << 7;
+            }
+        }
+        fail( "Nothing received" );
+        return -1;
+    }
+
+    private void handshake(int cycles)
+    {
+        cia.writeRegister( CIA8520.REG_CTRLA, CIA8520.CTRL_SPMODE );
+        tick( cycles );
+        cia.writeRegister( CIA8520.REG_CTRLA, 0 );
+    }
+
+    private void tick(int count)
+    {
+        for ( int i = 0 ; i < count ; i++ ) {
+            keyboard.tick();
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package de.codesourcery.m68k.emulator;
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.TimeUnit;
+
+public class SpeedGovernorTest extends TestCase
+{
+    private static final Amiga AMIGA = Amiga.AMIGA_500;
+
+    // 5 PAL frames
+    private static final int TICKS = Math.round( AMIGA.getCPUClock() * 1_000_000 / 50 ) * 5;
+
+    public void testPacing()
+    {
+        final SpeedGovernor governor = new SpeedGovernor( AMIGA );
+        final long start = System.nanoTime();
+        tick( governor, TICKS );
+        final long elapsedMillis = TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - start );
+        assertTrue( "Took only "+elapsedMillis+" ms", elapsedMillis >= 99 );
+    }
+
+    public void testWarp()
+    {
+        final SpeedGovernor governor = new SpeedGovernor( AMIGA );
+        governor.setWarp( true );
+        final long start = System.nanoTime();
+        tick( governor, TICKS * 10 );
+        final long elapsedMillis = TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - start );
+        assertTrue( "Took "+elapsedMillis+" ms", elapsedMillis < 1000 );
+    }
+
+    private static void tick(SpeedGovernor governor,int count)
+    {
+        for ( int i = 0 ; i < count ; i++ ) {
+            governor.tick();
+        }
+    }
+}
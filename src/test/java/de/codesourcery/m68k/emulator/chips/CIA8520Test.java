@@ -231,6 +231,62 @@ public class CIA8520Test extends TestCase
         assertEquals(1, irqCnt[0]);
     }
 
+    public void testReadRunningTimers()
+    {
+        loadTimerA(100 );
+        loadTimerB(1000 );
+        change(CIA8520.REG_CTRLA).set(CIA8520.CTRL_START).apply();
+        change(CIA8520.REG_CTRLB).set(CIA8520.CTRL_START).apply();
+
+        for ( int i = 0 ; i < 30 ; i++ ) {
+            cia.tick();
+        }
+        assertEquals( 70, readTimerA() );
+        assertEquals( 970, readTimerB() );
+
+        // stopped timers keep their value
+        change(CIA8520.REG_CTRLA).clear(CIA8520.CTRL_START).apply();
+        for ( int i = 0 ; i < 80 ; i++ ) {
+            cia.tick();
+        }
+        assertEquals( 70, readTimerA() );
+        assertEquals( 890, readTimerB() );
+
+        // continuous mode reloads the latch on underflow
+        change(CIA8520.REG_CTRLA).set(CIA8520.CTRL_START).apply();
+        for ( int i = 0 ; i < 75 ; i++ ) {
+            cia.tick();
+        }
+        assertEquals( 95, readTimerA() );
+    }
+
+    public void testTimerBCountsTimerAUnderflows()
+    {
+        loadTimerA(2 );
+        loadTimerB(10 );
+        change(CIA8520.REG_CTRLA).set(CIA8520.CTRL_START).apply();
+        change(CIA8520.REG_CTRLB).set(CIA8520.CTRL_START|CIA8520.INMODE_TA).apply();
+
+        for ( int i = 0 ; i < 8 ; i++ ) {
+            cia.tick();
+        }
+        assertEquals( 6, readTimerB() );
+
+        // only count timer A underflows while CNT is high
+        change(CIA8520.REG_CTRLB).set(CIA8520.INMODE_CNT_TA).apply();
+        cia.setCntIn(false);
+        for ( int i = 0 ; i < 8 ; i++ ) {
+            cia.tick();
+        }
+        assertEquals( 6, readTimerB() );
+
+        cia.setCntIn(true);
+        for ( int i = 0 ; i < 8 ; i++ ) {
+            cia.tick();
+        }
+        assertEquals( 2, readTimerB() );
+    }
+
     protected final class BitHelper
     {
         private final int register;
@@ -0,0 +1,182 @@
+package de.codesourcery.m68k.emulator.chips;
+
+import de.codesourcery.m68k.assembler.arch.CPUType;
+import de.codesourcery.m68k.emulator.Amiga;
+import de.codesourcery.m68k.emulator.CPU;
+import de.codesourcery.m68k.emulator.memory.Blitter;
+import de.codesourcery.m68k.emulator.memory.DMAController;
+import de.codesourcery.m68k.emulator.memory.MMU;
+import de.codesourcery.m68k.emulator.memory.Memory;
+import de.codesourcery.m68k.emulator.memory.Video;
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class IRQControllerTest extends TestCase
+{
+    private IRQController irqController;
+    private final List<Integer> levels = new ArrayList<>();
+    private final List<Integer> withdrawn = new ArrayList<>();
+
+    @Override
+    protected void setUp()
+    {
+        final DMAController dmaCtrl = new DMAController();
+        final Blitter blitter = new Blitter( dmaCtrl );
+        final Amiga amiga = Amiga.AMIGA_500;
+        final Video video = new Video(amiga,blitter,dmaCtrl);
+        final MMU.PageFaultHandler faultHandler = new MMU.PageFaultHandler( amiga, blitter, video );
+        final Memory memory = new Memory( new MMU( faultHandler ) );
+        irqController = new IRQController( new CPU(CPUType.M68000, memory) )
+        {
+            @Override
+            protected void signalCPU(int level)
+            {
+                levels.add( level );
+            }
+
+            @Override
+            protected void withdrawFromCPU(int levelMask)
+            {
+                withdrawn.add( levelMask );
+            }
+        };
+        levels.clear();
+        withdrawn.clear();
+    }
+
+    public void testDisabledIRQsAreNotSignalled()
+    {
+        irqController.writeIRQEnable( 0x8000 | IRQController.IRQSource.VBLANK.bitMask ); // no INTEN
+        irqController.triggerIRQ( IRQController.IRQSource.VBLANK );
+        assertTrue( levels.isEmpty() );
+        assertEquals( IRQController.IRQSource.VBLANK.bitMask, irqController.irqRequests );
+
+        // enabling the master switch raises the pending IRQ
+        irqController.writeIRQEnable( 0x8000 | 1<<14 );
+        assertEquals( List.of( 3 ), levels );
+    }
+
+    public void testLatchedLevelIsOnlySignalledOnce()
+    {
+        irqController.writeIRQEnable( 0x8000 | 1<<14 | IRQController.IRQSource.VBLANK.bitMask |
+                IRQController.IRQSource.BLITTER_FINISHED.bitMask | IRQController.IRQSource.EXTERN.bitMask );
+
+        irqController.triggerIRQ( IRQController.IRQSource.VBLANK );
+        irqController.triggerIRQ( IRQController.IRQSource.VBLANK );
+        irqController.triggerIRQ( IRQController.IRQSource.BLITTER_FINISHED );
+        assertEquals( List.of( 3 ), levels );
+
+        irqController.triggerIRQ( IRQController.IRQSource.EXTERN );
+        assertEquals( List.of( 3, 6 ), levels );
+        assertEquals( 6, irqController.getLevel() );
+
+        // acknowledging level 6 drops back to the pending level 3 IRQs,
+        // which the CPU already latched
+        irqController.writeIRQReq( IRQController.IRQSource.EXTERN.bitMask );
+        assertEquals( 3, irqController.getLevel() );
+        assertEquals( List.of( 3, 6 ), levels );
+
+        // the CPU did not get around to process level 3, all its sources got acknowledged
+        irqController.writeIRQReq( IRQController.IRQSource.VBLANK.bitMask | IRQController.IRQSource.BLITTER_FINISHED.bitMask );
+        assertEquals( 0, irqController.getLevel() );
+        assertEquals( 2, levels.size() );
+        assertEquals( List.of( 1 << 6, 1 << 3 ), withdrawn );
+
+        irqController.triggerIRQ( IRQController.IRQSource.VBLANK );
+        assertEquals( List.of( 3, 6, 3 ), levels );
+    }
+
+    public void testLevelIsSignalledAgainWhileSourcesArePending()
+    {
+        irqController.writeIRQEnable( 0x8000 | 1<<14 | IRQController.IRQSource.VBLANK.bitMask |
+                IRQController.IRQSource.BLITTER_FINISHED.bitMask );
+
+        irqController.triggerIRQ( IRQController.IRQSource.VBLANK );
+        irqController.triggerIRQ( IRQController.IRQSource.BLITTER_FINISHED );
+        assertEquals( List.of( 3 ), levels );
+
+        // CPU takes the interrupt, handler only acknowledges VBLANK
+        irqController.interruptAcknowledged( 3 );
+        irqController.writeIRQReq( IRQController.IRQSource.VBLANK.bitMask );
+        assertEquals( 3, irqController.getLevel() );
+        assertEquals( List.of( 3, 3 ), levels );
+
+        // CPU takes the interrupt again, handler acknowledges the blitter
+        irqController.interruptAcknowledged( 3 );
+        irqController.writeIRQReq( IRQController.IRQSource.BLITTER_FINISHED.bitMask );
+        assertEquals( 0, irqController.getLevel() );
+        assertEquals( List.of( 3, 3 ), levels );
+        assertTrue( withdrawn.isEmpty() );
+
+        // next VBLANK
+        irqController.triggerIRQ( IRQController.IRQSource.VBLANK );
+        assertEquals( List.of( 3, 3, 3 ), levels );
+    }
+
+    public void testSourceRequestedWhileHandlerIsRunningGetsSignalled()
+    {
+        irqController.writeIRQEnable( 0x8000 | 1<<14 | IRQController.IRQSource.VBLANK.bitMask |
+                IRQController.IRQSource.BLITTER_FINISHED.bitMask );
+
+        irqController.triggerIRQ( IRQController.IRQSource.VBLANK );
+        irqController.interruptAcknowledged( 3 );
+
+        // blitter finishes while the level 3 handler is running
+        irqController.triggerIRQ( IRQController.IRQSource.BLITTER_FINISHED );
+        assertEquals( List.of( 3, 3 ), levels );
+
+        // handler acknowledges both, the CPU must not process level 3 again
+        irqController.writeIRQReq( IRQController.IRQSource.VBLANK.bitMask | IRQController.IRQSource.BLITTER_FINISHED.bitMask );
+        assertEquals( List.of( 1 << 3 ), withdrawn );
+    }
+
+    public void testLowerLevelIsSignalledWhenHigherLevelGetsAcknowledged()
+    {
+        irqController.writeIRQEnable( 0x8000 | 1<<14 | IRQController.IRQSource.VBLANK.bitMask | IRQController.IRQSource.PORTS.bitMask );
+
+        irqController.triggerIRQ( IRQController.IRQSource.VBLANK );
+        irqController.triggerIRQ( IRQController.IRQSource.PORTS );
+        assertEquals( List.of( 3 ), levels );
+
+        irqController.writeIRQReq( IRQController.IRQSource.VBLANK.bitMask );
+        assertEquals( List.of( 3, 2 ), levels );
+    }
+
+    public void testCIAInterruptDuringHandlerIsNotLost()
+    {
+        final CIA8520 ciaa = new CIA8520( CIA8520.Name.CIAA, Amiga.AMIGA_500, irqController );
+        irqController.setCIAA( ciaa );
+        irqController.writeIRQEnable( 0x8000 | 1<<14 | IRQController.IRQSource.PORTS.bitMask );
+
+        // timer A, continuous mode, underflow every other tick
+        ciaa.writeRegister( CIA8520.REG_IRQ_CTRL, CIA8520.ICR_SETCLR | CIA8520.ICR_TA );
+        ciaa.writeRegister( CIA8520.REG_TIMERA_LO, 1 );
+        ciaa.writeRegister( CIA8520.REG_TIMERA_HI, 0 );
+        ciaa.writeRegister( CIA8520.REG_CTRLA, CIA8520.CTRL_START );
+        while ( ! ciaa.isIRQAsserted() ) {
+            ciaa.tick();
+        }
+        assertEquals( List.of( 2 ), levels );
+
+        // level 2 handler reads ICR...
+        assertTrue( (ciaa.readRegister( CIA8520.REG_IRQ_CTRL ) & CIA8520.ICR_TA) != 0 );
+        assertFalse( ciaa.isIRQAsserted() );
+        // ...timer A underflows again before INTREQ got cleared...
+        while ( ! ciaa.isIRQAsserted() ) {
+            ciaa.tick();
+        }
+        // ...and INTREQ gets cleared, CIA line is still active so the request is raised again
+        irqController.writeIRQReq( IRQController.IRQSource.PORTS.bitMask );
+        assertTrue( (irqController.irqRequests & IRQController.IRQSource.PORTS.bitMask) != 0 );
+        assertEquals( List.of( 2, 2 ), levels );
+
+        // no CIA interrupt pending
+        ciaa.readRegister( CIA8520.REG_IRQ_CTRL );
+        ciaa.writeRegister( CIA8520.REG_CTRLA, 0 );
+        irqController.writeIRQReq( IRQController.IRQSource.PORTS.bitMask );
+        assertEquals( 0, irqController.irqRequests );
+        assertEquals( 0, irqController.getLevel() );
+    }
+}
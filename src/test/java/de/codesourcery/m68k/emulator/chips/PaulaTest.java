@@ -0,0 +1,130 @@
+package de.codesourcery.m68k.emulator.chips;
+
+import de.codesourcery.m68k.assembler.arch.CPUType;
+import de.codesourcery.m68k.emulator.Amiga;
+import de.codesourcery.m68k.emulator.CPU;
+import de.codesourcery.m68k.emulator.audio.IAudioSink;
+import de.codesourcery.m68k.emulator.memory.Blitter;
+import de.codesourcery.m68k.emulator.memory.DMAController;
+import de.codesourcery.m68k.emulator.memory.MMU;
+import de.codesourcery.m68k.emulator.memory.Memory;
+import de.codesourcery.m68k.emulator.memory.Video;
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+
+public class PaulaTest extends TestCase
+{
+    private static final int SAMPLES = 0x1000;
+
+    private Paula paula;
+    private Memory memory;
+    private DMAController dmaCtrl;
+    private int irqCount;
+
+    @Override
+    protected void setUp()
+    {
+        dmaCtrl = new DMAController();
+        final Blitter blitter = new Blitter( dmaCtrl );
+        final Amiga amiga = Amiga.AMIGA_500;
+        final Video video = new Video(amiga,blitter,dmaCtrl);
+        final MMU.PageFaultHandler faultHandler = new MMU.PageFaultHandler( amiga, blitter, video );
+        memory = new Memory( new MMU( faultHandler ) );
+        final IRQController irqController = new IRQController( new CPU(CPUType.M68000, memory) )
+        {
+            @Override
+            public void triggerIRQ(IRQSource source)
+            {
+                assertEquals( IRQSource.AUDIO_CHANNEL0_FINISHED, source );
+                irqCount++;
+            }
+        };
+        paula = new Paula( amiga, dmaCtrl, irqController );
+        paula.setMemory( memory );
+    }
+
+    public void testBlockInterrupts()
+    {
+        // 4 words = 8 samples per block, 200 color clocks per sample
+        startChannel0( 4, 200 );
+
+        // DMA gets picked up after one scanline (227 color clocks),
+        // blocks start after 0, 1600 and 3200 color clocks
+        tick( 4000*2 );
+        assertEquals( 3, irqCount );
+    }
+
+    public void testMaxPeriod()
+    {
+        // 1 word = 2 samples per block, 0xffff color clocks per sample
+        startChannel0( 1, 0xffff );
+
+        // must not hang
+        tick( 1_000_000 );
+        assertTrue( irqCount > 0 );
+    }
+
+    public void testOutput()
+    {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        paula.setAudioSink( new IAudioSink()
+        {
+            @Override
+            public int write(byte[] data, int offset, int length)
+            {
+                out.write( data, offset, length );
+                return length;
+            }
+
+            @Override
+            public void close()
+            {
+            }
+        });
+
+        for ( int i = 0 ; i < SAMPLES ; i += 2 ) {
+            memory.writeWord( SAMPLES + i, 0x7f80 ); // max. positive, max. negative
+        }
+        startChannel0( SAMPLES/2, 124 );
+        tick( 200000 );
+
+        final byte[] data = out.toByteArray();
+        assertTrue( data.length > 0 );
+        assertEquals( 0, data.length % IAudioSink.BYTES_PER_FRAME );
+        int positive = 0;
+        int negative = 0;
+        for ( int i = 0 ; i < data.length ; i += IAudioSink.BYTES_PER_FRAME )
+        {
+            final int left = (short) ( (data[i] & 0xff) | (data[i+1] << 8) );
+            final int right = (short) ( (data[i+2] & 0xff) | (data[i+3] << 8) );
+            assertEquals( 0, right );
+            if ( left == 127*64*2 ) {
+                positive++;
+            } else if ( left == -128*64*2 ) {
+                negative++;
+            } else {
+                fail( "Unexpected sample value "+left );
+            }
+        }
+        assertTrue( positive > 0 );
+        assertTrue( negative > 0 );
+    }
+
+    private void startChannel0(int lengthInWords,int period)
+    {
+        paula.writeWord( 0x0a0, SAMPLES >>> 16 );
+        paula.writeWord( 0x0a2, SAMPLES & 0xffff );
+        paula.writeWord( 0x0a4, lengthInWords );
+        paula.writeWord( 0x0a6, period );
+        paula.writeWord( 0x0a8, 64 );
+        dmaCtrl.flags = 1<<9 | 1<<0; // DMAEN | AUD0EN
+    }
+
+    private void tick(int count)
+    {
+        for ( int i = 0 ; i < count ; i++ ) {
+            paula.tick();
+        }
+    }
+}
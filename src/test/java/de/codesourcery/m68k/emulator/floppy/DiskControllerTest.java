@@ -0,0 +1,183 @@
+package de.codesourcery.m68k.emulator.floppy;
+
+import de.codesourcery.m68k.assembler.arch.CPUType;
+import de.codesourcery.m68k.emulator.Amiga;
+import de.codesourcery.m68k.emulator.CPU;
+import de.codesourcery.m68k.emulator.chips.CIA8520;
+import de.codesourcery.m68k.emulator.chips.IRQController;
+import de.codesourcery.m68k.emulator.chips.Paula;
+import de.codesourcery.m68k.emulator.memory.Blitter;
+import de.codesourcery.m68k.emulator.memory.DMAController;
+import de.codesourcery.m68k.emulator.memory.MMU;
+import de.codesourcery.m68k.emulator.memory.Memory;
+import de.codesourcery.m68k.emulator.memory.Video;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+public class DiskControllerTest extends TestCase
+{
+    private static final int BUFFER = 0x1000;
+
+    // sync word, info, label, header checksum, data checksum, sector data
+    private static final int SECTOR_WORDS = 1 + 4 + 16 + 4 + 4 + 512;
+
+    private File file;
+    private byte[] adf;
+    private Memory memory;
+    private DMAController dmaCtrl;
+    private CIA8520 ciaa;
+    private Paula paula;
+    private DiskController controller;
+    private final List<IRQController.IRQSource> irqs = new ArrayList<>();
+
+    @Override
+    protected void setUp() throws IOException
+    {
+        adf = new byte[ ADFImage.SIZE ];
+        for ( int i = 0 ; i < adf.length ; i++ ) {
+            adf[i] = (byte) (i * 31 + (i >>> 9));
+        }
+        file = File.createTempFile( "disk", ".adf" );
+        Files.write( file.toPath(), adf );
+
+        dmaCtrl = new DMAController();
+        final Blitter blitter = new Blitter( dmaCtrl );
+        final Amiga amiga = Amiga.AMIGA_500;
+        final Video video = new Video(amiga,blitter,dmaCtrl);
+        memory = new Memory( new MMU( new MMU.PageFaultHandler( amiga, blitter, video ) ) );
+        final IRQController irqController = new IRQController( new CPU(CPUType.M68000, memory) )
+        {
+            @Override
+            public void triggerIRQ(IRQSource source)
+            {
+                irqs.add( source );
+            }
+        };
+        ciaa = new CIA8520( CIA8520.Name.CIAA, amiga, irqController );
+        paula = new Paula( amiga, dmaCtrl, irqController );
+        controller = new DiskController( dmaCtrl, irqController, paula, ciaa );
+        controller.setMemory( memory );
+    }
+
+    @Override
+    protected void tearDown()
+    {
+        controller.ejectDisk( 0 );
+        file.delete();
+    }
+
+    public void testDriveStatus() throws IOException
+    {
+        // deselected drive doesn't pull any lines low
+        assertEquals( FloppyDrive.PORTA_MASK, ciaa.readRegister( CIA8520.REG_PORTA ) & FloppyDrive.PORTA_MASK );
+
+        controller.writePortB( 0xff & ~CIA8520.CIAB_PORB_DSKSEL0 );
+        int lines = ciaa.readRegister( CIA8520.REG_PORTA );
+        assertEquals( 0, lines & CIA8520.CIA_PORTA_DSKTRACK0 );
+        assertEquals( 0, lines & CIA8520.CIA_PORTA_DSKCHANGE );
+        assertTrue( (lines & CIA8520.CIA_PORTA_DSKRDY) != 0 );
+
+        controller.insertDisk( 0, ADFImage.open( file ) );
+        // step inwards, clears disk change
+        controller.writePortB( 0xff & ~(CIA8520.CIAB_PORB_DSKSEL0|CIA8520.CIAB_PORB_DSKDIREC) );
+        controller.writePortB( 0xff & ~(CIA8520.CIAB_PORB_DSKSEL0|CIA8520.CIAB_PORB_DSKDIREC|CIA8520.CIAB_PORB_DSKSTEP) );
+        assertEquals( 1, controller.drives[0].cylinder );
+        lines = ciaa.readRegister( CIA8520.REG_PORTA );
+        assertTrue( (lines & CIA8520.CIA_PORTA_DSKTRACK0) != 0 );
+        assertTrue( (lines & CIA8520.CIA_PORTA_DSKCHANGE) != 0 );
+        assertEquals( 0, lines & CIA8520.CIA_PORTA_DSKPROT );
+
+        // motor gets latched when the drive gets selected
+        controller.writePortB( 0xff & ~CIA8520.CIAB_PORB_DSKMOTOR );
+        controller.writePortB( 0xff & ~(CIA8520.CIAB_PORB_DSKMOTOR|CIA8520.CIAB_PORB_DSKSEL0) );
+        assertTrue( controller.drives[0].motorOn );
+        assertEquals( 0, ciaa.readRegister( CIA8520.REG_PORTA ) & CIA8520.CIA_PORTA_DSKRDY );
+    }
+
+    public void testReadSector() throws IOException
+    {
+        startRead( SECTOR_WORDS );
+        tick( 454 * 1000 );
+        // sync words keep passing the read head while the disk spins
+        assertTrue( irqs.contains( IRQController.IRQSource.DISK_SYNC ) );
+        assertEquals( 1, irqs.stream().filter( irq -> irq == IRQController.IRQSource.DISK_BLOCK_FINISHED ).count() );
+        assertSector( 0 );
+    }
+
+    public void testTurbo() throws IOException
+    {
+        controller.turbo = true;
+        startRead( SECTOR_WORDS );
+        tick( 454 );
+        assertEquals( IRQController.IRQSource.DISK_BLOCK_FINISHED, irqs.get( irqs.size() - 1 ) );
+        assertSector( 0 );
+    }
+
+    public void testWordEqualOnlyClearedByRead() throws IOException
+    {
+        controller.turbo = true;
+        startRead( SECTOR_WORDS );
+        tick( 454 );
+        // peeking (debugger, memory views) must not clear WORDEQUAL
+        assertTrue( (controller.peekDSKBYTR() & DiskController.DSKBYTR_WORDEQUAL) != 0 );
+        assertTrue( (controller.peekDSKBYTR() & DiskController.DSKBYTR_WORDEQUAL) != 0 );
+        assertTrue( (controller.readDSKBYTR() & DiskController.DSKBYTR_WORDEQUAL) != 0 );
+        assertEquals( 0, controller.readDSKBYTR() & DiskController.DSKBYTR_WORDEQUAL );
+    }
+
+    private void startRead(int words) throws IOException
+    {
+        controller.insertDisk( 0, ADFImage.open( file ) );
+        controller.writePortB( 0xff & ~CIA8520.CIAB_PORB_DSKMOTOR );
+        controller.writePortB( 0xff & ~(CIA8520.CIAB_PORB_DSKMOTOR|CIA8520.CIAB_PORB_DSKSEL0) );
+
+        paula.writeADKCON( 1<<15 | 1<<10 ); // WORDSYNC
+        dmaCtrl.flags = 1<<9 | 1<<4; // DMAEN | DSKEN
+        controller.writeWord( DiskController.DSKPTH, BUFFER >>> 16 );
+        controller.writeWord( DiskController.DSKPTL, BUFFER & 0xffff );
+        controller.writeWord( DiskController.DSKLEN, 1<<15 | words );
+        controller.writeWord( DiskController.DSKLEN, 1<<15 | words );
+    }
+
+    private void assertSector(int sector)
+    {
+        assertEquals( MFMEncoder.SYNC, memory.readWord( BUFFER ) & 0xffff );
+        final int info = decode( BUFFER + 2, BUFFER + 6 );
+        assertEquals( 0xff000000 | sector << 8 | (ADFImage.SECTORS_PER_TRACK - sector), info );
+
+        int headerChecksum = 0;
+        for ( int adr = BUFFER + 2 ; adr < BUFFER + 2 + 40 ; adr += 4 ) {
+            headerChecksum ^= memory.readLong( adr );
+        }
+        assertEquals( headerChecksum & 0x55555555, decode( BUFFER + 42, BUFFER + 46 ) );
+
+        final int odd = BUFFER + 58;
+        final int even = odd + 512;
+        int dataChecksum = 0;
+        for ( int i = 0 ; i < 512 ; i += 4 )
+        {
+            dataChecksum ^= memory.readLong( odd + i ) ^ memory.readLong( even + i );
+            final int expected = (adf[ sector*512 + i ] & 0xff) << 24 | (adf[ sector*512 + i + 1 ] & 0xff) << 16 |
+                    (adf[ sector*512 + i + 2 ] & 0xff) << 8 | (adf[ sector*512 + i + 3 ] & 0xff);
+            assertEquals( "Mismatch at offset "+i, expected, decode( odd + i, even + i ) );
+        }
+        assertEquals( dataChecksum & 0x55555555, decode( BUFFER + 50, BUFFER + 54 ) );
+    }
+
+    private int decode(int oddAdr,int evenAdr)
+    {
+        return (memory.readLong( oddAdr ) & 0x55555555) << 1 | (memory.readLong( evenAdr ) & 0x55555555);
+    }
+
+    private void tick(int count)
+    {
+        for ( int i = 0 ; i < count ; i++ ) {
+            controller.tick();
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package de.codesourcery.m68k.emulator.headless;
+
+import de.codesourcery.m68k.emulator.Amiga;
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+
+public class HeadlessRunnerTest extends TestCase
+{
+    private File romFile;
+    private File dataFile;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        romFile = File.createTempFile( "kickstart", ".rom" );
+        Files.write( romFile.toPath(), new byte[ Amiga.AMIGA_500.getKickRomSize() ] );
+        dataFile = File.createTempFile( "memory", ".bin" );
+        Files.write( dataFile.toPath(), new byte[] { 1, 2, 3, 4 } );
+    }
+
+    @Override
+    protected void tearDown()
+    {
+        romFile.delete();
+        dataFile.delete();
+    }
+
+    public void testTokenize() throws Exception
+    {
+        assertEquals( Collections.emptyList(), HeadlessRunner.tokenize( "   # comment" ) );
+        assertEquals( Arrays.asList( "until-mem", "$1000", "42", "w" ), HeadlessRunner.tokenize( "until-mem $1000  42 w # wait" ) );
+        assertEquals( Arrays.asList( "type", "dir df0:\n" ), HeadlessRunner.tokenize( "type \"dir df0:\\n\"" ) );
+        assertEquals( Arrays.asList( "type", "" ), HeadlessRunner.tokenize( "type \"\"" ) );
+        assertEquals( Arrays.asList( "type", "a # b" ), HeadlessRunner.tokenize( "type \"a # b\"" ) );
+    }
+
+    public void testUsageErrors()
+    {
+        assertEquals( HeadlessRunner.EXIT_USAGE, execute() );
+        assertEquals( HeadlessRunner.EXIT_USAGE, execute( "frames", "10" ) );
+        assertEquals( HeadlessRunner.EXIT_USAGE, execute( "--frames", "10" ) );
+        assertEquals( HeadlessRunner.EXIT_USAGE, execute( "--no-such-command" ) );
+        assertEquals( HeadlessRunner.EXIT_USAGE, execute( "--frames" ) );
+        assertEquals( HeadlessRunner.EXIT_USAGE, execute( "--rom", romFile.getPath(), "--expect-reg", "d8", "0" ) );
+        assertEquals( HeadlessRunner.EXIT_USAGE, execute( "--rom", romFile.getPath(), "--expect-pc", "$xyz" ) );
+    }
+
+    public void testExpectations()
+    {
+        final String rom = romFile.getPath();
+        assertEquals( HeadlessRunner.EXIT_PASS, execute( "--rom", rom, "--load", dataFile.getPath(), "$1000", "--expect-mem", "$1000", "$01020304" ) );
+        assertEquals( HeadlessRunner.EXIT_FAIL, execute( "--rom", rom, "--load", dataFile.getPath(), "$1000", "--expect-mem", "$1000", "$01020305" ) );
+    }
+
+    public void testFailureOnEmulatorThreadIsAnError()
+    {
+        // Kickstart ROM is write-protected
+        assertEquals( HeadlessRunner.EXIT_ERROR, execute( "--rom", romFile.getPath(), "--load", dataFile.getPath(), "$fc0000" ) );
+    }
+
+    private static int execute(String... args)
+    {
+        return new HeadlessRunner( new PrintStream( new ByteArrayOutputStream() ) ).run( args );
+    }
+}
@@ -0,0 +1,362 @@
+package de.codesourcery.m68k.emulator.memory;
+
+import de.codesourcery.m68k.assembler.arch.CPUType;
+import de.codesourcery.m68k.emulator.Amiga;
+import de.codesourcery.m68k.emulator.CPU;
+import de.codesourcery.m68k.emulator.chips.IRQController;
+import de.codesourcery.m68k.utils.Misc;
+import junit.framework.TestCase;
+
+import java.util.Random;
+
+public class BlitterTest extends TestCase
+{
+    private static final int SRC_A = 0x10000;
+    private static final int SRC_B = 0x12000;
+    private static final int SRC_C = 0x14000;
+    private static final int DST = 0x16000;
+
+    private Blitter blitter;
+    private Memory memory;
+
+    @Override
+    protected void setUp()
+    {
+        final DMAController dmaCtrl = new DMAController();
+        blitter = new Blitter( dmaCtrl );
+        final Amiga amiga = Amiga.AMIGA_500;
+        final Video video = new Video(amiga,blitter,dmaCtrl);
+        final MMU.PageFaultHandler faultHandler = new MMU.PageFaultHandler( amiga, blitter, video );
+        final MMU mmu = new MMU( faultHandler );
+        memory = new Memory(mmu);
+        blitter.setMemory( memory );
+        video.setMemory( memory );
+        final IRQController irqController = new IRQController( new CPU(CPUType.M68000, memory) );
+        blitter.setIRQController( irqController );
+        faultHandler.setIRQController( irqController );
+
+        writeRegister( 0x096, 0x8240 ); // DMACON: DMAEN | BLTEN
+    }
+
+    public void testMinterms()
+    {
+        final Random rnd = new Random( 0xdeadbeef );
+        for ( int minterm = 0 ; minterm < 256 ; minterm++ )
+        {
+            for ( int i = 0 ; i < 100 ; i++ )
+            {
+                final int a = rnd.nextInt() & 0xffff;
+                final int b = rnd.nextInt() & 0xffff;
+                final int c = rnd.nextInt() & 0xffff;
+                final int actual = Blitter.MINTERMS[minterm].apply( a, b, c ) & 0xffff;
+                assertEquals( "Minterm "+Misc.hex( minterm ), minterm( minterm, a, b, c ), actual );
+            }
+        }
+    }
+
+    public void testBulkLoopsMatchGenericPath()
+    {
+        for ( int minterm : new int[] { Blitter.MINTERM_CLEAR, Blitter.MINTERM_COPY_A, Blitter.MINTERM_COOKIE_CUT } )
+        {
+            for ( boolean descending : new boolean[] {false,true} )
+            {
+                for ( int channels = 0 ; channels < 16 ; channels++ )
+                {
+                    final int bltcon0 = (5 << 12) | (channels << 8) | minterm;
+                    final int bltcon1 = (3 << 12) | (descending ? 1<<1 : 0);
+
+                    final int[] expected = blit( bltcon0, bltcon1, false );
+                    final int[] actual = blit( bltcon0, bltcon1, true );
+                    for ( int i = 0 ; i < expected.length ; i++ )
+                    {
+                        assertEquals( "Minterm "+Misc.hex( minterm )+", channels "+Integer.toBinaryString( channels )+", descending: "+descending+", index "+i,
+                                expected[i], actual[i] );
+                    }
+                }
+            }
+        }
+    }
+
+    public void testLines()
+    {
+        final int cx = 80;
+        final int cy = 50;
+        for ( boolean fastMode : new boolean[] {true,false} )
+        {
+            for ( int[] end : new int[][] { {150,60},{150,40},{10,60},{10,40},{90,99},{70,99},{90,1},{70,1},{130,100},{80,20},{20,50} } )
+            {
+                setUp();
+                blitter.fastMode = fastMode;
+                drawLine( cx, cy, end[0], end[1], false );
+
+                final int dx = Math.abs( end[0] - cx );
+                final int dy = Math.abs( end[1] - cy );
+                final String msg = "Line to "+end[0]+","+end[1];
+                assertTrue( msg, isSet( cx, cy ) );
+                assertTrue( msg, isSet( end[0], end[1] ) );
+                assertEquals( msg, Math.max( dx, dy ) + 1, countPixels() );
+                // every pixel on the major axis gets exactly one pixel
+                for ( int i = 0 ; i <= Math.max( dx, dy ) ; i++ )
+                {
+                    int count = 0;
+                    for ( int j = 0 ; j < LINE_BITPLANE_HEIGHT && j < LINE_BITPLANE_WIDTH ; j++ ) {
+                        if ( dx >= dy ) {
+                            count += isSet( Math.min( cx, end[0] ) + i, j ) ? 1 : 0;
+                        } else {
+                            count += isSet( j, Math.min( cy, end[1] ) + i ) ? 1 : 0;
+                        }
+                    }
+                    assertEquals( msg, 1, count );
+                }
+            }
+        }
+    }
+
+    public void testBlitTiming()
+    {
+        // channels (ABCD) -> memory cycles (2 ticks each) per word, see "Blitter speed" in the HRM
+        final int[][] expected = { {0b0010,2}, {0b0100,2}, {0b0110,3}, {0b1010,2}, {0b1101,3}, {0b1111,4} };
+        final int width = 5;
+        final int height = 7;
+        for ( int[] entry : expected )
+        {
+            for ( boolean fastMode : new boolean[] {true,false} )
+            {
+                setUp();
+                blitter.fastMode = fastMode;
+                writeRegister( 0x040, entry[0] << 8 | 0xff ); // D = 1
+                writeRegister( 0x042, 0 );
+                writePointer( 0x050, SRC_A );
+                writePointer( 0x04c, SRC_B );
+                writePointer( 0x048, SRC_C );
+                writePointer( 0x054, DST );
+                writeRegister( 0x058, (height << 6) | width );
+
+                int ticks = 0;
+                while ( blitter.blitterActive ) {
+                    blitter.tick();
+                    ticks++;
+                }
+                assertEquals( "Channels "+Integer.toBinaryString( entry[0] )+", fast mode: "+fastMode,
+                        width * height * entry[1] * 2, ticks );
+            }
+        }
+    }
+
+    public void testDMACONStatusBitsAreReadOnly()
+    {
+        // restore DMACON from a DMACONR value read while the blitter was busy
+        writeRegister( 0x096, 0x7fff );
+        writeRegister( 0x096, 0x8000 | 1<<14 | 1<<13 | 1<<9 | 1<<6 );
+        final int dmaconr = memory.readWord( 0xdff002 ) & 0xffff;
+        assertEquals( 0, dmaconr & 1<<14 ); // BBUSY
+        assertEquals( 1<<9 | 1<<6, dmaconr & (1<<9 | 1<<6) );
+    }
+
+    public void testSingleBitLines()
+    {
+        // flat line, SING mode must only draw one pixel per row
+        drawLine( 10, 10, 100, 14, true );
+        assertEquals( 5, countPixels() );
+    }
+
+    public void testAreaFill()
+    {
+        final int width = 3; // words
+        final int height = 8;
+        for ( boolean exclusive : new boolean[] {false,true} )
+        {
+            for ( int carryIn = 0 ; carryIn < 2 ; carryIn++ )
+            {
+                for ( boolean fastMode : new boolean[] {true,false} )
+                {
+                    setUp();
+                    blitter.fastMode = fastMode;
+                    final Random rnd = new Random( 0xcafebabe );
+                    final int[] src = new int[ width * height ];
+                    for ( int i = 0 ; i < src.length ; i++ ) {
+                        src[i] = rnd.nextInt() & 0xffff;
+                        memory.writeWord( SRC_A + i*2, src[i] );
+                    }
+                    // fill is done in descending mode, starting with the last word
+                    final int last = (width * height - 1) * 2;
+                    writeRegister( 0x040, 0x09f0 ); // A -> D
+                    writeRegister( 0x042, (exclusive ? 1<<4 : 1<<3) | carryIn << 2 | 1<<1 );
+                    writeRegister( 0x044, 0xffff );
+                    writeRegister( 0x046, 0xffff );
+                    writePointer( 0x050, SRC_A + last );
+                    writePointer( 0x054, DST + last );
+                    writeRegister( 0x064, 0 );
+                    writeRegister( 0x066, 0 );
+                    writeRegister( 0x058, (height << 6) | width );
+                    while ( blitter.blitterActive ) {
+                        blitter.tick();
+                    }
+
+                    for ( int y = 0 ; y < height ; y++ )
+                    {
+                        int carry = carryIn;
+                        for ( int x = width-1 ; x >= 0 ; x-- )
+                        {
+                            final int in = src[ y * width + x ];
+                            int expected = 0;
+                            for ( int bit = 0 ; bit < 16 ; bit++ )
+                            {
+                                final int b = (in >>> bit) & 1;
+                                expected |= (exclusive ? carry ^ b : carry | b) << bit;
+                                carry ^= b;
+                            }
+                            final int actual = memory.readWord( DST + (y * width + x) * 2 ) & 0xffff;
+                            assertEquals( "exclusive: "+exclusive+", FCI: "+carryIn+", row "+y+", word "+x,
+                                    expected, actual );
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static final int LINE_BITPLANE = 0x20000;
+    private static final int LINE_BITPLANE_WIDTH = 160; // pixels
+    private static final int LINE_BITPLANE_HEIGHT = 101;
+
+    /**
+     * SUD/SUL/AUL bits for octants 0...7 as listed in the Amiga Hardware Reference Manual.
+     *
+     * Octant 0 is flat and goes right and up, numbering continues counter-clockwise.
+     */
+    private static final int[] HRM_OCTANTS = { 0b110, 0b001, 0b011, 0b111, 0b101, 0b010, 0b000, 0b100 };
+
+    /**
+     * Sets up and runs a line blit the way the Amiga Hardware Reference Manual describes it.
+     */
+    private void drawLine(int x1,int y1,int x2,int y2,boolean singleBit)
+    {
+        int dx = x2 - x1;
+        int dy = y2 - y1;
+        final boolean xMajor = Math.abs( dx ) >= Math.abs( dy );
+        final int octantNo;
+        if ( xMajor ) {
+            octantNo = dy < 0 ? ( dx < 0 ? 3 : 0 ) : ( dx < 0 ? 4 : 7 );
+        } else {
+            octantNo = dy < 0 ? ( dx < 0 ? 2 : 1 ) : ( dx < 0 ? 5 : 6 );
+        }
+        final int octant = HRM_OCTANTS[ octantNo ] << 2;
+        dx = Math.abs( dx );
+        dy = Math.abs( dy );
+        final int dmax = Math.max( dx, dy );
+        final int dmin = Math.min( dx, dy );
+
+        final int rowBytes = LINE_BITPLANE_WIDTH / 8;
+        final int start = LINE_BITPLANE + y1 * rowBytes + (x1 >>> 4) * 2;
+        final int error = 4*dmin - 2*dmax;
+
+        writeRegister( 0x040, ((x1 & 15) << 12) | 0xbca );
+        writeRegister( 0x042, ((x1 & 15) << 12) | octant | (error < 0 ? 1<<6 : 0) | (singleBit ? 1<<1 : 0) | 1 );
+        writeRegister( 0x044, 0xffff );
+        writeRegister( 0x046, 0xffff );
+        writeRegister( 0x074, 0x8000 ); // BLTADAT
+        writeRegister( 0x072, 0xffff ); // BLTBDAT, texture
+        writeRegister( 0x062, 4*dmin ); // BLTBMOD
+        writeRegister( 0x064, 4*(dmin - dmax) ); // BLTAMOD
+        writePointer( 0x050, error & 0xffff ); // BLTAPT
+        writePointer( 0x048, start ); // BLTCPT
+        writePointer( 0x054, start ); // BLTDPT
+        writeRegister( 0x060, rowBytes ); // BLTCMOD
+        writeRegister( 0x066, rowBytes ); // BLTDMOD
+        writeRegister( 0x058, ((dmax+1) << 6) | 2 ); // BLTSIZE
+
+        while ( blitter.blitterActive ) {
+            blitter.tick();
+        }
+    }
+
+    private boolean isSet(int x,int y)
+    {
+        final int word = memory.readWord( LINE_BITPLANE + y * (LINE_BITPLANE_WIDTH / 8) + (x >>> 4) * 2 );
+        return (word & (0x8000 >>> (x & 15))) != 0;
+    }
+
+    private int countPixels()
+    {
+        int count = 0;
+        for ( int i = 0 ; i < LINE_BITPLANE_HEIGHT * LINE_BITPLANE_WIDTH / 16 ; i++ ) {
+            count += Integer.bitCount( memory.readWord( LINE_BITPLANE + i*2 ) & 0xffff );
+        }
+        return count;
+    }
+
+    private int[] blit(int bltcon0,int bltcon1,boolean fastMode)
+    {
+        setUp();
+        final Random rnd = new Random( 0x12345678 );
+        for ( int i = 0 ; i < 0x8000 ; i += 2 ) {
+            memory.writeWord( SRC_A + i, rnd.nextInt() );
+        }
+        final boolean descending = (bltcon1 & 1<<1) != 0;
+        final int offset = descending ? 0x1000 : 0;
+
+        blitter.fastMode = fastMode;
+        writeRegister( 0x040, bltcon0 );
+        writeRegister( 0x042, bltcon1 );
+        writeRegister( 0x044, 0x0fff ); // BLTAFWM
+        writeRegister( 0x046, 0xfff0 ); // BLTALWM
+        writePointer( 0x050, SRC_A + offset );
+        writePointer( 0x04c, SRC_B + offset );
+        writePointer( 0x048, SRC_C + offset );
+        writePointer( 0x054, DST + offset );
+        writeRegister( 0x064, 4 ); // BLTAMOD
+        writeRegister( 0x062, 6 ); // BLTBMOD
+        writeRegister( 0x060, -2 ); // BLTCMOD
+        writeRegister( 0x066, 8 ); // BLTDMOD
+        writeRegister( 0x074, 0x1234 ); // BLTADAT
+        writeRegister( 0x072, 0x5678 ); // BLTBDAT
+        writeRegister( 0x070, 0x9abc ); // BLTCDAT
+        writeRegister( 0x058, (17 << 6) | 5 ); // BLTSIZE
+
+        int ticks = 0;
+        while ( blitter.blitterActive ) {
+            blitter.tick();
+            ticks++;
+        }
+
+        final int[] result = new int[ 0x1000 + 9 ];
+        for ( int i = 0 ; i < 0x1000 ; i++ ) {
+            result[i] = memory.readWord( DST + offset - 0x800 + i*2 ) & 0xffff;
+        }
+        result[0x1000] = blitter.bltaptr;
+        result[0x1001] = blitter.bltbptr;
+        result[0x1002] = blitter.bltcptr;
+        result[0x1003] = blitter.bltdptr;
+        result[0x1004] = blitter.bltadat;
+        result[0x1005] = blitter.bltbdat;
+        result[0x1006] = blitter.bltcdat;
+        result[0x1007] = blitter.totalResult == 0 ? 0 : 1;
+        result[0x1008] = ticks;
+        return result;
+    }
+
+    private void writePointer(int register,int address)
+    {
+        writeRegister( register, address >>> 16 );
+        writeRegister( register+2, address );
+    }
+
+    private void writeRegister(int register,int value)
+    {
+        memory.writeWord( 0xdff000 + register, value & 0xffff );
+    }
+
+    private static int minterm(int minterm,int a,int b,int c)
+    {
+        int result = 0;
+        for ( int bit = 0 ; bit < 16 ; bit++ )
+        {
+            final int index = ((a >>> bit) & 1) << 2 | ((b >>> bit) & 1) << 1 | ((c >>> bit) & 1);
+            if ( (minterm & 1 << index) != 0 ) {
+                result |= 1 << bit;
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,174 @@
+package de.codesourcery.m68k.emulator.memory;
+
+import de.codesourcery.m68k.emulator.Amiga;
+import de.codesourcery.m68k.emulator.Emulator;
+import junit.framework.TestCase;
+
+public class CopperListTest extends TestCase
+{
+    private static final int LIST = 0x1000;
+
+    private Emulator emulator;
+    private Memory memory;
+    private CustomChipPage registers;
+    private CopperList.Compiler compiler;
+
+    @Override
+    protected void setUp()
+    {
+        emulator = new Emulator( Amiga.AMIGA_500, new byte[ Amiga.AMIGA_500.getKickRomSize() ] );
+        memory = emulator.memory;
+        registers = (CustomChipPage) memory.mmu.getPage( memory.mmu.getPageNo( 0xdff000 ) );
+        compiler = new CopperList.Compiler();
+    }
+
+    @Override
+    protected void tearDown()
+    {
+        emulator.destroy();
+    }
+
+    public void testCompile()
+    {
+        writeList( LIST,
+            0x0180, 0x0111, // MOVE #$111,COLOR00
+            0x4001, 0xfffe, // WAIT line $40
+            0x4001, 0xffff, // SKIP line $40
+            0xffff, 0xfffe  // end of list
+        );
+        final CopperList list = compiler.compile( LIST, memory.mmu, registers );
+
+        assertEquals( LIST, list.startAddress );
+        assertEquals( 4, list.length );
+        assertEquals( CopperList.OP_MOVE, list.getOpcode( 0 ) );
+        assertEquals( 0x0180, list.getWord1( 0 ) );
+        assertEquals( 0x0111, list.getWord2( 0 ) );
+        assertNotNull( list.getHandler( 0 ) );
+        assertEquals( CopperList.OP_WAIT, list.getOpcode( 1 ) );
+        assertNull( list.getHandler( 1 ) );
+        assertEquals( CopperList.OP_SKIP, list.getOpcode( 2 ) );
+        assertNull( list.getHandler( 2 ) );
+        assertEquals( CopperList.OP_WAIT, list.getOpcode( 3 ) );
+
+        assertEquals( 2, list.indexOf( LIST + 8 ) );
+        assertEquals( -1, list.indexOf( LIST + 16 ) );
+        assertTrue( list.isValid() );
+    }
+
+    public void testInvalidatedByChipRAMWrite()
+    {
+        writeList( LIST, 0x0180, 0x0111, 0xffff, 0xfffe );
+        final CopperList list = compiler.compile( LIST, memory.mmu, registers );
+        assertTrue( list.isValid() );
+
+        memory.writeWord( LIST + 2, 0x0222 );
+        assertFalse( list.isValid() );
+        assertFalse( list.isValid( 0 ) );
+
+        final CopperList recompiled = compiler.compile( LIST, memory.mmu, registers );
+        assertTrue( recompiled.isValid() );
+        assertEquals( 0x0222, recompiled.getWord2( 0 ) );
+    }
+
+    public void testWriteOutsideOfListKeepsListValid()
+    {
+        writeList( LIST, 0x0180, 0x0111, 0xffff, 0xfffe );
+        final CopperList list = compiler.compile( LIST, memory.mmu, registers );
+
+        // data sharing a page with the list
+        memory.writeWord( LIST - 2, 0x1234 );
+        memory.writeWord( LIST + 8, 0x1234 );
+        memory.writeByte( LIST + 0x100, 0x12 );
+        // other page
+        memory.writeWord( LIST + 0x10000, 0x1234 );
+        assertTrue( list.isValid() );
+    }
+
+    public void testInvalidatedByBlitterWrite()
+    {
+        writeList( LIST, 0x0180, 0x0111, 0xffff, 0xfffe );
+        final CopperList list = compiler.compile( LIST, memory.mmu, registers );
+
+        // D-only blit (clear) of one word right behind the list
+        memory.writeWord( 0xdff096, 0x8240 ); // DMACON: DMAEN | BLTEN
+        memory.writeWord( 0xdff040, 0x0100 ); // BLTCON0: USED, minterm 0
+        memory.writeWord( 0xdff042, 0 );
+        memory.writeWord( 0xdff054, 0 ); // BLTDPTH
+        memory.writeWord( 0xdff056, LIST + 8 ); // BLTDPTL
+        memory.writeWord( 0xdff058, 1 << 6 | 1 ); // BLTSIZE
+        blit();
+        assertTrue( list.isValid() );
+
+        memory.writeWord( 0xdff056, LIST + 6 ); // BLTDPTL
+        memory.writeWord( 0xdff058, 1 << 6 | 1 ); // BLTSIZE
+        blit();
+        assertFalse( list.isValid() );
+        assertFalse( list.isValid( 1 ) );
+    }
+
+    public void testListCrossingPageBoundary()
+    {
+        // second word of the 3rd instruction lives on the next page
+        final int start = 2*MMU.PAGE_SIZE - 10;
+        writeList( start,
+            0x0180, 0x0111, // MOVE #$111,COLOR00
+            0x0182, 0x0222, // MOVE #$222,COLOR01
+            0x4001, 0xfffe, // WAIT line $40
+            0xffff, 0xfffe  // end of list
+        );
+        final CopperList list = compiler.compile( start, memory.mmu, registers );
+
+        assertEquals( 4, list.length );
+        assertEquals( CopperList.OP_WAIT, list.getOpcode( 2 ) );
+        assertEquals( 0x4001, list.getWord1( 2 ) );
+        assertEquals( 0xfffe, list.getWord2( 2 ) );
+        assertEquals( CopperList.OP_WAIT, list.getOpcode( 3 ) );
+        assertEquals( 0xffff, list.getWord1( 3 ) );
+
+        // change second word of the instruction crossing the page boundary
+        memory.writeWord( 2*MMU.PAGE_SIZE, 0xff00 );
+        assertTrue( list.isValid( 1 ) );
+        assertFalse( list.isValid( 2 ) );
+        assertFalse( list.isValid() );
+    }
+
+    public void testUnwatchInvalidatesList()
+    {
+        writeList( LIST, 0x0180, 0x0111, 0xffff, 0xfffe );
+        final CopperList list = compiler.compile( LIST, memory.mmu, registers );
+
+        list.unwatch();
+        assertFalse( list.isValid() );
+        assertTrue( compiler.compile( LIST, memory.mmu, registers ).isValid() );
+    }
+
+    public void testRecompileDoesNotChangePreviousLists()
+    {
+        writeList( LIST, 0x0180, 0x0111, 0xffff, 0xfffe );
+        final CopperList first = compiler.compile( LIST, memory.mmu, registers );
+
+        // instruction slot that held a MOVE now holds a WAIT
+        writeList( LIST + 0x800, 0x4001, 0xfffe, 0xffff, 0xfffe );
+        final CopperList second = compiler.compile( LIST + 0x800, memory.mmu, registers );
+
+        assertEquals( CopperList.OP_MOVE, first.getOpcode( 0 ) );
+        assertEquals( 0x0111, first.getWord2( 0 ) );
+        assertNotNull( first.getHandler( 0 ) );
+        assertEquals( CopperList.OP_WAIT, second.getOpcode( 0 ) );
+        assertNull( second.getHandler( 0 ) );
+    }
+
+    private void blit()
+    {
+        do {
+            emulator.blitter.tick();
+        } while ( emulator.blitter.blitterActive );
+    }
+
+    private void writeList(int address,int... words)
+    {
+        for ( int i = 0 ; i < words.length ; i++ ) {
+            memory.writeWord( address + i*2, words[i] );
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package de.codesourcery.m68k.emulator.memory;
+
+import de.codesourcery.m68k.emulator.Amiga;
+import de.codesourcery.m68k.emulator.Emulator;
+import junit.framework.TestCase;
+
+public class MemoryAccessStatisticsTest extends TestCase
+{
+    private static final int CHIP_RAM = 0x1000;
+
+    private Emulator emulator;
+    private Memory memory;
+    private MemoryAccessStatistics statistics;
+
+    @Override
+    protected void setUp()
+    {
+        emulator = new Emulator( Amiga.AMIGA_500, new byte[ Amiga.AMIGA_500.getKickRomSize() ] );
+        memory = emulator.memory;
+        statistics = emulator.mmu.getStatistics();
+    }
+
+    @Override
+    protected void tearDown()
+    {
+        emulator.destroy();
+    }
+
+    public void testNothingCountedWhileDisabled()
+    {
+        memory.writeWord( CHIP_RAM, 0x1234 );
+        memory.readWord( CHIP_RAM );
+        memory.readWord( 0xdff006 ); // VHPOSR
+
+        final int pageNo = emulator.mmu.getPageNo( CHIP_RAM );
+        assertEquals( 0, statistics.getTotalAccesses( pageNo ) );
+        assertEquals( 0, statistics.customChipReads[ 0x006 >>> 1 ] );
+    }
+
+    public void testPageAccesses()
+    {
+        statistics.enabled = true;
+
+        memory.writeWord( CHIP_RAM, 0x1234 );
+        memory.writeByte( CHIP_RAM + MMU.PAGE_SIZE - 1, 0x12 );
+        memory.readWord( CHIP_RAM );
+        memory.readByte( CHIP_RAM + 1 );
+        memory.readLong( CHIP_RAM );
+        memory.fetchWordNoCheck( CHIP_RAM );
+
+        final int pageNo = emulator.mmu.getPageNo( CHIP_RAM );
+        assertEquals( 4, statistics.pageReads[ pageNo ] ); // long read = 2 word reads
+        assertEquals( 2, statistics.pageWrites[ pageNo ] );
+        assertEquals( 1, statistics.pageFetches[ pageNo ] );
+        assertEquals( 7, statistics.getTotalAccesses( pageNo ) );
+        assertEquals( 0, statistics.getTotalAccesses( pageNo + 1 ) );
+    }
+
+    public void testNoSideEffectReadsAreNotCounted()
+    {
+        statistics.enabled = true;
+
+        memory.readWordNoSideEffects( CHIP_RAM );
+        memory.readByteNoSideEffects( CHIP_RAM );
+        memory.readWordNoSideEffects( 0xdff006 );
+
+        assertEquals( 0, statistics.getTotalAccesses( emulator.mmu.getPageNo( CHIP_RAM ) ) );
+        assertEquals( 0, statistics.customChipReads[ 0x006 >>> 1 ] );
+    }
+
+    public void testRegisterAccesses()
+    {
+        statistics.enabled = true;
+
+        memory.readWord( 0xdff006 ); // VHPOSR
+        memory.writeWord( 0xdff180, 0x0fff ); // COLOR00
+        memory.readByte( 0xbfe001 ); // CIA-A PRA
+        memory.writeByte( 0xbfd200, 0 ); // CIA-B DDRA
+
+        assertEquals( 1, statistics.customChipReads[ 0x006 >>> 1 ] );
+        assertEquals( 1, statistics.customChipWrites[ 0x180 >>> 1 ] );
+        assertEquals( 1, statistics.ciaaReads[ 0 ] );
+        assertEquals( 0, statistics.ciaaWrites[ 0 ] );
+        assertEquals( 1, statistics.ciabWrites[ 2 ] );
+    }
+
+    public void testResetAndCopy()
+    {
+        statistics.enabled = true;
+        memory.readWord( CHIP_RAM );
+        memory.readWord( 0xdff006 );
+
+        final MemoryAccessStatistics copy = new MemoryAccessStatistics();
+        statistics.copyTo( copy );
+        statistics.reset();
+
+        final int pageNo = emulator.mmu.getPageNo( CHIP_RAM );
+        assertTrue( copy.enabled );
+        assertEquals( 1, copy.pageReads[ pageNo ] );
+        assertEquals( 1, copy.customChipReads[ 0x006 >>> 1 ] );
+        assertEquals( 0, statistics.pageReads[ pageNo ] );
+        assertEquals( 0, statistics.customChipReads[ 0x006 >>> 1 ] );
+        assertTrue( statistics.enabled );
+    }
+}
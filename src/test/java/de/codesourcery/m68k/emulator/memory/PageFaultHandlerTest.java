@@ -0,0 +1,75 @@
+package de.codesourcery.m68k.emulator.memory;
+
+import de.codesourcery.m68k.emulator.Amiga;
+import de.codesourcery.m68k.emulator.Emulator;
+import de.codesourcery.m68k.emulator.metrics.HostTimeProfiler;
+import junit.framework.TestCase;
+
+public class PageFaultHandlerTest extends TestCase
+{
+    private Emulator emulator;
+    private HostTimeProfiler profiler;
+
+    @Override
+    protected void setUp()
+    {
+        emulator = new Emulator( Amiga.AMIGA_500, new byte[ Amiga.AMIGA_500.getKickRomSize() ] );
+        profiler = emulator.profiler;
+        profiler.setEnabled( true );
+    }
+
+    @Override
+    protected void tearDown()
+    {
+        emulator.destroy();
+    }
+
+    public void testUnsampledTicksAreNotTimed()
+    {
+        for ( int i = 0 ; i < 1000 ; i++ ) {
+            emulator.mmu.tick();
+        }
+        assertEquals( 0, profiler.getTotalNanos() );
+    }
+
+    public void testSampledTicksAreTimed()
+    {
+        for ( int i = 0 ; i < 1000 ; i++ ) {
+            emulator.mmu.tick( true );
+        }
+        assertTrue( profiler.getTotalNanos() > 0 );
+        assertEquals( 0, profiler.getPercentage( HostTimeProfiler.Subsystem.UI_CALLBACKS ), 0 );
+    }
+
+    public void testFastModeBlitsAreTimedOnEveryOccurrence()
+    {
+        final Blitter blitter = emulator.blitter;
+        assertTrue( blitter.fastMode );
+
+        writeRegister( 0x096, 0x8240 ); // DMACON: DMAEN | BLTEN
+        writeRegister( 0x040, 0x09f0 ); // BLTCON0: USEA | USED , D=A
+        writeRegister( 0x042, 0 );
+        writeRegister( 0x044, 0xffff ); // BLTAFWM
+        writeRegister( 0x046, 0xffff ); // BLTALWM
+        writePointer( 0x050, 0x10000 ); // BLTAPT
+        writePointer( 0x054, 0x20000 ); // BLTDPT
+        writeRegister( 0x058, 0 ); // BLTSIZE: 1024 rows, 64 words
+
+        for ( int i = 0 ; i < 10 && blitter.blitterActive ; i++ ) {
+            emulator.mmu.tick();
+        }
+        assertTrue( profiler.getTotalNanos() > 0 );
+        assertEquals( 100, profiler.getPercentage( HostTimeProfiler.Subsystem.BLITTER ), 0 );
+    }
+
+    private void writePointer(int register,int address)
+    {
+        writeRegister( register, address >>> 16 );
+        writeRegister( register+2, address );
+    }
+
+    private void writeRegister(int register,int value)
+    {
+        emulator.memory.writeWord( 0xdff000 + register, value & 0xffff );
+    }
+}
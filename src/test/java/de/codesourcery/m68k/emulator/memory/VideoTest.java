@@ -0,0 +1,300 @@
+package de.codesourcery.m68k.emulator.memory;
+
+import de.codesourcery.m68k.emulator.Amiga;
+import de.codesourcery.m68k.emulator.Emulator;
+import junit.framework.TestCase;
+
+public class VideoTest extends TestCase
+{
+    private static final int CLXDAT = 0xdff00e;
+    private static final int CLXCON = 0xdff098;
+    private static final int DMACON = 0xdff096;
+
+    private static final int COLOR00 = 0xdff180;
+
+    private static final int BPLCON0_HAM = 1 << 11;
+    private static final int BPLCON0_DPF = 1 << 10;
+    private static final int BPLCON0_COLOR = 1 << 9;
+
+    private static final int BITPLANES = 0x20000;
+    private static final int BITPLANE_SIZE = 0x4000;
+
+    private Emulator emulator;
+    private Memory memory;
+    private Video video;
+
+    @Override
+    protected void setUp()
+    {
+        emulator = new Emulator( Amiga.AMIGA_500, new byte[ Amiga.AMIGA_500.getKickRomSize() ] );
+        memory = emulator.memory;
+        video = emulator.video;
+    }
+
+    @Override
+    protected void tearDown()
+    {
+        emulator.destroy();
+    }
+
+    public void testCLXDATOnlyClearedByRead()
+    {
+        video.clxdat = 0x1234;
+
+        // debugger/memory view reads must not clear the collision latch
+        assertEquals( (byte) 0x92, memory.readByteNoSideEffects( CLXDAT ) );
+        assertEquals( (short) 0x9234, memory.readWordNoSideEffects( CLXDAT ) );
+        assertEquals( 0x1234, video.clxdat );
+
+        assertEquals( (short) 0x9234, memory.readWord( CLXDAT ) );
+        assertEquals( 0, video.clxdat );
+        assertEquals( (short) 0x8000, memory.readWord( CLXDAT ) );
+    }
+
+    public void testCollisionsDetectedInSkippedFrames()
+    {
+        // two bitplanes, all pixels set in both
+        for ( int i = 0 ; i < 2 * 0x4000 ; i += 2 ) {
+            memory.writeWord( BITPLANES + i, 0xffff );
+        }
+        writePointer( Video.BPL1PTH, BITPLANES );
+        writePointer( Video.BPL1PTH + 4, BITPLANES + 0x4000 );
+        memory.writeWord( 0xdff000 + Video.BPLCON0, 2 << 12 | 1 << 9 );
+        memory.writeWord( CLXCON, 0b000011 << 6 | 0b000011 ); // bitplanes 1+2 enabled, match if both set
+        memory.writeWord( DMACON, 0x8300 ); // DMAEN | BPLEN
+
+        video.setRenderEveryNthFrame( 1000 );
+        for ( int i = 0 ; i < 3 ; i++ ) {
+            tickFrame();
+        }
+        memory.readWord( CLXDAT ); // clear
+        tickFrame(); // not rendered
+        assertEquals( 1, memory.readWordNoSideEffects( CLXDAT ) & 1 );
+    }
+
+    public void testCopperWakeUpPosition()
+    {
+        tickTo( 0x10, 0x20 );
+
+        assertEquals( 0x6400, video.getCopperWakeUpPosition( 0x6401, 0xfffe ) );
+        // vertical comparison disabled (except for V7, which can't be masked)
+        assertEquals( 0x1040, video.getCopperWakeUpPosition( 0x0041, 0x80fe ) );
+        // horizontal position beyond the end of the line matches at the start of the next one
+        assertEquals( 0x1100, video.getCopperWakeUpPosition( 0x10e1, 0xfffe ) );
+        // already reached
+        assertEquals( 0x1020, video.getCopperWakeUpPosition( 0x0f01, 0xfffe ) );
+        assertEquals( 0x1020, video.getCopperWakeUpPosition( 0x1021, 0xfffe ) );
+
+        // SKIP just compares against the current position
+        assertTrue( video.isCopperBeamPositionReached( 0x0f01, 0xfffe ) );
+        assertTrue( video.isCopperBeamPositionReached( 0x1021, 0xfffe ) );
+        assertFalse( video.isCopperBeamPositionReached( 0x1023, 0xfffe ) );
+        assertFalse( video.isCopperBeamPositionReached( 0x6401, 0xfffe ) );
+        // only the lower 4 horizontal bits are enabled
+        assertTrue( video.isCopperBeamPositionReached( 0x6401, 0x801e ) );
+    }
+
+    public void testCopperWait()
+    {
+        final int list = 0x1000;
+        final int[] instructions = {
+            0x0180, 0x0111, // MOVE #$111,COLOR00
+            0x4001, 0xfffe, // WAIT line $40
+            0x0180, 0x0222, // MOVE #$222,COLOR00
+            0xffff, 0xfffe  // end of list
+        };
+        for ( int i = 0 ; i < instructions.length ; i++ ) {
+            memory.writeWord( list + i*2, instructions[i] );
+        }
+        writePointer( 0x080, list ); // COP1LC
+        memory.writeWord( 0xdff088, 0 ); // COPJMP1
+        memory.writeWord( DMACON, 0x8280 ); // DMAEN | COPEN
+
+        tickTo( 0x3f, 0 );
+        assertEquals( 0x111, memory.readWord( 0xdff180 ) );
+        assertTrue( video.copper.isSleeping() );
+        tickTo( 0x40, 0x20 );
+        assertEquals( 0x222, memory.readWord( 0xdff180 ) );
+    }
+
+    public void testCopperListOnlyRecompiledAfterWriteToList()
+    {
+        final int list = 0x1000;
+        final int[] instructions = {
+            0x0180, 0x0111, // MOVE #$111,COLOR00
+            0xffff, 0xfffe  // end of list
+        };
+        for ( int i = 0 ; i < instructions.length ; i++ ) {
+            memory.writeWord( list + i*2, instructions[i] );
+        }
+        writePointer( 0x080, list ); // COP1LC
+        memory.writeWord( DMACON, 0x8280 ); // DMAEN | COPEN
+        tickFrame();
+        tickFrame();
+        final CopperList compiled = video.copper.getCurrentList();
+        assertNotNull( compiled );
+
+        // variables next to the list
+        memory.writeWord( list + 8, 0x1234 );
+        memory.writeWord( list - 2, 0x1234 );
+        tickFrame();
+        assertSame( compiled, video.copper.getCurrentList() );
+
+        memory.writeWord( list + 2, 0x0222 );
+        tickFrame();
+        assertNotSame( compiled, video.copper.getCurrentList() );
+        assertEquals( 0x222, memory.readWord( 0xdff180 ) );
+    }
+
+    public void testMidFrameColorChangeIsRendered()
+    {
+        final int list = 0x1000;
+        final int[] instructions = {
+            0x0180, 0x0f00, // MOVE #$f00,COLOR00
+            0x8001, 0xfffe, // WAIT line $80
+            0x0180, 0x00f0, // MOVE #$0f0,COLOR00
+            0xffff, 0xfffe  // end of list
+        };
+        for ( int i = 0 ; i < instructions.length ; i++ ) {
+            memory.writeWord( list + i*2, instructions[i] );
+        }
+        writePointer( 0x080, list ); // COP1LC
+        memory.writeWord( DMACON, 0x8280 ); // DMAEN | COPEN
+
+        tickFrame();
+        tickFrame();
+
+        final int[] frame = video.getFrameBuffer();
+        final int width = video.getFrameWidth();
+        final int firstLine = 29; // PAL
+        assertPixels( frame, ( 0x40 - firstLine ) * width, 0xf00 );
+        assertPixels( frame, ( 0x7f - firstLine ) * width + width - 1, 0xf00 );
+        assertPixels( frame, ( 0x81 - firstLine ) * width, 0x0f0 );
+        assertPixels( frame, ( 0xc0 - firstLine ) * width, 0x0f0 );
+    }
+
+    public void testHAMLineDecode()
+    {
+        memory.writeWord( COLOR00, 0x456 );
+        memory.writeWord( COLOR00 + 3*2, 0x123 );
+        writePixels( 6 << 12 | BPLCON0_HAM | BPLCON0_COLOR,
+            0b01_0101,  // modify blue of COLOR00
+            0b00_0011,  // COLOR03
+            0b01_1111,  // modify blue
+            0b10_1010,  // modify red
+            0b11_0111 ); // modify green
+
+        final int[] pixels = convertDisplayData();
+        assertPixels( pixels, 0, 0x455, 0x123, 0x12f, 0xa2f, 0xa7f );
+        // next line starts over with COLOR00
+        assertPixels( pixels, video.getDisplayWidth(), 0x456 );
+    }
+
+    public void testEHBLineDecode()
+    {
+        memory.writeWord( COLOR00 + 5*2, 0xeca );
+        writePixels( 6 << 12 | BPLCON0_COLOR, 5, 32 + 5 );
+
+        assertPixels( convertDisplayData(), 0, 0xeca, 0x765 );
+    }
+
+    public void testDualPlayfieldPriority()
+    {
+        for ( int i = 0 ; i < 16 ; i++ ) {
+            memory.writeWord( COLOR00 + i*2, 0x100 + i );
+        }
+        writePixels( 4 << 12 | BPLCON0_DPF | BPLCON0_COLOR,
+            0b0011,  // PF1 color 1, PF2 color 1
+            0b1000,  // PF2 color 2
+            0b0000,  // both transparent
+            0b0100 ); // PF1 color 2
+
+        // PF1 in front
+        assertPixels( convertDisplayData(), 0, 0x101, 0x10a, 0x100, 0x102 );
+
+        memory.writeWord( 0xdff000 + Video.BPLCON2, 1 << 6 ); // PF2PRI
+        assertPixels( convertDisplayData(), 0, 0x109, 0x10a, 0x100, 0x102 );
+    }
+
+    public void testDualPlayfieldScrolling()
+    {
+        for ( int i = 0 ; i < 16 ; i++ ) {
+            memory.writeWord( COLOR00 + i*2, 0x100 + i );
+        }
+        writePixels( 2 << 12 | BPLCON0_DPF | BPLCON0_COLOR, 0b11 );
+
+        memory.writeWord( 0xdff000 + Video.BPLCON1, 0x0010 ); // delay PF2 by one pixel
+        assertPixels( convertDisplayData(), 0, 0x101, 0x109, 0x100 );
+
+        memory.writeWord( 0xdff000 + Video.BPLCON1, 0x0002 ); // delay PF1 by two pixels
+        assertPixels( convertDisplayData(), 0, 0x109, 0x100, 0x101, 0x100 );
+    }
+
+    /**
+     * Ticks the video chip until the beam reaches a given position
+     * in the current frame.
+     */
+    private void tickTo(int vpos,int hpos)
+    {
+        final int target = vpos << 8 | hpos >> 1;
+        while ( video.readVHPOSR() != target || ( video.readVPOSR() & 1 ) != 0 ) {
+            video.tick();
+        }
+    }
+
+    private void tickFrame()
+    {
+        final long frame = video.totalFrameCount;
+        while ( video.totalFrameCount == frame ) {
+            video.tick();
+        }
+    }
+
+    private void writePointer(int register,int address)
+    {
+        memory.writeWord( 0xdff000 + register, address >>> 16 );
+        memory.writeWord( 0xdff000 + register + 2, address & 0xffff );
+    }
+
+    /**
+     * Sets up six bitplanes along with BPLCON0 and writes
+     * the color indices of the left-most pixels of the first line.
+     */
+    private void writePixels(int bplcon0,int... indices)
+    {
+        for ( int plane = 0 ; plane < 6 ; plane++ )
+        {
+            int word = 0;
+            for ( int x = 0 ; x < indices.length ; x++ ) {
+                if ( ( indices[x] & 1 << plane ) != 0 ) {
+                    word |= 0x8000 >>> x;
+                }
+            }
+            memory.writeWord( BITPLANES + plane * BITPLANE_SIZE, word );
+            writePointer( Video.BPL1PTH + plane * 4, BITPLANES + plane * BITPLANE_SIZE );
+        }
+        memory.writeWord( 0xdff000 + Video.BPLCON0, bplcon0 );
+    }
+
+    private int[] convertDisplayData()
+    {
+        final int[] pixels = new int[ video.getDisplayWidth() * video.getDisplayHeight() ];
+        video.convertDisplayData( pixels, true );
+        return pixels;
+    }
+
+    private static void assertPixels(int[] pixels,int offset,int... expectedRGB12)
+    {
+        for ( int i = 0 ; i < expectedRGB12.length ; i++ ) {
+            assertEquals( "pixel "+i, toRGB24( expectedRGB12[i] ), pixels[ offset + i ] );
+        }
+    }
+
+    private static int toRGB24(int rgb12)
+    {
+        final int r = (rgb12 >> 8) & 0xf;
+        final int g = (rgb12 >> 4) & 0xf;
+        final int b = rgb12 & 0xf;
+        return (r << 4) << 16 | (g << 4) << 8 | (b << 4);
+    }
+}
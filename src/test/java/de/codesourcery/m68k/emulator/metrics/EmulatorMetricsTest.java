@@ -0,0 +1,68 @@
+package de.codesourcery.m68k.emulator.metrics;
+
+import de.codesourcery.m68k.assembler.arch.CPUType;
+import de.codesourcery.m68k.emulator.Amiga;
+import de.codesourcery.m68k.emulator.CPU;
+import de.codesourcery.m68k.emulator.Emulator;
+import de.codesourcery.m68k.emulator.chips.CIA8520;
+import de.codesourcery.m68k.emulator.chips.IRQController;
+import de.codesourcery.m68k.emulator.memory.Blitter;
+import de.codesourcery.m68k.emulator.memory.DMAController;
+import de.codesourcery.m68k.emulator.memory.MMU;
+import de.codesourcery.m68k.emulator.memory.Memory;
+import de.codesourcery.m68k.emulator.memory.Video;
+import junit.framework.TestCase;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Set;
+
+public class EmulatorMetricsTest extends TestCase
+{
+    public void testRegistration() throws Exception
+    {
+        final DMAController dmaCtrl = new DMAController();
+        final Blitter blitter = new Blitter( dmaCtrl );
+        final Amiga amiga = Amiga.AMIGA_500;
+        final Video video = new Video(amiga,blitter,dmaCtrl);
+        final MMU mmu = new MMU( new MMU.PageFaultHandler( amiga, blitter, video ) );
+        final CPU cpu = new CPU( CPUType.M68000, new Memory( mmu ) );
+        final IRQController irqController = new IRQController( cpu );
+        final CIA8520 ciaa = new CIA8520( CIA8520.Name.CIAA, amiga, irqController );
+        final CIA8520 ciab = new CIA8520( CIA8520.Name.CIAB, amiga, irqController );
+
+        final EmulatorMetrics metrics = new EmulatorMetrics( amiga, cpu, mmu, video, blitter, ciaa, ciab );
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName pattern = new ObjectName( "de.codesourcery.m68k:type=EmulatorMetrics,*" );
+        final Set<ObjectName> before = server.queryNames( pattern, null );
+
+        metrics.register();
+        try
+        {
+            final Set<ObjectName> names = server.queryNames( pattern, null );
+            names.removeAll( before );
+            assertEquals( 1, names.size() );
+            final ObjectName name = names.iterator().next();
+            assertEquals( (double) amiga.getCPUClock(), server.getAttribute( name, "TargetMHz" ) );
+            assertEquals( 0L, server.getAttribute( name, "TotalInstructions" ) );
+        }
+        finally
+        {
+            metrics.unregister();
+        }
+        assertEquals( before, server.queryNames( pattern, null ) );
+    }
+
+    public void testDestroyWithoutRunningUnregisters() throws Exception
+    {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName pattern = new ObjectName( "de.codesourcery.m68k:type=EmulatorMetrics,*" );
+        final Set<ObjectName> before = server.queryNames( pattern, null );
+
+        final Emulator emulator = new Emulator( Amiga.AMIGA_500, new byte[ Amiga.AMIGA_500.getKickRomSize() ] );
+        assertEquals( before.size() + 1, server.queryNames( pattern, null ).size() );
+        emulator.destroy();
+        assertEquals( before, server.queryNames( pattern, null ) );
+    }
+}
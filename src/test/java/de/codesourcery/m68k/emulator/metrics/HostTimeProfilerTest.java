@@ -0,0 +1,43 @@
+package de.codesourcery.m68k.emulator.metrics;
+
+import junit.framework.TestCase;
+
+public class HostTimeProfilerTest extends TestCase
+{
+    public void testSampling()
+    {
+        final HostTimeProfiler profiler = new HostTimeProfiler();
+        profiler.setSampleInterval( 3 );
+        for ( int i = 0 ; i < 10 ; i++ ) {
+            assertFalse( profiler.startTick() );
+        }
+        profiler.setEnabled( true );
+        assertFalse( profiler.startTick() );
+        assertFalse( profiler.startTick() );
+        assertTrue( profiler.startTick() );
+        assertFalse( profiler.startTick() );
+        assertFalse( profiler.startTick() );
+        assertTrue( profiler.startTick() );
+    }
+
+    public void testNestedSamplesGetSubtracted()
+    {
+        final HostTimeProfiler profiler = new HostTimeProfiler();
+        profiler.setSampleInterval( 10 );
+        profiler.setEnabled( true );
+        profiler.addNestedSample( HostTimeProfiler.Subsystem.COPPER, 1_000_000 );
+        profiler.addSample( HostTimeProfiler.Subsystem.VIDEO, 3_000_000 );
+        profiler.addSample( HostTimeProfiler.Subsystem.CPU, 2_000_000 );
+        // not scaled
+        profiler.add( HostTimeProfiler.Subsystem.UI_CALLBACKS, 50_000_000 );
+
+        assertEquals( 20, profiler.getPercentage( HostTimeProfiler.Subsystem.VIDEO ), 0.5 );
+        assertEquals( 10, profiler.getPercentage( HostTimeProfiler.Subsystem.COPPER ), 0.5 );
+        assertEquals( 20, profiler.getPercentage( HostTimeProfiler.Subsystem.CPU ), 0.5 );
+        assertEquals( 50, profiler.getPercentage( HostTimeProfiler.Subsystem.UI_CALLBACKS ), 0.5 );
+
+        profiler.setEnabled( false );
+        profiler.setEnabled( true );
+        assertEquals( 0, profiler.getTotalNanos() );
+    }
+}